@@ -0,0 +1,88 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource;
+
+/**
+ * The datasource types built into the plugin, with what the datasource admin dialog may do with datasources of each.
+ * Shared by the client services that list each type and the server that lists them all in one go, so both describe a
+ * datasource the same way.
+ */
+public enum BuiltInDatasource {
+
+  JDBC( "JDBC", true, true, true, true ), //$NON-NLS-1$
+  ANALYSIS( "Analysis", true, true, true, true ), //$NON-NLS-1$
+  METADATA( "Metadata", false, true, true, true ), //$NON-NLS-1$
+  DSW( "Data Source Wizard", true, true, false, true ); //$NON-NLS-1$
+
+  /**
+   * The extension of data source wizard domain ids, which the name of the datasource leaves out.
+   */
+  public static final String DSW_EXT = ".xmi"; //$NON-NLS-1$
+
+  /**
+   * The connection attribute that is <code>false</code> for connections made by the plugin itself, which are not
+   * listed.
+   */
+  public static final String ATTRIBUTE_STANDARD_CONNECTION = "STANDARD_CONNECTION"; //$NON-NLS-1$
+
+  private final String type;
+
+  private final boolean editable;
+
+  private final boolean removable;
+
+  private final boolean importable;
+
+  private final boolean exportable;
+
+  private BuiltInDatasource( String type, boolean editable, boolean removable, boolean importable,
+                             boolean exportable ) {
+    this.type = type;
+    this.editable = editable;
+    this.removable = removable;
+    this.importable = importable;
+    this.exportable = exportable;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public boolean isEditable() {
+    return editable;
+  }
+
+  public boolean isRemovable() {
+    return removable;
+  }
+
+  public boolean isImportable() {
+    return importable;
+  }
+
+  public boolean isExportable() {
+    return exportable;
+  }
+
+  /**
+   * @return a datasource of this type, with its flags
+   */
+  public IDatasourceInfo newInfo( String name, String id ) {
+    return new DatasourceInfo( name, id, type, editable, removable, importable, exportable );
+  }
+}
@@ -28,6 +28,7 @@ import org.pentaho.platform.api.repository2.unified.IPlatformImportBundle;
 import org.pentaho.platform.api.repository2.unified.IUnifiedRepository;
 import org.pentaho.platform.api.repository2.unified.RepositoryFileAcl;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.ConnectionServiceException;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DataAccessSettings;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.messages.Messages;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
@@ -45,7 +46,6 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -140,31 +140,39 @@ public class AnalysisService extends DatasourceService {
     // See BISERVER-12815
     fileNameValidation( fileName );
 
+    // the schema is read from the client once, then read from the spool by every step that needs it
     ZipInputStream zis = null;
-    ByteArrayOutputStream mondrian = null;
-    ByteArrayOutputStream annotations = null;
-    if ( fileName.endsWith( ZIP_EXTENSION ) ) {
-      zis = new ZipInputStream( dataInputStream );
-      ZipEntry ze = null;
-      int len = 0;
-      while ( ( ze = zis.getNextEntry() ) != null ) {
-        if ( ze.getName().endsWith( MONDRIAN_FILE_EXTENSION ) ) {
-          IOUtils.copy( zis, mondrian = new ByteArrayOutputStream() );
-        } else if ( ze.getName().equals( ANNOTATIONS_FILE ) ) {
-          IOUtils.copy( zis, annotations = new ByteArrayOutputStream() );
+    SpooledInput mondrian = null;
+    SpooledInput annotations = null;
+    try {
+      if ( fileName.endsWith( ZIP_EXTENSION ) ) {
+        zis = new ZipInputStream( dataInputStream );
+        ZipEntry ze = null;
+        while ( ( ze = zis.getNextEntry() ) != null ) {
+          if ( ze.getName().endsWith( MONDRIAN_FILE_EXTENSION ) ) {
+            if ( mondrian != null ) {
+              mondrian.close();
+            }
+            mondrian = spool( zis );
+          } else if ( ze.getName().equals( ANNOTATIONS_FILE ) ) {
+            if ( annotations != null ) {
+              annotations.close();
+            }
+            annotations = spool( zis );
+          }
+          zis.closeEntry();
         }
-        zis.closeEntry();
       }
-      if ( mondrian != null ) {
-        dataInputStream = new ByteArrayInputStream( mondrian.toByteArray() );
+      if ( mondrian == null ) {
+        // a zip without a schema leaves the schema to be read from the repository
+        mondrian = spool( zis == null ? dataInputStream : new ByteArrayInputStream( new byte[ 0 ] ) );
       }
-    }
-    try {
+
       processMondrianImport(
-        dataInputStream, catalogName, origCatalogName, overwrite, xmlaEnabledFlag, parameters, fileName, acl );
+        mondrian, catalogName, origCatalogName, overwrite, xmlaEnabledFlag, parameters, fileName, acl );
       if ( annotations != null ) {
         String catName = ( catalogName != null ) ? catalogName : fileName.substring( 0, fileName.indexOf( '.' ) );
-        ByteArrayInputStream annots = new ByteArrayInputStream( annotations.toByteArray() );
+        InputStream annots = annotations.openStream();
         IPlatformImportBundle mondrianBundle = new RepositoryFileImportBundle.Builder()
           .input( annots ).path( ANNOTATION_FOLDER + catName )
           .name( ANNOTATIONS_FILE ).charSet( "UTF-8" ).overwriteFile( true )
@@ -188,6 +196,20 @@ public class AnalysisService extends DatasourceService {
     }
   }
 
+  /**
+   * Reads <code>inputStream</code> to its end into a new spool.
+   */
+  protected SpooledInput spool( InputStream inputStream ) throws IOException {
+    SpooledInput spooledInput = new SpooledInput( DataAccessSettings.getImportMemoryThreshold() * 1024 );
+    try {
+      spooledInput.spool( inputStream );
+    } catch ( IOException e ) {
+      spooledInput.close();
+      throw e;
+    }
+    return spooledInput;
+  }
+
   public RepositoryFileAclDto getAnalysisDatasourceAcl( String analysisId )
       throws PentahoAccessControlException, FileNotFoundException {
     checkAnalysisExists( analysisId );
@@ -222,7 +244,7 @@ public class AnalysisService extends DatasourceService {
   /**
    * This is the main method that handles the actual Import Handler to persist to PUR
    *
-   * @param dataInputStream
+   * @param schema the uploaded schema; may be empty when editing catalogName
    * @param catalogName
    * @param overwrite
    * @param xmlaEnabledFlag
@@ -231,31 +253,35 @@ public class AnalysisService extends DatasourceService {
    * @param acl acl information for the data source. This parameter is optional.
    * @throws PlatformImportException
    */
-  protected void processMondrianImport( InputStream dataInputStream, String catalogName, String origCatalogName,
+  protected void processMondrianImport( SpooledInput schema, String catalogName, String origCatalogName,
                                         boolean overwrite, boolean xmlaEnabledFlag, String parameters, String fileName,
                                         RepositoryFileAclDto acl )
     throws PlatformImportException {
     boolean overWriteInRepository = determineOverwriteFlag( parameters, overwrite );
     IPlatformImportBundle bundle =
         createPlatformBundle(
-          parameters, dataInputStream, catalogName, overWriteInRepository, fileName, xmlaEnabledFlag, acl );
-    if ( isChangeCatalogName( origCatalogName, bundle ) ) {
-      IMondrianCatalogService catalogService =
-          PentahoSystem.get( IMondrianCatalogService.class, PentahoSessionHolder.getSession() );
-      catalogService.removeCatalog( origCatalogName, PentahoSessionHolder.getSession() );
-    }
-    if ( isOverwriteAnnotations( parameters, overWriteInRepository ) ) {
-      IMondrianCatalogService catalogService =
-          PentahoSystem.get( IMondrianCatalogService.class, PentahoSessionHolder.getSession() );
-      List<MondrianCatalog> catalogs = catalogService.listCatalogs( PentahoSessionHolder.getSession(), false );
-      for ( MondrianCatalog catalog : catalogs ) {
-        if ( catalog.getName().equals( bundle.getName() ) ) {
-          catalogService.removeCatalog( bundle.getName(), PentahoSessionHolder.getSession() );
-          break;
+          parameters, schema, catalogName, overWriteInRepository, fileName, xmlaEnabledFlag, acl );
+    try {
+      if ( isChangeCatalogName( origCatalogName, bundle ) ) {
+        IMondrianCatalogService catalogService =
+            PentahoSystem.get( IMondrianCatalogService.class, PentahoSessionHolder.getSession() );
+        catalogService.removeCatalog( origCatalogName, PentahoSessionHolder.getSession() );
+      }
+      if ( isOverwriteAnnotations( parameters, overWriteInRepository ) ) {
+        IMondrianCatalogService catalogService =
+            PentahoSystem.get( IMondrianCatalogService.class, PentahoSessionHolder.getSession() );
+        List<MondrianCatalog> catalogs = catalogService.listCatalogs( PentahoSessionHolder.getSession(), false );
+        for ( MondrianCatalog catalog : catalogs ) {
+          if ( catalog.getName().equals( bundle.getName() ) ) {
+            catalogService.removeCatalog( bundle.getName(), PentahoSessionHolder.getSession() );
+            break;
+          }
         }
       }
+      importer.importFile( bundle );
+    } finally {
+      IOUtils.closeQuietly( bundle.getInputStream() );
     }
-    importer.importFile( bundle );
   }
 
 
@@ -290,35 +316,50 @@ public class AnalysisService extends DatasourceService {
    * helper method to create the platform bundle used by the Jcr repository
    *
    * @param parameters
-   * @param dataInputStream
+   * @param schema
    * @param catalogName
    * @param overWriteInRepository
    * @param fileName
    * @param xmlaEnabled
    * @param acl acl information for the data source. This parameter is optional.
-   * @return IPlatformImportBundle
+   * @return IPlatformImportBundle reading the schema from <code>schema</code>
    */
-  private IPlatformImportBundle createPlatformBundle( String parameters, InputStream dataInputStream,
+  private IPlatformImportBundle createPlatformBundle( String parameters, SpooledInput schema,
                                                       String catalogName, boolean overWriteInRepository,
                                                       String fileName, boolean xmlaEnabled, RepositoryFileAclDto acl ) {
 
-    byte[] bytes = null;
+    String domainId = null;
+    InputStream bundleInputStream = null;
     try {
-      bytes = IOUtils.toByteArray( dataInputStream );
-      if ( bytes.length == 0 && catalogName != null ) {
+      if ( schema.getLength() == 0 && catalogName != null ) {
         MondrianCatalogRepositoryHelper helper =
             new MondrianCatalogRepositoryHelper( PentahoSystem.get( IUnifiedRepository.class ) );
         Map<String, InputStream> fileData = helper.getModrianSchemaFiles( catalogName );
-        dataInputStream = fileData.get( "schema.xml" );
-        bytes = IOUtils.toByteArray( dataInputStream );
+        InputStream dataInputStream = fileData.get( "schema.xml" );
+        try {
+          schema.spool( dataInputStream );
+        } finally {
+          IOUtils.closeQuietly( dataInputStream );
+        }
       }
+      InputStream schemaNameInputStream = schema.openStream();
+      try {
+        domainId = this.determineDomainCatalogName( parameters, catalogName, fileName, schemaNameInputStream );
+      } finally {
+        schemaNameInputStream.close();
+      }
+      bundleInputStream = schema.openStream();
     } catch ( IOException e ) {
       logger.error( e );
     }
 
     String datasource = getValue( parameters, "Datasource" );
-    String domainId =
-        this.determineDomainCatalogName( parameters, catalogName, fileName, new ByteArrayInputStream( bytes ) );
+    if ( domainId == null ) {
+      domainId = this.determineDomainCatalogName( parameters, catalogName, fileName, null );
+    }
+    if ( bundleInputStream == null ) {
+      bundleInputStream = new ByteArrayInputStream( new byte[ 0 ] );
+    }
     String sep = ";";
     if ( StringUtils.isEmpty( parameters ) ) {
       parameters = "Provider=mondrian";
@@ -327,7 +368,7 @@ public class AnalysisService extends DatasourceService {
     }
 
     RepositoryFileImportBundle.Builder bundleBuilder =
-        new RepositoryFileImportBundle.Builder().input( new ByteArrayInputStream( bytes ) ).charSet( UTF_8 ).hidden(
+        new RepositoryFileImportBundle.Builder().input( bundleInputStream ).charSet( UTF_8 ).hidden(
         false ).name( domainId ).overwriteFile( overWriteInRepository ).mime( MONDRIAN_MIME_TYPE ).withParam(
         PARAMETERS, parameters ).withParam( DOMAIN_ID, domainId );
     if ( acl != null ) {
@@ -386,6 +427,7 @@ public class AnalysisService extends DatasourceService {
    * @param parameters
    * @param catalogName
    * @param fileName
+   * @param inputStream the schema, or <code>null</code> if it could not be read
    * @return Look up name from parameters or file name or passed in catalog name
    */
   private String determineDomainCatalogName( String parameters, String catalogName, String fileName,
@@ -395,13 +437,15 @@ public class AnalysisService extends DatasourceService {
      * or finally the file name.
      */
     String domainId = null;
-    try {
-      domainId = getSchemaName( null, inputStream );
-    } catch ( Exception e ) {
+    if ( inputStream != null ) {
       try {
-        domainId = getSchemaName( UTF_8, inputStream );
-      } catch ( Exception e1 ) {
-        logger.error( e1 );
+        domainId = getSchemaName( null, inputStream );
+      } catch ( Exception e ) {
+        try {
+          domainId = getSchemaName( UTF_8, inputStream );
+        } catch ( Exception e1 ) {
+          logger.error( e1 );
+        }
       }
     }
     if ( !StringUtils.isEmpty( domainId ) ) {
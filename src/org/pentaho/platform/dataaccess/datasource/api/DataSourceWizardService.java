@@ -51,6 +51,8 @@ import org.pentaho.platform.dataaccess.datasource.wizard.service.DatasourceServi
 import org.pentaho.platform.dataaccess.datasource.wizard.service.gwt.IDSWDatasourceService;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.DSWDatasourceServiceImpl;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.ModelerService;
+import org.pentaho.platform.dataaccess.metadata.service.DatasourceCatalog;
+import org.pentaho.platform.dataaccess.metadata.service.DomainChangeNotifier;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.engine.services.metadata.MetadataPublisher;
@@ -156,23 +158,17 @@ public class DataSourceWizardService extends DatasourceService {
       logger.warn( "Failed to remove logical model", ex );
     }
     metadataDomainRepository.removeDomain( dswId );
+    DomainChangeNotifier.domainChanged( dswId );
   }
 
   public List<String> getDSWDatasourceIds() {
     List<String> datasourceList = new ArrayList<String>();
     try {
-    nextModel:
+      DatasourceCatalog catalog = DatasourceCatalog.forRepository( metadataDomainRepository );
       for ( LogicalModelSummary summary : dswService.getLogicalModels( null ) ) {
-        Domain domain = modelerService.loadDomain( summary.getDomainId() );
-        List<LogicalModel> logicalModelList = domain.getLogicalModels();
-        if ( logicalModelList != null && logicalModelList.size() >= 1 ) {
-          for ( LogicalModel logicalModel : logicalModelList ) {
-            Object property = logicalModel.getProperty( "AGILE_BI_GENERATED_SCHEMA" ); //$NON-NLS-1$
-            if ( property != null ) {
-              datasourceList.add( summary.getDomainId() );
-              continue nextModel;
-            }
-          }
+        DatasourceCatalog.DomainSummary domain = catalog.getDomainSummary( summary.getDomainId() );
+        if ( domain != null && domain.isDsw() ) {
+          datasourceList.add( summary.getDomainId() );
         }
       }
     } catch ( Throwable e ) {
@@ -228,6 +224,7 @@ public class DataSourceWizardService extends DatasourceService {
     logger.debug( "imported metadata xmi" );
     importer.importFile( mondrianBundle );
     logger.debug( "imported mondrian schema" );
+    DomainChangeNotifier.domainChanged( domainId );
     // trigger refreshes
     IPentahoSession session = getSession();
     PentahoSystem.publish( session, METADATA_PUBLISHER );
@@ -0,0 +1,147 @@
+/*!
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+ */
+
+package org.pentaho.platform.dataaccess.datasource.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.pentaho.database.model.IDatabaseConnection;
+import org.pentaho.platform.dataaccess.datasource.BuiltInDatasource;
+import org.pentaho.platform.dataaccess.datasource.IDatasourceInfo;
+import org.pentaho.platform.dataaccess.datasource.utils.DataAccessPermissionUtil;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.ConnectionServiceException;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.ConnectionServiceImpl;
+
+/**
+ * Lists the datasources of every built-in type in one go: JDBC connections, analysis catalogs, metadata domains and
+ * data source wizard domains, each with the flags of its {@link BuiltInDatasource} type. Each type is listed
+ * the way the dialog used to list it with a request of its own, so the same user sees the same datasources.
+ */
+public class DatasourceListService {
+
+  public static final String PERMISSION_EDIT = "EDIT"; //$NON-NLS-1$
+
+  public static final String PERMISSION_VIEW = "VIEW"; //$NON-NLS-1$
+
+  public static final String PERMISSION_NONE = "NONE"; //$NON-NLS-1$
+
+  private static final Comparator<IDatasourceInfo> BY_NAME = new Comparator<IDatasourceInfo>() {
+    @Override
+    public int compare( IDatasourceInfo o1, IDatasourceInfo o2 ) {
+      int result = String.CASE_INSENSITIVE_ORDER.compare( o1.getName(), o2.getName() );
+      return result != 0 ? result : o1.getType().compareTo( o2.getType() );
+    }
+  };
+
+  protected AnalysisService analysisService;
+  protected MetadataService metadataService;
+  protected DataSourceWizardService dswService;
+  protected ConnectionServiceImpl connectionService;
+
+  public DatasourceListService() {
+    analysisService = new AnalysisService();
+    metadataService = new MetadataService();
+    dswService = new DataSourceWizardService();
+    connectionService = new ConnectionServiceImpl();
+  }
+
+  /**
+   * @return <code>EDIT</code> if the current user may manage datasources, <code>VIEW</code> if they may only see
+   *         them, <code>NONE</code> otherwise
+   */
+  public String getPermission() {
+    if ( hasManageAccess() ) {
+      return PERMISSION_EDIT;
+    } else if ( hasViewAccess() ) {
+      return PERMISSION_VIEW;
+    }
+    return PERMISSION_NONE;
+  }
+
+  /**
+   * @param type   only list datasources of this type, or of every type if <code>null</code>
+   * @param filter only list datasources whose name holds this text, ignoring case, or all of them if
+   *               <code>null</code>
+   * @return the datasources ordered by name
+   * @throws ConnectionServiceException if the JDBC connections cannot be read
+   */
+  public List<IDatasourceInfo> getDatasources( String type, String filter ) throws ConnectionServiceException {
+    List<IDatasourceInfo> datasources = new ArrayList<IDatasourceInfo>();
+    if ( accepts( type, BuiltInDatasource.JDBC ) && hasManageAccess() ) {
+      for ( IDatabaseConnection connection : connectionService.getConnections() ) {
+        // only "standard" connections can be managed
+        Map<String, String> attributes = connection.getAttributes();
+        if ( attributes != null && Boolean.FALSE.toString().equals(
+          attributes.get( BuiltInDatasource.ATTRIBUTE_STANDARD_CONNECTION ) ) ) {
+          continue;
+        }
+        add( datasources, connection.getName(), connection.getName(), BuiltInDatasource.JDBC, filter );
+      }
+    }
+    if ( accepts( type, BuiltInDatasource.ANALYSIS ) ) {
+      for ( String id : analysisService.getAnalysisDatasourceIds() ) {
+        add( datasources, id, id, BuiltInDatasource.ANALYSIS, filter );
+      }
+    }
+    if ( accepts( type, BuiltInDatasource.METADATA ) ) {
+      for ( String id : metadataService.getMetadataDatasourceIds() ) {
+        add( datasources, id, id, BuiltInDatasource.METADATA, filter );
+      }
+    }
+    if ( accepts( type, BuiltInDatasource.DSW ) ) {
+      List<String> ids = dswService.getDSWDatasourceIds();
+      if ( ids != null ) {
+        for ( String id : ids ) {
+          String name = id;
+          if ( id != null && id.indexOf( BuiltInDatasource.DSW_EXT ) >= 0 ) {
+            name = id.substring( 0, id.indexOf( BuiltInDatasource.DSW_EXT ) );
+          }
+          add( datasources, name, id, BuiltInDatasource.DSW, filter );
+        }
+      }
+    }
+    Collections.sort( datasources, BY_NAME );
+    return datasources;
+  }
+
+  protected boolean hasManageAccess() {
+    return DataAccessPermissionUtil.hasManageAccess();
+  }
+
+  protected boolean hasViewAccess() {
+    return DataAccessPermissionUtil.hasViewAccess();
+  }
+
+  private static boolean accepts( String type, BuiltInDatasource datasourceType ) {
+    return type == null || type.equals( datasourceType.getType() );
+  }
+
+  private static void add( List<IDatasourceInfo> datasources, String name, String id, BuiltInDatasource type,
+                           String filter ) {
+    if ( id == null || id.length() == 0 ) {
+      return;
+    }
+    if ( filter != null && !name.toLowerCase().contains( filter.toLowerCase() ) ) {
+      return;
+    }
+    datasources.add( type.newInfo( name, id ) );
+  }
+}
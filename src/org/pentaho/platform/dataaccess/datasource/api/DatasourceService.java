@@ -18,11 +18,8 @@
 package org.pentaho.platform.dataaccess.datasource.api;
 
 import java.io.InputStream;
-import java.util.List;
 import java.util.Map;
 
-import org.pentaho.metadata.model.Domain;
-import org.pentaho.metadata.model.LogicalModel;
 import org.pentaho.metadata.repository.IMetadataDomainRepository;
 import org.pentaho.platform.api.engine.IAuthorizationPolicy;
 import org.pentaho.platform.api.engine.PentahoAccessControlException;
@@ -30,6 +27,7 @@ import org.pentaho.platform.api.repository2.unified.IUnifiedRepository;
 import org.pentaho.platform.dataaccess.datasource.utils.DataAccessPermissionUtil;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.ConnectionServiceException;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.ConnectionServiceImpl;
+import org.pentaho.platform.dataaccess.metadata.service.DatasourceCatalog;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.plugin.action.mondrian.catalog.IMondrianCatalogService;
@@ -89,35 +87,16 @@ public class DatasourceService {
   }
 
   protected boolean isMetadataDatasource( String id ) {
-    Domain domain;
+    DatasourceCatalog.DomainSummary domain;
     try {
-      domain = metadataDomainRepository.getDomain( id );
+      domain = DatasourceCatalog.forRepository( metadataDomainRepository ).getDomainSummary( id );
       if ( domain == null ) {
         return false;
       }
     } catch ( Exception e ) { // If we can't load the domain then we MUST return false
       return false;
     }
-
-    List<LogicalModel> logicalModelList = domain.getLogicalModels();
-    if ( logicalModelList != null && logicalModelList.size() >= 1 ) {
-      for ( LogicalModel logicalModel : logicalModelList ) {
-        // keep this check for backwards compatibility for now
-        Object property = logicalModel.getProperty( "AGILE_BI_GENERATED_SCHEMA" ); //$NON-NLS-1$
-        if ( property != null ) {
-          return false;
-        }
-
-        // moving forward any non metadata generated datasource should have this property
-        property = logicalModel.getProperty( "WIZARD_GENERATED_SCHEMA" ); //$NON-NLS-1$
-        if ( property != null ) {
-          return false;
-        }
-      }
-      return true;
-    } else {
-      return true;
-    }
+    return domain.isMetadata();
   }
 
   public static void parseMondrianSchemaName( String dswId, Map<String, InputStream> fileData ) {
@@ -31,6 +31,7 @@ import org.pentaho.platform.api.engine.PentahoAccessControlException;
 import org.pentaho.platform.api.repository2.unified.IPlatformImportBundle;
 import org.pentaho.platform.api.repository2.unified.RepositoryFileAcl;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.messages.Messages;
+import org.pentaho.platform.dataaccess.metadata.service.DomainChangeNotifier;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.plugin.services.importer.IPlatformImporter;
@@ -63,19 +64,15 @@ public class MetadataService extends DatasourceService {
       throw new PentahoAccessControlException();
     }
     metadataDomainRepository.removeDomain( metadataId );
+    DomainChangeNotifier.domainChanged( metadataId );
   }
 
   public List<String> getMetadataDatasourceIds() {
     List<String> metadataIds = new ArrayList<String>();
-    try {
-      sleep( 100 );
-      for ( String id : metadataDomainRepository.getDomainIds() ) {
-        if ( isMetadataDatasource( id ) ) {
-          metadataIds.add( id );
-        }
+    for ( String id : metadataDomainRepository.getDomainIds() ) {
+      if ( isMetadataDatasource( id ) ) {
+        metadataIds.add( id );
       }
-    } catch ( InterruptedException e ) {
-      e.printStackTrace();
     }
     return metadataIds;
   }
@@ -113,6 +110,7 @@ public class MetadataService extends DatasourceService {
     IPlatformImportBundle bundle = bundleBuilder.build();
     IPlatformImporter importer = getImporter();
     importer.importFile( bundle );
+    DomainChangeNotifier.domainChanged( domainId );
     IPentahoSession pentahoSession = getSession();
     publish( pentahoSession );
   }
@@ -0,0 +1,198 @@
+/*!
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+ */
+
+package org.pentaho.platform.dataaccess.datasource.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Holds an uploaded file so it can be read several times after being read from the client once: in memory while it is
+ * no bigger than a threshold, in a temporary file beyond that. Memory use therefore stays under the threshold however
+ * big the upload is. Every stream opened on it supports <code>mark</code> and <code>reset</code>.
+ * <p/>
+ * {@link #close()} deletes the temporary file, so it must only be called once every stream has been read.
+ */
+public class SpooledInput implements Closeable {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final int threshold;
+
+  private byte[] buffer = new byte[ 0 ];
+
+  private int count;
+
+  private File file;
+
+  private long length;
+
+  /**
+   * @param threshold the most bytes held in memory
+   */
+  public SpooledInput( int threshold ) {
+    this.threshold = threshold;
+  }
+
+  /**
+   * Reads <code>in</code> to its end, adding it to what is held. <code>in</code> is not closed.
+   */
+  public void spool( InputStream in ) throws IOException {
+    byte[] chunk = new byte[ BUFFER_SIZE ];
+    OutputStream out = null;
+    try {
+      int n;
+      while ( ( n = in.read( chunk ) ) != -1 ) {
+        if ( file == null && count + n > threshold ) {
+          file = File.createTempFile( "datasourceImport", ".tmp" ); //$NON-NLS-1$ //$NON-NLS-2$
+          out = new FileOutputStream( file );
+          out.write( buffer, 0, count );
+          buffer = null;
+        } else if ( file != null && out == null ) {
+          out = new FileOutputStream( file, true );
+        }
+        if ( out != null ) {
+          out.write( chunk, 0, n );
+        } else {
+          if ( count + n > buffer.length ) {
+            buffer = Arrays.copyOf( buffer, Math.min( threshold, Math.max( count + n, buffer.length * 2 ) ) );
+          }
+          System.arraycopy( chunk, 0, buffer, count, n );
+          count += n;
+        }
+        length += n;
+      }
+    } finally {
+      if ( out != null ) {
+        out.close();
+      }
+    }
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  /**
+   * @return a new stream over everything held, from the start
+   */
+  public InputStream openStream() throws IOException {
+    if ( file == null ) {
+      return new ByteArrayInputStream( buffer, 0, count );
+    }
+    return new FileSpoolInputStream( new RandomAccessFile( file, "r" ) ); //$NON-NLS-1$
+  }
+
+  @Override
+  public void close() {
+    buffer = null;
+    if ( file != null ) {
+      file.delete();
+      file = null;
+    }
+  }
+
+  /**
+   * A buffered stream over the temporary file that resets by seeking.
+   */
+  private static class FileSpoolInputStream extends InputStream {
+
+    private final RandomAccessFile raf;
+
+    private final byte[] buf = new byte[ BUFFER_SIZE ];
+
+    private int pos;
+
+    private int limit;
+
+    private long mark;
+
+    FileSpoolInputStream( RandomAccessFile raf ) {
+      this.raf = raf;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if ( pos == limit && !fill() ) {
+        return -1;
+      }
+      return buf[ pos++ ] & 0xff;
+    }
+
+    @Override
+    public int read( byte[] b, int off, int len ) throws IOException {
+      if ( len == 0 ) {
+        return 0;
+      }
+      if ( pos == limit && !fill() ) {
+        return -1;
+      }
+      int n = Math.min( len, limit - pos );
+      System.arraycopy( buf, pos, b, off, n );
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min( Integer.MAX_VALUE, limit - pos + raf.length() - raf.getFilePointer() );
+    }
+
+    @Override
+    public boolean markSupported() {
+      return true;
+    }
+
+    @Override
+    public synchronized void mark( int readlimit ) {
+      try {
+        mark = raf.getFilePointer() - ( limit - pos );
+      } catch ( IOException e ) {
+        mark = 0;
+      }
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+      raf.seek( mark );
+      pos = 0;
+      limit = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      raf.close();
+    }
+
+    private boolean fill() throws IOException {
+      int n = raf.read( buf, 0, buf.length );
+      if ( n <= 0 ) {
+        return false;
+      }
+      pos = 0;
+      limit = n;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.api.resources;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.APPLICATION_XML;
+import static javax.ws.rs.core.MediaType.WILDCARD;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+
+import org.codehaus.enunciate.jaxrs.ResponseCode;
+import org.codehaus.enunciate.jaxrs.StatusCodes;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJob;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJobRegistry;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJobStatus;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
+
+/**
+ * Follows and cancels CSV datasources being created in the background, as started by
+ * <code>ICsvDatasourceService.submitDomainJob</code>. Users only see their own jobs.
+ */
+@Path( "/data-access/api/datasource/csv/jobs" )
+public class CsvDatasourceJobResource {
+
+  /**
+   * The longest a status request may be held open waiting for its job to end.
+   */
+  static final long MAX_WAIT_MILLIS = 30000;
+
+  protected StagingJobRegistry registry;
+
+  public CsvDatasourceJobResource() {
+    this( StagingJobRegistry.getInstance() );
+  }
+
+  public CsvDatasourceJobResource( StagingJobRegistry registry ) {
+    this.registry = registry;
+  }
+
+  /**
+   * Get the progress of a CSV datasource job.
+   *
+   * <p><b>Example Request:</b><br />
+   *    GET pentaho/plugin/data-access/api/datasource/csv/jobs/1b4e28ba-2fa1-11d2-883f-0016d3cca427?waitMillis=10000
+   * </p>
+   *
+   * @param jobId      The id returned when the job was submitted
+   * @param waitMillis How long to hold the request open if the job has not ended yet, at most 30 seconds
+   *
+   * @return the phase of the job, the rows loaded and rejected so far and the index progress
+   */
+  @GET
+  @Path( "/{jobId}" )
+  @Produces( { APPLICATION_XML, APPLICATION_JSON } )
+  @StatusCodes( {
+    @ResponseCode( code = 200, condition = "The job status was returned." ),
+    @ResponseCode( code = 404, condition = "There is no such job for the current user." )
+  } )
+  public Response getStatus( @PathParam( "jobId" ) String jobId,
+                             @QueryParam( "waitMillis" ) @DefaultValue( "0" ) long waitMillis ) {
+    StagingJob job = registry.get( jobId, getUserName() );
+    if ( job == null ) {
+      return Response.status( Response.Status.NOT_FOUND ).build();
+    }
+    try {
+      job.await( Math.min( waitMillis, MAX_WAIT_MILLIS ) );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+    return Response.ok( new StagingJobStatus( job ) ).build();
+  }
+
+  /**
+   * Cancel a CSV datasource job. A queued job never starts; a running load is stopped. Once the data is loaded the
+   * job models and saves the datasource, and can no longer be cancelled.
+   *
+   * <p><b>Example Request:</b><br />
+   *    DELETE pentaho/plugin/data-access/api/datasource/csv/jobs/1b4e28ba-2fa1-11d2-883f-0016d3cca427
+   * </p>
+   *
+   * @param jobId The id returned when the job was submitted
+   */
+  @DELETE
+  @Path( "/{jobId}" )
+  @Produces( WILDCARD )
+  @StatusCodes( {
+    @ResponseCode( code = 200, condition = "The job was cancelled or had already failed." ),
+    @ResponseCode( code = 404, condition = "There is no such job for the current user." ),
+    @ResponseCode( code = 409, condition = "The job is saving or has saved the datasource." )
+  } )
+  public Response cancel( @PathParam( "jobId" ) String jobId ) {
+    StagingJob job = registry.get( jobId, getUserName() );
+    if ( job == null ) {
+      return Response.status( Response.Status.NOT_FOUND ).build();
+    }
+    if ( !job.cancel() ) {
+      return Response.status( Response.Status.CONFLICT ).build();
+    }
+    return Response.ok().build();
+  }
+
+  protected String getUserName() {
+    IPentahoSession session = PentahoSessionHolder.getSession();
+    return session == null ? null : session.getName();
+  }
+}
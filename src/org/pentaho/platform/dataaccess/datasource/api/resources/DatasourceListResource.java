@@ -0,0 +1,139 @@
+/*!
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+ */
+
+package org.pentaho.platform.dataaccess.datasource.api.resources;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+import java.util.List;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.enunciate.Facet;
+import org.codehaus.enunciate.jaxrs.ResponseCode;
+import org.codehaus.enunciate.jaxrs.StatusCodes;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.pentaho.platform.dataaccess.datasource.IDatasourceInfo;
+import org.pentaho.platform.dataaccess.datasource.api.DatasourceListService;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.ConnectionServiceException;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.EntityTagUtil;
+
+/**
+ * Lists the datasources of every built-in type in a single response, so the datasource admin dialog does not need a
+ * request per type. Responses carry an entity tag; a client that sends it back with <code>If-None-Match</code> gets a
+ * 304 while the list it holds is still current.
+ */
+@Path( "/data-access/api/datasource/all" )
+public class DatasourceListResource {
+
+  private static final Log logger = LogFactory.getLog( DatasourceListResource.class );
+
+  protected DatasourceListService service;
+
+  public DatasourceListResource() {
+    service = createDatasourceListService();
+  }
+
+  protected DatasourceListService createDatasourceListService() {
+    return new DatasourceListService();
+  }
+
+  /**
+   * Get the datasources of every type the current user can see, ordered by name.
+   *
+   * <p><b>Example Request:</b><br />
+   *    GET pentaho/plugin/data-access/api/datasource/all?type=JDBC&filter=sample&offset=0&limit=50
+   * </p>
+   *
+   * @param type   Only list datasources of this type: JDBC, Analysis, Metadata or Data Source Wizard
+   * @param filter Only list datasources whose name contains this text, ignoring case
+   * @param offset Number of matching datasources to skip
+   * @param limit  Most datasources to return; a negative value returns all of them
+   *
+   * @return the current user's permission (EDIT, VIEW or NONE), the number of matching datasources, and the requested
+   *         page of them with their id, name, type and flags
+   */
+  @GET
+  @Produces( APPLICATION_JSON )
+  @Facet( name = "Unsupported" )
+  @StatusCodes( {
+    @ResponseCode( code = 200, condition = "The datasources were returned." ),
+    @ResponseCode( code = 304, condition = "The client's copy of the list is current." ),
+    @ResponseCode( code = 500, condition = "The datasources could not be listed." )
+  } )
+  public Response getDatasources( @QueryParam( "type" ) String type, @QueryParam( "filter" ) String filter,
+                                  @QueryParam( "offset" ) @DefaultValue( "0" ) int offset,
+                                  @QueryParam( "limit" ) @DefaultValue( "-1" ) int limit,
+                                  @Context Request request ) {
+    String json;
+    try {
+      List<IDatasourceInfo> datasources = service.getDatasources( type, filter );
+      int from = Math.min( Math.max( offset, 0 ), datasources.size() );
+      int to = limit < 0 ? datasources.size() : Math.min( from + limit, datasources.size() );
+
+      JSONArray page = new JSONArray();
+      for ( IDatasourceInfo datasource : datasources.subList( from, to ) ) {
+        JSONObject item = new JSONObject();
+        item.put( "id", datasource.getId() ); //$NON-NLS-1$
+        item.put( "name", datasource.getName() ); //$NON-NLS-1$
+        item.put( "type", datasource.getType() ); //$NON-NLS-1$
+        item.put( "editable", datasource.isEditable() ); //$NON-NLS-1$
+        item.put( "removable", datasource.isRemovable() ); //$NON-NLS-1$
+        item.put( "importable", datasource.isImportable() ); //$NON-NLS-1$
+        item.put( "exportable", datasource.isExportable() ); //$NON-NLS-1$
+        page.put( item );
+      }
+      JSONObject result = new JSONObject();
+      result.put( "permission", service.getPermission() ); //$NON-NLS-1$
+      result.put( "total", datasources.size() ); //$NON-NLS-1$
+      result.put( "offset", from ); //$NON-NLS-1$
+      result.put( "datasources", page ); //$NON-NLS-1$
+      json = result.toString();
+    } catch ( ConnectionServiceException e ) {
+      logger.error( e.getLocalizedMessage(), e );
+      return Response.serverError().build();
+    } catch ( JSONException e ) {
+      logger.error( e.getLocalizedMessage(), e );
+      return Response.serverError().build();
+    }
+
+    EntityTag entityTag = new EntityTag( EntityTagUtil.digest( json ) );
+    ResponseBuilder builder = request == null ? null : request.evaluatePreconditions( entityTag );
+    if ( builder == null ) {
+      builder = Response.ok( json );
+    }
+    // the list depends on the user and changes whenever a datasource does; have clients ask every time
+    CacheControl cacheControl = new CacheControl();
+    cacheControl.setPrivate( true );
+    cacheControl.setNoCache( true );
+    return builder.tag( entityTag ).cacheControl( cacheControl ).build();
+  }
+}
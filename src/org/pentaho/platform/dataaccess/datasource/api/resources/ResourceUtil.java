@@ -23,10 +23,6 @@ import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
 import static javax.ws.rs.core.Response.Status.PRECONDITION_FAILED;
 import static javax.ws.rs.core.Response.Status.UNAUTHORIZED;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -40,43 +36,21 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DataAccessSettings;
 import org.pentaho.platform.repository2.unified.fileio.RepositoryFileInputStream;
 
 public class ResourceUtil {
 
+  private static final Log logger = LogFactory.getLog( ResourceUtil.class );
+
   public static final String APPLICATION_ZIP = "application/zip"; //$NON-NLS-1$
 
   public Response createAttachment( Map<String, InputStream> fileData, String domainId ) {
     String quotedFileName = null;
-    final InputStream is;
     if ( fileData.size() > 1 ) { // we've got more than one file so we want to zip them up and send them
-      File zipFile = null;
-      try {
-        zipFile = createTempFile( "datasourceExport", ".zip" );
-        zipFile.deleteOnExit();
-        ZipOutputStream zos = createZipOutputStream( zipFile );
-        for ( String fileName : fileData.keySet() ) {
-          InputStream zipEntryIs = null;
-          try {
-            ZipEntry entry = createZipEntry( fileName );
-            zos.putNextEntry( entry );
-            zipEntryIs = fileData.get( fileName );
-            copy( zipEntryIs, zos );
-          } catch ( Exception e ) {
-            continue;
-          } finally {
-            zos.closeEntry();
-            if ( zipEntryIs != null ) {
-              zipEntryIs.close();
-            }
-          }
-        }
-        zos.close();
-        is = createFileInputStream( zipFile );
-      } catch ( IOException ioe ) {
-        return buildServerErrorResponse( ioe );
-      }
-      StreamingOutput streamingOutput = createStreamingOutput( is );
+      StreamingOutput streamingOutput = createZipStreamingOutput( fileData );
       final int xmiIndex = domainId.lastIndexOf( ".xmi" ); //$NON-NLS-1$
       quotedFileName =
         "\"" + ( xmiIndex > 0 ? domainId.substring( 0, xmiIndex ) : domainId ) + ".zip\""; //$NON-NLS-1$//$NON-NLS-2$
@@ -84,7 +58,7 @@ public class ResourceUtil {
     } else if ( fileData.size() == 1 ) {  // we've got a single metadata file so we just return that.
       String fileName = (String) fileData.keySet().toArray()[ 0 ];
       quotedFileName = "\"" + fileName + "\""; //$NON-NLS-1$ //$NON-NLS-2$
-      is = fileData.get( fileName );
+      InputStream is = fileData.get( fileName );
       String mimeType = getMimeType( is );
       StreamingOutput streamingOutput = getStreamingOutput( is );
       return buildOkResponse( streamingOutput, mimeType, quotedFileName );
@@ -92,32 +66,68 @@ public class ResourceUtil {
     return buildServerErrorResponse();
   }
 
-  protected StreamingOutput createStreamingOutput( final InputStream is ) {
+  /**
+   * Zips the files straight into the response while it is sent, so the download starts right away and nothing is
+   * written to disk. A file that cannot be read is left short in the zip; an error writing the zip, such as the client
+   * going away, ends the download.
+   */
+  protected StreamingOutput createZipStreamingOutput( final Map<String, InputStream> fileData ) {
     return new StreamingOutput() {
       public void write( OutputStream output ) throws IOException {
-        IOUtils.copy( is, output );
+        try {
+          ZipOutputStream zos = createZipOutputStream( output );
+          zos.setLevel( DataAccessSettings.getExportZipLevel() );
+          for ( String fileName : fileData.keySet() ) {
+            ZipEntry entry = createZipEntry( fileName );
+            zos.putNextEntry( entry );
+            InputStream zipEntryIs = fileData.get( fileName );
+            if ( zipEntryIs != null ) {
+              try {
+                copy( zipEntryIs, zos );
+              } finally {
+                IOUtils.closeQuietly( zipEntryIs );
+              }
+            }
+            zos.closeEntry();
+          }
+          // the container closes the response stream
+          zos.finish();
+        } finally {
+          // the client may have gone away before every file was sent
+          for ( InputStream zipEntryIs : fileData.values() ) {
+            IOUtils.closeQuietly( zipEntryIs );
+          }
+        }
       }
     };
   }
 
-  protected FileInputStream createFileInputStream( File zipFile ) throws FileNotFoundException {
-    return new FileInputStream( zipFile );
-  }
-
+  /**
+   * Copies one file into its zip entry. Reading stops at the first error, which is logged; writing errors are thrown.
+   */
   protected void copy( InputStream zipEntryIs, ZipOutputStream zos ) throws IOException {
-    IOUtils.copy( zipEntryIs, zos );
-  }
-
-  protected File createTempFile( String fileName, String extension ) throws IOException {
-    return File.createTempFile( fileName, extension ); //$NON-NLS-1$ //$NON-NLS-2$;
+    byte[] buffer = new byte[ 4096 ];
+    while ( true ) {
+      int count;
+      try {
+        count = zipEntryIs.read( buffer );
+      } catch ( IOException e ) {
+        logger.warn( "Could not read a file of the export, it is left short in the zip", e ); //$NON-NLS-1$
+        return;
+      }
+      if ( count == -1 ) {
+        return;
+      }
+      zos.write( buffer, 0, count );
+    }
   }
 
   protected ZipEntry createZipEntry( String fileName ) {
     return new ZipEntry( fileName );
   }
 
-  protected ZipOutputStream createZipOutputStream( File zipFile ) throws IOException {
-    return new ZipOutputStream( new FileOutputStream( zipFile ) );
+  protected ZipOutputStream createZipOutputStream( OutputStream output ) {
+    return new ZipOutputStream( output );
   }
 
   protected Response buildOkResponse( StreamingOutput streamingOutput, String mimeType, String quotedFileName ) {
@@ -129,10 +139,6 @@ public class ResourceUtil {
     return Response.serverError().build();
   }
 
-  protected Response buildServerErrorResponse( Exception ioe ) {
-    return Response.serverError().entity( ioe.toString() ).build();
-  }
-
   protected String getMimeType( InputStream is ) {
     return ( is instanceof RepositoryFileInputStream ) ? ( (RepositoryFileInputStream) is ).getMimeType() : MediaType.TEXT_PLAIN;
   }
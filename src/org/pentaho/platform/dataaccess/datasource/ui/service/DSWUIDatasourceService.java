@@ -20,6 +20,7 @@ package org.pentaho.platform.dataaccess.datasource.ui.service;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.pentaho.platform.dataaccess.datasource.BuiltInDatasource;
 import org.pentaho.platform.dataaccess.datasource.DatasourceInfo;
 import org.pentaho.platform.dataaccess.datasource.IDatasourceInfo;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.IXulAsyncDatasourceServiceManager;
@@ -27,12 +28,12 @@ import org.pentaho.ui.xul.XulServiceCallback;
 
 public class DSWUIDatasourceService implements IUIDatasourceAdminService {
   private IXulAsyncDatasourceServiceManager datasourceService;
-  public static final String EXT = ".xmi";
-  public static final String TYPE = "Data Source Wizard";
-  private boolean editable = true;
-  private boolean removable = true;
-  private boolean importable = false;
-  private boolean exportable = true;
+  public static final String EXT = BuiltInDatasource.DSW_EXT;
+  public static final String TYPE = BuiltInDatasource.DSW.getType();
+  private boolean editable = BuiltInDatasource.DSW.isEditable();
+  private boolean removable = BuiltInDatasource.DSW.isRemovable();
+  private boolean importable = BuiltInDatasource.DSW.isImportable();
+  private boolean exportable = BuiltInDatasource.DSW.isExportable();
   private boolean creatable = true;
   private String newUI = "builtin:";
   private String editUI = "builtin:";
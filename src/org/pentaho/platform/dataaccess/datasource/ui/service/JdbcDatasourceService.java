@@ -23,6 +23,7 @@ import java.util.Map;
 
 import org.pentaho.database.model.IDatabaseConnection;
 import org.pentaho.gwt.widgets.client.utils.NameUtils;
+import org.pentaho.platform.dataaccess.datasource.BuiltInDatasource;
 import org.pentaho.platform.dataaccess.datasource.DatasourceInfo;
 import org.pentaho.platform.dataaccess.datasource.IDatasourceInfo;
 import org.pentaho.ui.database.event.IConnectionAutoBeanFactory;
@@ -40,16 +41,16 @@ import com.google.web.bindery.autobean.shared.AutoBeanCodex;
 
 public class JdbcDatasourceService implements IUIDatasourceAdminService {
 
-  public static final String TYPE = "JDBC";
-  private boolean editable = true;
-  private boolean removable = true;
-  private boolean importable = true;
-  private boolean exportable = true;
+  public static final String TYPE = BuiltInDatasource.JDBC.getType();
+  private boolean editable = BuiltInDatasource.JDBC.isEditable();
+  private boolean removable = BuiltInDatasource.JDBC.isRemovable();
+  private boolean importable = BuiltInDatasource.JDBC.isImportable();
+  private boolean exportable = BuiltInDatasource.JDBC.isExportable();
   private boolean creatable = true;
   private String newUI = "builtin:";
   private String editUI = "builtin:";
 
-  public static final String ATTRIBUTE_STANDARD_CONNECTION = "STANDARD_CONNECTION"; //$NON-NLS-1$
+  public static final String ATTRIBUTE_STANDARD_CONNECTION = BuiltInDatasource.ATTRIBUTE_STANDARD_CONNECTION;
 
   protected IConnectionAutoBeanFactory connectionAutoBeanFactory;
 
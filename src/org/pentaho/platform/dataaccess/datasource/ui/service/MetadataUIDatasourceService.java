@@ -20,6 +20,7 @@ package org.pentaho.platform.dataaccess.datasource.ui.service;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.pentaho.platform.dataaccess.datasource.BuiltInDatasource;
 import org.pentaho.platform.dataaccess.datasource.DatasourceInfo;
 import org.pentaho.platform.dataaccess.datasource.IDatasourceInfo;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.IXulAsyncDatasourceServiceManager;
@@ -27,11 +28,11 @@ import org.pentaho.ui.xul.XulServiceCallback;
 
 public class MetadataUIDatasourceService implements IUIDatasourceAdminService {
 
-  public static final String TYPE = "Metadata";
-  private boolean editable = false;
-  private boolean removable = true;
-  private boolean importable = true;
-  private boolean exportable = true;
+  public static final String TYPE = BuiltInDatasource.METADATA.getType();
+  private boolean editable = BuiltInDatasource.METADATA.isEditable();
+  private boolean removable = BuiltInDatasource.METADATA.isRemovable();
+  private boolean importable = BuiltInDatasource.METADATA.isImportable();
+  private boolean exportable = BuiltInDatasource.METADATA.isExportable();
   private boolean creatable = true;
   private String newUI = "builtin:";
   private String editUI = "builtin:";
@@ -20,6 +20,7 @@ package org.pentaho.platform.dataaccess.datasource.ui.service;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.pentaho.platform.dataaccess.datasource.BuiltInDatasource;
 import org.pentaho.platform.dataaccess.datasource.DatasourceInfo;
 import org.pentaho.platform.dataaccess.datasource.IDatasourceInfo;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.IXulAsyncDatasourceServiceManager;
@@ -27,11 +28,11 @@ import org.pentaho.ui.xul.XulServiceCallback;
 
 public class MondrianUIDatasourceService implements IUIDatasourceAdminService {
 
-  public static final String TYPE = "Analysis";
-  private boolean editable = true;
-  private boolean removable = true;
-  private boolean importable = true;
-  private boolean exportable = true;
+  public static final String TYPE = BuiltInDatasource.ANALYSIS.getType();
+  private boolean editable = BuiltInDatasource.ANALYSIS.isEditable();
+  private boolean removable = BuiltInDatasource.ANALYSIS.isRemovable();
+  private boolean importable = BuiltInDatasource.ANALYSIS.isImportable();
+  private boolean exportable = BuiltInDatasource.ANALYSIS.isExportable();
   private boolean creatable = true;
   private String newUI = "builtin:";
   private String editUI = "builtin:";
@@ -12,24 +12,28 @@
 * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
 * See the GNU Lesser General Public License for more details.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
 */
 
 package org.pentaho.platform.dataaccess.datasource.ui.service;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.pentaho.gwt.widgets.client.ui.ICallback;
 import org.pentaho.platform.dataaccess.datasource.IDatasourceInfo;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.IXulAsyncDatasourceServiceManager;
 import org.pentaho.ui.xul.XulServiceCallback;
 
 public class UIDatasourceServiceManager {
 
   Map<String, IUIDatasourceAdminService> serviceMap = new HashMap<String, IUIDatasourceAdminService>();
   private static UIDatasourceServiceManager instance;
+  private IXulAsyncDatasourceServiceManager datasourceServiceManager;
 
   private UIDatasourceServiceManager() {
   }
@@ -55,10 +59,28 @@ public class UIDatasourceServiceManager {
     return serviceMap.get( serviceType );
   }
 
+  /**
+   * Lets {@link #getIds} list the datasources of the built-in services in a single request rather than one per service.
+   */
+  public void setDatasourceServiceManager( IXulAsyncDatasourceServiceManager datasourceServiceManager ) {
+    this.datasourceServiceManager = datasourceServiceManager;
+  }
+
   public void getIds( final XulServiceCallback<List<IDatasourceInfo>> mainCallback ) {
     final List<IDatasourceInfo> datasourceList = new ArrayList<IDatasourceInfo>();
 
-    final int asyncCallCount = serviceMap.size();
+    // the built-in services are listed by one batched request, any other service by its own
+    final Set<String> batchedTypes = new HashSet<String>();
+    List<IUIDatasourceAdminService> services = new ArrayList<IUIDatasourceAdminService>();
+    for ( IUIDatasourceAdminService service : serviceMap.values() ) {
+      if ( datasourceServiceManager != null && isBuiltIn( service ) ) {
+        batchedTypes.add( service.getType() );
+      } else {
+        services.add( service );
+      }
+    }
+
+    final int asyncCallCount = services.size() + ( batchedTypes.isEmpty() ? 0 : 1 );
 
     final ICallback<Void> counterCallback = new ICallback<Void>() {
       int counter = 0;
@@ -73,7 +95,28 @@ public class UIDatasourceServiceManager {
         }
       }
     };
-    for ( IUIDatasourceAdminService service : serviceMap.values() ) {
+    if ( !batchedTypes.isEmpty() ) {
+      datasourceServiceManager.getDatasources( new XulServiceCallback<List<IDatasourceInfo>>() {
+
+        @Override
+        public void success( List<IDatasourceInfo> list ) {
+          for ( IDatasourceInfo info : list ) {
+            if ( batchedTypes.contains( info.getType() ) ) {
+              datasourceList.add( info );
+            }
+          }
+          counterCallback.onHandle( null );
+        }
+
+        @Override
+        public void error( String message, Throwable error ) {
+          if ( mainCallback != null ) {
+            mainCallback.error( message, error );
+          }
+        }
+      } );
+    }
+    for ( IUIDatasourceAdminService service : services ) {
       service.getIds( new XulServiceCallback<List<IDatasourceInfo>>() {
 
         @Override
@@ -92,6 +135,11 @@ public class UIDatasourceServiceManager {
     }
   }
 
+  private static boolean isBuiltIn( IUIDatasourceAdminService service ) {
+    return service instanceof JdbcDatasourceService || service instanceof MondrianUIDatasourceService
+      || service instanceof MetadataUIDatasourceService || service instanceof DSWUIDatasourceService;
+  }
+
   public void exportDatasource( IDatasourceInfo dsInfo ) {
     for ( IUIDatasourceAdminService service : serviceMap.values() ) {
       if ( service.getType().equals( dsInfo.getType() ) && dsInfo.isExportable() ) {
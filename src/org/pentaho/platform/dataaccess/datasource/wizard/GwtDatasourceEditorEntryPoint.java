@@ -212,6 +212,7 @@ public class GwtDatasourceEditorEntryPoint implements EntryPoint {
     dialectService.getDatabaseTypes(callback);
 
     UIDatasourceServiceManager manager = UIDatasourceServiceManager.getInstance();
+    manager.setDatasourceServiceManager(datasourceServiceManager);
     manager.registerService(new JdbcDatasourceService());
     manager.registerService(new MondrianUIDatasourceService(datasourceServiceManager));
     manager.registerService(new MetadataUIDatasourceService(datasourceServiceManager));
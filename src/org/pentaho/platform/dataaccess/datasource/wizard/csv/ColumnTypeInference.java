@@ -0,0 +1,167 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.csv;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.StringEvaluationResult;
+import org.pentaho.di.core.util.StringEvaluator;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.ColumnInfo;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.AgileHelper;
+
+/**
+ * Infers data type, mask, precision and length for every column of a tokenized CSV sample. Columns are evaluated
+ * concurrently on a shared fork/join pool, each task reading its column straight out of the row-major sample so no
+ * per-column copy of the values is ever made.
+ */
+public class ColumnTypeInference {
+
+  /**
+   * Below this many cells the fork/join overhead outweighs the gain and the columns are evaluated inline.
+   */
+  static final int PARALLEL_THRESHOLD = 10000;
+
+  private static ForkJoinPool pool;
+
+  private static synchronized ForkJoinPool getPool() {
+    if ( pool == null ) {
+      pool = new ForkJoinPool( AgileHelper.getCsvInferenceThreads() );
+    }
+    return pool;
+  }
+
+  /**
+   * Fills in the type details of <code>columns[ i ]</code> from column <code>i</code> of <code>sample</code>. Every
+   * row of the sample must hold at least <code>columns.length</code> cells.
+   */
+  public void inferColumns( String[][] sample, ColumnInfo[] columns ) {
+    if ( columns.length == 0 ) {
+      return;
+    }
+    ColumnTask task = new ColumnTask( sample, columns, 0, columns.length );
+    if ( columns.length == 1 || (long) sample.length * columns.length < PARALLEL_THRESHOLD ) {
+      task.compute();
+    } else {
+      getPool().invoke( task );
+    }
+  }
+
+  /**
+   * Evaluates column <code>column</code> of <code>sample</code> into <code>profile</code>.
+   */
+  public void inferColumn( ColumnInfo profile, String[][] sample, int column ) {
+    StringEvaluator eval = newEvaluator();
+    for ( String[] row : sample ) {
+      eval.evaluateString( row[ column ] );
+    }
+    applyResult( profile, eval );
+  }
+
+  /**
+   * Evaluates a column that has already been gathered into a list into <code>profile</code>.
+   */
+  public void inferColumn( ColumnInfo profile, Iterable<String> samples ) {
+    StringEvaluator eval = newEvaluator();
+    for ( String sample : samples ) {
+      eval.evaluateString( sample );
+    }
+    applyResult( profile, eval );
+  }
+
+  StringEvaluator newEvaluator() {
+    return new StringEvaluator( false, CsvUtils.NUMBER_FORMATS, ColumnInfo.DATE_FORMATS );
+  }
+
+  void applyResult( ColumnInfo profile, StringEvaluator eval ) {
+    StringEvaluationResult result = eval.getAdvicedResult();
+    ValueMetaInterface meta = result.getConversionMeta();
+
+    int type = meta.getType();
+    String mask = meta.getConversionMask();
+    int size;
+    int precision = meta.getPrecision();
+
+    profile.setFormat( mask );
+    profile.setPrecision( precision > 0 ? precision : 0 );
+    profile.setDataType( convertDataType( type ) );
+
+    if ( meta.isString() ) {
+      // pad the string lengths
+      size = meta.getLength() + ( meta.getLength() / 2 );
+    } else if ( meta.isInteger() ) {
+      size = meta.getLength();
+    } else {
+      size = precision > 0 ? meta.getLength() : 0;
+    }
+
+    profile.setLength( size );
+  }
+
+  static DataType convertDataType( int type ) {
+    switch( type ) {
+      case 1:
+      case 5:
+      case 6:
+        return DataType.NUMERIC;
+      case 3:
+        return DataType.DATE;
+      case 4:
+        return DataType.BOOLEAN;
+      default:
+        return DataType.STRING;
+    }
+  }
+
+  /**
+   * Splits the column range in halves until a single column is left, which it then evaluates.
+   */
+  private class ColumnTask extends RecursiveAction {
+
+    private static final long serialVersionUID = -1834651329436213342L;
+
+    private final String[][] sample;
+
+    private final ColumnInfo[] columns;
+
+    private final int from;
+
+    private final int to;
+
+    ColumnTask( String[][] sample, ColumnInfo[] columns, int from, int to ) {
+      this.sample = sample;
+      this.columns = columns;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if ( to - from == 1 || !inForkJoinPool() ) {
+        for ( int idx = from; idx < to; idx++ ) {
+          inferColumn( columns[ idx ], sample, idx );
+        }
+        return;
+      }
+      int middle = ( from + to ) >>> 1;
+      invokeAll( new ColumnTask( sample, columns, from, middle ), new ColumnTask( sample, columns, middle, to ) );
+    }
+  }
+}
@@ -55,35 +55,55 @@ public class CsvInspector {
   }
 
   public String guessDelimiter( String line ) {
-    int numTabs = 0;
-    int numCommas = 0;
-    int numPipes = 0;
-    int numTildas = 0;
-    int numColons = 0;
-    int numSemiColons = 0;
+    int[] counts = new int[ 6 ];
+    countDelimiters( line, counts );
+    return pickDelimiter( counts );
+  }
+
+  /**
+   * Same as {@link #guessDelimiter(String)} over the concatenation of <code>lines</code>, without building it.
+   */
+  public String guessDelimiter( List<String> lines ) {
+    int[] counts = new int[ 6 ];
+    for ( String line : lines ) {
+      countDelimiters( line, counts );
+    }
+    return pickDelimiter( counts );
+  }
+
+  private void countDelimiters( String line, int[] counts ) {
     for ( int idx = 0; idx < line.length(); idx++ ) {
       char c = line.charAt( idx );
       switch( c ) {
         case '\t':
-          numTabs++;
+          counts[ 0 ]++;
           break;
         case ',':
-          numCommas++;
+          counts[ 1 ]++;
           break;
         case '|':
-          numPipes++;
+          counts[ 2 ]++;
           break;
         case '~':
-          numTildas++;
+          counts[ 3 ]++;
           break;
         case ':':
-          numColons++;
+          counts[ 4 ]++;
           break;
         case ';':
-          numSemiColons++;
+          counts[ 5 ]++;
           break;
       }
     }
+  }
+
+  private String pickDelimiter( int[] counts ) {
+    int numTabs = counts[ 0 ];
+    int numCommas = counts[ 1 ];
+    int numPipes = counts[ 2 ];
+    int numTildas = counts[ 3 ];
+    int numColons = counts[ 4 ];
+    int numSemiColons = counts[ 5 ];
     int max = Math.max( numTabs, numCommas );
     max = Math.max( max, numPipes );
     max = Math.max( max, numTildas );
@@ -0,0 +1,157 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.csv;
+
+import java.util.List;
+
+/**
+ * Everything {@link CsvProfiler} learns about a delimited file in its single read: the (possibly guessed) delimiter,
+ * the raw preview lines, the tokenized header/data sample and per-column statistics.
+ */
+public class CsvProfile {
+
+  private String delimiter;
+
+  private String enclosure;
+
+  private int headerRows;
+
+  private List<String> lines;
+
+  private String[][] headerSample;
+
+  private String[][] dataSample;
+
+  private String[][] reservoirSample;
+
+  private long scannedRows;
+
+  private ColumnStatistics[] columns;
+
+  public String getDelimiter() {
+    return delimiter;
+  }
+
+  public void setDelimiter( String delimiter ) {
+    this.delimiter = delimiter;
+  }
+
+  public String getEnclosure() {
+    return enclosure;
+  }
+
+  public void setEnclosure( String enclosure ) {
+    this.enclosure = enclosure;
+  }
+
+  public int getHeaderRows() {
+    return headerRows;
+  }
+
+  public void setHeaderRows( int headerRows ) {
+    this.headerRows = headerRows;
+  }
+
+  public List<String> getLines() {
+    return lines;
+  }
+
+  public void setLines( List<String> lines ) {
+    this.lines = lines;
+  }
+
+  public String[][] getHeaderSample() {
+    return headerSample;
+  }
+
+  public void setHeaderSample( String[][] headerSample ) {
+    this.headerSample = headerSample;
+  }
+
+  /**
+   * Every row is padded to {@link #getColumnCount()} cells; cells missing from a short row are <code>null</code>.
+   */
+  public String[][] getDataSample() {
+    return dataSample;
+  }
+
+  public void setDataSample( String[][] dataSample ) {
+    this.dataSample = dataSample;
+  }
+
+  /**
+   * Data rows drawn uniformly from the whole file when it was profiled with {@link CsvProfiler#scan}, padded like the
+   * data sample; <code>null</code> otherwise.
+   */
+  public String[][] getReservoirSample() {
+    return reservoirSample;
+  }
+
+  public void setReservoirSample( String[][] reservoirSample ) {
+    this.reservoirSample = reservoirSample;
+  }
+
+  /**
+   * The sample type inference should run over: the reservoir when the whole file was scanned, the head otherwise.
+   */
+  public String[][] getInferenceSample() {
+    return reservoirSample != null ? reservoirSample : dataSample;
+  }
+
+  /**
+   * @return the number of data rows the column statistics cover
+   */
+  public long getScannedRows() {
+    return scannedRows;
+  }
+
+  public void setScannedRows( long scannedRows ) {
+    this.scannedRows = scannedRows;
+  }
+
+  public ColumnStatistics[] getColumns() {
+    return columns;
+  }
+
+  public void setColumns( ColumnStatistics[] columns ) {
+    this.columns = columns;
+  }
+
+  public int getColumnCount() {
+    return columns == null ? 0 : columns.length;
+  }
+
+  /**
+   * What the profiler gathers for one column over every data row it tokenized: only the longest value, which sizes
+   * string columns when type inference saw a sample of the file.
+   */
+  public static class ColumnStatistics {
+
+    private int maxLength;
+
+    void add( String value ) {
+      if ( value != null && value.length() > maxLength ) {
+        maxLength = value.length();
+      }
+    }
+
+    public int getMaxLength() {
+      return maxLength;
+    }
+  }
+}
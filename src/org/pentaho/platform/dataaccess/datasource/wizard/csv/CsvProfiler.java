@@ -0,0 +1,320 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.csv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.CsvParseException;
+import org.pentaho.reporting.libraries.base.util.CSVTokenizer;
+
+/**
+ * Profiles a delimited file in a single buffered pass over one file channel. The raw lines of the head of the file
+ * are kept for the preview and tokenized from memory, so the file is never opened more than once per profile.
+ * <p/>
+ * In the default mode only the first <code>rowLimit</code> lines are read. With {@link #scan} the rest of the file is
+ * streamed through as well, keeping a fixed-size reservoir sample of the data rows and running statistics per column,
+ * so type inference sees the whole file in constant memory.
+ */
+public class CsvProfiler {
+
+  private static final Log log = LogFactory.getLog( CsvProfiler.class );
+
+  static final int READ_BUFFER_SIZE = 64 * 1024;
+
+  private final CsvInspector inspector = new CsvInspector();
+
+  private Random random = new Random();
+
+  /* package-local visibility for testing purposes */
+  void setRandom( Random random ) {
+    this.random = random;
+  }
+
+  /**
+   * @param fileLocation absolute path of the file to profile
+   * @param encoding     character set of the file
+   * @param rowLimit     maximum number of lines (header lines included) to read
+   * @param delimiter    field delimiter; an empty string asks the profiler to guess it, in which case the enclosure
+   *                     defaults to a double quote and no header rows are assumed
+   * @param enclosure    field enclosure
+   * @param headerRows   number of leading lines that hold column titles
+   */
+  public CsvProfile profile( String fileLocation, String encoding, int rowLimit, String delimiter, String enclosure,
+                             int headerRows ) throws IOException, CsvParseException {
+    return read( fileLocation, encoding, rowLimit, delimiter, enclosure, headerRows, false );
+  }
+
+  /**
+   * Same as {@link #profile} but reads the entire file. The head sample still holds the first <code>rowLimit</code>
+   * lines; {@link CsvProfile#getReservoirSample()} holds up to <code>rowLimit</code> data rows drawn uniformly from the
+   * whole file, and the column statistics cover every data row.
+   */
+  public CsvProfile scan( String fileLocation, String encoding, int rowLimit, String delimiter, String enclosure,
+                          int headerRows ) throws IOException, CsvParseException {
+    return read( fileLocation, encoding, rowLimit, delimiter, enclosure, headerRows, true );
+  }
+
+  private CsvProfile read( String fileLocation, String encoding, int rowLimit, String delimiter, String enclosure,
+                           int headerRows, boolean wholeFile ) throws IOException, CsvParseException {
+    CsvProfile profile = new CsvProfile();
+    FileChannel channel = FileChannel.open( Paths.get( fileLocation ), StandardOpenOption.READ );
+    Reader reader = null;
+    try {
+      UnicodeBOMInputStream bomIs = new UnicodeBOMInputStream( Channels.newInputStream( channel ) );
+      bomIs.skipBOM();
+      reader = new BufferedReader( new InputStreamReader( bomIs, encoding ), READ_BUFFER_SIZE );
+      LineReader lineReader = new LineReader( reader );
+      profile.setLines( readLines( lineReader, rowLimit ) );
+
+      if ( "".equals( delimiter ) ) { //$NON-NLS-1$
+        delimiter = inspector.guessDelimiter( profile.getLines() );
+        enclosure = "\""; //$NON-NLS-1$
+        headerRows = 0;
+      }
+      profile.setDelimiter( delimiter );
+      profile.setEnclosure( enclosure );
+      profile.setHeaderRows( headerRows );
+
+      tokenize( profile );
+      if ( wholeFile ) {
+        scanRemainder( lineReader, profile, rowLimit );
+      }
+    } finally {
+      if ( reader != null ) {
+        reader.close();
+      } else {
+        channel.close();
+      }
+    }
+    return profile;
+  }
+
+  private List<String> readLines( LineReader reader, int rowLimit ) throws IOException {
+    List<String> lines = new ArrayList<String>( Math.min( Math.max( rowLimit, 0 ), 1024 ) );
+    String line;
+    while ( lines.size() < rowLimit && ( line = reader.readLine() ) != null ) {
+      lines.add( line );
+    }
+    return lines;
+  }
+
+  /**
+   * Splits the preview lines into the header and data samples and gathers the column statistics.
+   */
+  void tokenize( CsvProfile profile ) throws CsvParseException {
+    List<String> lines = profile.getLines();
+    List<String[]> rows = new ArrayList<String[]>( lines.size() );
+    List<String> tokens = new ArrayList<String>();
+    int maxColumns = 0;
+    int row = 0;
+    for ( String line : lines ) {
+      String[] values = tokenize( line, row, profile, tokens );
+      if ( maxColumns < values.length ) {
+        maxColumns = values.length;
+      }
+      rows.add( values );
+      row++;
+    }
+
+    int headerCount = Math.min( Math.max( profile.getHeaderRows(), 0 ), rows.size() );
+    String[][] header = new String[ headerCount ][];
+    String[][] data = new String[ rows.size() - headerCount ][];
+    CsvProfile.ColumnStatistics[] columns = new CsvProfile.ColumnStatistics[ maxColumns ];
+    for ( int idx = 0; idx < maxColumns; idx++ ) {
+      columns[ idx ] = new CsvProfile.ColumnStatistics();
+    }
+    for ( int idx = 0; idx < rows.size(); idx++ ) {
+      String[] padded = pad( rows.get( idx ), maxColumns );
+      if ( idx < headerCount ) {
+        header[ idx ] = padded;
+      } else {
+        data[ idx - headerCount ] = padded;
+        for ( int col = 0; col < maxColumns; col++ ) {
+          columns[ col ].add( padded[ col ] );
+        }
+      }
+      // let the unpadded row go as soon as it has been copied
+      rows.set( idx, null );
+    }
+    profile.setHeaderSample( header );
+    profile.setDataSample( data );
+    profile.setColumns( columns );
+    profile.setScannedRows( data.length );
+  }
+
+  /**
+   * Streams the lines after the head through the reservoir and the column statistics (reservoir sampling, algorithm
+   * R). The reservoir starts out as the head data sample, which is exactly what the algorithm prescribes for the
+   * first <code>rowLimit</code> rows.
+   */
+  private void scanRemainder( LineReader reader, CsvProfile profile, int rowLimit ) throws IOException,
+    CsvParseException {
+    String[][] head = profile.getDataSample();
+    int capacity = Math.max( rowLimit - profile.getHeaderSample().length, head.length );
+    String[][] reservoir = new String[ capacity ][];
+    System.arraycopy( head, 0, reservoir, 0, head.length );
+    int filled = head.length;
+
+    List<CsvProfile.ColumnStatistics> columns = new ArrayList<CsvProfile.ColumnStatistics>();
+    for ( CsvProfile.ColumnStatistics column : profile.getColumns() ) {
+      columns.add( column );
+    }
+
+    List<String> tokens = new ArrayList<String>();
+    long seen = head.length;
+    int lineNumber = profile.getLines().size();
+    String line;
+    while ( ( line = reader.readLine() ) != null ) {
+      String[] values = tokenize( line, lineNumber++, profile, tokens );
+      while ( columns.size() < values.length ) {
+        // rows before this one did not have the column at all
+        columns.add( new CsvProfile.ColumnStatistics() );
+      }
+      for ( int col = 0; col < columns.size(); col++ ) {
+        columns.get( col ).add( col < values.length ? values[ col ] : null );
+      }
+
+      if ( filled < capacity ) {
+        reservoir[ filled++ ] = values;
+      } else if ( capacity > 0 ) {
+        long slot = (long) ( random.nextDouble() * ( seen + 1 ) );
+        if ( slot < capacity ) {
+          reservoir[ (int) slot ] = values;
+        }
+      }
+      seen++;
+    }
+
+    int columnCount = columns.size();
+    String[][] sample = new String[ filled ][];
+    for ( int idx = 0; idx < filled; idx++ ) {
+      sample[ idx ] = pad( reservoir[ idx ], columnCount );
+    }
+    if ( columnCount > profile.getColumnCount() ) {
+      padAll( profile.getHeaderSample(), columnCount );
+      padAll( head, columnCount );
+    }
+    profile.setReservoirSample( sample );
+    profile.setColumns( columns.toArray( new CsvProfile.ColumnStatistics[ columnCount ] ) );
+    profile.setScannedRows( seen );
+  }
+
+  private String[] tokenize( String line, int row, CsvProfile profile, List<String> tokens )
+    throws CsvParseException {
+    tokens.clear();
+    try {
+      CSVTokenizer csvt = new CSVTokenizer( line, profile.getDelimiter(), profile.getEnclosure() );
+      while ( csvt.hasMoreTokens() ) {
+        String token = csvt.nextToken();
+        if ( token != null ) {
+          token = token.trim();
+        }
+        tokens.add( token );
+      }
+    } catch ( IllegalArgumentException iae ) {
+      log.error( "There was an issue parsing the CSV file", iae ); //$NON-NLS-1$
+      throw new CsvParseException( row + 1, line );
+    }
+    return tokens.toArray( new String[ tokens.size() ] );
+  }
+
+  private static void padAll( String[][] rows, int length ) {
+    for ( int idx = 0; idx < rows.length; idx++ ) {
+      rows[ idx ] = pad( rows[ idx ], length );
+    }
+  }
+
+  private static String[] pad( String[] values, int length ) {
+    if ( values.length == length ) {
+      return values;
+    }
+    String[] padded = new String[ length ];
+    System.arraycopy( values, 0, padded, 0, values.length );
+    return padded;
+  }
+
+  /**
+   * Reads lines off a character stream, accepting "\n", "\r" and "\r\n" terminators alike.
+   */
+  static class LineReader {
+
+    private final Reader reader;
+
+    private final char[] buffer = new char[ READ_BUFFER_SIZE ];
+
+    private final StringBuilder line = new StringBuilder( 1000 );
+
+    private int position;
+
+    private int limit;
+
+    private boolean afterCarriageReturn;
+
+    LineReader( Reader reader ) {
+      this.reader = reader;
+    }
+
+    /**
+     * @return the next line without its terminator, or <code>null</code> at the end of the stream
+     */
+    String readLine() throws IOException {
+      line.setLength( 0 );
+      while ( fill() ) {
+        char c = buffer[ position++ ];
+        if ( afterCarriageReturn ) {
+          afterCarriageReturn = false;
+          if ( c == '\n' ) {
+            continue;
+          }
+        }
+        if ( c == '\n' || c == '\r' ) {
+          afterCarriageReturn = c == '\r';
+          return line.toString();
+        }
+        line.append( c );
+      }
+      if ( line.length() > 0 ) {
+        return line.toString();
+      }
+      return null;
+    }
+
+    private boolean fill() throws IOException {
+      while ( position >= limit ) {
+        if ( limit == -1 ) {
+          return false;
+        }
+        limit = reader.read( buffer );
+        position = 0;
+      }
+      return true;
+    }
+  }
+}
@@ -29,29 +29,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.pentaho.di.core.row.ValueMetaInterface;
-import org.pentaho.di.core.util.StringEvaluationResult;
-import org.pentaho.di.core.util.StringEvaluator;
-import org.pentaho.di.trans.steps.textfileinput.TextFileInput;
 import org.pentaho.metadata.model.concept.types.DataType;
 import org.pentaho.metadata.util.Util;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.ColumnInfo;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.CsvFileInfo;
-import org.pentaho.platform.dataaccess.datasource.wizard.models.CsvParseException;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.DataRow;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.ModelInfo;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.AgileHelper;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.ModelStateSerializer;
 import org.pentaho.platform.engine.core.system.PentahoBase;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
-import org.pentaho.platform.util.logging.Logger;
-import org.pentaho.reporting.libraries.base.util.CSVTokenizer;
 
 import com.ibm.icu.text.CharsetDetector;
 import com.ibm.icu.text.CharsetMatch;
-import com.thoughtworks.xstream.XStream;
-import com.thoughtworks.xstream.io.xml.DomDriver;
 
 public class CsvUtils extends PentahoBase {
 
@@ -62,6 +55,10 @@ public class CsvUtils extends PentahoBase {
   private static final long serialVersionUID = 2498165533158485182L;
 
   private Log log = LogFactory.getLog( CsvUtils.class );
+
+  private CsvProfiler profiler = new CsvProfiler();
+
+  private ColumnTypeInference inference = new ColumnTypeInference();
   public static final String DEFAULT_RELATIVE_UPLOAD_FILE_PATH =
     File.separatorChar + "system" + File.separatorChar + "metadata" + File.separatorChar + "csvfiles"
       + File.separatorChar; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
@@ -100,6 +97,19 @@ public class CsvUtils extends PentahoBase {
   public ModelInfo generateFields( String project, String filename, int rowLimit, String delimiter, String enclosure,
                                    int headerRows, boolean doData, boolean doColumns, String encoding )
     throws Exception {
+    return generateFields( project, filename, rowLimit, delimiter, enclosure, headerRows, doData, doColumns, encoding,
+      false );
+  }
+
+  /**
+   * @param scanWholeFile when <code>true</code> the whole file is read and column types are inferred from a
+   *                      <code>rowLimit</code> sized reservoir sample of all its rows instead of from the first
+   *                      <code>rowLimit</code> rows; the preview still shows the first rows
+   */
+  public ModelInfo generateFields( String project, String filename, int rowLimit, String delimiter, String enclosure,
+                                   int headerRows, boolean doData, boolean doColumns, String encoding,
+                                   boolean scanWholeFile )
+    throws Exception {
 
     String path;
     if ( filename.endsWith( ".tmp" ) ) { //$NON-NLS-1$
@@ -111,9 +121,8 @@ public class CsvUtils extends PentahoBase {
     }
 
     String fileLocation = path + filename;
-    return generateFields( project, fileLocation, filename, rowLimit, delimiter, enclosure, headerRows, doData, doColumns, encoding
-
-    );
+    return generateFields( project, fileLocation, filename, rowLimit, delimiter, enclosure, headerRows, doData, doColumns, encoding,
+      scanWholeFile );
   }
 
   /* package-local visibility for testing purposes */
@@ -121,29 +130,32 @@ public class CsvUtils extends PentahoBase {
                             String enclosure,
                             int headerRows, boolean doData, boolean doColumns, String encoding )
     throws Exception {
+    return generateFields( project, fileLocation, filename, rowLimit, delimiter, enclosure, headerRows, doData,
+      doColumns, encoding, false );
+  }
+
+  /* package-local visibility for testing purposes */
+  ModelInfo generateFields( String project, String fileLocation, String filename, int rowLimit, String delimiter,
+                            String enclosure,
+                            int headerRows, boolean doData, boolean doColumns, String encoding,
+                            boolean scanWholeFile )
+    throws Exception {
     ModelInfo result = new ModelInfo();
     CsvFileInfo fileInfo = new CsvFileInfo();
     result.setFileInfo( fileInfo );
 
-    CsvInspector inspector = new CsvInspector();
-    String sampleLine = getLines( fileLocation, 1, encoding );
-    int fileType = inspector.determineFileFormat( sampleLine );
-
-    String contents = getLines( fileLocation, rowLimit, encoding );
-    fileInfo.setContents( getLinesList( fileLocation, rowLimit, encoding ) );
-    if ( delimiter.equals( "" ) ) { //$NON-NLS-1$
-      delimiter = inspector.guessDelimiter( contents );
-      enclosure = "\""; //$NON-NLS-1$
-      headerRows = 0;
-    }
-    fileInfo.setDelimiter( delimiter );
-    fileInfo.setEnclosure( enclosure );
-    fileInfo.setHeaderRows( headerRows );
+    CsvProfile profile = scanWholeFile
+      ? profiler.scan( fileLocation, encoding, rowLimit, delimiter, enclosure, headerRows )
+      : profiler.profile( fileLocation, encoding, rowLimit, delimiter, enclosure, headerRows );
+    fileInfo.setContents( profile.getLines() );
+    fileInfo.setDelimiter( profile.getDelimiter() );
+    fileInfo.setEnclosure( profile.getEnclosure() );
+    fileInfo.setHeaderRows( profile.getHeaderRows() );
     fileInfo.setEncoding( encoding ); //Resolves the file encoding using icu4j.
     fileInfo.setProject( project );
     fileInfo.setTmpFilename( filename );
 
-    DataProfile data = getDataProfile( fileInfo, rowLimit, fileLocation, fileType, encoding );
+    DataProfile data = getDataProfile( profile );
     if ( doData ) {
       result.setData( data.getRows() );
     }
@@ -153,14 +165,6 @@ public class CsvUtils extends PentahoBase {
     return result;
   }
 
-  private List<String> getColumnData( int columnNumber, String[][] data ) {
-    List<String> dataSample = new ArrayList<String>( data.length );
-    for ( String[] row : data ) {
-      dataSample.add( row[ columnNumber ] );
-    }
-    return dataSample;
-  }
-
   protected List<String> getLinesList( String fileLocation, int rows, String encoding ) throws IOException {
     List<String> lines = new ArrayList<String>();
     try {
@@ -181,147 +185,16 @@ public class CsvUtils extends PentahoBase {
     return lines;
   }
 
-  protected String getLines( String fileLocation, int rows, String encoding ) {
-    File file = new File( fileLocation );
-
-    // read one line, including all EOL characters
-    InputStream in;
-    InputStreamReader inr = null;
-    StringBuilder line = new StringBuilder();
-    int count = 0;
-    try {
-      in = new FileInputStream( file );
-      inr = new InputStreamReader( in, encoding );
-
-
-      int c = inr.read();
-      boolean looking = true;
-      while ( looking && c > 0 ) {
-        line.append( (char) c );
-        if ( c == '\r' || c == '\n' ) {
-          // look at the next char
-          c = inr.read();
-          if ( c == '\r' || c == '\n' ) {
-            line.append( (char) c );
-            c = inr.read();
-          }
-          count++;
-          if ( count == rows ) {
-            looking = false;
-          }
-        } else {
-          c = inr.read();
-        }
-      }
-    } catch ( IOException e ) {
-      //do nothing
-    } finally {
-      if ( inr != null ) {
-        try {
-          inr.close();
-        } catch ( IOException e ) {
-          // ignore this one
-        }
-      }
-    }
-    return line.toString();
-
-  }
-
-  private DataProfile getDataProfile( CsvFileInfo fileInfo, int rowLimit, String fileLocation, int fileType,
-                                      String encoding ) throws Exception {
+  private DataProfile getDataProfile( CsvProfile csvProfile ) {
     DataProfile result = new DataProfile();
-    String line = null;
-    int row = 0;
-    List<List<String>> headerSample = new ArrayList<List<String>>();
-    List<List<String>> dataSample = new ArrayList<List<String>>( rowLimit );
-    int maxColumns = 0;
-    InputStreamReader reader = null;
-
-    try {
-      InputStream inputStream = new FileInputStream( fileLocation );
-      UnicodeBOMInputStream bomIs = new UnicodeBOMInputStream( inputStream );
-      reader = new InputStreamReader( bomIs, encoding );
-      bomIs.skipBOM();
-
-      //read each line of text file
-      StringBuilder stringBuilder = new StringBuilder( 1000 );
-      line = TextFileInput.getLine( null, reader, fileType, stringBuilder );
-
-      while ( line != null && row < rowLimit ) {
+    String[][] headerValues = csvProfile.getHeaderSample();
+    String[][] dataValues = csvProfile.getDataSample();
+    int maxColumns = csvProfile.getColumnCount();
 
-        CSVTokenizer csvt = new CSVTokenizer( line, fileInfo.getDelimiter(), fileInfo.getEnclosure() );
-        List<String> rowData = new ArrayList<String>();
-        int count = 0;
-
-        while ( csvt.hasMoreTokens() ) {
-          String token = csvt.nextToken();
-          if ( token != null ) {
-            token = token.trim();
-          }
-          rowData.add( token );
-          count++;
-        }
-        if ( maxColumns < count ) {
-          maxColumns = count;
-        }
-        if ( row < fileInfo.getHeaderRows() ) {
-          headerSample.add( rowData );
-        } else {
-          dataSample.add( rowData );
-        }
-        line = TextFileInput.getLine( null, reader, fileType, stringBuilder );
-        row++;
-      }
-
-    } catch ( IllegalArgumentException iae ) {
-      Logger.error( getClass().getSimpleName(), "There was an issue parsing the CSV file", iae );  //$NON-NLS-1$
-      throw new CsvParseException( row + 1, line );
-    } catch ( Exception e ) {
-      Logger.error( getClass().getSimpleName(), "Could not read CSV", e );  //$NON-NLS-1$
-      throw e;
-    } finally {
-
-      //close the file
-      try {
-        if ( reader != null ) {
-          reader.close();
-        }
-      } catch ( Exception e ) {
-        throw e;
-        // ignore
-      }
-    }
-    String[][] headerValues = new String[ headerSample.size() ][ maxColumns ];
-    int rowNo = 0;
-    for ( List<String> values : headerSample ) {
-      int colNo = 0;
-      for ( String value : values ) {
-        headerValues[ rowNo ][ colNo ] = value;
-        colNo++;
-      }
-      rowNo++;
-    }
-
-    int[] fieldLengths = new int[ maxColumns ];
-
-    String[][] dataValues = new String[ dataSample.size() ][ maxColumns ];
-    DataRow[] data = new DataRow[ dataSample.size() ];
-    rowNo = 0;
-    for ( List<String> values : dataSample ) {
-      int colNo = 0;
-      for ( String value : values ) {
-        dataValues[ rowNo ][ colNo ] = value;
-
-        int currentMaxLength = fieldLengths[ colNo ];
-        if ( value.length() > currentMaxLength ) {
-          fieldLengths[ colNo ] = value.length();
-        }
-        colNo++;
-      }
+    DataRow[] data = new DataRow[ dataValues.length ];
+    for ( int rowNo = 0; rowNo < dataValues.length; rowNo++ ) {
       data[ rowNo ] = new DataRow();
       data[ rowNo ].setCells( dataValues[ rowNo ] );
-      rowNo++;
     }
 
     result.setRows( data );
@@ -345,45 +218,31 @@ public class CsvUtils extends PentahoBase {
       }
       profile.setTitle( title );
       profile.setId( colId );
-
-
-      List<String> samples = getColumnData( idx, dataValues );
-
-      assumeColumnDetails( profile, samples );
-
+    }
+    inference.inferColumns( csvProfile.getInferenceSample(), profiles );
+    if ( csvProfile.getReservoirSample() != null ) {
+      widenStringColumns( profiles, csvProfile.getColumns() );
     }
     result.setColumns( profiles );
     return result;
   }
 
 
-  protected void assumeColumnDetails( ColumnInfo profile, List<String> samples ) {
-    StringEvaluator eval = new StringEvaluator( false, NUMBER_FORMATS, ColumnInfo.DATE_FORMATS );
-    for ( String sample : samples ) {
-      eval.evaluateString( sample );
-    }
-    StringEvaluationResult result = eval.getAdvicedResult();
-    ValueMetaInterface meta = result.getConversionMeta();
-
-    int type = meta.getType();
-    String mask = meta.getConversionMask();
-    int size;
-    int precision = meta.getPrecision();
-
-    profile.setFormat( mask );
-    profile.setPrecision( precision > 0 ? precision : 0 );
-    profile.setDataType( convertDataType( type ) );
-
-    if ( meta.isString() ) {
-      // pad the string lengths
-      size = meta.getLength() + ( meta.getLength() / 2 );
-    } else if ( meta.isInteger() ) {
-      size = meta.getLength();
-    } else {
-      size = precision > 0 ? meta.getLength() : 0;
+  /**
+   * A reservoir can miss the longest value of a column; size string columns from the whole-file statistics instead,
+   * padded the same way the evaluator pads them, so the load does not reject those rows.
+   */
+  private void widenStringColumns( ColumnInfo[] profiles, CsvProfile.ColumnStatistics[] statistics ) {
+    for ( int idx = 0; idx < profiles.length; idx++ ) {
+      if ( profiles[ idx ].getDataType() == DataType.STRING ) {
+        int maxLength = statistics[ idx ].getMaxLength();
+        profiles[ idx ].setLength( Math.max( profiles[ idx ].getLength(), maxLength + ( maxLength / 2 ) ) );
+      }
     }
+  }
 
-    profile.setLength( size );
+  protected void assumeColumnDetails( ColumnInfo profile, List<String> samples ) {
+    inference.inferColumn( profile, samples );
   }
 
   @Override
@@ -422,28 +281,14 @@ public class CsvUtils extends PentahoBase {
   }
 
   public ModelInfo getModelInfo( String project, String filename ) throws FileNotFoundException {
-    XStream xstream = new XStream( new DomDriver( "UTF-8" ) ); //$NON-NLS-1$
-    xstream.alias( "modelInfo", ModelInfo.class ); //$NON-NLS-1$
-    xstream.alias( "columnInfo", ColumnInfo.class ); //$NON-NLS-1$
     String filepath = AgileHelper.getFolderPath( project ) + "/" + filename + ".xml"; //$NON-NLS-1$ //$NON-NLS-2$
     System.out.println( filepath );
     File f = new File( filepath );
     FileInputStream fis = new FileInputStream( f );
-    return (ModelInfo) xstream.fromXML( fis );
-  }
-
-  private DataType convertDataType( int type ) {
-    switch( type ) {
-      case 1:
-      case 5:
-      case 6:
-        return DataType.NUMERIC;
-      case 3:
-        return DataType.DATE;
-      case 4:
-        return DataType.BOOLEAN;
-      default:
-        return DataType.STRING;
+    try {
+      return ModelStateSerializer.modelInfoFromXML( fis );
+    } finally {
+      IOUtils.closeQuietly( fis );
     }
   }
 
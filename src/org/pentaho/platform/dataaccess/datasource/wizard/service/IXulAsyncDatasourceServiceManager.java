@@ -32,6 +32,11 @@ public interface IXulAsyncDatasourceServiceManager {
 
   void getDSWDatasourceIds( XulServiceCallback<List<String>> callback );
 
+  /**
+   * Lists the datasources of every built-in type (JDBC, analysis, metadata and data source wizard) in one request.
+   */
+  void getDatasources( XulServiceCallback<List<IDatasourceInfo>> callback );
+
   void export( IDatasourceInfo dsInfo );
 
   void remove( IDatasourceInfo dsInfo, Object callback );
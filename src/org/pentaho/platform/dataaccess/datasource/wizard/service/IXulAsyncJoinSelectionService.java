@@ -18,6 +18,7 @@
 package org.pentaho.platform.dataaccess.datasource.wizard.service;
 
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.agilebi.modeler.gwt.BogoPojo;
 import org.pentaho.database.model.IDatabaseConnection;
@@ -33,6 +34,8 @@ public interface IXulAsyncJoinSelectionService {
 
   void getTableFields( String table, IDatabaseConnection connection, XulServiceCallback<List> callback );
 
+  void getTablesFields( List<String> tables, IDatabaseConnection connection, XulServiceCallback<Map> callback );
+
   void serializeJoins( MultiTableDatasourceDTO dto, IDatabaseConnection connection,
                        XulServiceCallback<IDatasourceSummary> callback );
 
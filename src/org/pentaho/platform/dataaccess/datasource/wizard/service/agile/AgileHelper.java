@@ -21,6 +21,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.platform.api.data.DBDatasourceServiceException;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DataAccessSettings;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.engine.services.connection.datasource.dbcp.JndiDatasourceService;
 
@@ -38,6 +39,17 @@ public class AgileHelper {
   private static final String SETTINGS_FILE = PLUGIN_NAME + "/settings.xml"; //$NON-NLS-1$  
   private static final String DATASOURCE_SOLUTION_STORAGE = "data-access-datasource-solution-storage"; //$NON-NLS-1$
   private static final String CSV_SAMPLE_SIZE = "data-access-csv-sample-rows";
+  private static final String CSV_INFERENCE_THREADS = "data-access-csv-inference-threads";
+  private static final String CSV_SCAN_WHOLE_FILE = "data-access-csv-scan-whole-file";
+  private static final String STAGING_LOAD_MODE = "data-access-staging-load-mode";
+  private static final String STAGING_COMMIT_SIZE = "data-access-staging-commit-size";
+  private static final int DEFAULT_STAGING_COMMIT_SIZE = 1000;
+  private static final String STAGING_PARALLEL_COPIES = "data-access-staging-parallel-copies";
+  private static final String STAGING_MAX_CONCURRENT_LOADS = "data-access-staging-max-concurrent-loads";
+  private static final String STAGING_MAX_QUEUED_LOADS = "data-access-staging-max-queued-loads";
+  private static final int DEFAULT_STAGING_MAX_CONCURRENT_LOADS = 2;
+  private static final int DEFAULT_STAGING_MAX_QUEUED_LOADS = 50;
+  private static final String STAGING_INDEX_THREADS = "data-access-staging-index-threads";
   private static final Log logger = LogFactory.getLog( AgileHelper.class );
 
   public static String getSchemaName() {
@@ -83,12 +95,68 @@ public class AgileHelper {
   }
 
   public static int getCsvSampleRowSize() {
-    String sampleSize = PentahoSystem.getSystemSetting( SETTINGS_FILE, CSV_SAMPLE_SIZE, null );
-    if ( sampleSize != null ) {
-      return Integer.valueOf( sampleSize );
-    } else {
-      return 100;
+    return DataAccessSettings.getInt( CSV_SAMPLE_SIZE, 100, 1, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return threads used to infer CSV column types; the number of processors when the setting is missing or 0
+   */
+  public static int getCsvInferenceThreads() {
+    int threads = DataAccessSettings.getInt( CSV_INFERENCE_THREADS, 0, 0, Integer.MAX_VALUE );
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * @return whether CSV column types are inferred from a sample of every row of the file instead of its first
+   *         <code>data-access-csv-sample-rows</code> rows; off unless the setting is <code>true</code>
+   */
+  public static boolean isCsvScanWholeFile() {
+    return Boolean.parseBoolean( PentahoSystem.getSystemSetting( SETTINGS_FILE, CSV_SCAN_WHOLE_FILE, null ) );
+  }
+
+  public static StagingLoadMode getStagingLoadMode() {
+    return StagingLoadMode.fromString( PentahoSystem.getSystemSetting( SETTINGS_FILE, STAGING_LOAD_MODE, null ),
+      StagingLoadMode.BATCH );
+  }
+
+  public static int getStagingCommitSize() {
+    return DataAccessSettings.getInt( STAGING_COMMIT_SIZE, DEFAULT_STAGING_COMMIT_SIZE, 1, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return the most copies a staging step may run in; 1 when the setting is missing, the number of processors when
+   *         it is 0
+   */
+  public static int getStagingParallelCopies() {
+    int copies = DataAccessSettings.getInt( STAGING_PARALLEL_COPIES, 1, 0, Integer.MAX_VALUE );
+    return copies > 0 ? copies : Runtime.getRuntime().availableProcessors();
+  }
+
+  public static int getStagingMaxConcurrentLoads() {
+    return DataAccessSettings.getInt( STAGING_MAX_CONCURRENT_LOADS, DEFAULT_STAGING_MAX_CONCURRENT_LOADS, 1,
+      Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return how many CSV loads may wait for a free slot; 0 turns every load away while the slots are busy
+   */
+  public static int getStagingMaxQueuedLoads() {
+    return DataAccessSettings.getInt( STAGING_MAX_QUEUED_LOADS, DEFAULT_STAGING_MAX_QUEUED_LOADS, 0,
+      Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return how many indexes may be built on a staging table at once in <code>meta</code>'s database: the
+   *         <code>data-access-staging-index-threads-&lt;plugin id&gt;</code> setting if there is one, else
+   *         <code>data-access-staging-index-threads</code>, else 1
+   */
+  public static int getStagingIndexThreads( DatabaseMeta meta ) {
+    int threads = DataAccessSettings.getInt( STAGING_INDEX_THREADS, 1, 1, Integer.MAX_VALUE );
+    if ( meta != null && meta.getPluginId() != null ) {
+      threads = DataAccessSettings.getInt( STAGING_INDEX_THREADS + "-" + meta.getPluginId(), threads, 1,
+        Integer.MAX_VALUE );
     }
+    return threads;
   }
 
   public static DatabaseMeta getDatabaseMeta() {
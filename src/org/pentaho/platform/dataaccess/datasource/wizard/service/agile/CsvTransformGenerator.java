@@ -30,6 +30,7 @@ import org.pentaho.di.trans.step.StepErrorMeta;
 import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.steps.csvinput.CsvInputMeta;
 import org.pentaho.di.trans.steps.selectvalues.SelectValuesMeta;
+import org.pentaho.di.trans.steps.tableoutput.TableOutputMeta;
 import org.pentaho.di.trans.steps.textfileinput.TextFileInputField;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.ColumnInfo;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.CsvFileInfo;
@@ -45,6 +46,11 @@ public class CsvTransformGenerator extends StagingTransformGenerator {
 
   private static final String SELECT_VALUES = "select"; //$NON-NLS-1$
 
+  /**
+   * Each input copy should get at least this many bytes of the file, or splitting costs more than it saves.
+   */
+  static final long MIN_BYTES_PER_INPUT_COPY = 16 * 1024 * 1024;
+
   public static final String DEFAULT_RELATIVE_UPLOAD_FILE_PATH = File.separatorChar
     + "system" + File.separatorChar + "metadata" + File.separatorChar + "csvfiles" + File.separatorChar;
     //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
@@ -178,18 +184,21 @@ public class CsvTransformGenerator extends StagingTransformGenerator {
     StepErrorMeta csvInputErrorMeta = new StepErrorMeta( transMeta, csvInputStepMeta ) {
       public void addErrorRowData( Object[] row, int startIndex, long nrErrors, String errorDescriptions,
                                    String fieldNames, String errorCodes ) {
-        if ( csvErrorRowCount < maxErrorRows ) {
-          StringBuffer sb = new StringBuffer();
-          sb.append( "Rejected Row: " );
-          for ( Object rowData : row ) {
-            sb.append( rowData );
-            sb.append( ", " );
+        // every copy of the input step shares this error meta
+        synchronized ( CsvTransformGenerator.this ) {
+          if ( csvErrorRowCount < maxErrorRows ) {
+            StringBuffer sb = new StringBuffer();
+            sb.append( "Rejected Row: " );
+            for ( Object rowData : row ) {
+              sb.append( rowData );
+              sb.append( ", " );
+            }
+            sb.append( "\r\n" );
+            stats.getErrors().add( sb.toString() + errorDescriptions );
           }
-          sb.append( "\r\n" );
-          stats.getErrors().add( sb.toString() + errorDescriptions );
+          csvErrorRowCount++;
+          stats.setErrorCount( csvErrorRowCount );
         }
-        csvErrorRowCount++;
-        stats.setErrorCount( csvErrorRowCount );
         super.addErrorRowData( row, startIndex, nrErrors, errorDescriptions, fieldNames, errorCodes );
       }
     };
@@ -201,6 +210,53 @@ public class CsvTransformGenerator extends StagingTransformGenerator {
     return csvInputStepMeta;
   }
 
+  /**
+   * Splits a large file across several copies of the CSV input step, each reading its own byte range, and spreads
+   * their rows over several table output copies. The select step, if any, runs as many copies as the input so rows
+   * pass through it one to one.
+   */
+  @Override
+  protected void configureCopies( TransMeta transMeta, StepMeta tableStepMeta ) {
+    StepMeta inputStepMeta = transMeta.findStep( CSV_INPUT );
+    CsvInputMeta csvInputMeta = (CsvInputMeta) inputStepMeta.getStepMetaInterface();
+    long fileSize = new File( csvInputMeta.getFilename() ).length();
+    int inputCopies = getInputCopies( fileSize, AgileHelper.getStagingParallelCopies() );
+    if ( inputCopies < 2 ) {
+      return;
+    }
+
+    csvInputMeta.setRunningInParallel( true );
+    inputStepMeta.setCopies( inputCopies );
+    StepMeta selectStepMeta = transMeta.findStep( SELECT_VALUES );
+    if ( selectStepMeta != null ) {
+      selectStepMeta.setCopies( inputCopies );
+    }
+    // a bulk loader truncates and loads on its own, so only a table output gets extra copies
+    int outputCopies = 1;
+    if ( tableStepMeta.getStepMetaInterface() instanceof TableOutputMeta ) {
+      outputCopies = getOutputCopies( inputCopies );
+      tableStepMeta.setCopies( outputCopies );
+    }
+    log.debug( "Staging " + fileSize + " bytes with " + inputCopies + " input and " + outputCopies //$NON-NLS-1$
+      + " output copies" ); //$NON-NLS-1$
+  }
+
+  /**
+   * @return how many copies should read a file of <code>fileSize</code> bytes: one per
+   *         {@link #MIN_BYTES_PER_INPUT_COPY}, between 1 and <code>maxCopies</code>
+   */
+  static int getInputCopies( long fileSize, int maxCopies ) {
+    return (int) Math.max( 1, Math.min( maxCopies, fileSize / MIN_BYTES_PER_INPUT_COPY ) );
+  }
+
+  /**
+   * @return how many table output copies should write what <code>inputCopies</code> input copies read: half as many,
+   *         since every output copy holds its own connection to the staging database
+   */
+  static int getOutputCopies( int inputCopies ) {
+    return Math.max( 1, inputCopies / 2 );
+  }
+
   protected StepMeta createSelectStep( TransMeta transMeta, String stepName ) {
     SelectValuesMeta meta = new SelectValuesMeta();
     // find out which columns need to be deleted
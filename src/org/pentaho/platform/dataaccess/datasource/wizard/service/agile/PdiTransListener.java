@@ -14,72 +14,156 @@
 *
 * Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
 */
-
 package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransListener;
 import org.pentaho.di.trans.step.StepInterface;
 import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
 
-public class PdiTransListener implements TransListener, Runnable {
+/**
+ * Reports the progress of a staging load into its {@link FileTransformStats}. Row counts are sampled on a small
+ * executor shared by every running load, and the final counts are taken as soon as Kettle reports the transformation
+ * finished, at which point {@link #getCompletion()} completes.
+ */
+public class PdiTransListener implements TransListener {
+
+  static final long PROGRESS_INTERVAL_MS = 250;
 
-  private StepInterface step;
+  private static final int PROGRESS_THREADS = 2;
+
+  private static final ScheduledExecutorService executor = createExecutor();
+
+  private List<StepInterface> steps;
 
   private Trans trans;
 
   private FileTransformStats transformStats;
 
-  private boolean finished = false;
+  private final CompletableFuture<FileTransformStats> completion = new CompletableFuture<FileTransformStats>();
 
-  private long rowsDone = 0;
+  private ScheduledFuture<?> progress;
 
   public PdiTransListener( Trans trans, StepInterface step, FileTransformStats transformStats ) {
-    this.step = step;
+    this( trans, Collections.singletonList( step ), transformStats );
+  }
+
+  /**
+   * @param steps every running copy of the step to report on; their row counts are added up
+   */
+  public PdiTransListener( Trans trans, List<StepInterface> steps, FileTransformStats transformStats ) {
+    this.steps = steps;
     this.trans = trans;
     this.transformStats = transformStats;
   }
 
+  private static ScheduledExecutorService createExecutor() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor( PROGRESS_THREADS, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      public Thread newThread( Runnable runnable ) {
+        Thread thread = new Thread( runnable, "data-access-staging-progress-" + count.incrementAndGet() ); //$NON-NLS-1$
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+    // cancelled progress samplers should not linger in the queue until their next run
+    executor.setRemoveOnCancelPolicy( true );
+    return executor;
+  }
+
+  /**
+   * Subscribes to the transformation and starts sampling progress. Call before the transformation's threads are
+   * started so its end cannot be missed.
+   */
+  public synchronized void start() {
+    trans.addTransListener( this );
+    progress = executor.scheduleAtFixedRate( new Runnable() {
+      public void run() {
+        updateProgress();
+      }
+    }, PROGRESS_INTERVAL_MS, PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS );
+    if ( trans.isFinished() ) {
+      finish();
+    }
+  }
+
   public void cancel() {
-    finished = true;
+    finish();
   }
 
   public boolean isFinished() {
-    return finished;
+    return completion.isDone();
   }
 
-  public void run() {
+  /**
+   * @return completes with the stats once the final row and error counts are in
+   */
+  public CompletableFuture<FileTransformStats> getCompletion() {
+    return completion;
+  }
 
-    while ( !finished && !trans.isFinished() ) {
-      try {
-        rowsDone = step.getLinesOutput();
-        transformStats.setTotalRecords( rowsDone );
-        Thread.sleep( 250 );
-      } catch ( InterruptedException e ) {
-        // swallow this
-      }
+  /**
+   * Samples the row count. A sample already running when {@link #finish()} cancels the sampler would otherwise
+   * overwrite the final count, so it is taken under the same lock and dropped once the load is finished.
+   */
+  /* package-local visibility for testing purposes */
+  synchronized void updateProgress() {
+    if ( completion.isDone() ) {
+      return;
     }
-    doFinish();
+    long linesOutput = 0;
+    for ( StepInterface step : steps ) {
+      linesOutput += step.getLinesOutput();
+    }
+    transformStats.setTotalRecords( linesOutput );
   }
 
-  private void doFinish() {
+  private synchronized void finish() {
+    if ( completion.isDone() ) {
+      return;
+    }
+    if ( progress != null ) {
+      progress.cancel( false );
+    }
     try {
       trans.cleanup();
     } catch ( Exception e ) {
       //Do Nothing
     }
+    long linesRead = 0;
+    long linesWritten = 0;
+    for ( StepInterface step : steps ) {
+      linesRead += step.getLinesRead();
+      linesWritten += step.getLinesWritten();
+    }
     transformStats.setRowsFinished( true );
-    transformStats.setTotalRecords( step.getLinesRead() );
+    transformStats.setTotalRecords( linesRead );
 
     // there seems to be an issue with trans.getErrors() reporting 0 - figure it out on our own instead
     //    transformStats.setErrorCount(errorCount);
-    transformStats.setErrorCount( step.getLinesRead() - step.getLinesWritten() );
+    transformStats.setErrorCount( linesRead - linesWritten );
 
-    finished = true;
+    completion.complete( transformStats );
   }
 
   public void transFinished( Trans trans ) {
-    doFinish();
+    // called on the thread of the last step to end; take the final counts off that thread
+    executor.execute( new Runnable() {
+      public void run() {
+        finish();
+      }
+    } );
   }
 
   public void transActive( Trans trans ) {
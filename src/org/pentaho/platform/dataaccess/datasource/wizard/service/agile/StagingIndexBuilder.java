@@ -0,0 +1,148 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.CsvTransformGeneratorException;
+import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
+
+/**
+ * Builds the indexes of a staging table on a bounded number of connections at once. Each worker connects once and
+ * takes index statements off a shared list until it is empty, so a table with many indexed columns no longer opens
+ * and closes a connection per index. The calling thread is one of the workers; with a parallelism of 1 the indexes
+ * are built one after the other on a single connection.
+ */
+public class StagingIndexBuilder {
+
+  private static final Log log = LogFactory.getLog( StagingIndexBuilder.class );
+
+  private static final ExecutorService workers = Executors.newCachedThreadPool( new ThreadFactory() {
+    private final AtomicInteger count = new AtomicInteger();
+
+    public Thread newThread( Runnable runnable ) {
+      Thread thread = new Thread( runnable, "data-access-staging-index-" + count.incrementAndGet() ); //$NON-NLS-1$
+      thread.setDaemon( true );
+      return thread;
+    }
+  } );
+
+  private final StagingTransformGenerator generator;
+
+  private final DatabaseMeta databaseMeta;
+
+  private final FileTransformStats stats;
+
+  private final AtomicInteger next = new AtomicInteger();
+
+  private final HashMap<String, Long> indexMillis = new HashMap<String, Long>();
+
+  private int indexDone;
+
+  private int indexSuccess;
+
+  public StagingIndexBuilder( StagingTransformGenerator generator, DatabaseMeta databaseMeta,
+                              FileTransformStats stats ) {
+    this.generator = generator;
+    this.databaseMeta = databaseMeta;
+    this.stats = stats;
+  }
+
+  /**
+   * Runs <code>commands</code>, the statements building the indexes named <code>indexNames</code>, on up to
+   * <code>parallelism</code> connections. A failed index is logged and skipped.
+   *
+   * @return the number of indexes built
+   */
+  public int build( final List<String> indexNames, final List<String> commands, int parallelism ) {
+    int workerCount = Math.max( 1, Math.min( parallelism, commands.size() ) );
+    List<CompletableFuture<Void>> others = new ArrayList<CompletableFuture<Void>>( workerCount - 1 );
+    for ( int idx = 1; idx < workerCount; idx++ ) {
+      others.add( CompletableFuture.runAsync( new Runnable() {
+        public void run() {
+          work( indexNames, commands );
+        }
+      }, workers ) );
+    }
+    work( indexNames, commands );
+    CompletableFuture.allOf( others.toArray( new CompletableFuture[ others.size() ] ) ).join();
+
+    synchronized ( this ) {
+      // statements left over because no worker could connect count as done, and failed
+      indexDone = commands.size();
+      if ( stats != null ) {
+        stats.setIndexDone( indexDone );
+      }
+      return indexSuccess;
+    }
+  }
+
+  private void work( List<String> indexNames, List<String> commands ) {
+    if ( next.get() >= commands.size() ) {
+      return;
+    }
+    Database db = generator.getDatabase( databaseMeta );
+    try {
+      db.connect( null );
+      int idx;
+      while ( ( idx = next.getAndIncrement() ) < commands.size() ) {
+        long start = System.currentTimeMillis();
+        boolean built = false;
+        try {
+          generator.execSqlStatements( db, commands.get( idx ) );
+          built = true;
+        } catch ( CsvTransformGeneratorException e ) {
+          // failed to execute, already logged by the generator
+        }
+        done( indexNames.get( idx ), built, System.currentTimeMillis() - start );
+      }
+    } catch ( KettleDatabaseException e ) {
+      log.error( "Connection error, leaving the remaining indexes to other connections", e ); //$NON-NLS-1$
+    } finally {
+      db.disconnect();
+    }
+  }
+
+  private synchronized void done( String indexName, boolean built, long millis ) {
+    indexDone++;
+    if ( built ) {
+      indexSuccess++;
+      indexMillis.put( indexName, millis );
+      if ( log.isDebugEnabled() ) {
+        log.debug( "Built index " + indexName + " in " + millis + " ms" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+      }
+    }
+    if ( stats != null ) {
+      // hand out a copy, the stats may be read while other indexes are still being built
+      stats.setIndexMillis( new HashMap<String, Long>( indexMillis ) );
+      stats.setIndexDone( indexDone );
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
+
+/**
+ * One CSV datasource being created in the background: staged, modeled and saved. The job is what a client polls for
+ * progress and what it cancels; the work itself runs on {@link StagingLoadExecutor}.
+ */
+public class StagingJob {
+
+  public enum Phase {
+    QUEUED, STAGING, MODELING, SAVING, FINISHED, FAILED, CANCELLED;
+
+    public boolean isDone() {
+      return this == FINISHED || this == FAILED || this == CANCELLED;
+    }
+
+    /**
+     * @return whether a job in this phase can still be stopped without leaving a half saved datasource behind
+     */
+    public boolean isCancellable() {
+      return this == QUEUED || this == STAGING;
+    }
+  }
+
+  private final String id;
+
+  private final String owner;
+
+  private final FileTransformStats stats;
+
+  private final long created = System.currentTimeMillis();
+
+  private volatile Phase phase = Phase.QUEUED;
+
+  private volatile Exception cause;
+
+  private volatile long finished;
+
+  private volatile Future<?> future;
+
+  private volatile StagingTransformGenerator generator;
+
+  private volatile String domainId;
+
+  StagingJob( String id, String owner, FileTransformStats stats ) {
+    this.id = id;
+    this.owner = owner;
+    this.stats = stats;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @return the name of the user who submitted the job
+   */
+  public String getOwner() {
+    return owner;
+  }
+
+  public FileTransformStats getStats() {
+    return stats;
+  }
+
+  public Phase getPhase() {
+    return phase;
+  }
+
+  /**
+   * Moves the job on to <code>phase</code>, unless it already ended.
+   *
+   * @return whether the job moved on, so <code>false</code> once it was cancelled
+   */
+  public synchronized boolean setPhase( Phase phase ) {
+    if ( this.phase.isDone() ) {
+      return false;
+    }
+    this.phase = phase;
+    if ( phase.isDone() ) {
+      finished = System.currentTimeMillis();
+      generator = null;
+    }
+    return true;
+  }
+
+  /**
+   * @return the message of the exception the job failed with, if it failed
+   */
+  public String getFailure() {
+    Exception e = cause;
+    return e == null ? null : e.getMessage();
+  }
+
+  public Exception getCause() {
+    return cause;
+  }
+
+  public void fail( Exception cause ) {
+    this.cause = cause;
+    setPhase( Phase.FAILED );
+  }
+
+  public long getCreated() {
+    return created;
+  }
+
+  /**
+   * @return when the job ended, or 0 while it is still queued or running
+   */
+  public long getFinished() {
+    return finished;
+  }
+
+  /**
+   * @return the id of the domain the job saved, or <code>null</code> until it has saved one
+   */
+  public String getDomainId() {
+    return domainId;
+  }
+
+  /**
+   * Records the domain the job saved. A finished job may wait a long while to be collected, so it keeps the id and
+   * not the domain itself.
+   */
+  public void setDomainId( String domainId ) {
+    this.domainId = domainId;
+  }
+
+  public void setFuture( Future<?> future ) {
+    this.future = future;
+  }
+
+  /**
+   * Remembers the generator that is loading the staging table so {@link #cancel()} can stop its transformation.
+   */
+  public void setGenerator( StagingTransformGenerator generator ) {
+    this.generator = generator;
+  }
+
+  /**
+   * Waits up to <code>timeoutMillis</code> for the job to end.
+   *
+   * @return whether the job has ended
+   */
+  public boolean await( long timeoutMillis ) throws InterruptedException {
+    Future<?> f = future;
+    if ( f != null && timeoutMillis > 0 && !phase.isDone() ) {
+      try {
+        f.get( timeoutMillis, TimeUnit.MILLISECONDS );
+      } catch ( TimeoutException e ) {
+        // still running
+      } catch ( Exception e ) {
+        // the job records its own failure
+      }
+    }
+    return phase.isDone();
+  }
+
+  /**
+   * Stops the job: a queued job never starts, and a running load has its transformation stopped. Once the staging
+   * table is loaded the job goes on to model and save the datasource, and can no longer be stopped.
+   *
+   * @return <code>false</code> if the job is modeling, saving or has finished, and so will still have saved its
+   *         datasource
+   */
+  public boolean cancel() {
+    StagingTransformGenerator g;
+    synchronized ( this ) {
+      if ( phase.isDone() ) {
+        return phase != Phase.FINISHED;
+      }
+      if ( !phase.isCancellable() ) {
+        return false;
+      }
+      g = generator;
+      setPhase( Phase.CANCELLED );
+    }
+    if ( g != null ) {
+      g.cancelLoad();
+    }
+    Future<?> f = future;
+    if ( f != null ) {
+      f.cancel( true );
+    }
+    return true;
+  }
+}
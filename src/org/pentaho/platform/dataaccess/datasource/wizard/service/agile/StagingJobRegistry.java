@@ -0,0 +1,108 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
+
+/**
+ * Keeps track of the {@link StagingJob}s on this server. Jobs stay around for {@link #RETENTION_MILLIS} after they
+ * end so a client polling now and then still gets to see the outcome. The jobs of the shared registry that are past
+ * it are purged every {@link #PURGE_INTERVAL_MILLIS}, and no job past it is handed out.
+ */
+public class StagingJobRegistry {
+
+  static final long RETENTION_MILLIS = 60 * 60 * 1000;
+
+  static final long PURGE_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+  private static final StagingJobRegistry instance = new StagingJobRegistry();
+
+  private static final ScheduledThreadPoolExecutor purger = createPurger();
+
+  private final Map<String, StagingJob> jobs = new ConcurrentHashMap<String, StagingJob>();
+
+  public static StagingJobRegistry getInstance() {
+    return instance;
+  }
+
+  private static ScheduledThreadPoolExecutor createPurger() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor( 1, new ThreadFactory() {
+      public Thread newThread( Runnable runnable ) {
+        Thread thread = new Thread( runnable, "data-access-staging-job-purger" ); //$NON-NLS-1$
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+    executor.scheduleWithFixedDelay( new Runnable() {
+      public void run() {
+        instance.purge( System.currentTimeMillis() );
+      }
+    }, PURGE_INTERVAL_MILLIS, PURGE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS );
+    return executor;
+  }
+
+  public StagingJob create( String owner, FileTransformStats stats ) {
+    purge( System.currentTimeMillis() );
+    StagingJob job = new StagingJob( UUID.randomUUID().toString(), owner, stats );
+    jobs.put( job.getId(), job );
+    return job;
+  }
+
+  /**
+   * @return the job with the given id if <code>owner</code> submitted it, <code>null</code> otherwise
+   */
+  public StagingJob get( String id, String owner ) {
+    return get( id, owner, System.currentTimeMillis() );
+  }
+
+  StagingJob get( String id, String owner, long now ) {
+    StagingJob job = id == null ? null : jobs.get( id );
+    if ( job != null && isExpired( job, now ) ) {
+      jobs.remove( id );
+      return null;
+    }
+    if ( job == null || ( job.getOwner() == null ? owner != null : !job.getOwner().equals( owner ) ) ) {
+      return null;
+    }
+    return job;
+  }
+
+  public void remove( StagingJob job ) {
+    jobs.remove( job.getId() );
+  }
+
+  void purge( long now ) {
+    for ( Iterator<StagingJob> it = jobs.values().iterator(); it.hasNext(); ) {
+      if ( isExpired( it.next(), now ) ) {
+        it.remove();
+      }
+    }
+  }
+
+  private static boolean isExpired( StagingJob job, long now ) {
+    return job.getFinished() > 0 && now - job.getFinished() > RETENTION_MILLIS;
+  }
+}
@@ -0,0 +1,158 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
+
+/**
+ * A snapshot of a {@link StagingJob} as the job status resource reports it.
+ */
+@XmlRootElement
+public class StagingJobStatus {
+
+  private String jobId;
+
+  private String phase;
+
+  private boolean done;
+
+  private long rowsLoaded;
+
+  private long rowsRejected;
+
+  private int indexCount;
+
+  private int indexDone;
+
+  private Map<String, Long> indexMillis = new HashMap<String, Long>();
+
+  private String failure;
+
+  private List<String> errors = new ArrayList<String>();
+
+  public StagingJobStatus() {
+  }
+
+  public StagingJobStatus( StagingJob job ) {
+    FileTransformStats stats = job.getStats();
+    jobId = job.getId();
+    phase = job.getPhase().name();
+    done = job.getPhase().isDone();
+    rowsLoaded = stats.getTotalRecords();
+    rowsRejected = stats.getErrorCount();
+    indexCount = stats.getIndexCount();
+    indexDone = stats.getIndexDone();
+    if ( stats.getIndexMillis() != null ) {
+      indexMillis = new HashMap<String, Long>( stats.getIndexMillis() );
+    }
+    failure = job.getFailure();
+    if ( stats.getErrors() != null ) {
+      errors = new ArrayList<String>( stats.getErrors() );
+    }
+  }
+
+  public String getJobId() {
+    return jobId;
+  }
+
+  public void setJobId( String jobId ) {
+    this.jobId = jobId;
+  }
+
+  public String getPhase() {
+    return phase;
+  }
+
+  public void setPhase( String phase ) {
+    this.phase = phase;
+  }
+
+  public boolean isDone() {
+    return done;
+  }
+
+  public void setDone( boolean done ) {
+    this.done = done;
+  }
+
+  public long getRowsLoaded() {
+    return rowsLoaded;
+  }
+
+  public void setRowsLoaded( long rowsLoaded ) {
+    this.rowsLoaded = rowsLoaded;
+  }
+
+  public long getRowsRejected() {
+    return rowsRejected;
+  }
+
+  public void setRowsRejected( long rowsRejected ) {
+    this.rowsRejected = rowsRejected;
+  }
+
+  public int getIndexCount() {
+    return indexCount;
+  }
+
+  public void setIndexCount( int indexCount ) {
+    this.indexCount = indexCount;
+  }
+
+  public int getIndexDone() {
+    return indexDone;
+  }
+
+  public void setIndexDone( int indexDone ) {
+    this.indexDone = indexDone;
+  }
+
+  /**
+   * @return how many milliseconds each index built so far took, by index name
+   */
+  public Map<String, Long> getIndexMillis() {
+    return indexMillis;
+  }
+
+  public void setIndexMillis( Map<String, Long> indexMillis ) {
+    this.indexMillis = indexMillis;
+  }
+
+  public String getFailure() {
+    return failure;
+  }
+
+  public void setFailure( String failure ) {
+    this.failure = failure;
+  }
+
+  public List<String> getErrors() {
+    return errors;
+  }
+
+  public void setErrors( List<String> errors ) {
+    this.errors = errors;
+  }
+}
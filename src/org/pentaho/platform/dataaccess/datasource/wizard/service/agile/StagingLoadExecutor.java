@@ -0,0 +1,157 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
+
+/**
+ * Runs CSV staging loads on a bounded pool, so no more than a configured number of loads hit the staging database at
+ * once and a configured number more wait their turn. Loads into the same staging table run one after another: they
+ * are queued per stripe, keyed on the table name, and only the load at the head of a stripe is handed to the pool, so
+ * a load waiting for its table never holds a worker. Loads into different tables only share a stripe by hash
+ * collision.
+ */
+public class StagingLoadExecutor {
+
+  static final int STRIPES = 64;
+
+  private static StagingLoadExecutor instance;
+
+  private final ThreadPoolExecutor executor;
+
+  private final Stripe[] stripes = new Stripe[ STRIPES ];
+
+  private final int maxLoads;
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  StagingLoadExecutor( int maxConcurrentLoads, int maxQueuedLoads ) {
+    maxLoads = maxConcurrentLoads + Math.max( maxQueuedLoads, 0 );
+    // submit() bounds the loads, so the pool's own queue never needs to turn one away
+    executor = new ThreadPoolExecutor( maxConcurrentLoads, maxConcurrentLoads, 60, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread( Runnable runnable ) {
+          Thread thread = new Thread( runnable, "data-access-staging-load-" + count.incrementAndGet() ); //$NON-NLS-1$
+          thread.setDaemon( true );
+          return thread;
+        }
+      } );
+    executor.allowCoreThreadTimeOut( true );
+    for ( int idx = 0; idx < stripes.length; idx++ ) {
+      stripes[ idx ] = new Stripe();
+    }
+  }
+
+  /**
+   * @return the executor sized by the <code>data-access-staging-max-*-loads</code> settings
+   */
+  public static synchronized StagingLoadExecutor getInstance() {
+    if ( instance == null ) {
+      instance =
+        new StagingLoadExecutor( AgileHelper.getStagingMaxConcurrentLoads(), AgileHelper.getStagingMaxQueuedLoads() );
+    }
+    return instance;
+  }
+
+  /**
+   * Queues <code>load</code> to run once a load slot is free and no other load into <code>stageTableName</code> is
+   * running. The load sees the caller's Pentaho session.
+   *
+   * @throws RejectedExecutionException if every slot is busy and the queue is full
+   */
+  public <T> Future<T> submit( final String stageTableName, final Callable<T> load ) {
+    if ( loads.incrementAndGet() > maxLoads ) {
+      loads.decrementAndGet();
+      throw new RejectedExecutionException( "Too many staging loads: " + maxLoads ); //$NON-NLS-1$
+    }
+    final IPentahoSession session = PentahoSessionHolder.getSession();
+    FutureTask<T> task = new FutureTask<T>( new Callable<T>() {
+      public T call() throws Exception {
+        PentahoSessionHolder.setSession( session );
+        try {
+          return load.call();
+        } finally {
+          PentahoSessionHolder.removeSession();
+        }
+      }
+    } );
+    getStripe( stageTableName ).add( task );
+    return task;
+  }
+
+  Stripe getStripe( String stageTableName ) {
+    int hash = stageTableName == null ? 0 : stageTableName.hashCode();
+    return stripes[ ( hash & Integer.MAX_VALUE ) % stripes.length ];
+  }
+
+  /**
+   * The loads of one stripe, of which at most one is with the pool at a time.
+   */
+  class Stripe {
+
+    private final Queue<Runnable> waiting = new LinkedList<Runnable>();
+
+    private boolean running;
+
+    synchronized void add( Runnable task ) {
+      if ( running ) {
+        waiting.add( task );
+      } else {
+        running = true;
+        execute( task );
+      }
+    }
+
+    private synchronized void next() {
+      Runnable task = waiting.poll();
+      if ( task == null ) {
+        running = false;
+      } else {
+        execute( task );
+      }
+    }
+
+    private void execute( final Runnable task ) {
+      executor.execute( new Runnable() {
+        public void run() {
+          try {
+            task.run();
+          } finally {
+            loads.decrementAndGet();
+            next();
+          }
+        }
+      } );
+    }
+  }
+}
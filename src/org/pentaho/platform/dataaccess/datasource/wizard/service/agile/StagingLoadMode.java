@@ -0,0 +1,54 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+/**
+ * How {@link StagingTransformGenerator} writes staged rows into the staging database.
+ */
+public enum StagingLoadMode {
+
+  /**
+   * One INSERT round trip per row.
+   */
+  ROW,
+
+  /**
+   * JDBC batch inserts, flushed every commit size rows. Rejected rows are still reported one by one.
+   */
+  BATCH,
+
+  /**
+   * The dialect's bulk loader where there is one (PostgreSQL COPY); other dialects fall back to {@link #BATCH}. The
+   * bulk loader stops at the first bad row instead of rejecting it.
+   */
+  BULK;
+
+  /**
+   * @return the mode named by <code>value</code>, ignoring case, or <code>defaultMode</code> if there is none
+   */
+  public static StagingLoadMode fromString( String value, StagingLoadMode defaultMode ) {
+    if ( value != null ) {
+      for ( StagingLoadMode mode : values() ) {
+        if ( mode.name().equalsIgnoreCase( value.trim() ) ) {
+          return mode;
+        }
+      }
+    }
+    return defaultMode;
+  }
+}
@@ -22,6 +22,7 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -29,8 +30,11 @@ import org.pentaho.di.core.Const;
 import org.pentaho.di.core.SQLStatement;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.PostgreSQLDatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.plugins.PluginRegistry;
+import org.pentaho.di.core.plugins.StepPluginType;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.ValueMeta;
 import org.pentaho.di.trans.Trans;
@@ -42,6 +46,7 @@ import org.pentaho.di.trans.step.StepMeta;
 import org.pentaho.di.trans.steps.calculator.CalculatorMeta;
 import org.pentaho.di.trans.steps.calculator.CalculatorMetaFunction;
 import org.pentaho.di.trans.steps.dummytrans.DummyTransMeta;
+import org.pentaho.di.trans.steps.pgbulkloader.PGBulkLoaderMeta;
 import org.pentaho.di.trans.steps.tableoutput.TableOutputMeta;
 import org.pentaho.metadata.model.concept.types.AggregationType;
 import org.pentaho.metadata.model.concept.types.DataType;
@@ -81,6 +86,14 @@ public abstract class StagingTransformGenerator extends PentahoBase {
 
   private ModelInfo modelInfo;
 
+  private StagingLoadMode loadMode;
+
+  private int commitSize;
+
+  private int indexThreads;
+
+  private transient volatile Trans loadingTrans;
+
   /**
    * Default constructor that uses the JNDI datasource configured in the plugin.xml file.
    */
@@ -174,9 +187,10 @@ public abstract class StagingTransformGenerator extends PentahoBase {
    *
    * @param truncate
    * @param session
+   * @return completes with the transform stats once every row has been loaded or rejected
    * @throws CsvTransformGeneratorException
    */
-  public void loadTable( boolean truncate, IPentahoSession session, boolean async )
+  public CompletableFuture<FileTransformStats> loadTable( boolean truncate, IPentahoSession session, boolean async )
     throws CsvTransformGeneratorException {
 
     if ( session == null ) {
@@ -200,6 +214,15 @@ public abstract class StagingTransformGenerator extends PentahoBase {
     TableOutputMeta meta = (TableOutputMeta) tableStepMeta.getStepMetaInterface();
     meta.setDatabaseMeta( targetDatabaseMeta );
     meta.setTruncateTable( truncate );
+    if ( getLoadMode() == StagingLoadMode.BULK ) {
+      if ( supportsBulkLoad() ) {
+        useBulkLoader( trans.getTransMeta(), tableStepMeta, truncate );
+      } else {
+        log.info( "No bulk loader for " + targetDatabaseMeta.getPluginId() //$NON-NLS-1$
+          + ", staging with batch inserts instead" ); //$NON-NLS-1$
+      }
+    }
+    configureCopies( trans.getTransMeta(), tableStepMeta );
     try {
       prepareTransform( trans, session );
     } catch ( Exception e ) {
@@ -210,20 +233,31 @@ public abstract class StagingTransformGenerator extends PentahoBase {
         getStackTraceAsString( e2 ) ); //$NON-NLS-1$
     }
 
-    StepInterface step = trans.findRunThread( TABLE_OUTPUT );
-    PdiTransListener listener = new PdiTransListener( trans, step, transformStats );
-    // start the listener in a thread
-    Thread listenerThread = new Thread( listener );
-    listenerThread.start();
+    PdiTransListener listener =
+      new PdiTransListener( trans, trans.findStepInterfaces( TABLE_OUTPUT ), transformStats );
+    listener.start();
     session.setAttribute( TRANS_SESSION_ATTR, trans );
+    loadingTrans = trans;
 
-    if ( async ) {
-      executeTransformAsync( trans );
-    } else {
-      executeTransformSync( trans, null, session );
+    try {
+      if ( async ) {
+        executeTransformAsync( trans );
+      } else {
+        executeTransformSync( trans, null, session );
+      }
+    } catch ( CsvTransformGeneratorException e ) {
+      listener.cancel();
+      throw e;
     }
+    return listener.getCompletion();
   }
 
+  /**
+   * Creates an index on every indexed column of the staging table. The statements run on up to
+   * {@link #getIndexThreads()} connections at once, see {@link StagingIndexBuilder}.
+   *
+   * @return the number of indexes created
+   */
   public int createIndices( IPentahoSession session ) {
 
     if ( transformStats != null ) {
@@ -236,30 +270,21 @@ public abstract class StagingTransformGenerator extends PentahoBase {
 
     String[] indexed = getIndexedColumnNames();
 
+    List<String> indexNames = new ArrayList<String>();
     List<String> commands = new ArrayList<String>();
     // TODO base this on the input rows meta for the table output step?
     for ( String columnName : indexed ) {
-      String indexSql = db.getCreateIndexStatement( tableName, columnName + "_idx", //$NON-NLS-1$
+      String indexName = columnName + "_idx"; //$NON-NLS-1$
+      String indexSql = db.getCreateIndexStatement( tableName, indexName,
         new String[] { columnName }, false, false, false, true );
+      indexNames.add( indexName );
       commands.add( indexSql );
     }
     if ( transformStats != null ) {
       transformStats.setIndexCount( commands.size() );
     }
-    int indexDone = 0;
-    int indexSuccess = 0;
-    for ( String command : commands ) {
-      try {
-        execSqlStatement( command, targetDatabaseMeta, null );
-        indexSuccess++;
-      } catch ( CsvTransformGeneratorException e ) {
-        // failed to execute
-      }
-      indexDone++;
-      if ( transformStats != null ) {
-        transformStats.setIndexDone( indexDone );
-      }
-    }
+    StagingIndexBuilder builder = new StagingIndexBuilder( this, targetDatabaseMeta, transformStats );
+    int indexSuccess = builder.build( indexNames, commands, getIndexThreads() );
     if ( transformStats != null ) {
       transformStats.setIndexFinished( true );
       transformStats.setIndexStarted( false );
@@ -272,6 +297,16 @@ public abstract class StagingTransformGenerator extends PentahoBase {
     trans.stopAll();
   }
 
+  /**
+   * Stops the transformation started by the last {@link #loadTable} call on this generator, if there was one.
+   */
+  public void cancelLoad() {
+    Trans trans = loadingTrans;
+    if ( trans != null ) {
+      trans.stopAll();
+    }
+  }
+
   protected StepMeta addDummyStep( TransMeta transMeta, String stepName ) {
     DummyTransMeta meta = new DummyTransMeta();
     // meta.setID(2);
@@ -283,13 +318,14 @@ public abstract class StagingTransformGenerator extends PentahoBase {
 
   protected StepMeta addTableOutputStep( TransMeta transMeta, String tableOutputStepName, String modelName ) {
     TableOutputMeta tableOutputMeta = new TableOutputMeta();
-    tableOutputMeta.setCommitSize( 1000 );
+    tableOutputMeta.setCommitSize( getCommitSize() );
     // meta.setID(4);
     tableOutputMeta.setIgnoreErrors( true );
     tableOutputMeta.setPartitioningEnabled( false );
     tableOutputMeta.setSchemaName( AgileHelper.getSchemaName() );
     tableOutputMeta.setTablename( getTableName() );
-    tableOutputMeta.setUseBatchUpdate( false );
+    // Kettle turns batching back off by itself on databases that cannot report rejected rows from a batch
+    tableOutputMeta.setUseBatchUpdate( getLoadMode() != StagingLoadMode.ROW );
 
     StepMeta tableOutputStepMeta = new StepMeta( tableOutputStepName, tableOutputStepName, tableOutputMeta );
 
@@ -313,6 +349,54 @@ public abstract class StagingTransformGenerator extends PentahoBase {
     return tableOutputStepMeta;
   }
 
+  /**
+   * @return whether the target database has a bulk loader {@link #useBulkLoader} knows how to configure
+   */
+  protected boolean supportsBulkLoad() {
+    return targetDatabaseMeta.getDatabaseInterface() instanceof PostgreSQLDatabaseMeta;
+  }
+
+  /**
+   * Swaps the table output step for a PostgreSQL bulk loader (COPY) that writes the same fields into the same table.
+   * The step keeps its name so the progress listener and error handling still find it.
+   */
+  protected void useBulkLoader( TransMeta transMeta, StepMeta tableStepMeta, boolean truncate )
+    throws CsvTransformGeneratorException {
+    RowMetaInterface fields;
+    try {
+      fields = transMeta.getPrevStepFields( tableStepMeta );
+    } catch ( KettleException ke ) {
+      error( "Could not determine the fields to bulk load", ke ); //$NON-NLS-1$
+      throw new CsvTransformGeneratorException( "Could not determine the fields to bulk load", ke,
+        getStackTraceAsString( ke ) ); //$NON-NLS-1$
+    }
+    String[] fieldNames = fields.getFieldNames();
+    String[] dateMasks = new String[ fieldNames.length ];
+    for ( int idx = 0; idx < fieldNames.length; idx++ ) {
+      dateMasks[ idx ] = fields.getValueMeta( idx ).isDate() ? "DATETIME" : ""; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    PGBulkLoaderMeta bulkLoaderMeta = new PGBulkLoaderMeta();
+    bulkLoaderMeta.setDatabaseMeta( targetDatabaseMeta );
+    bulkLoaderMeta.setSchemaName( AgileHelper.getSchemaName() );
+    bulkLoaderMeta.setTableName( getTableName() );
+    bulkLoaderMeta.setLoadAction( truncate ? "TRUNCATE" : "INSERT" ); //$NON-NLS-1$ //$NON-NLS-2$
+    bulkLoaderMeta.allocate( fieldNames.length );
+    bulkLoaderMeta.setFieldTable( fieldNames );
+    bulkLoaderMeta.setFieldStream( fieldNames.clone() );
+    bulkLoaderMeta.setDateMask( dateMasks );
+
+    tableStepMeta.setStepMetaInterface( bulkLoaderMeta );
+    tableStepMeta.setStepID( PluginRegistry.getInstance().getPluginId( StepPluginType.class, bulkLoaderMeta ) );
+  }
+
+  /**
+   * Sets how many copies each step of a load runs in, once the table step is final. Every step runs a single copy
+   * unless a generator whose source can be split overrides this.
+   */
+  protected void configureCopies( TransMeta transMeta, StepMeta tableStepMeta ) {
+  }
+
   protected void createHop( StepMeta fromStep, StepMeta toStep, TransMeta transMeta ) {
     TransHopMeta hopMeta = new TransHopMeta();
     hopMeta.setFromStep( fromStep );
@@ -326,25 +410,29 @@ public abstract class StagingTransformGenerator extends PentahoBase {
 
     StepInterface tableOutputStep = trans.findRunThread( TABLE_OUTPUT );
 
-    if ( tableOutputStep != null ) {
+    // a bulk loader cannot reject single rows, so only the table output gets error handling
+    if ( tableOutputStep != null && tableOutputStep.getStepMeta().getStepMetaInterface() instanceof TableOutputMeta ) {
       StepErrorMeta tableOutputErrorMeta = new StepErrorMeta( trans.getTransMeta(), tableOutputStep.getStepMeta() ) {
         public void addErrorRowData( Object[] row, int startIndex, long nrErrors, String errorDescriptions,
                                      String fieldNames, String errorCodes ) {
-          // don't overwhelm the user with too many errors
-          if ( errorRowCount < maxErrorRows ) {
-            StringBuffer sb = new StringBuffer();
-            sb.append( "Rejected Row: " );
-            for ( Object rowData : row ) {
-              sb.append( rowData );
-              sb.append( ", " );
-            }
-            sb.append( "\r\n" );
-            if ( transformStats != null ) {
-              transformStats.getErrors().add( sb.toString() + errorDescriptions );
+          // every copy of the table output step shares this error meta
+          synchronized ( StagingTransformGenerator.this ) {
+            // don't overwhelm the user with too many errors
+            if ( errorRowCount < maxErrorRows ) {
+              StringBuffer sb = new StringBuffer();
+              sb.append( "Rejected Row: " );
+              for ( Object rowData : row ) {
+                sb.append( rowData );
+                sb.append( ", " );
+              }
+              sb.append( "\r\n" );
+              if ( transformStats != null ) {
+                transformStats.getErrors().add( sb.toString() + errorDescriptions );
+              }
             }
+            errorRowCount++;
+            transformStats.setErrorCount( errorRowCount );
           }
-          errorRowCount++;
-          transformStats.setErrorCount( errorRowCount );
           super.addErrorRowData( row, startIndex, nrErrors, errorDescriptions, fieldNames, errorCodes );
         }
       };
@@ -468,59 +556,65 @@ public abstract class StagingTransformGenerator extends PentahoBase {
     Database db = getDatabase( ci );
     try {
       db.connect( null );
+      execSqlStatements( db, sqlScript );
+    } catch ( KettleDatabaseException dbe ) {
+      error( "Connection error", dbe ); //$NON-NLS-1$
+      throw new CsvTransformGeneratorException( "Connection error", dbe, getStackTraceAsString( dbe ) ); //$NON-NLS-1$
+    } finally {
+      db.disconnect();
+    }
+  }
 
-      // Multiple statements have to be split into parts
-      // We use the ";" to separate statements...
-      String all = sqlScript + Const.CR;
-      int from = 0;
-      int to = 0;
-      int length = all.length();
-
-      while ( to < length ) {
-        char c = all.charAt( to );
-        if ( c == '"' ) {
+  /**
+   * Runs every statement of <code>sqlScript</code> on a database that is already connected.
+   */
+  void execSqlStatements( Database db, String sqlScript ) throws CsvTransformGeneratorException {
+    // Multiple statements have to be split into parts
+    // We use the ";" to separate statements...
+    String all = sqlScript + Const.CR;
+    int from = 0;
+    int to = 0;
+    int length = all.length();
+
+    while ( to < length ) {
+      char c = all.charAt( to );
+      if ( c == '"' ) {
+        to++;
+        c = ' ';
+        while ( to < length && c != '"' ) {
+          c = all.charAt( to );
           to++;
-          c = ' ';
-          while ( to < length && c != '"' ) {
-            c = all.charAt( to );
-            to++;
-          }
-        } else if ( c == '\'' ) { // skip until next '
+        }
+      } else if ( c == '\'' ) { // skip until next '
+        to++;
+        c = ' ';
+        while ( to < length && c != '\'' ) {
+          c = all.charAt( to );
           to++;
-          c = ' ';
-          while ( to < length && c != '\'' ) {
-            c = all.charAt( to );
-            to++;
-          }
         }
-        c = all.charAt( to );
-        if ( c == ';' || to >= length - 1 ) { // end of statement
-          if ( to >= length - 1 ) {
-            to++; // grab last char also!
-          }
-
-          String stat = all.substring( from, to );
-          String sql = Const.trim( stat );
-          try {
-            if ( !sql.equals( "" ) ) { //$NON-NLS-1$
-              db.execStatement( sql );
-            }
+      }
+      c = all.charAt( to );
+      if ( c == ';' || to >= length - 1 ) { // end of statement
+        if ( to >= length - 1 ) {
+          to++; // grab last char also!
+        }
 
-          } catch ( Exception dbe ) {
-            error( "Error executing DDL", dbe ); //$NON-NLS-1$
-            throw new CsvTransformGeneratorException( dbe.getMessage(), dbe, getStackTraceAsString( dbe ) );
+        String stat = all.substring( from, to );
+        String sql = Const.trim( stat );
+        try {
+          if ( !sql.equals( "" ) ) { //$NON-NLS-1$
+            db.execStatement( sql );
           }
-          to++;
-          from = to;
-        } else {
-          to++;
+
+        } catch ( Exception dbe ) {
+          error( "Error executing DDL", dbe ); //$NON-NLS-1$
+          throw new CsvTransformGeneratorException( dbe.getMessage(), dbe, getStackTraceAsString( dbe ) );
         }
+        to++;
+        from = to;
+      } else {
+        to++;
       }
-    } catch ( KettleDatabaseException dbe ) {
-      error( "Connection error", dbe ); //$NON-NLS-1$
-      throw new CsvTransformGeneratorException( "Connection error", dbe, getStackTraceAsString( dbe ) ); //$NON-NLS-1$
-    } finally {
-      db.disconnect();
     }
   }
 
@@ -562,6 +656,49 @@ public abstract class StagingTransformGenerator extends PentahoBase {
     return tableName;
   }
 
+  /**
+   * @return the load mode set on this generator, or the one configured in settings.xml if none was set
+   */
+  public StagingLoadMode getLoadMode() {
+    if ( loadMode == null ) {
+      loadMode = AgileHelper.getStagingLoadMode();
+    }
+    return loadMode;
+  }
+
+  public void setLoadMode( StagingLoadMode loadMode ) {
+    this.loadMode = loadMode;
+  }
+
+  /**
+   * @return the commit size set on this generator, or the one configured in settings.xml if none was set
+   */
+  public int getCommitSize() {
+    if ( commitSize <= 0 ) {
+      commitSize = AgileHelper.getStagingCommitSize();
+    }
+    return commitSize;
+  }
+
+  public void setCommitSize( int commitSize ) {
+    this.commitSize = commitSize;
+  }
+
+  /**
+   * @return how many indexes {@link #createIndices} builds at once: the number set on this generator, or the one
+   *         configured in settings.xml for the target database if none was set
+   */
+  public int getIndexThreads() {
+    if ( indexThreads <= 0 ) {
+      indexThreads = AgileHelper.getStagingIndexThreads( targetDatabaseMeta );
+    }
+    return indexThreads;
+  }
+
+  public void setIndexThreads( int indexThreads ) {
+    this.indexThreads = indexThreads;
+  }
+
   public void setTableName( String tableName ) {
     this.tableName = tableName;
   }
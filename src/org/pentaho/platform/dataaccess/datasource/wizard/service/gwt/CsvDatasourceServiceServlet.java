@@ -61,6 +61,24 @@ public class CsvDatasourceServiceServlet extends RemoteServiceServlet implements
     return serviceImpl.generateDomain( datasourceDto );
   }
 
+  @Override
+  public String submitDomainJob( DatasourceDTO datasourceDto ) throws Exception {
+    CsvDatasourceServiceImpl serviceImpl = new CsvDatasourceServiceImpl();
+    return serviceImpl.submitDomainJob( datasourceDto );
+  }
+
+  @Override
+  public FileTransformStats getDomainJobResult( String jobId ) throws Exception {
+    CsvDatasourceServiceImpl serviceImpl = new CsvDatasourceServiceImpl();
+    return serviceImpl.getDomainJobResult( jobId );
+  }
+
+  @Override
+  public void cancelDomainJob( String jobId ) throws Exception {
+    CsvDatasourceServiceImpl serviceImpl = new CsvDatasourceServiceImpl();
+    serviceImpl.cancelDomainJob( jobId );
+  }
+
   public BogoPojo gwtWorkaround( BogoPojo pojo ) {
     return pojo;
   }
@@ -36,6 +36,21 @@ public interface ICsvDatasourceService extends RemoteService {
 
   public FileTransformStats generateDomain( DatasourceDTO datasourceDto ) throws Exception;
 
+  /**
+   * Starts {@link #generateDomain(DatasourceDTO)} in the background and returns at once.
+   *
+   * @return the id of the job
+   */
+  public String submitDomainJob( DatasourceDTO datasourceDto ) throws Exception;
+
+  /**
+   * @return what {@link #generateDomain(DatasourceDTO)} would have returned once the job is done, <code>null</code>
+   *         while it is still running
+   */
+  public FileTransformStats getDomainJobResult( String jobId ) throws Exception;
+
+  public void cancelDomainJob( String jobId ) throws Exception;
+
   public List<String> getPreviewRows( String filename, boolean isFirstRowHeader, int rows, String encoding )
     throws Exception;
 
@@ -36,6 +36,12 @@ public interface ICsvDatasourceServiceAsync {
 
   public void generateDomain( DatasourceDTO datasourceDto, AsyncCallback<IDatasourceSummary> callback );
 
+  public void submitDomainJob( DatasourceDTO datasourceDto, AsyncCallback<String> callback );
+
+  public void getDomainJobResult( String jobId, AsyncCallback<IDatasourceSummary> callback );
+
+  public void cancelDomainJob( String jobId, AsyncCallback<Void> callback );
+
   public void getPreviewRows( String filename, boolean isFirstRowHeader, int rows, String encoding,
                               AsyncCallback<List<String>> callback ) throws Exception;
 
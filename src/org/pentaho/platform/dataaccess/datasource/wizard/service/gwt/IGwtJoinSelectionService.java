@@ -18,6 +18,7 @@
 package org.pentaho.platform.dataaccess.datasource.wizard.service.gwt;
 
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.agilebi.modeler.gwt.BogoPojo;
 import org.pentaho.database.model.IDatabaseConnection;
@@ -34,6 +35,8 @@ public interface IGwtJoinSelectionService extends RemoteService {
 
   List<String> getTableFields( String table, IDatabaseConnection connection ) throws Exception;
 
+  Map<String, List<String>> getTablesFields( List<String> tables, IDatabaseConnection connection ) throws Exception;
+
   IDatasourceSummary serializeJoins( MultiTableDatasourceDTO dto, IDatabaseConnection connection ) throws Exception;
 
   MultiTableDatasourceDTO deSerializeModelState( String source ) throws Exception;
@@ -18,6 +18,7 @@
 package org.pentaho.platform.dataaccess.datasource.wizard.service.gwt;
 
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.agilebi.modeler.gwt.BogoPojo;
 import org.pentaho.database.model.IDatabaseConnection;
@@ -34,6 +35,8 @@ public interface IGwtJoinSelectionServiceAsync {
 
   void getTableFields( String table, IDatabaseConnection connection, AsyncCallback<List> callback );
 
+  void getTablesFields( List<String> tables, IDatabaseConnection connection, AsyncCallback<Map> callback );
+
   void serializeJoins( MultiTableDatasourceDTO dto, IDatabaseConnection connection,
                        AsyncCallback<IDatasourceSummary> callback );
 
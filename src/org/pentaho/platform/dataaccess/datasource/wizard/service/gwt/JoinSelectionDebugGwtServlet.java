@@ -18,6 +18,7 @@
 package org.pentaho.platform.dataaccess.datasource.wizard.service.gwt;
 
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.agilebi.modeler.gwt.BogoPojo;
 import org.pentaho.database.model.IDatabaseConnection;
@@ -81,6 +82,13 @@ public class JoinSelectionDebugGwtServlet extends RemoteServiceServlet implement
     return service.getTableFields( table, connection );
   }
 
+  public Map<String, List<String>> getTablesFields( List<String> tables, IDatabaseConnection connection )
+    throws Exception {
+    DatabaseMeta databaseMeta = this.getDatabaseMeta( connection );
+    MultitableDatasourceService service = new MultitableDatasourceService( databaseMeta );
+    return service.getTablesFields( tables, connection );
+  }
+
   public MultiTableDatasourceDTO deSerializeModelState( String source ) throws Exception {
     MultitableDatasourceService service = new MultitableDatasourceService();
     return service.deSerializeModelState( source );
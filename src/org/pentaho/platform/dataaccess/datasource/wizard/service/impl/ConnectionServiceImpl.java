@@ -39,6 +39,9 @@ import org.pentaho.platform.api.repository.datasource.NonExistingDatasourceExcep
 import org.pentaho.platform.dataaccess.datasource.wizard.service.ConnectionServiceException;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.gwt.IConnectionService;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.ConnectionServiceHelper;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DatabaseMetaCache;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.InMemoryConnectionPool;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.JdbcCatalogCache;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.messages.Messages;
 import org.pentaho.platform.engine.core.system.PentahoBase;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
@@ -317,6 +320,9 @@ public class ConnectionServiceImpl extends PentahoBase implements IConnectionSer
   }
 
   private void clearDatasource( String name ) {
+    DatabaseMetaCache.invalidate( name );
+    JdbcCatalogCache.invalidate( name );
+    InMemoryConnectionPool.invalidate( name );
     if ( datasourceService == null ) {
       logger.warn( "IDBDatasourceService bean not initialized. Unable to clear data source:  " + name );
       return;
@@ -22,11 +22,16 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.agilebi.modeler.ModelerWorkspace;
+import org.pentaho.agilebi.modeler.geo.GeoContext;
 import org.pentaho.agilebi.modeler.gwt.GwtModelerWorkspaceHelper;
 import org.pentaho.metadata.model.Domain;
 import org.pentaho.metadata.model.LogicalModel;
@@ -42,7 +47,11 @@ import org.pentaho.platform.dataaccess.datasource.wizard.models.ModelInfo;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.DatasourceServiceException;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.AgileHelper;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.CsvTransformGenerator;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJob;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJobRegistry;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingLoadExecutor;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.gwt.ICsvDatasourceService;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.ModelStateSerializer;
 import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
 import org.pentaho.platform.engine.core.system.PentahoBase;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
@@ -50,12 +59,9 @@ import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.plugin.action.kettle.KettleSystemListener;
 import org.pentaho.reporting.libraries.base.util.StringUtils;
 
-import com.thoughtworks.xstream.XStream;
 
 @SuppressWarnings( "unchecked" )
 public class CsvDatasourceServiceImpl extends PentahoBase implements ICsvDatasourceService {
-  public static final byte[] lock = new byte[ 0 ];
-
   private static final long serialVersionUID = 2498165533158485182L;
 
   private Log logger = LogFactory.getLog( CsvDatasourceServiceImpl.class );
@@ -63,14 +69,13 @@ public class CsvDatasourceServiceImpl extends PentahoBase implements ICsvDatasou
   private ModelerService modelerService = new ModelerService();
   private DSWDatasourceServiceImpl datasourceService = new DSWDatasourceServiceImpl();
 
-  private ModelerWorkspace modelerWorkspace;
+  private GeoContext geoContext;
 
   public CsvDatasourceServiceImpl() {
     super();
-    modelerWorkspace = new ModelerWorkspace( new GwtModelerWorkspaceHelper() );
 
     try {
-      modelerWorkspace.setGeoContext( datasourceService.getGeoContext() );
+      geoContext = datasourceService.getGeoContext();
     } catch ( DatasourceServiceException e ) {
       logger.warn( "Could not get a GeoContext, auto-modeling will not use be able to auto detect geographies", e );
     }
@@ -102,7 +107,7 @@ public class CsvDatasourceServiceImpl extends PentahoBase implements ICsvDatasou
     try {
       int headerRows = isFirstRowHeader ? 1 : 0;
       modelInfo = new CsvUtils().generateFields( "", fileName, AgileHelper.getCsvSampleRowSize(),
-        delimiter, enclosure, headerRows, true, true, encoding ); //$NON-NLS-1$
+        delimiter, enclosure, headerRows, true, true, encoding, AgileHelper.isCsvScanWholeFile() ); //$NON-NLS-1$
     } catch ( FileNotFoundException e ) {
       logger.error( e );
       throw new Exception( "File was not found: " + fileName );
@@ -125,68 +130,182 @@ public class CsvDatasourceServiceImpl extends PentahoBase implements ICsvDatasou
     return files;
   }
 
+  /**
+   * Stages the CSV file of <code>datasourceDto</code> and models it, waiting for the result. Loads into different
+   * staging tables run side by side, up to the configured limit; see {@link StagingLoadExecutor}.
+   */
   public FileTransformStats generateDomain( DatasourceDTO datasourceDto ) throws Exception {
-    synchronized ( lock ) {
-      ModelInfo modelInfo = datasourceDto.getCsvModelInfo();
-      IPentahoSession pentahoSession = null;
+    StagingJob job = submitJob( datasourceDto );
+    try {
+      job.await( Long.MAX_VALUE );
+    } catch ( InterruptedException e ) {
+      job.cancel();
+      throw e;
+    }
+    return getResult( job );
+  }
+
+  /**
+   * Starts staging and modeling the CSV file of <code>datasourceDto</code> in the background.
+   *
+   * @return the id to follow the job by, see {@link #getDomainJobResult(String)} and {@link #cancelDomainJob(String)}
+   */
+  public String submitDomainJob( DatasourceDTO datasourceDto ) throws Exception {
+    return submitJob( datasourceDto ).getId();
+  }
+
+  /**
+   * @return the stats of the finished job, or <code>null</code> while it is still running
+   * @throws Exception why the job failed, or that there is no such job for the current user
+   */
+  public FileTransformStats getDomainJobResult( String jobId ) throws Exception {
+    return getResult( getJob( jobId ) );
+  }
+
+  /**
+   * @throws Exception if the job is already modeling or saving the datasource, and so can no longer be cancelled
+   */
+  public void cancelDomainJob( String jobId ) throws Exception {
+    if ( !getJob( jobId ).cancel() ) {
+      throw new Exception( "The CSV datasource job is already saving the datasource" ); //$NON-NLS-1$
+    }
+  }
+
+  /**
+   * @return the job with the given id if the current user submitted it
+   */
+  public StagingJob getJob( String jobId ) throws Exception {
+    StagingJob job = StagingJobRegistry.getInstance().get( jobId, getUserName() );
+    if ( job == null ) {
+      throw new Exception( "No such CSV datasource job: " + jobId ); //$NON-NLS-1$
+    }
+    return job;
+  }
+
+  private String getUserName() {
+    IPentahoSession session = PentahoSessionHolder.getSession();
+    return session == null ? null : session.getName();
+  }
+
+  /**
+   * Hands over the outcome of a job that has ended, which is then forgotten. The job only kept the id of the domain
+   * it saved, so the domain is read back here.
+   */
+  private FileTransformStats getResult( StagingJob job ) throws Exception {
+    StagingJob.Phase phase = job.getPhase();
+    if ( !phase.isDone() ) {
+      return null;
+    }
+    StagingJobRegistry.getInstance().remove( job );
+    if ( phase == StagingJob.Phase.FAILED ) {
+      throw job.getCause();
+    } else if ( phase == StagingJob.Phase.CANCELLED ) {
+      throw new Exception( "The CSV datasource job was cancelled" ); //$NON-NLS-1$
+    }
+    FileTransformStats stats = job.getStats();
+    if ( job.getDomainId() != null ) {
+      stats.setDomain( modelerService.loadDomain( job.getDomainId() ) );
+    }
+    return stats;
+  }
+
+  private StagingJob submitJob( final DatasourceDTO datasourceDto ) throws Exception {
+    String stageTableName = datasourceDto.getCsvModelInfo().getStageTableName();
+    final StagingJob job = StagingJobRegistry.getInstance().create( getUserName(), new FileTransformStats() );
+    try {
+      job.setFuture( StagingLoadExecutor.getInstance().submit( stageTableName,
+        new Callable<FileTransformStats>() {
+          public FileTransformStats call() throws Exception {
+            try {
+              FileTransformStats stats = stageAndModel( datasourceDto, job );
+              job.setPhase( StagingJob.Phase.FINISHED );
+              return stats;
+            } catch ( Exception e ) {
+              job.fail( e );
+              throw e;
+            }
+          }
+        } ) );
+    } catch ( RejectedExecutionException e ) {
+      StagingJobRegistry.getInstance().remove( job );
+      logger.error( e.getMessage() );
+      throw new Exception( "Too many CSV datasources are being created at once, try again later" ); //$NON-NLS-1$
+    }
+    return job;
+  }
+
+  private FileTransformStats stageAndModel( DatasourceDTO datasourceDto, StagingJob job ) throws Exception {
+    ModelInfo modelInfo = datasourceDto.getCsvModelInfo();
+    // the session is the submitter's, lent by StagingLoadExecutor; it outlives the job and is not the job's to destroy
+    IPentahoSession pentahoSession = PentahoSessionHolder.getSession();
+    String statsKey =
+      FileTransformStats.class.getSimpleName() + "_" + modelInfo.getFileInfo().getTmpFilename(); //$NON-NLS-1$
+    try {
+      KettleSystemListener.environmentInit( pentahoSession );
+
+      FileTransformStats stats = job.getStats();
+      pentahoSession.setAttribute( statsKey, stats );
+      CsvTransformGenerator csvTransformGenerator =
+        new CsvTransformGenerator( modelInfo, AgileHelper.getDatabaseMeta() );
+      csvTransformGenerator.setTransformStats( stats );
+      job.setGenerator( csvTransformGenerator );
+      job.setPhase( StagingJob.Phase.STAGING );
+
+
       try {
-        pentahoSession = PentahoSessionHolder.getSession();
-        KettleSystemListener.environmentInit( pentahoSession );
-
-        String statsKey =
-          FileTransformStats.class.getSimpleName() + "_" + modelInfo.getFileInfo().getTmpFilename(); //$NON-NLS-1$
-
-        FileTransformStats stats = new FileTransformStats();
-        pentahoSession.setAttribute( statsKey, stats );
-        CsvTransformGenerator csvTransformGenerator =
-          new CsvTransformGenerator( modelInfo, AgileHelper.getDatabaseMeta() );
-        csvTransformGenerator.setTransformStats( stats );
-
-
-        try {
-          csvTransformGenerator.dropTable( modelInfo.getStageTableName() );
-        } catch ( CsvTransformGeneratorException e ) {
-          // this is ok, the table may not have existed.
-          logger.info( "Could not drop table before staging" ); //$NON-NLS-1$
-        }
-        csvTransformGenerator.createOrModifyTable( pentahoSession );
-
-        // no longer need to truncate the table since we dropped it a few lines up, so just pass false
-        csvTransformGenerator.loadTable( false, pentahoSession, true );
-
-        ArrayList<String> combinedErrors = new ArrayList<String>( modelInfo.getCsvInputErrors() );
-        combinedErrors.addAll( modelInfo.getTableOutputErrors() );
-        stats.setErrors( combinedErrors );
-
-        // wait until it it done
-        while ( !stats.isRowsFinished() ) {
-          Thread.sleep( 200 );
-        }
-
-        modelerWorkspace.setDomain( modelerService.generateCSVDomain( modelInfo ) );
-        modelerWorkspace.getWorkspaceHelper().autoModelFlat( modelerWorkspace );
-        modelerWorkspace.getWorkspaceHelper().autoModelRelationalFlat( modelerWorkspace );
-        modelerWorkspace.setModelName( modelInfo.getDatasourceName() );
-        modelerWorkspace.getWorkspaceHelper().populateDomain( modelerWorkspace );
-        Domain workspaceDomain = modelerWorkspace.getDomain();
-
-        XStream xstream = new XStream();
-        String serializedDto = xstream.toXML( datasourceDto );
-        workspaceDomain.getLogicalModels().get( 0 ).setProperty( "datasourceModel", serializedDto );
-        workspaceDomain.getLogicalModels().get( 0 ).setProperty( "DatasourceType", "CSV" );
-        prepareForSerialization( workspaceDomain );
-
-        modelerService.serializeModels( workspaceDomain, modelerWorkspace.getModelName() );
-        stats.setDomain( modelerWorkspace.getDomain() );
-
-        return stats;
-      } catch ( Exception e ) {
-        logger.error( e.getMessage() );
+        csvTransformGenerator.dropTable( modelInfo.getStageTableName() );
+      } catch ( CsvTransformGeneratorException e ) {
+        // this is ok, the table may not have existed.
+        logger.info( "Could not drop table before staging" ); //$NON-NLS-1$
+      }
+      csvTransformGenerator.createOrModifyTable( pentahoSession );
+
+      // no longer need to truncate the table since we dropped it a few lines up, so just pass false
+      Future<FileTransformStats> loaded = csvTransformGenerator.loadTable( false, pentahoSession, true );
+
+      ArrayList<String> combinedErrors = new ArrayList<String>( modelInfo.getCsvInputErrors() );
+      combinedErrors.addAll( modelInfo.getTableOutputErrors() );
+      stats.setErrors( combinedErrors );
+
+      // wait until it it done
+      try {
+        loaded.get();
+      } catch ( InterruptedException e ) {
+        // the job was cancelled before the transformation was known to it
+        csvTransformGenerator.cancelLoad();
         throw e;
-      } finally {
-        if ( pentahoSession != null ) {
-          pentahoSession.destroy();
-        }
+      }
+      // from here on the job saves the datasource and can no longer be cancelled
+      if ( !job.setPhase( StagingJob.Phase.MODELING ) ) {
+        throw new CancellationException( "The CSV datasource job was cancelled" ); //$NON-NLS-1$
+      }
+
+      // loads may run side by side, so each models in a workspace of its own
+      ModelerWorkspace modelerWorkspace = new ModelerWorkspace( new GwtModelerWorkspaceHelper() );
+      modelerWorkspace.setGeoContext( geoContext );
+      modelerWorkspace.setDomain( modelerService.generateCSVDomain( modelInfo ) );
+      modelerWorkspace.getWorkspaceHelper().autoModelFlat( modelerWorkspace );
+      modelerWorkspace.getWorkspaceHelper().autoModelRelationalFlat( modelerWorkspace );
+      modelerWorkspace.setModelName( modelInfo.getDatasourceName() );
+      modelerWorkspace.getWorkspaceHelper().populateDomain( modelerWorkspace );
+      Domain workspaceDomain = modelerWorkspace.getDomain();
+
+      String serializedDto = ModelStateSerializer.toXML( datasourceDto );
+      workspaceDomain.getLogicalModels().get( 0 ).setProperty( "datasourceModel", serializedDto );
+      workspaceDomain.getLogicalModels().get( 0 ).setProperty( "DatasourceType", "CSV" );
+      prepareForSerialization( workspaceDomain );
+
+      job.setPhase( StagingJob.Phase.SAVING );
+      modelerService.serializeModels( workspaceDomain, modelerWorkspace.getModelName() );
+      job.setDomainId( workspaceDomain.getId() );
+
+      return stats;
+    } catch ( Exception e ) {
+      logger.error( e.getMessage() );
+      throw e;
+    } finally {
+      if ( pentahoSession != null ) {
+        pentahoSession.removeAttribute( statsKey );
       }
     }
   }
@@ -210,8 +329,7 @@ public class CsvDatasourceServiceImpl extends PentahoBase implements ICsvDatasou
 
     if ( modelState != null ) {
 
-      XStream xs = new XStream();
-      DatasourceDTO datasource = (DatasourceDTO) xs.fromXML( modelState );
+      DatasourceDTO datasource = (DatasourceDTO) ModelStateSerializer.fromXML( modelState );
       CsvFileInfo csvFileInfo = datasource.getCsvModelInfo().getFileInfo();
       String tmpFileName = csvFileInfo.getTmpFilename();
       String csvFileName = csvFileInfo.getFilename();
@@ -227,7 +345,7 @@ public class CsvDatasourceServiceImpl extends PentahoBase implements ICsvDatasou
       // datasource.
       datasource.setQuery( null );
       // Update datasourceModel with the new modelState
-      modelState = xs.toXML( datasource );
+      modelState = ModelStateSerializer.toXML( datasource );
       logicalModel.setProperty( "datasourceModel", modelState );
     }
   }
@@ -23,7 +23,6 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
@@ -34,7 +33,6 @@ import org.pentaho.agilebi.modeler.ModelerWorkspace;
 import org.pentaho.agilebi.modeler.geo.GeoContext;
 import org.pentaho.agilebi.modeler.gwt.GwtModelerWorkspaceHelper;
 import org.pentaho.commons.connection.IPentahoConnection;
-import org.pentaho.commons.connection.IPentahoResultSet;
 import org.pentaho.database.model.DatabaseConnection;
 import org.pentaho.database.model.IDatabaseConnection;
 import org.pentaho.database.model.IDatabaseType;
@@ -68,8 +66,11 @@ import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.AgileHelp
 import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.CsvTransformGenerator;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.gwt.IDSWDatasourceService;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DatasourceServiceHelper;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.ModelStateSerializer;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.messages.Messages;
 import org.pentaho.platform.dataaccess.datasource.wizard.sources.query.QueryDatasourceSummary;
+import org.pentaho.platform.dataaccess.metadata.service.DatasourceCatalog;
+import org.pentaho.platform.dataaccess.metadata.service.DomainChangeNotifier;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.engine.security.SecurityHelper;
@@ -82,7 +83,6 @@ import org.pentaho.platform.util.logging.SimpleLogger;
 import org.pentaho.platform.util.messages.LocaleHelper;
 import org.pentaho.platform.util.web.SimpleUrlFactory;
 
-import com.thoughtworks.xstream.XStream;
 
 public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
 
@@ -236,6 +236,7 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
       if ( domain.getLogicalModels() == null || domain.getLogicalModels().isEmpty() ) {
         getMetadataDomainRepository().removeDomain( domainId );
       }
+      DomainChangeNotifier.domainChanged( domainId );
     } catch ( MondrianCatalogServiceException me ) {
       logger.error( Messages.getErrorString(
         "DatasourceServiceImpl.ERROR_0020_UNABLE_TO_DELETE_CATALOG", catalogRef, domainId, me.getLocalizedMessage() ), me ); //$NON-NLS-1$
@@ -255,25 +256,29 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
     return true;
   }
 
-  private IPentahoResultSet executeQuery( String connectionName, String query, String previewLimit )
+  /**
+   * Validates <code>query</code> and reads its preview in a single execution on one connection. The query runs
+   * wrapped in <code>SELECT * FROM ( query ) tbl</code>, the way the generated model will use it, which yields the
+   * same columns and rows as the bare query.
+   */
+  private SerializedResultSet previewQuery( String connectionName, String query, int previewLimit )
     throws QueryValidationException, SqlQueriesNotSupportedException {
     SQLConnection sqlConnection = null;
     try {
       checkSqlQueriesSupported( connectionName );
 
-      int limit = ( previewLimit != null && previewLimit.length() > 0 ) ? Integer.parseInt( previewLimit ) : -1;
       sqlConnection = (SQLConnection) PentahoConnectionFactory.getConnection( IPentahoConnection.SQL_DATASOURCE,
         connectionName, PentahoSessionHolder.getSession(),
         new SimpleLogger( DatasourceServiceHelper.class.getName() ) );
-      sqlConnection.setMaxRows( limit );
       sqlConnection.setReadOnly( true );
-      return sqlConnection.executeQuery( BEFORE_QUERY + query + AFTER_QUERY );
+      return DatasourceServiceHelper.getSerializeableResultSet( sqlConnection.getNativeConnection(),
+        BEFORE_QUERY + query + AFTER_QUERY, previewLimit );
     } catch ( SqlQueriesNotSupportedException e ) {
       logger.error( e.getLocalizedMessage() );
       throw e;
     } catch ( SQLException e ) {
       String error = "DatasourceServiceImpl.ERROR_0009_QUERY_VALIDATION_FAILED";
-      if ( e.getSQLState().equals( "S0021" ) ) { // Column already exists
+      if ( "S0021".equals( e.getSQLState() ) ) { // Column already exists
         error = "DatasourceServiceImpl.ERROR_0021_DUPLICATE_COLUMN_NAMES";
       }
       logger.error( Messages.getErrorString( error ) );
@@ -289,6 +294,10 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
     }
   }
 
+  private static int parsePreviewLimit( String previewLimit ) {
+    return ( previewLimit != null && previewLimit.length() > 0 ) ? Integer.parseInt( previewLimit ) : -1;
+  }
+
   /**
    * Method is designed to check whether sql queries can be executed via connection with a {@core connName}.
    * For now we can't allow sql queries for connections, that are based on Pentaho Data Services.
@@ -321,9 +330,7 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
     }
     SerializedResultSet returnResultSet;
     try {
-      executeQuery( connectionName, query, previewLimit );
-      returnResultSet = DatasourceServiceHelper.getSerializeableResultSet( connectionName, query,
-        Integer.parseInt( previewLimit ), PentahoSessionHolder.getSession() );
+      returnResultSet = previewQuery( connectionName, query, parsePreviewLimit( previewLimit ) );
     } catch ( QueryValidationException e ) {
       throw new DatasourceServiceException( Messages.getErrorString(
         "DatasourceServiceImpl.ERROR_0009_QUERY_VALIDATION_FAILED", e.getLocalizedMessage() ), e ); //$NON-NLS-1$
@@ -380,12 +387,10 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
         .getErrorString( "DatasourceServiceImpl.ERROR_0001_PERMISSION_DENIED" ) ); //$NON-NLS-1$
     }
     try {
-      // Testing whether the query is correct or not
-      executeQuery( connectionName, query, previewLimit );
+      // Testing whether the query is correct or not, and reading the preview on the way
+      SerializedResultSet resultSet = previewQuery( connectionName, query, parsePreviewLimit( previewLimit ) );
       Boolean securityEnabled = ( getPermittedRoleList() != null && getPermittedRoleList().size() > 0 )
         || ( getPermittedUserList() != null && getPermittedUserList().size() > 0 );
-      SerializedResultSet resultSet = DatasourceServiceHelper.getSerializeableResultSet( connectionName, query,
-        Integer.parseInt( previewLimit ), PentahoSessionHolder.getSession() );
 
       SQLModelGenerator sqlModelGenerator =
         new SQLModelGenerator( modelName, connectionName, dbType, resultSet.getColumnTypes(), resultSet.getColumns(),
@@ -436,6 +441,7 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
     String domainName = domain.getId();
     try {
       getMetadataDomainRepository().storeDomain( domain, overwrite );
+      DomainChangeNotifier.domainChanged( domainName );
       return true;
     } catch ( DomainStorageException dse ) {
       logger.error( Messages.getErrorString(
@@ -471,39 +477,26 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
         .getErrorString( "DatasourceServiceImpl.ERROR_0001_PERMISSION_DENIED" ) ); //$NON-NLS-1$
     }
     List<LogicalModelSummary> logicalModelSummaries = new ArrayList<LogicalModelSummary>();
+    DatasourceCatalog catalog = DatasourceCatalog.forRepository( getMetadataDomainRepository() );
+    String userLocale = LocaleHelper.getLocale().toString();
     for ( String domainId : getMetadataDomainRepository().getDomainIds() ) {
-      Domain domain;
+      DatasourceCatalog.DomainSummary domain;
       try {
-        domain = getMetadataDomainRepository().getDomain( domainId );
+        domain = catalog.getDomainSummary( domainId );
       } catch ( Exception e ) {
         logger.error(
           Messages.getErrorString( "DatasourceServiceImpl.ERROR_0022_UNABLE_TO_PROCESS_LOGICAL_MODEL", domainId ), e );
         continue;
       }
-
-      String locale = LocaleHelper.getLocale().toString();
-      String[] locales = new String[ domain.getLocales().size() ];
-      for ( int i = 0; i < domain.getLocales().size(); i++ ) {
-        locales[ i ] = domain.getLocales().get( i ).getCode();
+      if ( domain == null ) {
+        continue;
       }
-      locale = LocaleHelper.getClosestLocale( locale, locales );
-
-      for ( LogicalModel model : domain.getLogicalModels() ) {
-        String vis = (String) model.getProperty( LM_PROP_VISIBLE );
-        if ( vis != null ) {
-          String[] visibleContexts = vis.split( "," );
-          boolean visibleToContext = false;
-          for ( String c : visibleContexts ) {
-            if ( StringUtils.isNotEmpty( c.trim() ) && c.trim().equals( context ) ) {
-              visibleToContext = true;
-              break;
-            }
-          }
-          if ( !visibleToContext ) {
-            continue;
-          }
+
+      String locale = domain.getClosestLocale( userLocale );
+      for ( DatasourceCatalog.ModelSummary model : domain.getModels() ) {
+        if ( model.isVisibleTo( context ) ) {
+          logicalModelSummaries.add( new LogicalModelSummary( domainId, model.getId(), model.getName( locale ) ) );
         }
-        logicalModelSummaries.add( new LogicalModelSummary( domainId, model.getId(), model.getName( locale ) ) );
       }
     }
     return logicalModelSummaries;
@@ -538,31 +531,26 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
   }
 
   public String serializeModelState( DatasourceDTO dto ) throws DatasourceServiceException {
-    XStream xstream = new XStream();
-    return xstream.toXML( dto );
+    return ModelStateSerializer.toXML( dto );
   }
 
   public DatasourceDTO deSerializeModelState( String dtoStr ) throws DatasourceServiceException {
-    XStream xs = new XStream();
-    xs.setClassLoader( DatasourceDTO.class.getClassLoader() );
-    return (DatasourceDTO) xs.fromXML( dtoStr );
+    return (DatasourceDTO) ModelStateSerializer.fromXML( dtoStr );
   }
 
   public List<String> listDatasourceNames() throws IOException {
-    synchronized ( CsvDatasourceServiceImpl.lock ) {
-      IPentahoUrlFactory urlFactory = new SimpleUrlFactory( "" ); //$NON-NLS-1$
-      PMDUIComponent component = new PMDUIComponent( urlFactory, new ArrayList() );
-      component.validate( PentahoSessionHolder.getSession(), null );
-      component.setAction( PMDUIComponent.ACTION_LIST_MODELS );
-      Document document = component.getXmlContent();
-      List<DefaultElement> modelElements = document.selectNodes( "//model_name" ); //$NON-NLS-1$
-
-      ArrayList<String> datasourceNames = new ArrayList<String>();
-      for ( DefaultElement element : modelElements ) {
-        datasourceNames.add( element.getText() );
-      }
-      return datasourceNames;
+    IPentahoUrlFactory urlFactory = new SimpleUrlFactory( "" ); //$NON-NLS-1$
+    PMDUIComponent component = new PMDUIComponent( urlFactory, new ArrayList() );
+    component.validate( PentahoSessionHolder.getSession(), null );
+    component.setAction( PMDUIComponent.ACTION_LIST_MODELS );
+    Document document = component.getXmlContent();
+    List<DefaultElement> modelElements = document.selectNodes( "//model_name" ); //$NON-NLS-1$
+
+    ArrayList<String> datasourceNames = new ArrayList<String>();
+    for ( DefaultElement element : modelElements ) {
+      datasourceNames.add( element.getText() );
     }
+    return datasourceNames;
   }
 
   @Override
@@ -574,11 +562,9 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
     modelerWorkspace.setModelName( name );
 
     try {
-      executeQuery( datasourceDTO.getConnectionName(), query, "1" );
+      SerializedResultSet resultSet = previewQuery( connection.getName(), query, 10 );
       Boolean securityEnabled = ( getPermittedRoleList() != null && getPermittedRoleList().size() > 0 )
         || ( getPermittedUserList() != null && getPermittedUserList().size() > 0 );
-      SerializedResultSet resultSet = DatasourceServiceHelper.getSerializeableResultSet( connection.getName(), query,
-        10, PentahoSessionHolder.getSession() );
       SQLModelGenerator sqlModelGenerator =
         new SQLModelGenerator( name, connection.getName(), connection.getDatabaseType().getShortName(),
           resultSet.getColumnTypes(), resultSet.getColumns(), query,
@@ -647,8 +633,7 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
     String modelState = (String) logicalModel.getProperty( "datasourceModel" );
 
     if ( modelState != null ) {
-      XStream xs = new XStream();
-      DatasourceDTO datasource = (DatasourceDTO) xs.fromXML( modelState );
+      DatasourceDTO datasource = (DatasourceDTO) ModelStateSerializer.fromXML( modelState );
       CsvFileInfo csvFileInfo = datasource.getCsvModelInfo().getFileInfo();
       String csvFileName = csvFileInfo.getFilename();
 
@@ -678,7 +663,7 @@ public class DSWDatasourceServiceImpl implements IDSWDatasourceService {
         }
       }
       // Update datasourceModel with the new modelState
-      modelState = xs.toXML( datasource );
+      modelState = ModelStateSerializer.toXML( datasource );
       logicalModel.setProperty( "datasourceModel", modelState );
     }
   }
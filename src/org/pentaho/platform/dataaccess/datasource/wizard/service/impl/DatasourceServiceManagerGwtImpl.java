@@ -23,6 +23,7 @@ import java.util.List;
 import org.pentaho.gwt.widgets.client.utils.NameUtils;
 import org.pentaho.gwt.widgets.login.client.AuthenticatedGwtServiceUtil;
 import org.pentaho.gwt.widgets.login.client.IAuthenticatedGwtCommand;
+import org.pentaho.platform.dataaccess.datasource.DatasourceInfo;
 import org.pentaho.platform.dataaccess.datasource.IDatasourceInfo;
 import org.pentaho.platform.dataaccess.datasource.ui.service.DSWUIDatasourceService;
 import org.pentaho.platform.dataaccess.datasource.ui.service.MetadataUIDatasourceService;
@@ -35,6 +36,10 @@ import com.google.gwt.http.client.RequestBuilder;
 import com.google.gwt.http.client.RequestCallback;
 import com.google.gwt.http.client.RequestException;
 import com.google.gwt.http.client.Response;
+import com.google.gwt.json.client.JSONArray;
+import com.google.gwt.json.client.JSONObject;
+import com.google.gwt.json.client.JSONParser;
+import com.google.gwt.json.client.JSONValue;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.xml.client.Document;
@@ -48,9 +53,16 @@ public class DatasourceServiceManagerGwtImpl implements IXulAsyncDatasourceServi
   String getAnalysisDatasourceIdsURL = getWebAppRoot() + "plugin/data-access/api/datasource/analysis/ids"; //$NON-NLS-1$
   String getMetadataDatasourceIdsURL = getWebAppRoot() + "plugin/data-access/api/datasource/metadata/ids"; //$NON-NLS-1$
   String getDSWDatasourceIdsURL = getWebAppRoot() + "plugin/data-access/api/datasource/dsw/ids"; //$NON-NLS-1$
+  String getDatasourcesURL = getWebAppRoot() + "plugin/data-access/api/datasource/all"; //$NON-NLS-1$
 
   String isAdminURL = getWebAppRoot() + "api/repo/files/canAdminister"; //$NON-NLS-1$
 
+  /**
+   * The last list of datasources received and its entity tag, to revalidate it with rather than fetch it again.
+   */
+  private List<IDatasourceInfo> datasources;
+  private String datasourcesTag;
+
   @Override
   public void getAnalysisDatasourceIds( final XulServiceCallback<List<String>> xulCallback ) {
     AuthenticatedGwtServiceUtil.invokeCommand( new IAuthenticatedGwtCommand() {
@@ -245,6 +257,81 @@ public class DatasourceServiceManagerGwtImpl implements IXulAsyncDatasourceServi
     } );
   }
 
+  @Override
+  public void getDatasources( final XulServiceCallback<List<IDatasourceInfo>> xulCallback ) {
+    AuthenticatedGwtServiceUtil.invokeCommand( new IAuthenticatedGwtCommand() {
+      public void execute( final AsyncCallback callback ) {
+        RequestBuilder requestBuilder = new RequestBuilder( RequestBuilder.GET, getDatasourcesURL );
+        requestBuilder.setHeader( "Accept", "application/json" ); //$NON-NLS-1$ //$NON-NLS-2$
+        if ( datasourcesTag != null ) {
+          requestBuilder.setHeader( "If-None-Match", datasourcesTag ); //$NON-NLS-1$
+        }
+        try {
+          requestBuilder.sendRequest( null, new RequestCallback() {
+            @Override
+            public void onError( Request request, Throwable exception ) {
+              callback.onFailure( exception );
+            }
+
+            @Override
+            public void onResponseReceived( Request request, Response response ) {
+              if ( response.getStatusCode() == Response.SC_NOT_MODIFIED && datasources != null ) {
+                callback.onSuccess( new ArrayList<IDatasourceInfo>( datasources ) );
+              } else if ( response.getStatusCode() == Response.SC_OK ) {
+                datasources = convertResponseToDatasources( response );
+                datasourcesTag = response.getHeader( "ETag" ); //$NON-NLS-1$
+                callback.onSuccess( new ArrayList<IDatasourceInfo>( datasources ) );
+              } else {
+                callback.onFailure( new Exception( response.getStatusText() ) );
+              }
+            }
+
+          } );
+        } catch ( RequestException e ) {
+          xulCallback.error( e.getLocalizedMessage(), e );
+        }
+      }
+    }, new AsyncCallback<List<IDatasourceInfo>>() {
+
+      public void onFailure( Throwable arg0 ) {
+        xulCallback.error( arg0.getLocalizedMessage(), arg0 );
+      }
+
+      public void onSuccess( List<IDatasourceInfo> arg0 ) {
+        xulCallback.success( arg0 );
+      }
+
+    } );
+  }
+
+  private List<IDatasourceInfo> convertResponseToDatasources( Response response ) {
+    List<IDatasourceInfo> datasourceList = new ArrayList<IDatasourceInfo>();
+    JSONObject result = JSONParser.parseStrict( response.getText() ).isObject();
+    JSONArray items = result.get( "datasources" ).isArray(); //$NON-NLS-1$
+    for ( int i = 0; i < items.size(); i++ ) {
+      JSONObject item = items.get( i ).isObject();
+      String name = getString( item, "name" ); //$NON-NLS-1$
+      String id = getString( item, "id" ); //$NON-NLS-1$
+      String type = getString( item, "type" ); //$NON-NLS-1$
+      boolean editable = getBoolean( item, "editable" ); //$NON-NLS-1$
+      boolean removable = getBoolean( item, "removable" ); //$NON-NLS-1$
+      boolean importable = getBoolean( item, "importable" ); //$NON-NLS-1$
+      boolean exportable = getBoolean( item, "exportable" ); //$NON-NLS-1$
+      datasourceList.add( new DatasourceInfo( name, id, type, editable, removable, importable, exportable ) );
+    }
+    return datasourceList;
+  }
+
+  private String getString( JSONObject item, String key ) {
+    JSONValue value = item.get( key );
+    return value != null && value.isString() != null ? value.isString().stringValue() : null;
+  }
+
+  private boolean getBoolean( JSONObject item, String key ) {
+    JSONValue value = item.get( key );
+    return value != null && value.isBoolean() != null && value.isBoolean().booleanValue();
+  }
+
   /* (non-Javadoc)
    * @see org.pentaho.platform.dataaccess.datasource.wizard.service.IXulAsyncDatasourceServiceManager#export(org
    * .pentaho.platform.dataaccess.datasource.IDatasourceInfo)
@@ -22,6 +22,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -34,7 +35,6 @@ import org.pentaho.agilebi.modeler.geo.GeoContext;
 import org.pentaho.agilebi.modeler.geo.GeoContextFactory;
 import org.pentaho.agilebi.modeler.geo.GeoContextPropertiesProvider;
 import org.pentaho.agilebi.modeler.gwt.GwtModelerWorkspaceHelper;
-import org.pentaho.commons.connection.IPentahoResultSet;
 import org.pentaho.database.model.DatabaseConnection;
 import org.pentaho.metadata.model.Domain;
 import org.pentaho.metadata.model.InlineEtlPhysicalModel;
@@ -56,13 +56,13 @@ import org.pentaho.platform.dataaccess.datasource.wizard.service.DatasourceServi
 import org.pentaho.platform.dataaccess.datasource.wizard.service.QueryValidationException;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.gwt.IDSWDatasourceService;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DatasourceInMemoryServiceHelper;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.ModelStateSerializer;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.messages.Messages;
 import org.pentaho.platform.dataaccess.datasource.wizard.sources.query.QueryDatasourceSummary;
+import org.pentaho.platform.dataaccess.metadata.service.DomainChangeNotifier;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
-import org.pentaho.platform.plugin.services.connections.sql.SQLConnection;
 import org.pentaho.platform.util.messages.LocaleHelper;
 
-import com.thoughtworks.xstream.XStream;
 
 /*
  * TODO mlowery This class professes to be a datasource service yet it takes as inputs both IDatasource instances and 
@@ -98,6 +98,7 @@ public class InMemoryDSWDatasourceServiceImpl implements IDSWDatasourceService {
   public boolean deleteLogicalModel( String domainId, String modelName ) throws DatasourceServiceException {
     try {
       metadataDomainRepository.removeModel( domainId, modelName );
+      DomainChangeNotifier.domainChanged( domainId );
     } catch ( DomainStorageException dse ) {
       logger
         .error( Messages.getErrorString( "InMemoryDatasourceServiceImpl.ERROR_0017_UNABLE_TO_STORE_DOMAIN", domainId ),
@@ -127,23 +128,24 @@ public class InMemoryDSWDatasourceServiceImpl implements IDSWDatasourceService {
     return dataAccessViewPermHandler.getDefaultAcls( PentahoSessionHolder.getSession() );
   }
 
-  private IPentahoResultSet executeQuery( String connectionName, String query, String previewLimit )
+  private void executeQuery( String connectionName, String query, String previewLimit )
     throws QueryValidationException {
-    SQLConnection sqlConnection = null;
+    java.sql.Connection connection = null;
+    Statement statement = null;
     int limit = ( previewLimit != null && previewLimit.length() > 0 ) ? Integer.parseInt( previewLimit ) : -1;
     try {
-      sqlConnection = DatasourceInMemoryServiceHelper.getConnection( connectionName );
-      sqlConnection.setMaxRows( limit );
-      sqlConnection.setReadOnly( true );
-      return sqlConnection.executeQuery( BEFORE_QUERY + query + AFTER_QUERY );
+      connection = DatasourceInMemoryServiceHelper.getDataSourceConnection( connectionName );
+      statement = connection.createStatement();
+      if ( limit > 0 ) {
+        statement.setMaxRows( limit );
+      }
+      statement.executeQuery( BEFORE_QUERY + query + AFTER_QUERY ).close();
     } catch ( Exception e ) {
       logger.error( Messages.getErrorString(
         "InMemoryDatasourceServiceImpl.ERROR_0009_QUERY_VALIDATION_FAILED", e.getLocalizedMessage() ), e ); //$NON-NLS-1$
       throw new QueryValidationException( e.getLocalizedMessage(), e ); //$NON-NLS-1$
     } finally {
-      if ( sqlConnection != null ) {
-        sqlConnection.close();
-      }
+      DatasourceInMemoryServiceHelper.close( statement, connection );
     }
 
   }
@@ -256,6 +258,7 @@ public class InMemoryDSWDatasourceServiceImpl implements IDSWDatasourceService {
     String domainName = domain.getId();
     try {
       getMetadataDomainRepository().storeDomain( domain, overwrite );
+      DomainChangeNotifier.domainChanged( domainName );
       return true;
     } catch ( DomainStorageException dse ) {
       logger.error( Messages.getErrorString( "InMemoryDatasourceServiceImpl.ERROR_0017_UNABLE_TO_STORE_DOMAIN",
@@ -317,14 +320,12 @@ public class InMemoryDSWDatasourceServiceImpl implements IDSWDatasourceService {
   }
 
   public String serializeModelState( DatasourceDTO dto ) throws DatasourceServiceException {
-    XStream xs = new XStream();
-    return xs.toXML( dto );
+    return ModelStateSerializer.toXML( dto );
   }
 
   public DatasourceDTO deSerializeModelState( String dtoStr ) throws DatasourceServiceException {
     try {
-      XStream xs = new XStream();
-      return (DatasourceDTO) xs.fromXML( dtoStr );
+      return (DatasourceDTO) ModelStateSerializer.fromXML( dtoStr );
     } catch ( Exception e ) {
       e.printStackTrace();
       throw new DatasourceServiceException( e );
@@ -18,6 +18,7 @@
 package org.pentaho.platform.dataaccess.datasource.wizard.service.impl;
 
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.agilebi.modeler.gwt.BogoPojo;
 import org.pentaho.database.model.IDatabaseConnection;
@@ -131,6 +132,24 @@ public class JoinSelectionServiceGwtImpl implements IXulAsyncJoinSelectionServic
     } );
   }
 
+  public void getTablesFields( final List<String> tables, final IDatabaseConnection connection,
+                               final XulServiceCallback<Map> xulCallback ) {
+
+    AuthenticatedGwtServiceUtil.invokeCommand( new IAuthenticatedGwtCommand() {
+      public void execute( AsyncCallback callback ) {
+        SERVICE.getTablesFields( tables, connection, callback );
+      }
+    }, new AsyncCallback<Map>() {
+      public void onFailure( Throwable arg0 ) {
+        xulCallback.error( arg0.getLocalizedMessage(), arg0 );
+      }
+
+      public void onSuccess( Map arg0 ) {
+        xulCallback.success( arg0 );
+      }
+    } );
+  }
+
   public void serializeJoins( final MultiTableDatasourceDTO dto, final IDatabaseConnection selectedConnection,
                               final XulServiceCallback<IDatasourceSummary> xulCallback ) {
 
@@ -41,6 +41,7 @@ import org.pentaho.platform.dataaccess.datasource.api.DatasourceService;
 import org.pentaho.platform.dataaccess.datasource.api.resources.MetadataResource;
 import org.pentaho.platform.dataaccess.datasource.wizard.csv.CsvUtils;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.messages.Messages;
+import org.pentaho.platform.dataaccess.metadata.service.DomainChangeNotifier;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.plugin.services.metadata.PentahoMetadataDomainRepository;
@@ -127,6 +128,7 @@ public class MetadataDatasourceService {
       PentahoMetadataDomainRepository metadataImporter =
           new PentahoMetadataDomainRepository( PentahoSystem.get( IUnifiedRepository.class ) );
       metadataImporter.storeDomain( metadataFile, domainId, true );
+      DomainChangeNotifier.domainChanged( domainId );
       return Response.ok( "SUCCESS" ).type( MediaType.TEXT_PLAIN ).build();
     } catch ( PentahoAccessControlException e ) {
       return Response.serverError().entity( e.toString() ).build();
@@ -175,6 +177,7 @@ public class MetadataDatasourceService {
       String sysTmpDir = PentahoSystem.getApplicationContext().getSolutionPath( TMP_FILE_PATH );
       FileInputStream metadataInputStream = new FileInputStream( sysTmpDir + File.separatorChar + metadataFile );
       metadataImporter.storeDomain( metadataInputStream, domainId, true );
+      DomainChangeNotifier.domainChanged( domainId );
       metadataDomainRepository.getDomain( domainId );
 
       StringTokenizer bundleEntriesParam = new StringTokenizer( localizeBundleEntries, ";" );
@@ -215,6 +218,7 @@ public class MetadataDatasourceService {
       return Response.ok( "SUCCESS" ).type( MediaType.TEXT_PLAIN ).build();
     } catch ( Exception e ) {
       metadataImporter.removeDomain( domainId );
+      DomainChangeNotifier.domainChanged( domainId );
       return Response.serverError().entity(
           Messages.getString( "MetadataDatasourceService.ERROR_001_METADATA_DATASOURCE_ERROR" ) ).build();
     }
@@ -50,6 +50,7 @@ import org.pentaho.platform.dataaccess.datasource.wizard.models.ColumnInfo;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.ModelInfo;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.AgileHelper;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.InlineSqlModelerSource;
+import org.pentaho.platform.dataaccess.metadata.service.DomainChangeNotifier;
 import org.pentaho.platform.engine.core.system.PentahoBase;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
@@ -211,6 +212,7 @@ public class ModelerService extends PentahoBase implements IModelerService {
             IMetadataDomainRepository metadataDomainRep = PentahoSystem.get( IMetadataDomainRepository.class );
             if ( metadataDomainRep != null ) {
               metadataDomainRep.storeDomain( model.getDomain(), true );
+              DomainChangeNotifier.domainChanged( model.getDomain().getId() );
             }
             // Serialize domain to olap schema.
             if ( doOlap ) {
@@ -12,17 +12,15 @@
 * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
 * See the GNU Lesser General Public License for more details.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
 */
 
 package org.pentaho.platform.dataaccess.datasource.wizard.service.impl;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -31,7 +29,6 @@ import org.pentaho.agilebi.modeler.gwt.BogoPojo;
 import org.pentaho.agilebi.modeler.util.MultiTableModelerSource;
 import org.pentaho.database.model.IDatabaseConnection;
 import org.pentaho.database.util.DatabaseUtil;
-import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
 import org.pentaho.di.core.exception.KettleDatabaseException;
 import org.pentaho.metadata.model.Domain;
@@ -45,12 +42,13 @@ import org.pentaho.platform.dataaccess.datasource.wizard.service.ConnectionServi
 import org.pentaho.platform.dataaccess.datasource.wizard.service.DatasourceServiceException;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.gwt.IGwtJoinSelectionService;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.ConnectionServiceHelper;
-import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.LegacyDatasourceConverter;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DatabaseMetaCache;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.JdbcCatalogCache;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.ModelStateSerializer;
 import org.pentaho.platform.dataaccess.datasource.wizard.sources.query.QueryDatasourceSummary;
 import org.pentaho.platform.engine.core.system.PentahoBase;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 
-import com.thoughtworks.xstream.XStream;
 
 public class MultitableDatasourceService extends PentahoBase implements IGwtJoinSelectionService {
 
@@ -79,28 +77,27 @@ public class MultitableDatasourceService extends PentahoBase implements IGwtJoin
     // DatabaseConnection objects may be de-serialized from the client and missing extra parameters and attributes.
     // Resolve the connection by name through ConnectionService before use.
     // All public methods should use getDatabaseMeta to guarantee accurate connection info.
-    connection = connectionServiceImpl.getConnectionByName( connection.getName() );
+    // The resolved connection is kept until it is updated or deleted, but the permission check is made on every call.
+    connectionServiceImpl.ensureDataAccessPermission();
+    String name = connection.getName();
+    DatabaseMeta dbmeta = DatabaseMetaCache.get( name );
+    if ( dbmeta != null ) {
+      return dbmeta;
+    }
+    long version = DatabaseMetaCache.getVersion( name );
+    connection = connectionServiceImpl.getConnectionByName( name );
     connection
       .setPassword( ConnectionServiceHelper.getConnectionPassword( connection.getName(), connection.getPassword() ) );
-    DatabaseMeta dbmeta = DatabaseUtil.convertToDatabaseMeta( connection );
+    dbmeta = DatabaseUtil.convertToDatabaseMeta( connection );
     dbmeta.getDatabaseInterface().setQuoteAllFields(
       true ); //This line probably shouldn't be here.  It overrides the "Quote all in Database" checkbox
+    DatabaseMetaCache.put( name, version, dbmeta );
     return dbmeta;
   }
 
   public List<String> retrieveSchemas( IDatabaseConnection connection ) throws DatasourceServiceException {
-    List<String> schemas = new ArrayList<String>();
     try {
-      DatabaseMeta databaseMeta = this.getDatabaseMeta( connection );
-      Database database = new Database( null, databaseMeta );
-      database.connect();
-      Map<String, Collection<String>> tableMap = database.getTableMap( null );
-
-      //database.getSchemas()
-
-      Set<String> schemaNames = tableMap.keySet();
-      schemas.addAll( schemaNames );
-      database.disconnect();
+      return getCatalog( connection ).getSchemas();
     } catch ( KettleDatabaseException e ) {
       logger.error( "Error creating database object", e );
       throw new DatasourceServiceException( e );
@@ -108,21 +105,12 @@ public class MultitableDatasourceService extends PentahoBase implements IGwtJoin
       logger.error( "Error getting database meta", e );
       throw new DatasourceServiceException( e );
     }
-    return schemas;
   }
 
   public List<String> getDatabaseTables( IDatabaseConnection connection, String schema )
     throws DatasourceServiceException {
     try {
-      DatabaseMeta databaseMeta = this.getDatabaseMeta( connection );
-      Database database = new Database( null, databaseMeta );
-      database.connect();
-      String[] tableNames = database.getTablenames( schema, true );
-      List<String> tables = new ArrayList<String>();
-      tables.addAll( Arrays.asList( tableNames ) );
-      tables.addAll( Arrays.asList( database.getViews( schema, true ) ) );
-      database.disconnect();
-      return tables;
+      return getCatalog( connection ).getTables( schema );
     } catch ( KettleDatabaseException e ) {
       logger.error( "Error creating database object", e );
       throw new DatasourceServiceException( e );
@@ -132,6 +120,22 @@ public class MultitableDatasourceService extends PentahoBase implements IGwtJoin
     }
   }
 
+  /**
+   * Forgets the schemas, tables and fields read from the connection, so they are read from the database again.
+   */
+  public void refreshCatalog( IDatabaseConnection connection ) throws DatasourceServiceException {
+    try {
+      getCatalog( connection ).refresh();
+    } catch ( ConnectionServiceException e ) {
+      logger.error( "Error getting database meta", e );
+      throw new DatasourceServiceException( e );
+    }
+  }
+
+  private JdbcCatalogCache getCatalog( IDatabaseConnection connection ) throws ConnectionServiceException {
+    return JdbcCatalogCache.forConnection( connection.getName(), this.getDatabaseMeta( connection ) );
+  }
+
   public IDatasourceSummary serializeJoins( MultiTableDatasourceDTO dto, IDatabaseConnection connection )
     throws DatasourceServiceException {
     try {
@@ -141,7 +145,8 @@ public class MultitableDatasourceService extends PentahoBase implements IGwtJoin
       DSWDatasourceServiceImpl datasourceService = new DSWDatasourceServiceImpl();
       GeoContext geoContext = datasourceService.getGeoContext();
 
-      DatabaseMeta databaseMeta = this.getDatabaseMeta( connection );
+      // the generated domain keeps the connection it is given, which must not be the shared one
+      DatabaseMeta databaseMeta = (DatabaseMeta) this.getDatabaseMeta( connection ).clone();
       MultiTableModelerSource multiTable =
         new MultiTableModelerSource( databaseMeta, dto.getSchemaModel(), dto.getDatasourceName(),
           dto.getSelectedTables(), geoContext );
@@ -167,15 +172,12 @@ public class MultitableDatasourceService extends PentahoBase implements IGwtJoin
   }
 
   private String serializeModelState( MultiTableDatasourceDTO dto ) throws DatasourceServiceException {
-    XStream xs = new XStream();
-    return xs.toXML( dto );
+    return ModelStateSerializer.toXML( dto );
   }
 
   public MultiTableDatasourceDTO deSerializeModelState( String dtoStr ) throws DatasourceServiceException {
     try {
-      XStream xs = new XStream();
-      xs.registerConverter( new LegacyDatasourceConverter() );
-      return (MultiTableDatasourceDTO) xs.fromXML( dtoStr );
+      return ModelStateSerializer.multiTableFromXML( dtoStr );
     } catch ( Exception e ) {
       logger.error( e );
       throw new DatasourceServiceException( e );
@@ -184,19 +186,20 @@ public class MultitableDatasourceService extends PentahoBase implements IGwtJoin
 
   public List<String> getTableFields( String table, IDatabaseConnection connection ) throws DatasourceServiceException {
     try {
-      DatabaseMeta databaseMeta = this.getDatabaseMeta( connection );
-      Database database = new Database( null, databaseMeta );
-      database.connect();
-
-      String query = databaseMeta.getSQLQueryFields( table );
-      // Setting the query limit to 1 before executing the query
-      database.setQueryLimit( 1 );
-      database.getRows( query, 1 );
-      String[] tableFields = database.getReturnRowMeta().getFieldNames();
-
-      List<String> fields = Arrays.asList( tableFields );
-      database.disconnect();
-      return fields;
+      return getCatalog( connection ).getTableFields( table );
+    } catch ( KettleDatabaseException e ) {
+      logger.error( e );
+      throw new DatasourceServiceException( e );
+    } catch ( ConnectionServiceException e ) {
+      logger.error( e );
+      throw new DatasourceServiceException( e );
+    }
+  }
+
+  public Map<String, List<String>> getTablesFields( List<String> tables, IDatabaseConnection connection )
+    throws DatasourceServiceException {
+    try {
+      return new HashMap<String, List<String>>( getCatalog( connection ).getTablesFields( tables ) );
     } catch ( KettleDatabaseException e ) {
       logger.error( e );
       throw new DatasourceServiceException( e );
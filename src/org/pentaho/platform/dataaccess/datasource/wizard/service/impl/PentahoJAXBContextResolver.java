@@ -20,6 +20,7 @@ import javax.xml.bind.JAXBException;
 
 import org.pentaho.database.model.DatabaseConnection;
 import org.pentaho.database.model.DatabaseType;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJobStatus;
 import org.pentaho.ui.database.event.DefaultDatabaseConnectionList;
 import org.pentaho.ui.database.event.DefaultDatabaseConnectionPoolParameterList;
 import org.pentaho.ui.database.event.DefaultDatabaseDialectList;
@@ -39,7 +40,8 @@ public class PentahoJAXBContextResolver implements ContextResolver<JAXBContext>
     DefaultDatabaseDialectList.class,
     DatabaseType.class,
     DefaultDatabaseTypesList.class,
-    DefaultDatabaseConnectionPoolParameterList.class };
+    DefaultDatabaseConnectionPoolParameterList.class,
+    StagingJobStatus.class };
 
   public PentahoJAXBContextResolver() throws JAXBException {
     this.context = new JSONJAXBContext( JSONConfiguration.natural().build(), types );
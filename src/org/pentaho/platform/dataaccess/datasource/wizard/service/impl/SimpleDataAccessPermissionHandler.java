@@ -12,70 +12,216 @@
 * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
 * See the GNU Lesser General Public License for more details.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
 */
 
 package org.pentaho.platform.dataaccess.datasource.wizard.service.impl;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.pentaho.platform.api.engine.IAuthorizationPolicy;
 import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.platform.api.engine.IPluginResourceLoader;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DataAccessSettings;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.engine.security.SecurityHelper;
 import org.springframework.security.Authentication;
 import org.springframework.security.GrantedAuthority;
 
+/**
+ * Grants data access to users allowed the manage datasource action, and to the roles and users listed in the
+ * <code>data-access-roles</code> and <code>data-access-users</code> plugin settings.
+ * <p/>
+ * This check runs at the top of most data access service calls, often several times per request, so its answer is
+ * remembered per session for <code>data-access-permission-cache-ttl-seconds</code>. The role and user lists are
+ * parsed into sets once and read again after the same time; when they have changed, every remembered answer is
+ * dropped. The authorization policy only judges the session of the current thread, so the answer for any other
+ * session is never remembered.
+ */
 public class SimpleDataAccessPermissionHandler implements IDataAccessPermissionHandler {
 
-  private IAuthorizationPolicy policy = PentahoSystem.get( IAuthorizationPolicy.class );
+  private static final String MANAGE_ACTION =
+    "org.pentaho.platform.dataaccess.datasource.security.manage"; //$NON-NLS-1$
+
+  /**
+   * Remembered answers are all dropped once there are this many, so sessions that ended cannot pile up.
+   */
+  private static final int MAX_DECISIONS = 10000;
+
+  private static final ConcurrentMap<String, Decision> decisions = new ConcurrentHashMap<String, Decision>();
+
+  private static volatile Permitted permitted;
+
+  private IAuthorizationPolicy policy;
+
+  private final long ttl;
 
   private Log logger = LogFactory.getLog( SimpleDataAccessPermissionHandler.class );
 
+  public SimpleDataAccessPermissionHandler() {
+    this( PentahoSystem.get( IAuthorizationPolicy.class ), DataAccessSettings.getPermissionCacheTtl() * 1000L );
+  }
+
+  SimpleDataAccessPermissionHandler( IAuthorizationPolicy policy, long ttl ) {
+    this.policy = policy;
+    this.ttl = ttl;
+  }
+
+  /**
+   * Forgets every remembered answer and the parsed role and user lists.
+   */
+  static void clearCache() {
+    decisions.clear();
+    permitted = null;
+  }
+
   @Override
   public boolean hasDataAccessPermission( IPentahoSession session ) {
+    Permitted current = getPermitted();
+    // the policy decides for the thread's session, so only that session's answer is its own to remember
+    String key = ttl > 0 && session != null && session.getId() != null && session == getCurrentSession()
+      ? session.getId() + "/" + session.getName() : null; //$NON-NLS-1$
+    if ( key != null ) {
+      Decision decision = decisions.get( key );
+      // an answer made against role and user lists that have since changed is stale
+      if ( decision != null && decision.permitted == current
+        && System.currentTimeMillis() - decision.created < ttl ) {
+        return decision.allowed;
+      }
+    }
+
+    boolean allowed = decide( session, current );
+    if ( key != null ) {
+      if ( decisions.size() >= MAX_DECISIONS ) {
+        decisions.clear();
+      }
+      decisions.put( key, new Decision( allowed, current ) );
+    }
+    return allowed;
+  }
 
-    if ( policy.isAllowed( "org.pentaho.platform.dataaccess.datasource.security.manage" ) ) {
+  private boolean decide( IPentahoSession session, Permitted current ) {
+    if ( policy.isAllowed( MANAGE_ACTION ) ) {
       return true;
     }
 
-    Authentication auth = SecurityHelper.getInstance().getAuthentication( session, true );
+    Authentication auth = getAuthentication( session );
+    if ( auth == null ) {
+      return false;
+    }
+    if ( !current.roles.isEmpty() ) {
+      for ( GrantedAuthority userRole : auth.getAuthorities() ) {
+        if ( current.roles.contains( userRole.getAuthority() ) ) {
+          return true;
+        }
+      }
+    }
+    return current.users.contains( auth.getName() );
+  }
+
+  /**
+   * @return the parsed role and user lists, reading the settings again once they are older than the time to live
+   */
+  private Permitted getPermitted() {
+    Permitted current = permitted;
+    if ( current != null && ttl > 0 && System.currentTimeMillis() - current.read < ttl ) {
+      return current;
+    }
 
-    IPluginResourceLoader resLoader = PentahoSystem.get( IPluginResourceLoader.class, null );
     String roles = null;
     String users = null;
 
     // TODO: delete this try catch once data access becomes a fully fledged plugin
 
     try {
-      roles = resLoader.getPluginSetting( getClass(), "settings/data-access-roles" ); //$NON-NLS-1$
-      users = resLoader.getPluginSetting( getClass(), "settings/data-access-users" ); //$NON-NLS-1$
+      roles = getPluginSetting( "settings/data-access-roles" ); //$NON-NLS-1$
+      users = getPluginSetting( "settings/data-access-users" ); //$NON-NLS-1$
     } catch ( Exception e ) {
       logger.debug( "Error getting data access plugin settings", e );
     }
 
-    if ( roles != null && roles.length() > 0 ) {
-      String[] roleArr = roles.split( "," ); //$NON-NLS-1$
+    if ( current != null && current.isReadFrom( roles, users ) ) {
+      current.read = System.currentTimeMillis();
+      return current;
+    }
+    current = new Permitted( roles, users );
+    permitted = current;
+    return current;
+  }
 
-      for ( String role : roleArr ) {
-        for ( GrantedAuthority userRole : auth.getAuthorities() ) {
-          if ( role != null && role.trim().equals( userRole.getAuthority() ) ) {
-            return true;
-          }
-        }
-      }
+  protected String getPluginSetting( String key ) {
+    IPluginResourceLoader resLoader = PentahoSystem.get( IPluginResourceLoader.class, null );
+    return resLoader.getPluginSetting( getClass(), key );
+  }
+
+  protected IPentahoSession getCurrentSession() {
+    return PentahoSessionHolder.getSession();
+  }
+
+  protected Authentication getAuthentication( IPentahoSession session ) {
+    return SecurityHelper.getInstance().getAuthentication( session, true );
+  }
+
+  /**
+   * The roles and users granted data access, as parsed from their comma separated settings.
+   */
+  private static class Permitted {
+
+    private final String rolesSetting;
+
+    private final String usersSetting;
+
+    private final Set<String> roles;
+
+    private final Set<String> users;
+
+    private volatile long read = System.currentTimeMillis();
+
+    Permitted( String rolesSetting, String usersSetting ) {
+      this.rolesSetting = rolesSetting;
+      this.usersSetting = usersSetting;
+      roles = parse( rolesSetting );
+      users = parse( usersSetting );
     }
-    if ( users != null && users.length() > 0 ) {
-      String[] userArr = users.split( "," ); //$NON-NLS-1$
-      for ( String user : userArr ) {
-        if ( user != null && user.trim().equals( auth.getName() ) ) {
-          return true;
-        }
-      }
+
+    boolean isReadFrom( String rolesSetting, String usersSetting ) {
+      return equal( this.rolesSetting, rolesSetting ) && equal( this.usersSetting, usersSetting );
     }
 
-    return false;
+    private static boolean equal( String a, String b ) {
+      return a == null ? b == null : a.equals( b );
+    }
+
+    private static Set<String> parse( String setting ) {
+      if ( setting == null || setting.length() == 0 ) {
+        return Collections.emptySet();
+      }
+      Set<String> values = new HashSet<String>();
+      for ( String value : setting.split( "," ) ) { //$NON-NLS-1$
+        values.add( value.trim() );
+      }
+      return values;
+    }
   }
 
+  private static class Decision {
+
+    private final boolean allowed;
+
+    private final Permitted permitted;
+
+    private final long created = System.currentTimeMillis();
+
+    Decision( boolean allowed, Permitted permitted ) {
+      this.allowed = allowed;
+      this.permitted = permitted;
+    }
+  }
 }
@@ -0,0 +1,180 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import java.util.zip.Deflater;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.AgileHelper;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+
+/**
+ * The numeric settings of the plugin's <code>settings.xml</code> that size and time its caches, pools and uploads.
+ * <p/>
+ * Every numeric setting, these and the staging ones {@link AgileHelper} reads, goes through
+ * {@link #getInt(String, int, int, int)}: a missing setting takes its default, and one that is not a whole number or
+ * is out of its range is logged and takes its default too. Where a setting sizes or times a cache, 0 is in range and
+ * turns that cache off; settings for which off makes no sense start at 1, so 0 is logged as a bad value.
+ */
+public final class DataAccessSettings {
+
+  private static final Log logger = LogFactory.getLog( DataAccessSettings.class );
+
+  private static final String SETTINGS_FILE = AgileHelper.PLUGIN_NAME + "/settings.xml"; //$NON-NLS-1$
+
+  private static final String METADATA_QUERY_CACHE_SIZE = "data-access-metadata-query-cache-size"; //$NON-NLS-1$
+  private static final int DEFAULT_METADATA_QUERY_CACHE_SIZE = 500;
+  private static final String METADATA_MODEL_INDEX_SIZE = "data-access-metadata-model-index-size"; //$NON-NLS-1$
+  private static final int DEFAULT_METADATA_MODEL_INDEX_SIZE = 100;
+  private static final String METADATA_MODEL_INDEX_MAX_AGE = "data-access-metadata-model-index-max-age-seconds"; //$NON-NLS-1$
+  private static final int DEFAULT_METADATA_MODEL_INDEX_MAX_AGE = 300;
+  private static final String METADATA_RESULT_CACHE_SIZE = "data-access-metadata-result-cache-size-mb"; //$NON-NLS-1$
+  private static final String METADATA_RESULT_CACHE_TTL = "data-access-metadata-result-cache-ttl-seconds"; //$NON-NLS-1$
+  private static final int DEFAULT_METADATA_RESULT_CACHE_TTL = 300;
+  private static final String DATASOURCE_CATALOG_MAX_AGE = "data-access-datasource-catalog-max-age-seconds"; //$NON-NLS-1$
+  private static final int DEFAULT_DATASOURCE_CATALOG_MAX_AGE = 300;
+  private static final String PERMISSION_CACHE_TTL = "data-access-permission-cache-ttl-seconds"; //$NON-NLS-1$
+  private static final int DEFAULT_PERMISSION_CACHE_TTL = 60;
+  private static final String EXPORT_ZIP_LEVEL = "data-access-export-zip-level"; //$NON-NLS-1$
+  private static final String IMPORT_MEMORY_THRESHOLD = "data-access-import-memory-threshold-kb"; //$NON-NLS-1$
+  private static final int DEFAULT_IMPORT_MEMORY_THRESHOLD = 1024;
+  private static final String JDBC_CATALOG_TTL = "data-access-jdbc-catalog-ttl-seconds"; //$NON-NLS-1$
+  private static final int DEFAULT_JDBC_CATALOG_TTL = 300;
+  private static final String CONNECTION_POOL_MAX_SIZE = "data-access-connection-pool-max-size"; //$NON-NLS-1$
+  private static final int DEFAULT_CONNECTION_POOL_MAX_SIZE = 8;
+  private static final String CONNECTION_POOL_IDLE = "data-access-connection-pool-idle-seconds"; //$NON-NLS-1$
+  private static final int DEFAULT_CONNECTION_POOL_IDLE = 300;
+
+  private DataAccessSettings() {
+  }
+
+  /**
+   * @return how many converted metadata queries to keep; 0 turns the cache off
+   */
+  public static int getMetadataQueryCacheSize() {
+    return getInt( METADATA_QUERY_CACHE_SIZE, DEFAULT_METADATA_QUERY_CACHE_SIZE, 0, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return how many domains to keep the column lookups and thin models of; 0 turns the cache off
+   */
+  public static int getMetadataModelIndexSize() {
+    return getInt( METADATA_MODEL_INDEX_SIZE, DEFAULT_METADATA_MODEL_INDEX_SIZE, 0, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return seconds a domain index is trusted for once the repository hands out another object for the domain; 0
+   *         trusts it only while the repository hands out the object it was made from
+   */
+  public static int getMetadataModelIndexMaxAge() {
+    return getInt( METADATA_MODEL_INDEX_MAX_AGE, DEFAULT_METADATA_MODEL_INDEX_MAX_AGE, 0, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return megabytes of metadata query results to keep in memory; 0, the default, turns the cache off
+   */
+  public static int getMetadataResultCacheSize() {
+    return getInt( METADATA_RESULT_CACHE_SIZE, 0, 0, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return seconds a cached metadata query result may be served for; 0 turns the cache off
+   */
+  public static int getMetadataResultCacheTtl() {
+    return getInt( METADATA_RESULT_CACHE_TTL, DEFAULT_METADATA_RESULT_CACHE_TTL, 0, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return seconds a domain summary is trusted before the domain is read again; 0 reads the domain on every call
+   */
+  public static int getDatasourceCatalogMaxAge() {
+    return getInt( DATASOURCE_CATALOG_MAX_AGE, DEFAULT_DATASOURCE_CATALOG_MAX_AGE, 0, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return seconds a data access permission decision is remembered for a session, and the permitted roles and users
+   *         are trusted before being read again; 0 decides and reads them on every call
+   */
+  public static int getPermissionCacheTtl() {
+    return getInt( PERMISSION_CACHE_TTL, DEFAULT_PERMISSION_CACHE_TTL, 0, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return the compression level, 0 to 9, of zipped datasource exports, or <code>Deflater.DEFAULT_COMPRESSION</code>
+   */
+  public static int getExportZipLevel() {
+    return getInt( EXPORT_ZIP_LEVEL, Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_COMPRESSION,
+      Deflater.BEST_COMPRESSION );
+  }
+
+  /**
+   * @return kilobytes of an uploaded file held in memory while it is imported; bigger files go to a temporary file,
+   *         and 0 sends every file there
+   */
+  public static int getImportMemoryThreshold() {
+    return getInt( IMPORT_MEMORY_THRESHOLD, DEFAULT_IMPORT_MEMORY_THRESHOLD, 0, Integer.MAX_VALUE / 1024 );
+  }
+
+  /**
+   * @return seconds the schemas, tables and fields read from a connection by the multi-table wizard are kept; 0 reads
+   *         them on every call
+   */
+  public static int getJdbcCatalogTtl() {
+    return getInt( JDBC_CATALOG_TTL, DEFAULT_JDBC_CATALOG_TTL, 0, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return most connections the in-memory services keep open to one database connection at a time, at least 1
+   */
+  public static int getConnectionPoolMaxSize() {
+    return getInt( CONNECTION_POOL_MAX_SIZE, DEFAULT_CONNECTION_POOL_MAX_SIZE, 1, Integer.MAX_VALUE );
+  }
+
+  /**
+   * @return seconds a pooled connection of the in-memory services may stay unused before it is closed, at least 1
+   */
+  public static int getConnectionPoolIdle() {
+    return getInt( CONNECTION_POOL_IDLE, DEFAULT_CONNECTION_POOL_IDLE, 1, Integer.MAX_VALUE );
+  }
+
+  /**
+   * Reads the setting <code>name</code> of the plugin's <code>settings.xml</code> as a whole number.
+   *
+   * @return the setting, or <code>defaultValue</code> when it is missing, is not a whole number or is not between
+   *         <code>min</code> and <code>max</code>; the last two are logged
+   */
+  public static int getInt( String name, int defaultValue, int min, int max ) {
+    String value = PentahoSystem.getSystemSetting( SETTINGS_FILE, name, null );
+    if ( value == null ) {
+      return defaultValue;
+    }
+    try {
+      int parsed = Integer.parseInt( value.trim() );
+      if ( parsed >= min && parsed <= max ) {
+        return parsed;
+      }
+      logger.warn( "Setting " + name + " is " + parsed + ", outside " + min + " to " + max //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        + "; using " + defaultValue ); //$NON-NLS-1$
+    } catch ( NumberFormatException e ) {
+      logger.warn( "Setting " + name + " is not a whole number: " + value //$NON-NLS-1$ //$NON-NLS-2$
+        + "; using " + defaultValue ); //$NON-NLS-1$
+    }
+    return defaultValue;
+  }
+}
@@ -0,0 +1,108 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.pentaho.di.core.database.DatabaseMeta;
+
+/**
+ * The {@link DatabaseMeta} of each named connection, as resolved from the repository with its password, so that it is
+ * not resolved again on every call the multi-table wizard makes.
+ * <p/>
+ * Each connection name has a version, which {@link #invalidate(String)} moves on when the connection is updated or
+ * deleted. A {@link DatabaseMeta} is only handed out while the version it was resolved at is current, so one resolved
+ * while the connection was being changed is never used. As the catalogs read through it are, it is also dropped after
+ * <code>data-access-jdbc-catalog-ttl-seconds</code>, in case the connection was changed by other means.
+ */
+public class DatabaseMetaCache {
+
+  private static final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+
+  private static final ConcurrentMap<String, Resolved> resolved = new ConcurrentHashMap<String, Resolved>();
+
+  private DatabaseMetaCache() {
+  }
+
+  /**
+   * @return the current version of the connection <code>connectionName</code>, to be passed to
+   *         {@link #put(String, long, DatabaseMeta)} once the connection is resolved
+   */
+  public static long getVersion( String connectionName ) {
+    return version( connectionName ).get();
+  }
+
+  /**
+   * @return the {@link DatabaseMeta} resolved for the connection <code>connectionName</code>, or <code>null</code> if
+   *         there is none current
+   */
+  public static DatabaseMeta get( String connectionName ) {
+    Resolved entry = resolved.get( connectionName );
+    if ( entry == null || entry.version != getVersion( connectionName )
+      || System.currentTimeMillis() >= entry.expires ) {
+      return null;
+    }
+    return entry.databaseMeta;
+  }
+
+  /**
+   * Keeps <code>databaseMeta</code>, resolved for the connection <code>connectionName</code> when it was at version
+   * <code>version</code>.
+   */
+  public static void put( String connectionName, long version, DatabaseMeta databaseMeta ) {
+    long ttl = DataAccessSettings.getJdbcCatalogTtl() * 1000L;
+    resolved.put( connectionName, new Resolved( version, databaseMeta, System.currentTimeMillis() + ttl ) );
+  }
+
+  /**
+   * Drops what was resolved for the connection <code>connectionName</code> and moves its version on.
+   */
+  public static void invalidate( String connectionName ) {
+    version( connectionName ).incrementAndGet();
+    resolved.remove( connectionName );
+  }
+
+  private static AtomicLong version( String connectionName ) {
+    AtomicLong version = versions.get( connectionName );
+    if ( version == null ) {
+      AtomicLong created = new AtomicLong();
+      version = versions.putIfAbsent( connectionName, created );
+      if ( version == null ) {
+        version = created;
+      }
+    }
+    return version;
+  }
+
+  private static class Resolved {
+
+    private final long version;
+
+    private final DatabaseMeta databaseMeta;
+
+    private final long expires;
+
+    Resolved( long version, DatabaseMeta databaseMeta, long expires ) {
+      this.version = version;
+      this.databaseMeta = databaseMeta;
+      this.expires = expires;
+    }
+  }
+}
@@ -12,7 +12,7 @@
 * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
 * See the GNU Lesser General Public License for more details.
 *
-* Copyright (c) 2002-2013 Pentaho Corporation..  All rights reserved.
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
 */
 
 package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
@@ -24,18 +24,19 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.sql.Driver;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.pentaho.commons.connection.IPentahoMetaData;
-import org.pentaho.commons.connection.IPentahoResultSet;
-import org.pentaho.commons.connection.marshal.MarshallableResultSet;
-import org.pentaho.commons.connection.marshal.MarshallableRow;
 import org.pentaho.database.DatabaseDialectException;
 import org.pentaho.database.IDatabaseDialect;
 import org.pentaho.database.dialect.GenericDatabaseDialect;
@@ -48,13 +49,17 @@ import org.pentaho.platform.dataaccess.datasource.wizard.service.DatasourceServi
 import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.ConnectionServiceImpl;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.messages.Messages;
 import org.pentaho.platform.plugin.services.connections.sql.SQLConnection;
-import org.pentaho.platform.plugin.services.connections.sql.SQLMetaData;
 
 public class DatasourceInMemoryServiceHelper {
   private static final Log logger = LogFactory.getLog( DatasourceInMemoryServiceHelper.class );
 
   /**
-   * NOTE: caller is responsible for closing connection
+   * Drivers by class name, each registered with the {@link DriverManager} once.
+   */
+  private static final ConcurrentMap<String, Driver> drivers = new ConcurrentHashMap<String, Driver>();
+
+  /**
+   * NOTE: caller is responsible for closing connection, which returns it to the {@link InMemoryConnectionPool pool}
    *
    * @param connectionName
    * @return
@@ -69,7 +74,6 @@ public class DatasourceInMemoryServiceHelper {
       // TODO Auto-generated catch block
       e1.printStackTrace();
     }
-    java.sql.Connection conn = null;
 
     DatabaseDialectService dialectService = new DatabaseDialectService();
     IDatabaseDialect dialect = dialectService.getDialect( connection );
@@ -85,49 +89,10 @@ public class DatasourceInMemoryServiceHelper {
       throw new DatasourceServiceException( Messages
         .getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0001_CONNECTION_ATTEMPT_FAILED" ) ); //$NON-NLS-1$
     }
-    Class<?> driverC = null;
-
-    try {
-      driverC = Class.forName( driverClass );
-    } catch ( ClassNotFoundException e ) {
-      logger.error( Messages
-        .getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0002_DRIVER_NOT_FOUND_IN_CLASSPATH", driverClass ),
-        e ); //$NON-NLS-1$
-      throw new DatasourceServiceException(
-        Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0002_DRIVER_NOT_FOUND_IN_CLASSPATH" ),
-        e ); //$NON-NLS-1$
-    }
-    if ( !Driver.class.isAssignableFrom( driverC ) ) {
-      logger.error( Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0002_DRIVER_NOT_FOUND_IN_CLASSPATH",
-        driverClass ) ); //$NON-NLS-1$
-      throw new DatasourceServiceException( Messages
-        .getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0002_DRIVER_NOT_FOUND_IN_CLASSPATH",
-          driverClass ) ); //$NON-NLS-1$
-    }
-    Driver driver = null;
-
-    try {
-      driver = driverC.asSubclass( Driver.class ).newInstance();
-    } catch ( InstantiationException e ) {
-      logger.error(
-        Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0003_UNABLE_TO_INSTANCE_DRIVER", driverClass ),
-        e ); //$NON-NLS-1$
-      throw new DatasourceServiceException(
-        Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0003_UNABLE_TO_INSTANCE_DRIVER" ),
-        e ); //$NON-NLS-1$
-    } catch ( IllegalAccessException e ) {
-      logger.error(
-        Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0003_UNABLE_TO_INSTANCE_DRIVER", driverClass ),
-        e ); //$NON-NLS-1$
-      throw new DatasourceServiceException(
-        Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0003_UNABLE_TO_INSTANCE_DRIVER" ),
-        e ); //$NON-NLS-1$
-    }
+    Driver driver = getDriver( driverClass );
     try {
-      DriverManager.registerDriver( driver );
-      conn = DriverManager.getConnection( dialect.getURLWithExtraOptions( connection ), connection.getUsername(),
-        connection.getPassword() );
-      return conn;
+      return InMemoryConnectionPool.forConnection( connectionName, driver, dialect.getURLWithExtraOptions( connection ),
+        connection.getUsername(), connection.getPassword() ).getConnection();
     } catch ( SQLException e ) {
       logger.error( Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0004_UNABLE_TO_CONNECT" ),
         e ); //$NON-NLS-1$
@@ -139,6 +104,71 @@ public class DatasourceInMemoryServiceHelper {
     }
   }
 
+  /**
+   * @return the driver <code>driverClass</code>, loaded and registered the first time it is asked for
+   */
+  private static Driver getDriver( String driverClass ) throws DatasourceServiceException {
+    Driver driver = drivers.get( driverClass );
+    if ( driver != null ) {
+      return driver;
+    }
+    synchronized ( drivers ) {
+      driver = drivers.get( driverClass );
+      if ( driver != null ) {
+        return driver;
+      }
+      Class<?> driverC = null;
+
+      try {
+        driverC = Class.forName( driverClass );
+      } catch ( ClassNotFoundException e ) {
+        logger.error( Messages
+          .getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0002_DRIVER_NOT_FOUND_IN_CLASSPATH", driverClass ),
+          e ); //$NON-NLS-1$
+        throw new DatasourceServiceException(
+          Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0002_DRIVER_NOT_FOUND_IN_CLASSPATH" ),
+          e ); //$NON-NLS-1$
+      }
+      if ( !Driver.class.isAssignableFrom( driverC ) ) {
+        logger.error( Messages.getErrorString(
+          "DatasourceInMemoryServiceHelper.ERROR_0002_DRIVER_NOT_FOUND_IN_CLASSPATH", driverClass ) ); //$NON-NLS-1$
+        throw new DatasourceServiceException( Messages
+          .getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0002_DRIVER_NOT_FOUND_IN_CLASSPATH",
+            driverClass ) ); //$NON-NLS-1$
+      }
+
+      try {
+        driver = driverC.asSubclass( Driver.class ).newInstance();
+      } catch ( InstantiationException e ) {
+        logger.error( Messages.getErrorString(
+          "DatasourceInMemoryServiceHelper.ERROR_0003_UNABLE_TO_INSTANCE_DRIVER", driverClass ), e ); //$NON-NLS-1$
+        throw new DatasourceServiceException(
+          Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0003_UNABLE_TO_INSTANCE_DRIVER" ),
+          e ); //$NON-NLS-1$
+      } catch ( IllegalAccessException e ) {
+        logger.error( Messages.getErrorString(
+          "DatasourceInMemoryServiceHelper.ERROR_0003_UNABLE_TO_INSTANCE_DRIVER", driverClass ), e ); //$NON-NLS-1$
+        throw new DatasourceServiceException(
+          Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0003_UNABLE_TO_INSTANCE_DRIVER" ),
+          e ); //$NON-NLS-1$
+      }
+      try {
+        DriverManager.registerDriver( driver );
+      } catch ( SQLException e ) {
+        logger.error( Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0004_UNABLE_TO_CONNECT" ),
+          e ); //$NON-NLS-1$
+        throw new DatasourceServiceException(
+          Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0004_UNABLE_TO_CONNECT" ), e ); //$NON-NLS-1$
+      }
+      drivers.put( driverClass, driver );
+      return driver;
+    }
+  }
+
+  /**
+   * NOTE: the connection is opened by {@link SQLConnection} itself, outside the pool of
+   * {@link #getDataSourceConnection(String)}
+   */
   public static SQLConnection getConnection( String connectionName ) throws DatasourceServiceException {
     IDatabaseConnection connection = null;
     try {
@@ -166,32 +196,34 @@ public class DatasourceInMemoryServiceHelper {
                                                                IPentahoSession session )
     throws DatasourceServiceException {
     SerializedResultSet serializedResultSet = null;
-    SQLConnection sqlConnection = null;
+    java.sql.Connection connection = null;
+    Statement statement = null;
     try {
-      sqlConnection = getConnection( connectionName );
-      sqlConnection.setMaxRows( rowLimit );
-      sqlConnection.setReadOnly( true );
-      IPentahoResultSet resultSet = sqlConnection.executeQuery( query );
-      MarshallableResultSet marshallableResultSet = new MarshallableResultSet();
-      marshallableResultSet.setResultSet( resultSet );
-      IPentahoMetaData ipmd = resultSet.getMetaData();
-      if ( ipmd instanceof SQLMetaData ) {
-        // Hack warning - get JDBC column types
-        // TODO: Need to generalize this amongst all IPentahoResultSets
-        SQLMetaData smd = (SQLMetaData) ipmd;
-        int[] columnTypes = smd.getJDBCColumnTypes();
-        List<List<String>> data = new ArrayList<List<String>>();
-        for ( MarshallableRow row : marshallableResultSet.getRows() ) {
-          String[] rowData = row.getCell();
-          List<String> rowDataList = new ArrayList<String>( rowData.length );
-          for ( int j = 0; j < rowData.length; j++ ) {
-            rowDataList.add( rowData[ j ] );
-          }
-          data.add( rowDataList );
+      connection = getDataSourceConnection( connectionName );
+      statement = connection.createStatement();
+      if ( rowLimit > 0 ) {
+        statement.setMaxRows( rowLimit );
+      }
+      ResultSet resultSet = statement.executeQuery( query );
+      ResultSetMetaData metaData = resultSet.getMetaData();
+      int columnCount = metaData.getColumnCount();
+      int[] columnTypes = new int[ columnCount ];
+      String[] columns = new String[ columnCount ];
+      for ( int i = 0; i < columnCount; i++ ) {
+        columnTypes[ i ] = metaData.getColumnType( i + 1 );
+        columns[ i ] = metaData.getColumnLabel( i + 1 );
+      }
+      List<List<String>> data = new ArrayList<List<String>>();
+      while ( resultSet.next() ) {
+        List<String> rowDataList = new ArrayList<String>( columnCount );
+        for ( int i = 0; i < columnCount; i++ ) {
+          Object value = resultSet.getObject( i + 1 );
+          rowDataList.add( value == null ? null : value.toString() );
         }
-        serializedResultSet =
-          new SerializedResultSet( columnTypes, marshallableResultSet.getColumnNames().getColumnName(), data );
+        data.add( rowDataList );
       }
+      resultSet.close();
+      serializedResultSet = new SerializedResultSet( columnTypes, columns, data );
     } catch ( Exception e ) {
       logger.error( Messages.getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0005_QUERY_VALIDATION_FAILED",
         e.getLocalizedMessage() ), e ); //$NON-NLS-1$
@@ -199,9 +231,7 @@ public class DatasourceInMemoryServiceHelper {
         .getErrorString( "DatasourceInMemoryServiceHelper.ERROR_0005_QUERY_VALIDATION_FAILED",
           e.getLocalizedMessage() ), e ); //$NON-NLS-1$
     } finally {
-      if ( sqlConnection != null ) {
-        sqlConnection.close();
-      }
+      close( statement, connection );
     }
 
     return serializedResultSet;
@@ -209,6 +239,26 @@ public class DatasourceInMemoryServiceHelper {
   }
 
 
+  /**
+   * Closes <code>statement</code> and returns <code>connection</code> to its pool, quietly.
+   */
+  public static void close( Statement statement, java.sql.Connection connection ) {
+    try {
+      if ( statement != null ) {
+        statement.close();
+      }
+    } catch ( SQLException e ) {
+      logger.debug( "Error closing a statement", e ); //$NON-NLS-1$
+    }
+    try {
+      if ( connection != null ) {
+        connection.close();
+      }
+    } catch ( SQLException e ) {
+      logger.debug( "Error returning a connection", e ); //$NON-NLS-1$
+    }
+  }
+
   public static List<List<String>> getCsvDataSample( String fileLocation, boolean headerPresent, String delimiter,
                                                      String enclosure, int rowLimit ) {
     String line = null;
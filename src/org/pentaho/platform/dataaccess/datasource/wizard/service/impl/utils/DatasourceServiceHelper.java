@@ -18,7 +18,10 @@
 package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -123,6 +126,71 @@ public class DatasourceServiceHelper {
 
   }
 
+  /**
+   * Runs <code>query</code> once on <code>connection</code> and copies at most <code>rowLimit</code> rows (all of them
+   * if it is not positive) straight off the JDBC result set into a {@link SerializedResultSet}, cells rendered the
+   * same way {@link MarshallableRow} renders them. The limit is set as the statement's maximum row count; a driver that
+   * does not take it and still has rows after the limit has its statement cancelled, so it does not go on fetching the
+   * rest. The connection is left open.
+   */
+  public static SerializedResultSet getSerializeableResultSet( Connection connection, String query, int rowLimit )
+    throws SQLException {
+    Statement statement = connection.createStatement();
+    try {
+      boolean limited = rowLimit > 0 && setMaxRows( statement, rowLimit );
+      ResultSet resultSet = statement.executeQuery( query );
+      try {
+        ResultSetMetaData meta = resultSet.getMetaData();
+        int columnCount = meta.getColumnCount();
+        int[] columnTypes = new int[ columnCount ];
+        String[] columnNames = new String[ columnCount ];
+        for ( int i = 0; i < columnCount; i++ ) {
+          columnTypes[ i ] = meta.getColumnType( i + 1 );
+          columnNames[ i ] = meta.getColumnLabel( i + 1 );
+        }
+        List<List<String>> data = new ArrayList<List<String>>();
+        while ( ( rowLimit <= 0 || data.size() < rowLimit ) && resultSet.next() ) {
+          List<String> row = new ArrayList<String>( columnCount );
+          for ( int i = 0; i < columnCount; i++ ) {
+            Object value = resultSet.getObject( i + 1 );
+            row.add( value == null ? null : value.toString() );
+          }
+          data.add( row );
+        }
+        if ( rowLimit > 0 && !limited && data.size() == rowLimit && resultSet.next() ) {
+          cancel( statement );
+        }
+        return new SerializedResultSet( columnTypes, columnNames, data );
+      } finally {
+        resultSet.close();
+      }
+    } finally {
+      statement.close();
+    }
+  }
+
+  /**
+   * @return whether the driver took <code>maxRows</code> as the statement's maximum row count
+   */
+  private static boolean setMaxRows( Statement statement, int maxRows ) {
+    try {
+      statement.setMaxRows( maxRows );
+      return statement.getMaxRows() == maxRows;
+    } catch ( SQLException e ) {
+      logger.debug( "Could not limit the rows of the preview statement", e ); //$NON-NLS-1$
+      return false;
+    }
+  }
+
+  private static void cancel( Statement statement ) {
+    try {
+      statement.cancel();
+    } catch ( SQLException e ) {
+      // not every driver can cancel; closing the statement still releases it
+      logger.debug( "Could not cancel the preview statement", e ); //$NON-NLS-1$
+    }
+  }
+
   public static List<List<String>> getCsvDataSample( String fileLocation, boolean headerPresent, String delimiter,
                                                      String enclosure, int rowLimit ) {
     CsvDataReader reader = new CsvDataReader( fileLocation, headerPresent, delimiter, enclosure, rowLimit );
@@ -0,0 +1,49 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Makes the entity tags the REST resources send with responses that clients may hold on to.
+ */
+public final class EntityTagUtil {
+
+  private EntityTagUtil() {
+  }
+
+  /**
+   * @return a hex MD5 hash of <code>content</code>, which changes whenever the content does
+   */
+  public static String digest( String content ) {
+    try {
+      byte[] hash = MessageDigest.getInstance( "MD5" ).digest( content.getBytes( "UTF-8" ) ); //$NON-NLS-1$ //$NON-NLS-2$
+      StringBuilder hex = new StringBuilder( hash.length * 2 );
+      for ( byte b : hash ) {
+        hex.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+      }
+      return hex.toString();
+    } catch ( NoSuchAlgorithmException e ) {
+      throw new IllegalStateException( e );
+    } catch ( UnsupportedEncodingException e ) {
+      throw new IllegalStateException( e );
+    }
+  }
+}
@@ -0,0 +1,493 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A small pool of the JDBC connections the in-memory services open to each named connection, so that they do not open
+ * a connection per call.
+ * <p/>
+ * At most <code>data-access-connection-pool-max-size</code> connections are handed out at a time; more callers wait
+ * up to {@link #BORROW_TIMEOUT_SECONDS} for one to be returned. A connection is returned by closing it. An idle
+ * connection is validated before it is handed out again, and closed once it has not been used for
+ * <code>data-access-connection-pool-idle-seconds</code>. The pooled connections only serve queries, so they are read
+ * only.
+ * <p/>
+ * The statements and database metadata of a connection handed out are wrapped too, so that their
+ * <code>getConnection()</code> gives the connection handed out rather than the pooled one behind it, and closing that
+ * returns it. Result sets are not wrapped, to keep reading rows direct.
+ */
+public class InMemoryConnectionPool {
+
+  /**
+   * Seconds a caller waits for a connection once all of them are handed out.
+   */
+  public static final int BORROW_TIMEOUT_SECONDS = 30;
+
+  /**
+   * Seconds an idle connection is given to prove it is still valid.
+   */
+  public static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private static final Log logger = LogFactory.getLog( InMemoryConnectionPool.class );
+
+  private static final ConcurrentMap<String, InMemoryConnectionPool> pools =
+    new ConcurrentHashMap<String, InMemoryConnectionPool>();
+
+  private static final ScheduledThreadPoolExecutor evictor = createEvictor();
+
+  private final Driver driver;
+
+  private final String url;
+
+  private final String user;
+
+  private final String password;
+
+  private final int maxSize;
+
+  private final long idleMillis;
+
+  private final long borrowTimeoutMillis;
+
+  private final Semaphore permits;
+
+  private final LinkedBlockingDeque<Idle> idle = new LinkedBlockingDeque<Idle>();
+
+  private volatile boolean closed;
+
+  private final AtomicInteger active = new AtomicInteger();
+
+  private final AtomicLong created = new AtomicLong();
+
+  private final AtomicLong destroyed = new AtomicLong();
+
+  private final AtomicLong borrowed = new AtomicLong();
+
+  private final AtomicLong timeouts = new AtomicLong();
+
+  private final AtomicLong invalid = new AtomicLong();
+
+  protected InMemoryConnectionPool( Driver driver, String url, String user, String password, int maxSize,
+                                    long idleMillis ) {
+    this( driver, url, user, password, maxSize, idleMillis, BORROW_TIMEOUT_SECONDS * 1000L );
+  }
+
+  /* package-local visibility for testing purposes */
+  InMemoryConnectionPool( Driver driver, String url, String user, String password, int maxSize, long idleMillis,
+                          long borrowTimeoutMillis ) {
+    this.driver = driver;
+    this.url = url;
+    this.user = user;
+    this.password = password;
+    this.maxSize = maxSize;
+    this.idleMillis = idleMillis;
+    this.borrowTimeoutMillis = borrowTimeoutMillis;
+    this.permits = new Semaphore( maxSize, true );
+  }
+
+  private static ScheduledThreadPoolExecutor createEvictor() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor( 1, new ThreadFactory() {
+      public Thread newThread( Runnable runnable ) {
+        Thread thread = new Thread( runnable, "data-access-connection-pool-evictor" ); //$NON-NLS-1$
+        thread.setDaemon( true );
+        return thread;
+      }
+    } );
+    executor.scheduleWithFixedDelay( new Runnable() {
+      public void run() {
+        for ( InMemoryConnectionPool pool : pools.values() ) {
+          pool.evict();
+        }
+      }
+    }, 30, 30, TimeUnit.SECONDS );
+    return executor;
+  }
+
+  /**
+   * @return the pool of the connection <code>connectionName</code>, made anew if it was made for another database or
+   *         user
+   */
+  public static InMemoryConnectionPool forConnection( String connectionName, Driver driver, String url, String user,
+                                                      String password ) {
+    InMemoryConnectionPool pool = pools.get( connectionName );
+    if ( pool != null && pool.isFor( driver, url, user, password ) ) {
+      return pool;
+    }
+    InMemoryConnectionPool created = new InMemoryConnectionPool( driver, url, user, password,
+      DataAccessSettings.getConnectionPoolMaxSize(), DataAccessSettings.getConnectionPoolIdle() * 1000L );
+    if ( pool == null ? pools.putIfAbsent( connectionName, created ) == null
+      : pools.replace( connectionName, pool, created ) ) {
+      if ( pool != null ) {
+        pool.close();
+      }
+      return created;
+    }
+    // another thread got there first
+    return forConnection( connectionName, driver, url, user, password );
+  }
+
+  /**
+   * Closes the pool of the connection <code>connectionName</code>; connections handed out are closed as they are
+   * returned.
+   */
+  public static void invalidate( String connectionName ) {
+    InMemoryConnectionPool pool = pools.remove( connectionName );
+    if ( pool != null ) {
+      pool.close();
+    }
+  }
+
+  /**
+   * @return the pools by connection name, for their metrics
+   */
+  public static Map<String, InMemoryConnectionPool> getPools() {
+    return Collections.unmodifiableMap( new HashMap<String, InMemoryConnectionPool>( pools ) );
+  }
+
+  /**
+   * @return a connection of the pool, to be closed by the caller to return it
+   */
+  public Connection getConnection() throws SQLException {
+    try {
+      if ( !permits.tryAcquire( borrowTimeoutMillis, TimeUnit.MILLISECONDS ) ) {
+        timeouts.incrementAndGet();
+        throw new SQLException(
+          "Timed out waiting for one of the " + maxSize + " connections to " + url ); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new SQLException( e );
+    }
+    boolean handedOut = false;
+    try {
+      Connection connection = null;
+      Idle entry;
+      while ( connection == null && ( entry = idle.pollLast() ) != null ) {
+        if ( isValid( entry.connection ) ) {
+          connection = entry.connection;
+        } else {
+          invalid.incrementAndGet();
+          destroy( entry.connection );
+        }
+      }
+      if ( connection == null ) {
+        connection = create();
+      }
+      active.incrementAndGet();
+      borrowed.incrementAndGet();
+      handedOut = true;
+      return (Connection) Proxy.newProxyInstance( InMemoryConnectionPool.class.getClassLoader(),
+        new Class<?>[] { Connection.class }, new Borrowed( connection ) );
+    } finally {
+      if ( !handedOut ) {
+        permits.release();
+      }
+    }
+  }
+
+  /**
+   * Closes the idle connections, and the ones handed out as they are returned.
+   */
+  public void close() {
+    closed = true;
+    Idle entry;
+    while ( ( entry = idle.pollFirst() ) != null ) {
+      destroy( entry.connection );
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @return connections handed out and not returned yet
+   */
+  public int getActiveCount() {
+    return active.get();
+  }
+
+  public int getIdleCount() {
+    return idle.size();
+  }
+
+  public long getCreatedCount() {
+    return created.get();
+  }
+
+  public long getDestroyedCount() {
+    return destroyed.get();
+  }
+
+  /**
+   * @return times a connection was handed out
+   */
+  public long getBorrowedCount() {
+    return borrowed.get();
+  }
+
+  /**
+   * @return callers waiting for a connection to be returned
+   */
+  public int getWaitingCount() {
+    return permits.getQueueLength();
+  }
+
+  /**
+   * @return times a caller gave up waiting for a connection
+   */
+  public long getTimeoutCount() {
+    return timeouts.get();
+  }
+
+  /**
+   * @return idle connections found no longer valid
+   */
+  public long getInvalidCount() {
+    return invalid.get();
+  }
+
+  @Override
+  public String toString() {
+    return url + " [active=" + getActiveCount() + ", idle=" + getIdleCount() //$NON-NLS-1$ //$NON-NLS-2$
+      + ", max=" + maxSize + ", waiting=" + getWaitingCount() //$NON-NLS-1$ //$NON-NLS-2$
+      + ", created=" + getCreatedCount() + ", destroyed=" + getDestroyedCount() //$NON-NLS-1$ //$NON-NLS-2$
+      + ", borrowed=" + getBorrowedCount() + ", timeouts=" + getTimeoutCount() //$NON-NLS-1$ //$NON-NLS-2$
+      + ", invalid=" + getInvalidCount() + "]"; //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  /**
+   * Closes the connections idle for longer than <code>data-access-connection-pool-idle-seconds</code>.
+   */
+  void evict() {
+    long oldest = System.currentTimeMillis() - idleMillis;
+    for ( Idle entry : idle ) {
+      // a connection taken meanwhile is no longer there to remove
+      if ( entry.since < oldest && idle.remove( entry ) ) {
+        destroy( entry.connection );
+      }
+    }
+    if ( logger.isDebugEnabled() ) {
+      logger.debug( "Connection pool " + this ); //$NON-NLS-1$
+    }
+  }
+
+  private boolean isFor( Driver driver, String url, String user, String password ) {
+    return this.driver == driver && url.equals( this.url ) && equal( user, this.user )
+      && equal( password, this.password );
+  }
+
+  private static boolean equal( String a, String b ) {
+    return a == null ? b == null : a.equals( b );
+  }
+
+  private Connection create() throws SQLException {
+    Properties info = new Properties();
+    if ( user != null ) {
+      info.put( "user", user ); //$NON-NLS-1$
+    }
+    if ( password != null ) {
+      info.put( "password", password ); //$NON-NLS-1$
+    }
+    Connection connection = driver.connect( url, info );
+    if ( connection == null ) {
+      throw new SQLException(
+        "The driver " + driver.getClass().getName() + " does not accept " + url ); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+    created.incrementAndGet();
+    try {
+      connection.setReadOnly( true );
+    } catch ( SQLException e ) {
+      logger.debug( "The driver does not support read only connections", e ); //$NON-NLS-1$
+    }
+    return connection;
+  }
+
+  private boolean isValid( Connection connection ) {
+    try {
+      return connection.isValid( VALIDATION_TIMEOUT_SECONDS );
+    } catch ( SQLException e ) {
+      return false;
+    } catch ( AbstractMethodError e ) {
+      // a pre JDBC 4 driver; the connection is found out when it is used
+      return true;
+    }
+  }
+
+  private void release( Connection connection ) {
+    try {
+      if ( closed || connection.isClosed() ) {
+        destroy( connection );
+        return;
+      }
+      if ( !connection.getAutoCommit() ) {
+        connection.rollback();
+        connection.setAutoCommit( true );
+      }
+      idle.offerLast( new Idle( connection ) );
+      if ( closed ) {
+        // closed while the connection was being returned
+        close();
+      }
+    } catch ( SQLException e ) {
+      destroy( connection );
+    } finally {
+      active.decrementAndGet();
+      permits.release();
+    }
+  }
+
+  private void destroy( Connection connection ) {
+    destroyed.incrementAndGet();
+    try {
+      connection.close();
+    } catch ( SQLException e ) {
+      logger.debug( "Error closing a pooled connection", e ); //$NON-NLS-1$
+    }
+  }
+
+  private static class Idle {
+
+    private final Connection connection;
+
+    private final long since = System.currentTimeMillis();
+
+    Idle( Connection connection ) {
+      this.connection = connection;
+    }
+  }
+
+  /**
+   * A connection handed out; closing it returns it to the pool.
+   */
+  private class Borrowed implements InvocationHandler {
+
+    private final Connection connection;
+
+    private volatile boolean returned;
+
+    Borrowed( Connection connection ) {
+      this.connection = connection;
+    }
+
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+      String name = method.getName();
+      if ( "close".equals( name ) ) { //$NON-NLS-1$
+        synchronized ( this ) {
+          if ( !returned ) {
+            returned = true;
+            release( connection );
+          }
+        }
+        return null;
+      }
+      if ( "isClosed".equals( name ) ) { //$NON-NLS-1$
+        return returned || connection.isClosed();
+      }
+      if ( "equals".equals( name ) ) { //$NON-NLS-1$
+        return proxy == args[ 0 ];
+      }
+      if ( "hashCode".equals( name ) ) { //$NON-NLS-1$
+        return System.identityHashCode( proxy );
+      }
+      if ( returned ) {
+        throw new SQLException( "The connection was closed" ); //$NON-NLS-1$
+      }
+      try {
+        return wrap( proxy, method, method.invoke( connection, args ) );
+      } catch ( InvocationTargetException e ) {
+        throw e.getCause();
+      }
+    }
+  }
+
+  /**
+   * @return <code>result</code>, wrapped if it is a statement or database metadata of the connection handed out as
+   *         <code>borrowed</code>
+   */
+  private static Object wrap( Object borrowed, Method method, Object result ) {
+    Class<?> type = method.getReturnType();
+    if ( result == null || !( type == Statement.class || type == PreparedStatement.class
+      || type == CallableStatement.class || type == DatabaseMetaData.class ) ) {
+      return result;
+    }
+    return Proxy.newProxyInstance( InMemoryConnectionPool.class.getClassLoader(), new Class<?>[] { type },
+      new OfBorrowed( borrowed, result ) );
+  }
+
+  /**
+   * A statement or database metadata of a connection handed out, which hands out that connection as its own.
+   */
+  private static class OfBorrowed implements InvocationHandler {
+
+    private final Object borrowed;
+
+    private final Object target;
+
+    OfBorrowed( Object borrowed, Object target ) {
+      this.borrowed = borrowed;
+      this.target = target;
+    }
+
+    public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+      String name = method.getName();
+      if ( "getConnection".equals( name ) && method.getParameterTypes().length == 0 ) { //$NON-NLS-1$
+        return borrowed;
+      }
+      if ( "equals".equals( name ) ) { //$NON-NLS-1$
+        return proxy == args[ 0 ];
+      }
+      if ( "hashCode".equals( name ) ) { //$NON-NLS-1$
+        return System.identityHashCode( proxy );
+      }
+      try {
+        return method.invoke( target, args );
+      } catch ( InvocationTargetException e ) {
+        throw e.getCause();
+      }
+    }
+  }
+}
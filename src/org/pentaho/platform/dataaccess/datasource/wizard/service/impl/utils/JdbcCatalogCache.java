@@ -0,0 +1,585 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+
+/**
+ * What the multi-table wizard browses of a JDBC connection: its schemas, the tables of each schema and the fields of
+ * each table. Each is read the first time it is asked for and kept for
+ * <code>data-access-jdbc-catalog-ttl-seconds</code>, so browsing a database with many tables does not read its whole
+ * catalog, nor read it again on every step.
+ * <p/>
+ * What has been read is shared, but no lock is held while the database is read: each caller reads on a connection of
+ * its own, taken from a few kept open between reads and closed once they have not been used for
+ * {@link #IDLE_SECONDS}. Two callers asking for the same thing at once may both read it. A connection that is updated
+ * or deleted must be {@link #invalidate(String) invalidated}.
+ */
+public class JdbcCatalogCache {
+
+  /**
+   * Seconds an open connection is kept after its last use.
+   */
+  public static final int IDLE_SECONDS = 60;
+
+  /**
+   * Most schemas whose fields {@link #getTablesFields(List)} reads at the same time, and most connections kept open
+   * between reads.
+   */
+  public static final int PARALLEL_READS = 4;
+
+  private static final Log logger = LogFactory.getLog( JdbcCatalogCache.class );
+
+  /**
+   * Stands for the <code>null</code> schema of databases without schemas, as a ConcurrentHashMap takes no null keys.
+   */
+  private static final String NULL_KEY = "\u0000"; //$NON-NLS-1$
+
+  private static final ConcurrentMap<String, JdbcCatalogCache> caches =
+    new ConcurrentHashMap<String, JdbcCatalogCache>();
+
+  private static final ScheduledThreadPoolExecutor closer = createCloser();
+
+  private static final ThreadPoolExecutor readers = createReaders();
+
+  private final DatabaseMeta databaseMeta;
+
+  private final String definition;
+
+  private final long ttl;
+
+  /**
+   * The open connections not in use, the one used last at the end. Guards {@link #closing} too.
+   */
+  private final LinkedList<Idle> idle = new LinkedList<Idle>();
+
+  private ScheduledFuture<?> closing;
+
+  /**
+   * Counts the refreshes, so that what was read before one is not kept after it.
+   */
+  private final AtomicLong generation = new AtomicLong();
+
+  private volatile Timed schemas;
+
+  private final ConcurrentMap<String, Timed> tables = new ConcurrentHashMap<String, Timed>();
+
+  private final ConcurrentMap<String, Timed> fields = new ConcurrentHashMap<String, Timed>();
+
+  protected JdbcCatalogCache( DatabaseMeta databaseMeta, long ttl ) {
+    this.databaseMeta = databaseMeta;
+    this.definition = databaseMeta.getXML();
+    this.ttl = ttl;
+  }
+
+  private static ScheduledThreadPoolExecutor createCloser() {
+    ScheduledThreadPoolExecutor executor =
+      new ScheduledThreadPoolExecutor( 1, daemonThreads( "data-access-jdbc-catalog-closer" ) ); //$NON-NLS-1$
+    // a closed cache cancels its pending close; it should not linger in the queue
+    executor.setRemoveOnCancelPolicy( true );
+    return executor;
+  }
+
+  private static ThreadPoolExecutor createReaders() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor( PARALLEL_READS, PARALLEL_READS, IDLE_SECONDS,
+      TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+      daemonThreads( "data-access-jdbc-catalog-reader" ) ); //$NON-NLS-1$
+    executor.allowCoreThreadTimeOut( true );
+    return executor;
+  }
+
+  private static ThreadFactory daemonThreads( final String name ) {
+    return new ThreadFactory() {
+      public Thread newThread( Runnable runnable ) {
+        Thread thread = new Thread( runnable, name );
+        thread.setDaemon( true );
+        return thread;
+      }
+    };
+  }
+
+  /**
+   * @return the cache of the connection <code>connectionName</code>, made anew if <code>databaseMeta</code> no longer
+   *         describes the connection the current one was made for
+   */
+  public static JdbcCatalogCache forConnection( String connectionName, DatabaseMeta databaseMeta ) {
+    JdbcCatalogCache cache = caches.get( connectionName );
+    if ( cache != null
+      && ( cache.databaseMeta == databaseMeta || cache.definition.equals( databaseMeta.getXML() ) ) ) {
+      return cache;
+    }
+    JdbcCatalogCache created = new JdbcCatalogCache( databaseMeta, DataAccessSettings.getJdbcCatalogTtl() * 1000L );
+    if ( cache == null ? caches.putIfAbsent( connectionName, created ) == null
+      : caches.replace( connectionName, cache, created ) ) {
+      if ( cache != null ) {
+        cache.close();
+      }
+      return created;
+    }
+    // another thread got there first
+    return forConnection( connectionName, databaseMeta );
+  }
+
+  /**
+   * Forgets everything read from the connection <code>connectionName</code> and closes its open connections.
+   */
+  public static void invalidate( String connectionName ) {
+    JdbcCatalogCache cache = caches.remove( connectionName );
+    if ( cache != null ) {
+      cache.close();
+    }
+  }
+
+  /**
+   * Unlike <code>Database.getTableMap</code>, which the wizard used to take the schema names from, this does not read
+   * the name of every table, so schemas without tables are listed too.
+   *
+   * @return the names of the schemas of the database, or of its catalogs if it has no schemas
+   */
+  public List<String> getSchemas() throws KettleDatabaseException {
+    Timed timed = schemas;
+    if ( !isCurrent( timed ) ) {
+      long read = generation.get();
+      List<String> names = new ArrayList<String>();
+      Database connected = borrow();
+      try {
+        DatabaseMetaData metaData = connected.getDatabaseMetaData();
+        readNames( metaData.getSchemas(), "TABLE_SCHEM", names ); //$NON-NLS-1$
+        if ( names.isEmpty() ) {
+          readNames( metaData.getCatalogs(), "TABLE_CAT", names ); //$NON-NLS-1$
+        }
+      } catch ( SQLException e ) {
+        discard( connected );
+        throw new KettleDatabaseException( e );
+      }
+      giveBack( connected );
+      timed = new Timed( names );
+      if ( read == generation.get() ) {
+        schemas = timed;
+      }
+    }
+    return new ArrayList<String>( timed.value );
+  }
+
+  /**
+   * @return the tables, then the views, of the schema <code>schema</code>, qualified with the schema name
+   */
+  public List<String> getTables( String schema ) throws KettleDatabaseException {
+    Timed timed = get( tables, schema );
+    if ( !isCurrent( timed ) ) {
+      long read = generation.get();
+      List<String> names = new ArrayList<String>();
+      Database connected = borrow();
+      try {
+        names.addAll( Arrays.asList( connected.getTablenames( schema, true ) ) );
+        names.addAll( Arrays.asList( connected.getViews( schema, true ) ) );
+      } catch ( KettleDatabaseException e ) {
+        discard( connected );
+        throw e;
+      }
+      giveBack( connected );
+      timed = new Timed( names );
+      put( tables, schema, timed, read );
+    }
+    return new ArrayList<String>( timed.value );
+  }
+
+  /**
+   * @return the names of the fields of the table <code>table</code>, as named by {@link #getTables(String)}
+   */
+  public List<String> getTableFields( String table ) throws KettleDatabaseException {
+    Timed timed = get( fields, table );
+    if ( !isCurrent( timed ) ) {
+      long read = generation.get();
+      Database connected = borrow();
+      String[] names;
+      try {
+        // Setting the query limit to 1 before executing the query
+        connected.setQueryLimit( 1 );
+        connected.getRows( databaseMeta.getSQLQueryFields( table ), 1 );
+        names = connected.getReturnRowMeta().getFieldNames();
+      } catch ( KettleDatabaseException e ) {
+        connected.setQueryLimit( 0 );
+        discard( connected );
+        throw e;
+      }
+      connected.setQueryLimit( 0 );
+      giveBack( connected );
+      timed = new Timed( Arrays.asList( names ) );
+      put( fields, table, timed, read );
+    }
+    return new ArrayList<String>( timed.value );
+  }
+
+  /**
+   * Reads the fields of several tables at once with {@link DatabaseMetaData#getColumns}. The tables of the first schema
+   * are read on a connection kept open between reads; those of each other schema on a connection of its own, in
+   * parallel. A table whose columns cannot be found that way, say because its schema's connection could not be
+   * opened, is read as {@link #getTableFields(String)} reads it.
+   *
+   * @return the names of the fields of each of the tables <code>tables</code>, by table
+   */
+  public Map<String, List<String>> getTablesFields( List<String> tables ) throws KettleDatabaseException {
+    long read = generation.get();
+    Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+    Map<String, List<String>> bySchema = new LinkedHashMap<String, List<String>>();
+    for ( String table : tables ) {
+      Timed timed = get( fields, table );
+      if ( isCurrent( timed ) ) {
+        result.put( table, new ArrayList<String>( timed.value ) );
+      } else if ( !result.containsKey( table ) ) {
+        String schema = splitName( table )[ 0 ];
+        if ( schema != null ) {
+          schema = unquote( schema );
+        }
+        List<String> group = bySchema.get( schema );
+        if ( group == null ) {
+          group = new ArrayList<String>();
+          bySchema.put( schema, group );
+        }
+        group.add( table );
+        result.put( table, null );
+      }
+    }
+    if ( !bySchema.isEmpty() ) {
+      Map<String, List<String>> columns = readColumns( bySchema );
+      for ( Map.Entry<String, List<String>> entry : result.entrySet() ) {
+        if ( entry.getValue() == null ) {
+          List<String> names = columns.get( entry.getKey() );
+          if ( names == null || names.isEmpty() ) {
+            entry.setValue( getTableFields( entry.getKey() ) );
+          } else {
+            put( fields, entry.getKey(), new Timed( names ), read );
+            entry.setValue( new ArrayList<String>( names ) );
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Forgets everything read so far, so the next calls read the database again.
+   */
+  public void refresh() {
+    generation.incrementAndGet();
+    schemas = null;
+    tables.clear();
+    fields.clear();
+  }
+
+  /**
+   * Closes the open connections not in use; those in use are closed as they are given back once idle. Connections
+   * are opened again if the cache is used afterwards.
+   */
+  public void close() {
+    List<Idle> closed;
+    synchronized ( idle ) {
+      if ( closing != null ) {
+        closing.cancel( false );
+        closing = null;
+      }
+      closed = new ArrayList<Idle>( idle );
+      idle.clear();
+    }
+    for ( Idle entry : closed ) {
+      disconnect( entry.database );
+    }
+  }
+
+  protected Database createDatabase( DatabaseMeta databaseMeta ) {
+    return new Database( null, databaseMeta );
+  }
+
+  private boolean isCurrent( Timed timed ) {
+    return timed != null && System.currentTimeMillis() - timed.read < ttl;
+  }
+
+  private static Timed get( Map<String, Timed> map, String key ) {
+    return map.get( key == null ? NULL_KEY : key );
+  }
+
+  /**
+   * Keeps what was read, unless the cache was refreshed since <code>read</code>.
+   */
+  private void put( Map<String, Timed> map, String key, Timed timed, long read ) {
+    if ( read == generation.get() ) {
+      map.put( key == null ? NULL_KEY : key, timed );
+    }
+  }
+
+  /**
+   * @return an open connection for the caller alone, until it is given back or discarded
+   */
+  private Database borrow() throws KettleDatabaseException {
+    synchronized ( idle ) {
+      if ( !idle.isEmpty() ) {
+        return idle.removeLast().database;
+      }
+    }
+    Database created = createDatabase( databaseMeta );
+    created.connect();
+    return created;
+  }
+
+  /**
+   * Keeps a borrowed connection open for the next caller, unless enough are kept already.
+   */
+  private void giveBack( Database database ) {
+    synchronized ( idle ) {
+      if ( idle.size() < PARALLEL_READS ) {
+        idle.addLast( new Idle( database ) );
+        if ( closing == null ) {
+          scheduleClosing( IDLE_SECONDS * 1000L );
+        }
+        return;
+      }
+    }
+    disconnect( database );
+  }
+
+  /**
+   * Closes a borrowed connection that may be broken.
+   */
+  private void discard( Database database ) {
+    disconnect( database );
+  }
+
+  /**
+   * Schedules the connections kept open to be closed once they have been idle for {@link #IDLE_SECONDS}.
+   */
+  private void scheduleClosing( long delay ) {
+    closing = closer.schedule( new Runnable() {
+      public void run() {
+        closeIdle();
+      }
+    }, delay, TimeUnit.MILLISECONDS );
+  }
+
+  private void closeIdle() {
+    List<Database> expired = new ArrayList<Database>();
+    synchronized ( idle ) {
+      closing = null;
+      long now = System.currentTimeMillis();
+      // the connection used longest ago is first
+      while ( !idle.isEmpty() && now - idle.getFirst().since >= IDLE_SECONDS * 1000L ) {
+        expired.add( idle.removeFirst().database );
+      }
+      if ( !idle.isEmpty() ) {
+        scheduleClosing( idle.getFirst().since + IDLE_SECONDS * 1000L - now );
+      }
+    }
+    for ( Database database : expired ) {
+      disconnect( database );
+    }
+  }
+
+  private static void disconnect( Database database ) {
+    try {
+      database.disconnect();
+    } catch ( Exception e ) {
+      logger.debug( "Error closing the catalog connection", e ); //$NON-NLS-1$
+    }
+  }
+
+  private Map<String, List<String>> readColumns( Map<String, List<String>> bySchema ) throws KettleDatabaseException {
+    Iterator<Map.Entry<String, List<String>>> groups = bySchema.entrySet().iterator();
+    Map.Entry<String, List<String>> first = groups.next();
+    List<Future<Map<String, List<String>>>> others = new ArrayList<Future<Map<String, List<String>>>>();
+    while ( groups.hasNext() ) {
+      final Map.Entry<String, List<String>> group = groups.next();
+      others.add( readers.submit( new Callable<Map<String, List<String>>>() {
+        public Map<String, List<String>> call() throws Exception {
+          Database own = createDatabase( databaseMeta );
+          own.connect();
+          try {
+            return readColumns( own.getDatabaseMetaData(), group.getKey(), group.getValue() );
+          } finally {
+            own.disconnect();
+          }
+        }
+      } ) );
+    }
+
+    Map<String, List<String>> read = new HashMap<String, List<String>>();
+    Database connected = null;
+    try {
+      connected = borrow();
+      read.putAll( readColumns( connected.getDatabaseMetaData(), first.getKey(), first.getValue() ) );
+      giveBack( connected );
+      connected = null;
+      for ( Future<Map<String, List<String>>> other : others ) {
+        try {
+          read.putAll( other.get() );
+        } catch ( ExecutionException e ) {
+          // its tables are read one at a time instead
+          logger.debug( "Error reading fields on a connection of their own", e.getCause() ); //$NON-NLS-1$
+        }
+      }
+    } catch ( SQLException e ) {
+      throw new KettleDatabaseException( e );
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+      throw new KettleDatabaseException( e );
+    } finally {
+      if ( connected != null ) {
+        discard( connected );
+      }
+      for ( Future<Map<String, List<String>>> other : others ) {
+        other.cancel( true );
+      }
+    }
+    return read;
+  }
+
+  private static Map<String, List<String>> readColumns( DatabaseMetaData metaData, String schema, List<String> tables )
+    throws SQLException {
+    String escape = metaData.getSearchStringEscape();
+    Map<String, List<String>> read = new HashMap<String, List<String>>();
+    for ( String table : tables ) {
+      String tableName = unquote( splitName( table )[ 1 ] );
+      List<String> names = new ArrayList<String>();
+      readColumnNames( metaData.getColumns( null, escape( schema, escape ), escape( tableName, escape ), null ),
+        tableName, names );
+      if ( names.isEmpty() && schema != null ) {
+        // databases without schemas qualify their tables with the catalog
+        readColumnNames( metaData.getColumns( schema, null, escape( tableName, escape ), null ), tableName, names );
+      }
+      read.put( table, names );
+    }
+    return read;
+  }
+
+  private static void readColumnNames( ResultSet resultSet, String table, List<String> names ) throws SQLException {
+    try {
+      while ( resultSet.next() ) {
+        // a driver ignoring the escape may match more tables than the one asked for
+        String name = resultSet.getString( "COLUMN_NAME" ); //$NON-NLS-1$
+        if ( name != null && table.equals( resultSet.getString( "TABLE_NAME" ) ) ) { //$NON-NLS-1$
+          names.add( name );
+        }
+      }
+    } finally {
+      resultSet.close();
+    }
+  }
+
+  /**
+   * @return the schema, or <code>null</code>, and the table of a table name as {@link #getTables(String)} names it
+   */
+  static String[] splitName( String table ) {
+    char quote = 0;
+    for ( int i = 0; i < table.length(); i++ ) {
+      char c = table.charAt( i );
+      if ( quote != 0 ) {
+        if ( c == quote ) {
+          quote = 0;
+        }
+      } else if ( c == '"' || c == '`' ) {
+        quote = c;
+      } else if ( c == '[' ) {
+        quote = ']';
+      } else if ( c == '.' ) {
+        return new String[] { table.substring( 0, i ), table.substring( i + 1 ) };
+      }
+    }
+    return new String[] { null, table };
+  }
+
+  static String unquote( String name ) {
+    if ( name.length() > 1 ) {
+      char first = name.charAt( 0 );
+      char last = name.charAt( name.length() - 1 );
+      if ( ( first == '"' || first == '`' ) && last == first || first == '[' && last == ']' ) {
+        return name.substring( 1, name.length() - 1 );
+      }
+    }
+    return name;
+  }
+
+  private static String escape( String name, String escape ) {
+    if ( name == null || escape == null || escape.isEmpty() ) {
+      return name;
+    }
+    return name.replace( escape, escape + escape ).replace( "_", escape + "_" ) //$NON-NLS-1$ //$NON-NLS-2$
+      .replace( "%", escape + "%" ); //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  private static void readNames( ResultSet resultSet, String column, List<String> names ) throws SQLException {
+    try {
+      while ( resultSet.next() ) {
+        String name = resultSet.getString( column );
+        if ( name != null ) {
+          names.add( name );
+        }
+      }
+    } finally {
+      resultSet.close();
+    }
+  }
+
+  private static class Idle {
+
+    private final Database database;
+
+    private final long since = System.currentTimeMillis();
+
+    Idle( Database database ) {
+      this.database = database;
+    }
+  }
+
+  private static class Timed {
+
+    private final List<String> value;
+
+    private final long read = System.currentTimeMillis();
+
+    Timed( List<String> value ) {
+      this.value = value;
+    }
+  }
+}
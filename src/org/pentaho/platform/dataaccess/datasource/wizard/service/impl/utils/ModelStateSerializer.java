@@ -0,0 +1,101 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import java.io.InputStream;
+
+import org.pentaho.platform.dataaccess.datasource.wizard.models.ColumnInfo;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.DatasourceDTO;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.ModelInfo;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.MultiTableDatasourceDTO;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.DomDriver;
+
+/**
+ * The XStream instances the datasource services write and read their model state with. Making an XStream is costly,
+ * reflecting over the converters it registers, so each is made once, configured, and shared: XStream is safe for
+ * concurrent use once configured.
+ * <p/>
+ * Each instance keeps the configuration of the call sites it replaces, so the XML written stays the same as before.
+ */
+public final class ModelStateSerializer {
+
+  private ModelStateSerializer() {
+  }
+
+  /**
+   * Writes and reads the model state of SQL and CSV datasources, and writes that of multi-table ones. Classes are
+   * loaded with the plugin's class loader, which the thread's may not see.
+   */
+  private static class ModelState {
+    private static final XStream INSTANCE = create();
+
+    private static XStream create() {
+      XStream xstream = new XStream();
+      xstream.setClassLoader( DatasourceDTO.class.getClassLoader() );
+      return xstream;
+    }
+  }
+
+  /**
+   * Reads the model state of multi-table datasources, including the pre 5.0 one. {@link LegacyDatasourceConverter}
+   * cannot write, so this one only reads.
+   */
+  private static class MultiTableModelState {
+    private static final XStream INSTANCE = create();
+
+    private static XStream create() {
+      XStream xstream = new XStream();
+      xstream.setClassLoader( MultiTableDatasourceDTO.class.getClassLoader() );
+      xstream.registerConverter( new LegacyDatasourceConverter() );
+      return xstream;
+    }
+  }
+
+  /**
+   * Reads the model info files of CSV projects.
+   */
+  private static class ModelInfoFile {
+    private static final XStream INSTANCE = create();
+
+    private static XStream create() {
+      XStream xstream = new XStream( new DomDriver( "UTF-8" ) ); //$NON-NLS-1$
+      xstream.setClassLoader( ModelInfo.class.getClassLoader() );
+      xstream.alias( "modelInfo", ModelInfo.class ); //$NON-NLS-1$
+      xstream.alias( "columnInfo", ColumnInfo.class ); //$NON-NLS-1$
+      return xstream;
+    }
+  }
+
+  public static String toXML( Object modelState ) {
+    return ModelState.INSTANCE.toXML( modelState );
+  }
+
+  public static Object fromXML( String modelState ) {
+    return ModelState.INSTANCE.fromXML( modelState );
+  }
+
+  public static MultiTableDatasourceDTO multiTableFromXML( String modelState ) {
+    return (MultiTableDatasourceDTO) MultiTableModelState.INSTANCE.fromXML( modelState );
+  }
+
+  public static ModelInfo modelInfoFromXML( InputStream in ) {
+    return (ModelInfo) ModelInfoFile.INSTANCE.fromXML( in );
+  }
+}
@@ -41,6 +41,7 @@ import org.pentaho.ui.xul.impl.AbstractXulEventHandler;
 import org.pentaho.ui.xul.stereotype.Bindable;
 
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.rpc.ServiceDefTarget;
 
@@ -50,6 +51,8 @@ import com.google.gwt.user.client.rpc.ServiceDefTarget;
 public class CsvDatasource extends AbstractXulEventHandler implements IWizardDatasource {
 
 
+  private static final int JOB_POLL_INTERVAL_MS = 1000;
+
   private ICsvDatasourceServiceAsync csvDatasourceService;
 
   private DatasourceModel datasourceModel;
@@ -155,28 +158,57 @@ public class CsvDatasource extends AbstractXulEventHandler implements IWizardDat
 
     datasourceModel.getModelInfo().setDatasourceName( datasourceModel.getDatasourceName() );
     csvDatasourceService
-      .generateDomain( DatasourceDTOUtil.generateDTO( datasourceModel ), new AsyncCallback<IDatasourceSummary>() {
+      .submitDomainJob( DatasourceDTOUtil.generateDTO( datasourceModel ), new AsyncCallback<String>() {
         public void onFailure( Throwable th ) {
-          MessageHandler.getInstance().closeWaitingDialog();
-          if ( th instanceof CsvTransformGeneratorException ) {
-            MessageHandler.getInstance().showErrorDetailsDialog( MessageHandler.getString( "ERROR" ), th.getLocalizedMessage(),
-              ( (CsvTransformGeneratorException) th ).getCauseMessage() + ( (CsvTransformGeneratorException) th )
-                .getCauseStackTrace() );
-          } else {
-            MessageHandler.getInstance().showErrorDialog( MessageHandler.getString( "ERROR" ), th.getMessage() );
-          }
-          th.printStackTrace();
+          showFailure( th );
         }
 
-        public void onSuccess( IDatasourceSummary stats ) {
-          CsvDatasource.this.stats = (FileTransformStats) stats;
-
-          MessageHandler.getInstance().closeWaitingDialog();
-          callback.success( stats );
+        public void onSuccess( String jobId ) {
+          pollDomainJob( jobId, callback );
         }
       } );
   }
 
+  /**
+   * Asks for the result of the job every {@link #JOB_POLL_INTERVAL_MS} until it is done, so no request is held open
+   * for the length of the load.
+   */
+  private void pollDomainJob( final String jobId, final XulServiceCallback<IDatasourceSummary> callback ) {
+    csvDatasourceService.getDomainJobResult( jobId, new AsyncCallback<IDatasourceSummary>() {
+      public void onFailure( Throwable th ) {
+        showFailure( th );
+      }
+
+      public void onSuccess( IDatasourceSummary stats ) {
+        if ( stats == null ) {
+          new Timer() {
+            @Override
+            public void run() {
+              pollDomainJob( jobId, callback );
+            }
+          }.schedule( JOB_POLL_INTERVAL_MS );
+          return;
+        }
+        CsvDatasource.this.stats = (FileTransformStats) stats;
+
+        MessageHandler.getInstance().closeWaitingDialog();
+        callback.success( stats );
+      }
+    } );
+  }
+
+  private void showFailure( Throwable th ) {
+    MessageHandler.getInstance().closeWaitingDialog();
+    if ( th instanceof CsvTransformGeneratorException ) {
+      MessageHandler.getInstance().showErrorDetailsDialog( MessageHandler.getString( "ERROR" ), th.getLocalizedMessage(),
+        ( (CsvTransformGeneratorException) th ).getCauseMessage() + ( (CsvTransformGeneratorException) th )
+          .getCauseStackTrace() );
+    } else {
+      MessageHandler.getInstance().showErrorDialog( MessageHandler.getString( "ERROR" ), th.getMessage() );
+    }
+    th.printStackTrace();
+  }
+
   private void setColumnIdsToColumnNamesIfNecessary() {
     for ( ColumnInfo ci : datasourceModel.getModelInfo().getColumns() ) {
       if ( ci.getId() == null ) {
@@ -23,6 +23,7 @@ import org.pentaho.platform.dataaccess.datasource.wizard.models.DataRow;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 public class FileTransformStats implements Serializable, IDatasourceSummary {
 
@@ -36,6 +37,7 @@ public class FileTransformStats implements Serializable, IDatasourceSummary {
   private boolean indexStarted = false;
   private boolean indexFinished = false;
   private int indexDone = 0;
+  private HashMap<String, Long> indexMillis = new HashMap<String, Long>();
   private ArrayList<String> errors = new ArrayList<String>();
   private transient DataRow[] rows = null;
   private long errorCount = 0;
@@ -109,6 +111,17 @@ public class FileTransformStats implements Serializable, IDatasourceSummary {
     this.indexDone = indexDone;
   }
 
+  /**
+   * @return how many milliseconds each index that was built took, by index name
+   */
+  public HashMap<String, Long> getIndexMillis() {
+    return indexMillis;
+  }
+
+  public void setIndexMillis( HashMap<String, Long> indexMillis ) {
+    this.indexMillis = indexMillis;
+  }
+
   public void setErrors( ArrayList<String> errors ) {
     this.errors = errors;
   }
@@ -17,8 +17,10 @@
 
 package org.pentaho.platform.dataaccess.datasource.wizard.sources.multitable;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.pentaho.agilebi.modeler.models.JoinFieldModel;
 import org.pentaho.agilebi.modeler.models.JoinRelationshipModel;
@@ -58,6 +60,7 @@ public class JoinDefinitionsStep extends AbstractWizardStep {
   private JoinValidator validator;
   private Binding rightKeyFieldBinding;
   private Binding leftKeyFieldBinding;
+  private boolean fetchingFields;
 
   public JoinDefinitionsStep( MultitableGuiModel joinGuiModel, JoinSelectionServiceGwtImpl joinSelectionServiceGwtImpl,
                               MultiTableDatasource parentDatasource ) {
@@ -167,9 +170,90 @@ public class JoinDefinitionsStep extends AbstractWizardStep {
     super.stepActivatingForward();
     this.selectedConnection = ( (MultiTableDatasource) this.parentDatasource ).getConnection();
     this.joinGuiModel.computeJoinDefinitionStepTables();
+    fetchTableFields();
     parentDatasource.setFinishable( this.validator.allTablesJoined() );
   }
 
+  /**
+   * Fetches the fields of all the selected tables that have none yet in one request, rather than one request per table
+   * as each is picked.
+   */
+  private void fetchTableFields() {
+    final List<JoinTableModel> tables = new ArrayList<JoinTableModel>();
+    List<String> names = new ArrayList<String>();
+    for ( JoinTableModel table : this.joinGuiModel.getSelectedTables() ) {
+      if ( table.getFields() == null || table.getFields().isEmpty() ) {
+        tables.add( table );
+        names.add( table.getName() );
+      }
+    }
+    if ( tables.isEmpty() ) {
+      return;
+    }
+    this.fetchingFields = true;
+    MessageHandler.getInstance().showWaitingDialog( MessageHandler.getString( "multitable.FETCHING_TABLE_INFO" ) );
+    joinSelectionServiceGwtImpl.getTablesFields( names, selectedConnection, new XulServiceCallback<Map>() {
+      public void error( String message, Throwable error ) {
+        // the tables already picked are fetched one at a time; the others when they are picked
+        fetchingFields = false;
+        MessageHandler.getInstance().closeWaitingDialog();
+        fetchTableFields( joinGuiModel.getLeftJoinTable(), leftKeyFieldList, leftKeyFieldBinding );
+        fetchTableFields( joinGuiModel.getRightJoinTable(), rightKeyFieldList, rightKeyFieldBinding );
+      }
+
+      public void success( Map fields ) {
+        fetchingFields = false;
+        try {
+          for ( JoinTableModel table : tables ) {
+            List tableFields = (List) fields.get( table.getName() );
+            if ( tableFields != null ) {
+              table.setFields( new AbstractModelList<JoinFieldModel>( table.processTableFields( tableFields ) ) );
+            }
+          }
+          showFields( joinGuiModel.getLeftJoinTable(), leftKeyFieldList, leftKeyFieldBinding );
+          showFields( joinGuiModel.getRightJoinTable(), rightKeyFieldList, rightKeyFieldBinding );
+        } catch ( Exception e ) {
+          e.printStackTrace();
+        }
+        MessageHandler.getInstance().closeWaitingDialog();
+      }
+    } );
+  }
+
+  /**
+   * Fetches the fields of <code>table</code>, unless it has them already, and shows them in <code>keyFieldList</code>.
+   */
+  private void fetchTableFields( final JoinTableModel table, final XulListbox keyFieldList,
+                                 final Binding keyFieldBinding ) {
+    if ( table == null || ( table.getFields() != null && !table.getFields().isEmpty() ) ) {
+      return;
+    }
+    MessageHandler.getInstance().showWaitingDialog( MessageHandler.getString( "multitable.FETCHING_TABLE_INFO" ) );
+    joinSelectionServiceGwtImpl.getTableFields( table.getName(), selectedConnection, new XulServiceCallback<List>() {
+      public void error( String message, Throwable error ) {
+        MessageHandler.getInstance().closeWaitingDialog();
+      }
+
+      public void success( List fields ) {
+        try {
+          List<JoinFieldModel> fieldModels = table.processTableFields( fields );
+          table.setFields( new AbstractModelList<JoinFieldModel>( fieldModels ) );
+          showFields( table, keyFieldList, keyFieldBinding );
+        } catch ( Exception e ) {
+          e.printStackTrace();
+        }
+        MessageHandler.getInstance().closeWaitingDialog();
+      }
+    } );
+  }
+
+  private void showFields( JoinTableModel table, XulListbox keyFieldList, Binding keyFieldBinding ) throws Exception {
+    if ( table != null && table.getFields() != null ) {
+      keyFieldList.setElements( table.getFields() );
+      keyFieldBinding.fireSourceChanged();
+    }
+  }
+
   public String getStepName() {
     return MessageHandler.getString( "multitable.DEFINE_JOINS" );
   }
@@ -193,32 +277,13 @@ public class JoinDefinitionsStep extends AbstractWizardStep {
     @Override
     public List sourceToTarget( final JoinTableModel table ) {
       if ( table != null ) {
-        if ( table.getFields() == null || table.getFields().isEmpty() ) {
-          MessageHandler.getInstance()
-            .showWaitingDialog( MessageHandler.getString( "multitable.FETCHING_TABLE_INFO" ) );
-          joinSelectionServiceGwtImpl
-            .getTableFields( table.getName(), selectedConnection, new XulServiceCallback<List>() {
-              public void error( String message, Throwable error ) {
-                MessageHandler.getInstance().closeWaitingDialog();
-              }
-
-              public void success( List fields ) {
-                try {
-                  List<JoinFieldModel> fieldModels = table.processTableFields( fields );
-                  table.setFields( new AbstractModelList<JoinFieldModel>( fieldModels ) );
-                  if ( source.equals( leftTables ) ) {
-                    leftKeyFieldList.setElements( table.getFields() );
-                    leftKeyFieldBinding.fireSourceChanged();
-                  } else if ( source.equals( rightTables ) ) {
-                    rightKeyFieldList.setElements( table.getFields() );
-                    rightKeyFieldBinding.fireSourceChanged();
-                  }
-                } catch ( Exception e ) {
-                  e.printStackTrace();
-                }
-                MessageHandler.getInstance().closeWaitingDialog();
-              }
-            } );
+        // while all the fields are being fetched, they are shown once they arrive
+        if ( !fetchingFields ) {
+          if ( source.equals( leftTables ) ) {
+            fetchTableFields( table, leftKeyFieldList, leftKeyFieldBinding );
+          } else if ( source.equals( rightTables ) ) {
+            fetchTableFields( table, rightKeyFieldList, rightKeyFieldBinding );
+          }
         }
         return table.getFields();
 
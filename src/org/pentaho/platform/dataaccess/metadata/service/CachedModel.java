@@ -0,0 +1,113 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.EntityTagUtil;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Category;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Column;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Model;
+
+import flexjson.JSONSerializer;
+
+/**
+ * A thin model together with its JSON serialization and an entity tag of that serialization. Instances are shared by
+ * every caller that loads the same model in the same locale from the same version of a domain, so only the JSON and
+ * the tag are handed out as they are: {@link #getModel()} gives each caller a copy of the model it may change.
+ */
+class CachedModel {
+
+  private final Model model;
+
+  private final String json;
+
+  private final String entityTag;
+
+  public CachedModel( Model model ) {
+    this.model = model;
+    this.json = new JSONSerializer().deepSerialize( model );
+    this.entityTag = EntityTagUtil.digest( json );
+  }
+
+  /**
+   * @return a copy of the model, its categories and columns, which the caller may change
+   */
+  public Model getModel() {
+    Model copy = new Model();
+    copy.setId( model.getId() );
+    copy.setName( model.getName() );
+    copy.setDomainId( model.getDomainId() );
+    copy.setDescription( model.getDescription() );
+    Category[] categories = model.getCategories();
+    if ( categories != null ) {
+      Category[] categoryCopies = new Category[ categories.length ];
+      for ( int i = 0; i < categories.length; i++ ) {
+        categoryCopies[ i ] = copy( categories[ i ] );
+      }
+      copy.setCategories( categoryCopies );
+    } else {
+      copy.setCategories( null );
+    }
+    return copy;
+  }
+
+  private static Category copy( Category category ) {
+    Category copy = new Category();
+    copy.setId( category.getId() );
+    copy.setName( category.getName() );
+    Column[] columns = category.getColumns();
+    if ( columns != null ) {
+      Column[] columnCopies = new Column[ columns.length ];
+      for ( int i = 0; i < columns.length; i++ ) {
+        columnCopies[ i ] = copy( columns[ i ] );
+      }
+      copy.setColumns( columnCopies );
+    } else {
+      copy.setColumns( null );
+    }
+    return copy;
+  }
+
+  private static Column copy( Column column ) {
+    Column copy = new Column();
+    copy.setId( column.getId() );
+    copy.setName( column.getName() );
+    copy.setType( column.getType() );
+    copy.setAggTypes( new ArrayList<String>( Arrays.asList( column.getAggTypes() ) ) );
+    copy.setDefaultAggType( column.getDefaultAggType() );
+    copy.setSelectedAggType( column.getSelectedAggType() );
+    copy.setFieldType( column.getFieldType() );
+    copy.setCategory( column.getCategory() );
+    copy.setHorizontalAlignment( column.getHorizontalAlignment() );
+    copy.setFormatMask( column.getFormatMask() );
+    return copy;
+  }
+
+  public String getJson() {
+    return json;
+  }
+
+  /**
+   * @return a hash of the JSON serialization, which changes whenever the serialization does
+   */
+  public String getEntityTag() {
+    return entityTag;
+  }
+}
@@ -0,0 +1,267 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.repository.IMetadataDomainRepository;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DataAccessSettings;
+import org.pentaho.platform.util.messages.LocaleHelper;
+
+/**
+ * Small summaries of the domains of a metadata repository, holding just what the data source listings look at: what
+ * kind of data source the domain is, its locales, and the ids, names and visibility of its logical models. A domain
+ * is read once to make its summary; after that the listings scan summaries instead of loading every domain.
+ * <p/>
+ * Summaries are dropped when a domain is stored or removed through Data Access (see {@link DomainChangeNotifier})
+ * and made again the next time they are asked for. Domains can also change behind the plugin's back, through a
+ * repository import for instance, so a summary older than <code>data-access-datasource-catalog-max-age-seconds</code>
+ * is made again as well.
+ */
+public class DatasourceCatalog {
+
+  public static final String AGILE_BI_GENERATED_SCHEMA = "AGILE_BI_GENERATED_SCHEMA"; //$NON-NLS-1$
+
+  public static final String WIZARD_GENERATED_SCHEMA = "WIZARD_GENERATED_SCHEMA"; //$NON-NLS-1$
+
+  public static final String MONDRIAN_CATALOG_REF = "MondrianCatalogRef"; //$NON-NLS-1$
+
+  public static final String VISIBLE = "visible"; //$NON-NLS-1$
+
+  private static final Map<IMetadataDomainRepository, DatasourceCatalog> catalogs =
+    new WeakHashMap<IMetadataDomainRepository, DatasourceCatalog>();
+
+  static {
+    DomainChangeNotifier.addListener( new DomainChangeListener() {
+      public void domainChanged( String domainId ) {
+        invalidateDomain( domainId );
+      }
+    } );
+  }
+
+  private final IMetadataDomainRepository repository;
+
+  private final long maxAge;
+
+  private final ConcurrentMap<String, DomainSummary> summaries = new ConcurrentHashMap<String, DomainSummary>();
+
+  DatasourceCatalog( IMetadataDomainRepository repository, long maxAge ) {
+    this.repository = repository;
+    this.maxAge = maxAge;
+  }
+
+  /**
+   * @return the catalog of the domains in <code>repository</code>
+   */
+  public static DatasourceCatalog forRepository( IMetadataDomainRepository repository ) {
+    synchronized ( catalogs ) {
+      DatasourceCatalog catalog = catalogs.get( repository );
+      if ( catalog == null ) {
+        catalog = new DatasourceCatalog( repository, DataAccessSettings.getDatasourceCatalogMaxAge() * 1000L );
+        catalogs.put( repository, catalog );
+      }
+      return catalog;
+    }
+  }
+
+  /**
+   * Drops the summary of the domain <code>domainId</code> from every catalog.
+   */
+  static void invalidateDomain( String domainId ) {
+    synchronized ( catalogs ) {
+      for ( DatasourceCatalog catalog : catalogs.values() ) {
+        catalog.summaries.remove( domainId );
+      }
+    }
+  }
+
+  /**
+   * @return the summary of the domain <code>domainId</code>, reading the domain if there is no current one, or
+   *         <code>null</code> if the repository has no such domain
+   * @throws RuntimeException whatever the repository throws reading the domain
+   */
+  public DomainSummary getDomainSummary( String domainId ) {
+    DomainSummary summary = summaries.get( domainId );
+    if ( summary != null && System.currentTimeMillis() - summary.created < maxAge ) {
+      return summary;
+    }
+    Domain domain = repository.getDomain( domainId );
+    if ( domain == null ) {
+      summaries.remove( domainId );
+      return null;
+    }
+    summary = new DomainSummary( domainId, domain );
+    summaries.put( domainId, summary );
+    return summary;
+  }
+
+  int size() {
+    return summaries.size();
+  }
+
+  /**
+   * What the listings need to know about one domain.
+   */
+  public static class DomainSummary {
+
+    private final String domainId;
+
+    private final long created = System.currentTimeMillis();
+
+    private final String[] localeCodes;
+
+    private final List<ModelSummary> models;
+
+    private boolean agileBiGenerated;
+
+    private boolean wizardGenerated;
+
+    private boolean analysis;
+
+    DomainSummary( String domainId, Domain domain ) {
+      this.domainId = domainId;
+      localeCodes = new String[ domain.getLocales().size() ];
+      for ( int i = 0; i < localeCodes.length; i++ ) {
+        localeCodes[ i ] = domain.getLocales().get( i ).getCode();
+      }
+      List<LogicalModel> logicalModels = domain.getLogicalModels();
+      List<ModelSummary> summaries = new ArrayList<ModelSummary>( logicalModels == null ? 0 : logicalModels.size() );
+      if ( logicalModels != null ) {
+        for ( LogicalModel model : logicalModels ) {
+          agileBiGenerated |= model.getProperty( AGILE_BI_GENERATED_SCHEMA ) != null;
+          wizardGenerated |= model.getProperty( WIZARD_GENERATED_SCHEMA ) != null;
+          analysis |= model.getProperty( MONDRIAN_CATALOG_REF ) != null;
+          summaries.add( new ModelSummary( model, localeCodes ) );
+        }
+      }
+      models = Collections.unmodifiableList( summaries );
+    }
+
+    public String getDomainId() {
+      return domainId;
+    }
+
+    /**
+     * @return <code>true</code> for a domain made with a metadata editor rather than by the data source wizard or
+     *         Agile BI
+     */
+    public boolean isMetadata() {
+      return !agileBiGenerated && !wizardGenerated;
+    }
+
+    /**
+     * @return <code>true</code> for a domain made by the data source wizard
+     */
+    public boolean isDsw() {
+      return agileBiGenerated;
+    }
+
+    /**
+     * @return <code>true</code> if a logical model of the domain refers to a Mondrian catalog
+     */
+    public boolean hasAnalysis() {
+      return analysis;
+    }
+
+    /**
+     * @return the domain locale closest to <code>locale</code>
+     */
+    public String getClosestLocale( String locale ) {
+      return LocaleHelper.getClosestLocale( locale, localeCodes );
+    }
+
+    public List<ModelSummary> getModels() {
+      return models;
+    }
+  }
+
+  /**
+   * What the listings need to know about one logical model.
+   */
+  public static class ModelSummary {
+
+    private final String id;
+
+    private final Map<String, String> names = new HashMap<String, String>();
+
+    private final String[] visibleContexts;
+
+    /**
+     * Kept only for a domain without locales, whose names are then looked up in whatever locale the user has.
+     */
+    private final LogicalModel model;
+
+    ModelSummary( LogicalModel model, String[] localeCodes ) {
+      id = model.getId();
+      for ( String locale : localeCodes ) {
+        names.put( locale, model.getName( locale ) );
+      }
+      String visible = (String) model.getProperty( VISIBLE );
+      if ( visible == null ) {
+        visibleContexts = null;
+      } else {
+        List<String> contexts = new ArrayList<String>();
+        for ( String context : visible.split( "," ) ) { //$NON-NLS-1$
+          if ( context.trim().length() > 0 ) {
+            contexts.add( context.trim() );
+          }
+        }
+        visibleContexts = contexts.toArray( new String[ contexts.size() ] );
+      }
+      this.model = localeCodes.length == 0 ? model : null;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * @return the same name as <code>LogicalModel.getName( locale )</code> for a locale of the domain
+     */
+    public String getName( String locale ) {
+      if ( names.containsKey( locale ) || model == null ) {
+        return names.get( locale );
+      }
+      return model.getName( locale );
+    }
+
+    /**
+     * @return <code>true</code> if the model has no visibility list, or if <code>context</code> is on it
+     */
+    public boolean isVisibleTo( String context ) {
+      if ( visibleContexts == null ) {
+        return true;
+      }
+      for ( String visibleContext : visibleContexts ) {
+        if ( visibleContext.equals( context ) ) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Where code that stores or removes a metadata domain says so, and where the caches built from domains hear of it.
+ * Callers do not need to know which caches there are: each registers itself as it is created.
+ * <p/>
+ * Each domain id also has a version, which {@link #domainChanged(String)} moves on. A cache notes the version before
+ * it reads a domain and only hands out what it derived while that version is still current, so whatever repository
+ * object the domain was read from, nothing derived from an older version of it is used.
+ */
+public final class DomainChangeNotifier {
+
+  private static final Log logger = LogFactory.getLog( DomainChangeNotifier.class );
+
+  private static final List<DomainChangeListener> listeners = new CopyOnWriteArrayList<DomainChangeListener>();
+
+  private static final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+
+  private DomainChangeNotifier() {
+  }
+
+  public static void addListener( DomainChangeListener listener ) {
+    listeners.add( listener );
+  }
+
+  public static void removeListener( DomainChangeListener listener ) {
+    listeners.remove( listener );
+  }
+
+  /**
+   * @return the current version of the domain <code>domainId</code>; read it before reading the domain
+   */
+  public static long getVersion( String domainId ) {
+    return version( domainId ).get();
+  }
+
+  /**
+   * Moves the version of the domain <code>domainId</code> on and tells every listener that the domain has been stored
+   * or removed. Call it after the repository has been changed. A listener that fails is logged and does not keep the
+   * others from being told.
+   */
+  public static void domainChanged( String domainId ) {
+    version( domainId ).incrementAndGet();
+    for ( DomainChangeListener listener : listeners ) {
+      try {
+        listener.domainChanged( domainId );
+      } catch ( RuntimeException e ) {
+        logger.error( "Could not drop what " + listener + " holds for domain " + domainId, e ); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+    }
+  }
+
+  private static AtomicLong version( String domainId ) {
+    AtomicLong version = versions.get( domainId );
+    if ( version == null ) {
+      AtomicLong created = new AtomicLong();
+      version = versions.putIfAbsent( domainId, created );
+      if ( version == null ) {
+        version = created;
+      }
+    }
+    return version;
+  }
+}
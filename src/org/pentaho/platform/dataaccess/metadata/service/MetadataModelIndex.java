@@ -0,0 +1,247 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DataAccessSettings;
+import org.pentaho.platform.util.messages.LocaleHelper;
+
+/**
+ * Lookups into one version of a domain that would otherwise scan the model: logical columns and their categories by
+ * column id, the domain locale closest to a user locale, and the thin models already made from it. The column maps of
+ * a model are built the first time the model is looked into and then shared by every request that sees the same
+ * version of the domain, as {@link DomainChangeNotifier} counts them, whichever domain object the repository hands
+ * out to it. The columns and categories found belong to the domain object of the index, {@link #getDomain()}, so a
+ * caller that builds on them takes its models from that object too.
+ * <p/>
+ * The version only moves on when a domain is changed through Data Access. A domain published from the Metadata Editor,
+ * imported into the repository or changed on another server does not move it, so an index is also checked against the
+ * domain object the repository hands out: while it is the object the index was made from, the index is used, and once
+ * it is another object the index is used for <code>data-access-metadata-model-index-max-age-seconds</code> at most
+ * before it is made again from the object read.
+ * <p/>
+ * A column the maps do not know is still looked up the slow way, so a model changed in place after it was indexed
+ * gives the same answers it always did.
+ */
+public class MetadataModelIndex {
+
+  private static final int maxIndexes = DataAccessSettings.getMetadataModelIndexSize();
+
+  private static final long maxAge = DataAccessSettings.getMetadataModelIndexMaxAge() * 1000L;
+
+  /**
+   * The indexes of the domains used last, the least recently used dropped first so that a domain removed without the
+   * plugin hearing of it is not held forever.
+   */
+  private static final Map<String, MetadataModelIndex> indexes =
+    new LinkedHashMap<String, MetadataModelIndex>( 16, 0.75f, true ) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<String, MetadataModelIndex> eldest ) {
+        return size() > maxIndexes;
+      }
+    };
+
+  static {
+    DomainChangeNotifier.addListener( new DomainChangeListener() {
+      public void domainChanged( String domainId ) {
+        invalidateDomain( domainId );
+      }
+    } );
+  }
+
+  private final Domain domain;
+
+  private final long version;
+
+  private final long created = System.currentTimeMillis();
+
+  private final ConcurrentMap<String, ModelIndex> models = new ConcurrentHashMap<String, ModelIndex>();
+
+  private final ConcurrentMap<String, String> locales = new ConcurrentHashMap<String, String>();
+
+  private final ConcurrentMap<String, CachedModel> thinModels = new ConcurrentHashMap<String, CachedModel>();
+
+  MetadataModelIndex( Domain domain, long version ) {
+    this.domain = domain;
+    this.version = version;
+  }
+
+  /**
+   * @param domain  the domain, read from the repository after <code>version</code> was noted
+   * @param version the version of the domain, as {@link DomainChangeNotifier#getVersion(String)} told it before
+   *                <code>domain</code> was read
+   * @return the index of that version of the domain, made from <code>domain</code> and kept if there is none yet or
+   *         the one kept is no longer current
+   */
+  public static MetadataModelIndex forDomain( Domain domain, long version ) {
+    synchronized ( indexes ) {
+      MetadataModelIndex index = indexes.get( domain.getId() );
+      if ( index != null && index.isCurrent( domain, version, System.currentTimeMillis() ) ) {
+        return index;
+      }
+      index = new MetadataModelIndex( domain, version );
+      if ( version == DomainChangeNotifier.getVersion( domain.getId() ) ) {
+        indexes.put( domain.getId(), index );
+      }
+      return index;
+    }
+  }
+
+  /**
+   * For lookups that do not depend on which object the domain was read into, such as {@link #getLocale(String)}: the
+   * version of <code>domain</code> is not known, so an index is only reused if there is one for the current version,
+   * and none is kept otherwise.
+   *
+   * @return the index of the current version of <code>domain</code>, or a new one over <code>domain</code>
+   */
+  public static MetadataModelIndex forDomain( Domain domain ) {
+    long version = DomainChangeNotifier.getVersion( domain.getId() );
+    synchronized ( indexes ) {
+      MetadataModelIndex index = indexes.get( domain.getId() );
+      return index != null && index.isCurrent( domain, version, System.currentTimeMillis() ) ? index
+        : new MetadataModelIndex( domain, version );
+    }
+  }
+
+  /**
+   * @return whether the index may stand for <code>domain</code>, read from the repository at version
+   *         <code>version</code>: the version must be the one the index was made at, and <code>domain</code> the object
+   *         it was made from or the index younger than the max age
+   */
+  /* package-local visibility for testing purposes */
+  boolean isCurrent( Domain domain, long version, long now ) {
+    return this.version == version && ( this.domain == domain || now - created < maxAge );
+  }
+
+  /**
+   * @return the domain object the index was made from
+   */
+  public Domain getDomain() {
+    return domain;
+  }
+
+  /**
+   * Drops the index of the domain <code>domainId</code>.
+   */
+  static void invalidateDomain( String domainId ) {
+    synchronized ( indexes ) {
+      indexes.remove( domainId );
+    }
+  }
+
+  /**
+   * @return the domain locale closest to <code>locale</code>, as <code>LocaleHelper.getClosestLocale</code> would pick
+   */
+  public String getLocale( String locale ) {
+    String closest = locales.get( locale );
+    if ( closest == null ) {
+      closest = LocaleHelper.getClosestLocale( locale, domain.getLocaleCodes() );
+      if ( closest != null ) {
+        locales.put( locale, closest );
+      }
+    }
+    return closest;
+  }
+
+  /**
+   * @return the same column as <code>model.findLogicalColumn( columnId )</code>
+   */
+  public LogicalColumn findLogicalColumn( LogicalModel model, String columnId ) {
+    LogicalColumn column = getModelIndex( model ).columns.get( columnId );
+    return column != null ? column : model.findLogicalColumn( columnId );
+  }
+
+  /**
+   * @return the first category of <code>model</code> that holds the column <code>columnId</code>, or
+   *         <code>null</code> if there is none
+   */
+  public Category findCategory( LogicalModel model, String columnId ) {
+    Category category = getModelIndex( model ).categories.get( columnId );
+    return category != null ? category : scanCategories( model, columnId );
+  }
+
+  /**
+   * @return the thin model of <code>modelId</code> in <code>locale</code> if one has been kept, or <code>null</code>
+   */
+  CachedModel getThinModel( String modelId, String locale ) {
+    return thinModels.get( thinModelKey( modelId, locale ) );
+  }
+
+  void putThinModel( String modelId, String locale, CachedModel model ) {
+    thinModels.put( thinModelKey( modelId, locale ), model );
+  }
+
+  private static String thinModelKey( String modelId, String locale ) {
+    return modelId + '\u0000' + locale;
+  }
+
+  private ModelIndex getModelIndex( LogicalModel model ) {
+    ModelIndex index = models.get( model.getId() );
+    if ( index == null ) {
+      index = new ModelIndex( model );
+      models.put( model.getId(), index );
+    }
+    return index;
+  }
+
+  static Category scanCategories( LogicalModel model, String columnId ) {
+    for ( Category category : model.getCategories() ) {
+      if ( category.findLogicalColumn( columnId ) != null ) {
+        return category;
+      }
+    }
+    return null;
+  }
+
+  private static class ModelIndex {
+
+    private final Map<String, LogicalColumn> columns = new HashMap<String, LogicalColumn>();
+
+    private final Map<String, Category> categories = new HashMap<String, Category>();
+
+    ModelIndex( LogicalModel model ) {
+      // the same precedence as LogicalModel.findLogicalColumn and a scan of the categories: the first one wins
+      for ( LogicalTable table : model.getLogicalTables() ) {
+        for ( LogicalColumn column : table.getLogicalColumns() ) {
+          if ( !columns.containsKey( column.getId() ) ) {
+            columns.put( column.getId(), column );
+          }
+        }
+      }
+      for ( Category category : model.getCategories() ) {
+        for ( LogicalColumn column : category.getLogicalColumns() ) {
+          if ( !categories.containsKey( column.getId() ) ) {
+            categories.put( column.getId(), category );
+          }
+        }
+      }
+    }
+  }
+}
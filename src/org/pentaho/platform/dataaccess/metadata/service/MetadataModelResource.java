@@ -0,0 +1,74 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+/**
+ * Serves the thin models of {@link MetadataService#loadModelJson} with an entity tag, so that clients holding a copy
+ * can revalidate it with <code>If-None-Match</code> and get a 304 without the model being sent again.
+ */
+@Path( "/data-access/api/metadataDA/model" )
+public class MetadataModelResource {
+
+  protected MetadataService service;
+
+  public MetadataModelResource() {
+    service = new MetadataService();
+  }
+
+  /**
+   * Returns the JSON serialization of a thin model
+   *
+   * @param domainId the domain holding the model
+   * @param modelId  the logical model
+   * @param request  the request, for its preconditions
+   * @return 200 with the model, 304 if the client's copy is current, or 404 if there is no such model
+   */
+  @GET
+  @Path( "/json" )
+  @Produces( APPLICATION_JSON )
+  public Response loadModelJson( @QueryParam( "domainId" ) String domainId, @QueryParam( "modelId" ) String modelId,
+                                 @Context Request request ) {
+    CachedModel model = service.getCachedModel( domainId, modelId );
+    if ( model == null ) {
+      return Response.status( Response.Status.NOT_FOUND ).build();
+    }
+    EntityTag entityTag = new EntityTag( model.getEntityTag() );
+    ResponseBuilder builder = request == null ? null : request.evaluatePreconditions( entityTag );
+    if ( builder == null ) {
+      builder = Response.ok( model.getJson() );
+    }
+    // the model is localized for the user, and may change at any time; have clients ask every time
+    CacheControl cacheControl = new CacheControl();
+    cacheControl.setPrivate( true );
+    cacheControl.setNoCache( true );
+    return builder.tag( entityTag ).cacheControl( cacheControl ).build();
+  }
+}
@@ -0,0 +1,272 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DataAccessSettings;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Column;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Condition;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Order;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Parameter;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Query;
+
+/**
+ * Remembers thin queries already converted into full ones by {@link MetadataServiceUtil#convertQuery}, so repeated
+ * query shapes skip the column and category lookups. The key is the thin query with its parameter values left out;
+ * the values are filled into a fresh full query on every hit.
+ * <p/>
+ * An entry is only used while the version of the domain it was converted against is current and the domain object
+ * it was converted against is still the one of the domain's {@link MetadataModelIndex}. So a domain re-imported or
+ * edited through Data Access never gets a stale conversion, and one changed outside Data Access gets a new conversion
+ * once its index has been made again. The entries of a domain are dropped right away when the
+ * {@link DomainChangeNotifier} says it has changed. The cache keeps the most recently used entries up to the
+ * <code>data-access-metadata-query-cache-size</code> setting.
+ */
+public class MetadataQueryCache implements DomainChangeListener {
+
+  private static final Log logger = LogFactory.getLog( MetadataQueryCache.class );
+
+  private static final char SEPARATOR = '\u0000';
+
+  private static MetadataQueryCache instance;
+
+  private final int maxEntries;
+
+  private final Map<String, CompiledQuery> entries;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong invalidations = new AtomicLong();
+
+  MetadataQueryCache( final int maxEntries ) {
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<String, CompiledQuery>( 16, 0.75f, true ) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry( Map.Entry<String, CompiledQuery> eldest ) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  public static synchronized MetadataQueryCache getInstance() {
+    if ( instance == null ) {
+      instance = new MetadataQueryCache( DataAccessSettings.getMetadataQueryCacheSize() );
+      DomainChangeNotifier.addListener( instance );
+    }
+    return instance;
+  }
+
+  /**
+   * @param domain the domain object of the current index of the domain, {@link MetadataModelIndex#getDomain()}
+   * @return the conversion cached under <code>key</code> if it was made against version <code>version</code> of its
+   *         domain and against <code>domain</code>, otherwise <code>null</code>
+   */
+  public CompiledQuery get( String key, long version, Domain domain ) {
+    CompiledQuery compiled;
+    synchronized ( entries ) {
+      compiled = entries.get( key );
+      if ( compiled != null && ( compiled.getVersion() != version || compiled.getDomain() != domain ) ) {
+        if ( compiled.getVersion() <= version ) {
+          // the domain has changed since, or has been read again from the repository
+          entries.remove( key );
+        }
+        compiled = null;
+      }
+    }
+    if ( compiled == null ) {
+      misses.incrementAndGet();
+    } else {
+      hits.incrementAndGet();
+    }
+    return compiled;
+  }
+
+  public void put( String key, CompiledQuery compiled ) {
+    if ( maxEntries <= 0 ) {
+      return;
+    }
+    synchronized ( entries ) {
+      entries.put( key, compiled );
+    }
+  }
+
+  public void domainChanged( String domainId ) {
+    invalidate( domainId );
+  }
+
+  /**
+   * Drops every conversion made against the domain <code>domainId</code>.
+   */
+  public void invalidate( String domainId ) {
+    int removed = 0;
+    synchronized ( entries ) {
+      for ( Iterator<CompiledQuery> it = entries.values().iterator(); it.hasNext(); ) {
+        Domain domain = it.next().getDomain();
+        if ( domain != null && domainId != null && domainId.equals( domain.getId() ) ) {
+          it.remove();
+          removed++;
+        }
+      }
+    }
+    invalidations.addAndGet( removed );
+    if ( logger.isDebugEnabled() ) {
+      logger.debug( "Dropped " + removed + " cached queries of domain " + domainId + "; " + this ); //$NON-NLS-1$
+    }
+  }
+
+  public void clear() {
+    synchronized ( entries ) {
+      entries.clear();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  public int getSize() {
+    synchronized ( entries ) {
+      return entries.size();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MetadataQueryCache[size=" + getSize() + ", hits=" + getHits() + ", misses=" + getMisses() //$NON-NLS-1$
+      + ", invalidations=" + getInvalidations() + "]"; //$NON-NLS-1$
+  }
+
+  /**
+   * @return a key covering everything {@link MetadataServiceUtil#convertQuery} reads from <code>query</code> except
+   *         the parameter values
+   */
+  public static String createKey( Query query ) {
+    StringBuilder key = new StringBuilder( 256 );
+    append( key, query.getDomainName() );
+    append( key, query.getModelId() );
+    append( key, query.getDisableDistinct() );
+    key.append( 'C' );
+    for ( Column column : query.getColumns() ) {
+      append( key, column.getId() );
+      append( key, column.getSelectedAggType() );
+    }
+    key.append( 'W' );
+    for ( Condition condition : query.getConditions() ) {
+      append( key, condition.getCombinationType() );
+      append( key, condition.getCategory() );
+      append( key, condition.getColumn() );
+      append( key, condition.getOperator() );
+      String[] values = condition.getValue();
+      append( key, values == null ? -1 : values.length );
+      if ( values != null ) {
+        for ( String value : values ) {
+          append( key, value );
+        }
+      }
+    }
+    key.append( 'O' );
+    for ( Order order : query.getOrders() ) {
+      append( key, order.getColumn() );
+      append( key, order.getOrderType() );
+    }
+    key.append( 'P' );
+    for ( Parameter parameter : query.getParameters() ) {
+      append( key, parameter.getColumn() );
+      append( key, parameter.getName() );
+    }
+    return key.toString();
+  }
+
+  private static void append( StringBuilder key, Object value ) {
+    key.append( value ).append( SEPARATOR );
+  }
+
+  /**
+   * A thin query converted into a full one, less the parameter values. Shared between threads and never modified.
+   */
+  public static class CompiledQuery {
+
+    private final org.pentaho.metadata.query.model.Query template;
+
+    private final DataType[] parameterTypes;
+
+    private final long version;
+
+    /**
+     * @param template       the full query, without any parameters
+     * @param parameterTypes the data type of each parameter of the thin query, in order
+     * @param version        the version of the domain, as {@link DomainChangeNotifier#getVersion(String)} told it
+     *                       before the domain was read
+     */
+    public CompiledQuery( org.pentaho.metadata.query.model.Query template, DataType[] parameterTypes, long version ) {
+      this.template = template;
+      this.parameterTypes = parameterTypes;
+      this.version = version;
+    }
+
+    public Domain getDomain() {
+      return template.getDomain();
+    }
+
+    public long getVersion() {
+      return version;
+    }
+
+    /**
+     * @return a new full query with the selections, constraints and orders of the template and the values of
+     *         <code>parameters</code>
+     */
+    public org.pentaho.metadata.query.model.Query newQuery( Parameter[] parameters ) {
+      LogicalModel logicalModel = template.getLogicalModel();
+      org.pentaho.metadata.query.model.Query query =
+        new org.pentaho.metadata.query.model.Query( template.getDomain(), logicalModel );
+      query.getSelections().addAll( template.getSelections() );
+      query.getConstraints().addAll( template.getConstraints() );
+      query.getOrders().addAll( template.getOrders() );
+      query.setDisableDistinct( template.getDisableDistinct() );
+      List<org.pentaho.metadata.query.model.Parameter> fullParameters = query.getParameters();
+      for ( int idx = 0; idx < parameters.length; idx++ ) {
+        fullParameters.add( new org.pentaho.metadata.query.model.Parameter( parameters[ idx ].getColumn(),
+          parameterTypes[ idx ], parameters[ idx ].getValue()[ 0 ] ) );
+      }
+      return query;
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.platform.util.messages.LocaleHelper;
+import org.pentaho.pms.core.exception.PentahoMetadataException;
+
+/**
+ * Runs metadata queries and streams their results to the client as they are serialized, in the shapes of
+ * {@link MetadataService#doJsonQueryToJson} and {@link MetadataService#doJsonQueryToCdaJson}. Use these for large
+ * results; the web service methods build the whole response as a string first.
+ */
+@Path( "/data-access/api/metadataDA/query" )
+public class MetadataQueryResource {
+
+  private static final Log logger = LogFactory.getLog( MetadataQueryResource.class );
+
+  protected MetadataService service;
+
+  public MetadataQueryResource() {
+    service = new MetadataService();
+  }
+
+  /**
+   * Executes a JSON query and streams the JSON serialization of the result set
+   *
+   * @param json     the thin query, as serialized by flexjson
+   * @param rowLimit optional row limit, -1 means all rows
+   * @return 200 with the result set, or 400 if the query could not be run
+   */
+  @POST
+  @Path( "/json" )
+  @Consumes( { APPLICATION_JSON, TEXT_PLAIN } )
+  @Produces( APPLICATION_JSON )
+  public Response doJsonQueryToJson( String json, @QueryParam( "rowLimit" ) @DefaultValue( "-1" ) int rowLimit ) {
+    String xml = service.getQueryXmlFromJson( json );
+    final IPentahoResultSet resultSet = xml == null ? null : service.executeQuery( xml, rowLimit );
+    if ( resultSet == null ) {
+      return Response.status( Response.Status.BAD_REQUEST ).build();
+    }
+    return Response.ok( new StreamingOutput() {
+      public void write( OutputStream out ) throws IOException, WebApplicationException {
+        try {
+          new ResultSetJsonWriter().writeJson( resultSet, out );
+        } finally {
+          resultSet.close();
+        }
+      }
+    } ).build();
+  }
+
+  /**
+   * Executes a JSON query and streams a CDA compatible JSON serialization of the result set
+   *
+   * @param json     the thin query, as serialized by flexjson
+   * @param rowLimit optional row limit, -1 means all rows
+   * @return 200 with the result set, or 400 if the query could not be run
+   */
+  @POST
+  @Path( "/cda" )
+  @Consumes( { APPLICATION_JSON, TEXT_PLAIN } )
+  @Produces( APPLICATION_JSON )
+  public Response doJsonQueryToCdaJson( String json, @QueryParam( "rowLimit" ) @DefaultValue( "-1" ) int rowLimit ) {
+    String xml = service.getQueryXmlFromJson( json );
+    final IPentahoResultSet resultSet = xml == null ? null : service.executeQuery( xml, rowLimit );
+    if ( resultSet == null ) {
+      return Response.status( Response.Status.BAD_REQUEST ).build();
+    }
+    final String locale;
+    try {
+      Domain domain = service.getMetadataServiceUtil().getDomainObject( xml );
+      locale = MetadataModelIndex.forDomain( domain ).getLocale( LocaleHelper.getLocale().toString() );
+    } catch ( PentahoMetadataException e ) {
+      logger.error( e.getMessage(), e );
+      resultSet.close();
+      return Response.status( Response.Status.BAD_REQUEST ).build();
+    }
+    return Response.ok( new StreamingOutput() {
+      public void write( OutputStream out ) throws IOException, WebApplicationException {
+        try {
+          new ResultSetJsonWriter().writeCdaJson( resultSet, locale, out );
+        } catch ( JSONException e ) {
+          throw new WebApplicationException( e );
+        } finally {
+          resultSet.close();
+        }
+      }
+    } ).build();
+  }
+
+  /**
+   * Reports how the metadata query caches are doing
+   *
+   * @return 200 with the counters of the converted query cache and of the result cache, or 403 if the caller may not
+   *         manage datasources
+   */
+  @GET
+  @Path( "/cache" )
+  @Produces( APPLICATION_JSON )
+  public Response getCacheStatistics() {
+    if ( !service.hasManageAccess() ) {
+      return Response.status( Response.Status.FORBIDDEN ).build();
+    }
+    try {
+      MetadataQueryCache queryCache = MetadataQueryCache.getInstance();
+      JSONObject queries = new JSONObject();
+      queries.put( "size", queryCache.getSize() ); //$NON-NLS-1$
+      queries.put( "hits", queryCache.getHits() ); //$NON-NLS-1$
+      queries.put( "misses", queryCache.getMisses() ); //$NON-NLS-1$
+      queries.put( "invalidations", queryCache.getInvalidations() ); //$NON-NLS-1$
+
+      MetadataResultCache resultCache = service.getMetadataResultCache();
+      JSONObject results = new JSONObject();
+      results.put( "enabled", resultCache.isEnabled() ); //$NON-NLS-1$
+      results.put( "size", resultCache.getSize() ); //$NON-NLS-1$
+      results.put( "bytes", resultCache.getBytes() ); //$NON-NLS-1$
+      results.put( "maxBytes", resultCache.getMaxBytes() ); //$NON-NLS-1$
+      results.put( "hits", resultCache.getHits() ); //$NON-NLS-1$
+      results.put( "misses", resultCache.getMisses() ); //$NON-NLS-1$
+      results.put( "hitRatio", resultCache.getHitRatio() ); //$NON-NLS-1$
+      results.put( "evictions", resultCache.getEvictions() ); //$NON-NLS-1$
+      results.put( "expirations", resultCache.getExpirations() ); //$NON-NLS-1$
+      results.put( "invalidations", resultCache.getInvalidations() ); //$NON-NLS-1$
+
+      JSONObject statistics = new JSONObject();
+      statistics.put( "queries", queries ); //$NON-NLS-1$
+      statistics.put( "results", results ); //$NON-NLS-1$
+      return Response.ok( statistics.toString() ).build();
+    } catch ( JSONException e ) {
+      logger.error( e.getMessage(), e );
+      return Response.serverError().build();
+    }
+  }
+}
@@ -0,0 +1,430 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.pentaho.commons.connection.IPentahoMetaData;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.commons.connection.memory.MemoryResultSet;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DataAccessSettings;
+
+/**
+ * Keeps the rows of recent metadata query results in memory so that the same query, run again by the same user
+ * before the entry expires, does not go back to the database. Entries are keyed by the query XML, the row limit and
+ * the security context of the caller, since row level security can make the same query return different rows to
+ * different users.
+ * <p/>
+ * The cache is off unless <code>data-access-metadata-result-cache-size-mb</code> is set, and when
+ * <code>data-access-metadata-result-cache-ttl-seconds</code> is 0. It evicts the least recently used entries once their
+ * estimated size goes over that budget, and drops entries older than the ttl. An entry is only used while the version
+ * of the domain it was read against, as {@link DomainChangeNotifier} counts them, is current, and a domain's entries
+ * are dropped right away when the notifier says it has changed.
+ */
+public class MetadataResultCache implements DomainChangeListener {
+
+  private static final Log logger = LogFactory.getLog( MetadataResultCache.class );
+
+  private static final String DOMAIN_ID_START = "<domain_id>"; //$NON-NLS-1$
+
+  private static final String DOMAIN_ID_END = "</domain_id>"; //$NON-NLS-1$
+
+  private static final char SEPARATOR = '\u0000';
+
+  /**
+   * Results estimated above this share of the budget are not cached at all.
+   */
+  static final int MAX_ENTRY_SHARE = 4;
+
+  private static MetadataResultCache instance;
+
+  private final long maxBytes;
+
+  private final long ttlMillis;
+
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true );
+
+  private long bytes;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  private final AtomicLong expirations = new AtomicLong();
+
+  private final AtomicLong invalidations = new AtomicLong();
+
+  MetadataResultCache( long maxBytes, long ttlMillis ) {
+    this.maxBytes = maxBytes;
+    this.ttlMillis = ttlMillis;
+  }
+
+  public static synchronized MetadataResultCache getInstance() {
+    if ( instance == null ) {
+      instance = new MetadataResultCache( DataAccessSettings.getMetadataResultCacheSize() * 1024L * 1024L,
+        DataAccessSettings.getMetadataResultCacheTtl() * 1000L );
+      DomainChangeNotifier.addListener( instance );
+    }
+    return instance;
+  }
+
+  public boolean isEnabled() {
+    return maxBytes > 0 && ttlMillis > 0;
+  }
+
+  /**
+   * @return a new result set over the cached rows, or <code>null</code> if there is no live entry for
+   *         <code>key</code> read against version <code>version</code> of its domain
+   */
+  public IPentahoResultSet get( String key, long version ) {
+    Entry entry;
+    synchronized ( entries ) {
+      entry = entries.get( key );
+      if ( entry != null && entry.version != version ) {
+        if ( entry.version < version ) {
+          // the domain has changed since
+          remove( key );
+          invalidations.incrementAndGet();
+        }
+        entry = null;
+      } else if ( entry != null && entry.expires <= System.currentTimeMillis() ) {
+        remove( key );
+        expirations.incrementAndGet();
+        entry = null;
+      }
+    }
+    if ( entry == null ) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.newResultSet();
+  }
+
+  /**
+   * Reads <code>resultSet</code> and caches its rows if they fit. Rows are read only as long as they might fit, so a
+   * result too big to cache is not held twice: what was read is handed back ahead of the rest of
+   * <code>resultSet</code>.
+   *
+   * @param version the version of the domain <code>domainId</code>, as {@link DomainChangeNotifier#getVersion(String)}
+   *                told it before the query was run
+   * @return a result set over the rows of <code>resultSet</code>, to be used in place of it
+   */
+  public IPentahoResultSet put( String key, String domainId, long version, IPentahoResultSet resultSet ) {
+    IPentahoMetaData metaData = resultSet.getMetaData();
+    long maxSize = maxBytes / MAX_ENTRY_SHARE;
+    List<Object[]> rows = new ArrayList<Object[]>();
+    long size = 0;
+    boolean tooBig = false;
+    try {
+      Object[] row;
+      while ( size <= maxSize && ( row = resultSet.next() ) != null ) {
+        rows.add( row );
+        size += estimateBytes( row );
+      }
+      tooBig = size > maxSize;
+    } finally {
+      if ( !tooBig ) {
+        resultSet.close();
+      }
+    }
+    if ( tooBig ) {
+      if ( logger.isDebugEnabled() ) {
+        logger.debug( "Not caching a result of more than " + maxSize + " bytes; " + this ); //$NON-NLS-1$ //$NON-NLS-2$
+      }
+      return new ReplayedResultSet( rows, resultSet );
+    }
+    Entry entry = new Entry( domainId, version, metaData, rows.toArray( new Object[ rows.size() ][] ), size,
+      System.currentTimeMillis() + ttlMillis );
+    synchronized ( entries ) {
+      remove( key );
+      entries.put( key, entry );
+      bytes += size;
+      for ( Iterator<String> it = entries.keySet().iterator(); bytes > maxBytes && it.hasNext(); ) {
+        String eldest = it.next();
+        bytes -= entries.get( eldest ).bytes;
+        it.remove();
+        evictions.incrementAndGet();
+      }
+    }
+    return entry.newResultSet();
+  }
+
+  public void domainChanged( String domainId ) {
+    invalidate( domainId );
+  }
+
+  /**
+   * Drops every result read against the domain <code>domainId</code>.
+   */
+  public void invalidate( String domainId ) {
+    int removed = 0;
+    synchronized ( entries ) {
+      for ( Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+        Entry entry = it.next();
+        if ( domainId != null && domainId.equals( entry.domainId ) ) {
+          bytes -= entry.bytes;
+          it.remove();
+          removed++;
+        }
+      }
+    }
+    invalidations.addAndGet( removed );
+  }
+
+  public void clear() {
+    synchronized ( entries ) {
+      entries.clear();
+      bytes = 0;
+    }
+  }
+
+  private void remove( String key ) {
+    Entry entry = entries.remove( key );
+    if ( entry != null ) {
+      bytes -= entry.bytes;
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return hits over lookups, or 0 before the first lookup
+   */
+  public double getHitRatio() {
+    long hitCount = hits.get();
+    long lookups = hitCount + misses.get();
+    return lookups == 0 ? 0 : (double) hitCount / lookups;
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  public long getExpirations() {
+    return expirations.get();
+  }
+
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  public int getSize() {
+    synchronized ( entries ) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * @return the estimated heap held by the cached rows
+   */
+  public long getBytes() {
+    synchronized ( entries ) {
+      return bytes;
+    }
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "MetadataResultCache[size=" + getSize() + ", bytes=" + getBytes() + ", hits=" + getHits() //$NON-NLS-1$
+      + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ", expirations=" + getExpirations() //$NON-NLS-1$
+      + ", invalidations=" + getInvalidations() + "]"; //$NON-NLS-1$
+  }
+
+  /**
+   * @param query           the query XML
+   * @param rowLimit        the row limit the query runs with
+   * @param securityContext the user name and roles of the caller
+   */
+  public static String createKey( String query, Integer rowLimit, String securityContext ) {
+    int limit = rowLimit == null || rowLimit < 0 ? -1 : rowLimit;
+    return new StringBuilder( query.length() + 64 ).append( securityContext ).append( SEPARATOR ).append( limit )
+      .append( SEPARATOR ).append( query ).toString();
+  }
+
+  /**
+   * @return the domain id of a query XML made by <code>QueryXmlHelper</code>, or <code>null</code> if there is none
+   */
+  public static String getDomainId( String query ) {
+    int start = query.indexOf( DOMAIN_ID_START );
+    if ( start < 0 ) {
+      return null;
+    }
+    start += DOMAIN_ID_START.length();
+    int end = query.indexOf( DOMAIN_ID_END, start );
+    if ( end < 0 ) {
+      return null;
+    }
+    return query.substring( start, end ).replace( "&lt;", "<" ).replace( "&gt;", ">" ) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+      .replace( "&quot;", "\"" ).replace( "&apos;", "'" ).replace( "&amp;", "&" ); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+  }
+
+  /**
+   * A rough estimate of the heap a row holds on a 64 bit VM with compressed references.
+   */
+  static long estimateBytes( Object[] row ) {
+    long size = 16 + 4L * row.length;
+    for ( Object value : row ) {
+      if ( value == null ) {
+        continue;
+      } else if ( value instanceof String ) {
+        size += 40 + 2L * ( (String) value ).length();
+      } else if ( value instanceof BigDecimal ) {
+        size += 64;
+      } else if ( value instanceof Date ) {
+        size += 24;
+      } else {
+        size += 16;
+      }
+    }
+    return size;
+  }
+
+  private static class Entry {
+
+    private final String domainId;
+
+    private final long version;
+
+    private final IPentahoMetaData metaData;
+
+    private final Object[][] rows;
+
+    private final long bytes;
+
+    private final long expires;
+
+    Entry( String domainId, long version, IPentahoMetaData metaData, Object[][] rows, long bytes, long expires ) {
+      this.domainId = domainId;
+      this.version = version;
+      this.metaData = metaData;
+      this.rows = rows;
+      this.bytes = bytes;
+      this.expires = expires;
+    }
+
+    /**
+     * Every reader gets its own cursor; the row arrays themselves are shared and must not be changed.
+     */
+    IPentahoResultSet newResultSet() {
+      MemoryResultSet resultSet = new MemoryResultSet( metaData );
+      for ( Object[] row : rows ) {
+        resultSet.addRow( row );
+      }
+      return resultSet;
+    }
+  }
+
+  /**
+   * The rows already read from a result set that was too big to cache, followed by the rest of that result set. Only
+   * the cursor replays the rows read; everything else, random access included, is the result set's own.
+   */
+  private static class ReplayedResultSet implements IPentahoResultSet {
+
+    private final List<Object[]> read;
+
+    private final IPentahoResultSet rest;
+
+    private int next;
+
+    ReplayedResultSet( List<Object[]> read, IPentahoResultSet rest ) {
+      this.read = read;
+      this.rest = rest;
+    }
+
+    public Object[] next() {
+      return next < read.size() ? read.get( next++ ) : rest.next();
+    }
+
+    public Object[] peek() {
+      return next < read.size() ? read.get( next ) : rest.peek();
+    }
+
+    /**
+     * Starts over on the result set itself, which then hands out every row again.
+     */
+    public void beforeFirst() {
+      next = read.size();
+      rest.beforeFirst();
+    }
+
+    public boolean isScrollable() {
+      return rest.isScrollable();
+    }
+
+    public Object getValueAt( int row, int column ) {
+      return rest.getValueAt( row, column );
+    }
+
+    public int getRowCount() {
+      return rest.getRowCount();
+    }
+
+    public int getColumnCount() {
+      return rest.getColumnCount();
+    }
+
+    public IPentahoMetaData getMetaData() {
+      return rest.getMetaData();
+    }
+
+    public void close() {
+      rest.close();
+    }
+
+    public void closeConnection() {
+      rest.closeConnection();
+    }
+
+    public void dispose() {
+      rest.dispose();
+    }
+
+    public IPentahoResultSet memoryCopy() {
+      return rest.memoryCopy();
+    }
+
+    public Object[] getDataColumn( int column ) {
+      return rest.getDataColumn( column );
+    }
+
+    public Object[] getDataRow( int row ) {
+      return rest.getDataRow( row );
+    }
+  }
+}
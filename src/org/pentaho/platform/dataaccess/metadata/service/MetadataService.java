@@ -38,6 +38,7 @@ import org.pentaho.metadata.model.LogicalModel;
 import org.pentaho.metadata.query.model.util.QueryXmlHelper;
 import org.pentaho.metadata.repository.IMetadataDomainRepository;
 import org.pentaho.platform.api.engine.ILogger;
+import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.platform.dataaccess.datasource.utils.DataAccessPermissionUtil;
 import org.pentaho.platform.dataaccess.metadata.messages.Messages;
 import org.pentaho.platform.dataaccess.metadata.model.impl.Model;
@@ -47,10 +48,14 @@ import org.pentaho.platform.dataaccess.metadata.model.impl.Query;
 import org.pentaho.platform.engine.core.system.PentahoBase;
 import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
+import org.pentaho.platform.engine.security.SecurityHelper;
 import org.pentaho.platform.plugin.action.pentahometadata.MetadataQueryComponent;
 import org.pentaho.platform.util.messages.LocaleHelper;
 import org.pentaho.pms.core.exception.PentahoMetadataException;
 
+import org.springframework.security.Authentication;
+import org.springframework.security.GrantedAuthority;
+
 import flexjson.JSONSerializer;
 
 /**
@@ -156,7 +161,7 @@ public class MetadataService extends PentahoBase {
     Domain domainObject = repo.getDomain( domain );
 
     // find the best locale
-    String locale = LocaleHelper.getClosestLocale( LocaleHelper.getLocale().toString(), domainObject.getLocaleCodes() );
+    String locale = MetadataModelIndex.forDomain( domainObject ).getLocale( LocaleHelper.getLocale().toString() );
 
     // iterate over all of the models in this domain
     for ( LogicalModel model : domainObject.getLogicalModels() ) {
@@ -176,13 +181,30 @@ public class MetadataService extends PentahoBase {
 
   /**
    * Returns a Model object for the requested model. The model will include the basic metadata - categories and
-   * columns.
+   * columns. Each call returns a copy of the shared thin model, which the caller may change.
    *
    * @param domainId
    * @param modelId
    * @return
    */
   public Model loadModel( String domainId, String modelId ) {
+    CachedModel model = loadCachedModel( domainId, modelId );
+    return model == null ? null : model.getModel();
+  }
+
+  /**
+   * Returns the thin model of {@link #loadModel} along with its JSON serialization. Thin models are made once per
+   * version of the domain and locale, and shared.
+   *
+   * @param domainId
+   * @param modelId
+   * @return
+   */
+  CachedModel getCachedModel( String domainId, String modelId ) {
+    return loadCachedModel( domainId, modelId );
+  }
+
+  private CachedModel loadCachedModel( String domainId, String modelId ) {
 
     if ( domainId == null ) {
       // we can't do this without a model
@@ -197,11 +219,14 @@ public class MetadataService extends PentahoBase {
     }
 
     // because it's lighter weight, check the thin model
+    long version = DomainChangeNotifier.getVersion( domainId );
     Domain domain = getMetadataRepository().getDomain( domainId );
     if ( domain == null ) {
       error( Messages.getErrorString( "MetadataService.ERROR_0005_DOMAIN_NOT_FOUND", domainId ) ); //$NON-NLS-1$
       return null;
     }
+    MetadataModelIndex index = MetadataModelIndex.forDomain( domain, version );
+    domain = index.getDomain();
 
     LogicalModel model = domain.findLogicalModel( modelId );
 
@@ -211,10 +236,15 @@ public class MetadataService extends PentahoBase {
       return null;
     }
 
-    // create the thin metadata model and return it
+    // create the thin metadata model, unless it has been made already, and return it
     MetadataServiceUtil util = getMetadataServiceUtil();
     util.setDomain( domain );
-    Model thinModel = util.createThinModel( model, domainId );
+    String locale = util.getLocale();
+    CachedModel thinModel = index.getThinModel( modelId, locale );
+    if ( thinModel == null ) {
+      thinModel = new CachedModel( util.createThinModel( model, domainId ) );
+      index.putThinModel( modelId, locale, thinModel );
+    }
     return thinModel;
 
   }
@@ -229,10 +259,12 @@ public class MetadataService extends PentahoBase {
    */
   public String loadModelJson( String domainId, String modelId ) {
 
-    Model model = loadModel( domainId, modelId );
-    JSONSerializer serializer = new JSONSerializer();
-    String json = serializer.deepSerialize( model );
-    return json;
+    CachedModel model = loadCachedModel( domainId, modelId );
+    if ( model == null ) {
+      JSONSerializer serializer = new JSONSerializer();
+      return serializer.deepSerialize( null );
+    }
+    return model.getJson();
   }
 
   /**
@@ -299,7 +331,7 @@ public class MetadataService extends PentahoBase {
       MetadataServiceUtil util = getMetadataServiceUtil();
       Domain domain = util.getDomainObject( xml );
       util.setDomain( domain );
-      String locale = LocaleHelper.getClosestLocale( LocaleHelper.getLocale().toString(), domain.getLocaleCodes() );
+      String locale = MetadataModelIndex.forDomain( domain ).getLocale( LocaleHelper.getLocale().toString() );
       json = util.createCdaJson( resultSet, locale );
     } catch ( JSONException e ) {
       error( Messages.getErrorString( "MetadataService.ERROR_0007_JSON_ERROR" ), e ); //$NON-NLS-1$
@@ -352,6 +384,35 @@ public class MetadataService extends PentahoBase {
    * @return
    */
   protected IPentahoResultSet executeQuery( String query, Integer rowLimit ) {
+    MetadataResultCache cache = getMetadataResultCache();
+    if ( !cache.isEnabled() ) {
+      return runQuery( query, rowLimit );
+    }
+    String domainId = MetadataResultCache.getDomainId( query );
+    if ( domainId == null ) {
+      return runQuery( query, rowLimit );
+    }
+    // noted before the query runs, so rows read while the domain is being changed are not served after
+    long version = DomainChangeNotifier.getVersion( domainId );
+    String key = MetadataResultCache.createKey( query, rowLimit, getSecurityContext() );
+    IPentahoResultSet resultSet = cache.get( key, version );
+    if ( resultSet == null ) {
+      resultSet = runQuery( query, rowLimit );
+      if ( resultSet != null ) {
+        resultSet = cache.put( key, domainId, version, resultSet );
+      }
+    }
+    return resultSet;
+  }
+
+  /**
+   * Executes a XML query against the database, bypassing the result cache
+   *
+   * @param query
+   * @param rowLimit An optional row limit, -1 or null means all rows
+   * @return
+   */
+  protected IPentahoResultSet runQuery( String query, Integer rowLimit ) {
     // create a component to execute the query
     MetadataQueryComponent dataComponent = new MetadataQueryComponent();
     dataComponent.setQuery( query );
@@ -417,6 +478,30 @@ public class MetadataService extends PentahoBase {
     return DataAccessPermissionUtil.hasViewAccess();
   }
 
+  protected MetadataResultCache getMetadataResultCache() {
+    return MetadataResultCache.getInstance();
+  }
+
+  /**
+   * Returns the user name and the sorted roles of the current user; results are only shared between callers that
+   * have the same ones
+   *
+   * @return
+   */
+  protected String getSecurityContext() {
+    IPentahoSession session = PentahoSessionHolder.getSession();
+    Authentication auth = SecurityHelper.getInstance().getAuthentication( session, true );
+    if ( auth == null ) {
+      return session == null ? "" : session.getName(); //$NON-NLS-1$
+    }
+    List<String> roles = new ArrayList<String>();
+    for ( GrantedAuthority role : auth.getAuthorities() ) {
+      roles.add( role.getAuthority() );
+    }
+    Collections.sort( roles );
+    return auth.getName() + roles;
+  }
+
   protected MetadataServiceUtil getMetadataServiceUtil() {
     return new MetadataServiceUtil();
   }
@@ -18,7 +18,9 @@
 package org.pentaho.platform.dataaccess.metadata.service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -101,8 +103,7 @@ public class MetadataServiceUtil extends PentahoBase {
    * @return
    */
   protected String getLocale() {
-    String locale = LocaleHelper.getClosestLocale( LocaleHelper.getLocale().toString(), domain.getLocaleCodes() );
-    return locale;
+    return MetadataModelIndex.forDomain( domain ).getLocale( LocaleHelper.getLocale().toString() );
   }
 
   /**
@@ -115,14 +116,15 @@ public class MetadataServiceUtil extends PentahoBase {
   public Model createThinModel( LogicalModel m, String domainId ) {
     // create the model object
     Model model = new Model();
-    model.setName( m.getName( getLocale() ) );
+    String locale = getLocale();
+    model.setName( m.getName( locale ) );
     model.setId( m.getId() );
     model.setDomainId( domainId );
-    model.setDescription( m.getDescription( getLocale() ) );
+    model.setDescription( m.getDescription( locale ) );
     // add the categories to the model
     List<Category> categories = new ArrayList<Category>();
     for ( org.pentaho.metadata.model.Category cat : m.getCategories() ) {
-      categories.add( createCategory( m, cat ) );
+      categories.add( createCategory( m, cat, locale ) );
     }
     model.setCategories( categories.toArray( new Category[ categories.size() ] ) );
 
@@ -135,16 +137,17 @@ public class MetadataServiceUtil extends PentahoBase {
    *
    * @param m
    * @param c
+   * @param locale
    * @return
    */
-  private Category createCategory( LogicalModel m, org.pentaho.metadata.model.Category c ) {
+  private Category createCategory( LogicalModel m, org.pentaho.metadata.model.Category c, String locale ) {
     // create a thin category object
     Category cat = new Category();
-    cat.setName( c.getName( getLocale() ) );
+    cat.setName( c.getName( locale ) );
     cat.setId( c.getId() );
     List<Column> columns = new ArrayList<Column>();
     for ( LogicalColumn col : c.getLogicalColumns() ) {
-      columns.add( createColumn( m, col, c ) );
+      columns.add( createColumn( m, col, c, locale ) );
     }
     cat.setColumns( columns.toArray( new Column[ columns.size() ] ) );
 
@@ -156,11 +159,13 @@ public class MetadataServiceUtil extends PentahoBase {
    *
    * @param m
    * @param c
+   * @param locale
    * @return
    */
-  private Column createColumn( LogicalModel m, LogicalColumn c, org.pentaho.metadata.model.Category category ) {
+  private Column createColumn( LogicalModel m, LogicalColumn c, org.pentaho.metadata.model.Category category,
+                               String locale ) {
     Column col = new Column();
-    col.setName( c.getName( getLocale() ) );
+    col.setName( c.getName( locale ) );
     col.setId( c.getId() );
     if ( c.getFieldType() != null ) {
       col.setFieldType( c.getFieldType().name() );
@@ -232,25 +237,11 @@ public class MetadataServiceUtil extends PentahoBase {
     }
     JSONObject json = new JSONObject();
 
-    // Generate the metadata
-    final JSONArray metadataArray = new JSONArray();
-
     final int columnCount = resultSet.getColumnCount();
     final int rowCount = resultSet.getRowCount();
 
-    for ( int i = 0; i < columnCount; i++ ) {
-      JSONObject info = new JSONObject();
-      info.put( "colIndex", i ); //$NON-NLS-1$
-      info.put( "colName", resultSet.getMetaData().getColumnHeaders()[ 0 ][ i ] ); //$NON-NLS-1$
-      DataType type = (DataType) resultSet.getMetaData().getAttribute( 0, i, IPhysicalColumn.DATATYPE_PROPERTY );
-      info.put( "colType", type.getName().toUpperCase() ); //$NON-NLS-1$
-      LocalizedString name = (LocalizedString) resultSet.getMetaData().getAttribute( 0, i, Concept.NAME_PROPERTY );
-      if ( name != null && locale != null ) {
-        info.put( "colLabel", name.getString( locale ) ); //$NON-NLS-1$
-      }
-      metadataArray.put( info );
-    }
-    json.put( "metadata", metadataArray ); //$NON-NLS-1$
+    // Generate the metadata
+    json.put( "metadata", createCdaMetadata( resultSet, locale ) ); //$NON-NLS-1$
 
     // add the rows of data
     final JSONArray valuesArray = new JSONArray();
@@ -266,6 +257,27 @@ public class MetadataServiceUtil extends PentahoBase {
     return json.toString();
   }
 
+  /**
+   * Returns the CDA JSON description of the columns of a query result set
+   */
+  static JSONArray createCdaMetadata( final IPentahoResultSet resultSet, String locale ) throws JSONException {
+    final JSONArray metadataArray = new JSONArray();
+    final int columnCount = resultSet.getColumnCount();
+    for ( int i = 0; i < columnCount; i++ ) {
+      JSONObject info = new JSONObject();
+      info.put( "colIndex", i ); //$NON-NLS-1$
+      info.put( "colName", resultSet.getMetaData().getColumnHeaders()[ 0 ][ i ] ); //$NON-NLS-1$
+      DataType type = (DataType) resultSet.getMetaData().getAttribute( 0, i, IPhysicalColumn.DATATYPE_PROPERTY );
+      info.put( "colType", type.getName().toUpperCase() ); //$NON-NLS-1$
+      LocalizedString name = (LocalizedString) resultSet.getMetaData().getAttribute( 0, i, Concept.NAME_PROPERTY );
+      if ( name != null && locale != null ) {
+        info.put( "colLabel", name.getString( locale ) ); //$NON-NLS-1$
+      }
+      metadataArray.put( info );
+    }
+    return metadataArray;
+  }
+
   /**
    * Returns the full domain obejct for a XML MQL query
    *
@@ -290,7 +302,21 @@ public class MetadataServiceUtil extends PentahoBase {
 
     IMetadataDomainRepository domainRepository = getMetadataRepository();
 
+    // the version is noted before the domain is read, so a conversion of a domain changed meanwhile is not reused
+    long version = DomainChangeNotifier.getVersion( src.getDomainName() );
     Domain fullDomain = domainRepository.getDomain( src.getDomainName() );
+
+    // the columns and categories come from the indexed domain object, so the query uses that object throughout
+    MetadataModelIndex index = MetadataModelIndex.forDomain( fullDomain, version );
+    fullDomain = index.getDomain();
+
+    // reuse the conversion of an earlier query of the same shape against the same index of the domain
+    MetadataQueryCache cache = MetadataQueryCache.getInstance();
+    String cacheKey = MetadataQueryCache.createKey( src );
+    MetadataQueryCache.CompiledQuery compiled = cache.get( cacheKey, version, fullDomain );
+    if ( compiled != null ) {
+      return compiled.newQuery( src.getParameters() );
+    }
     LogicalModel logicalModel = fullDomain.findLogicalModel( src.getModelId() );
 
     // create a new full query object
@@ -301,8 +327,8 @@ public class MetadataServiceUtil extends PentahoBase {
     List<Selection> selections = dest.getSelections();
     for ( Column column : src.getColumns() ) {
       // get the objects needed for the selection
-      LogicalColumn logicalColumn = logicalModel.findLogicalColumn( column.getId() );
-      org.pentaho.metadata.model.Category category = getCategory( column.getId(), logicalModel );
+      LogicalColumn logicalColumn = index.findLogicalColumn( logicalModel, column.getId() );
+      org.pentaho.metadata.model.Category category = index.findCategory( logicalModel, column.getId() );
       AggregationType aggregationType = AggregationType.valueOf( column.getSelectedAggType() );
       // create a selection and add it to the list
       Selection selection = new Selection( category, logicalColumn, aggregationType );
@@ -314,7 +340,7 @@ public class MetadataServiceUtil extends PentahoBase {
     for ( Condition condition : src.getConditions() ) {
       org.pentaho.metadata.query.model.CombinationType combinationType =
         CombinationType.valueOf( condition.getCombinationType() );
-      LogicalColumn logicalColumn = logicalModel.findLogicalColumn( condition.getColumn() );
+      LogicalColumn logicalColumn = index.findLogicalColumn( logicalModel, condition.getColumn() );
       String paramName = null;
       for ( Parameter parameter : src.getParameters() ) {
         if ( parameter.getColumn().equals( condition.getColumn() ) ) {
@@ -334,30 +360,41 @@ public class MetadataServiceUtil extends PentahoBase {
 
     // now add the sorting information
     List<org.pentaho.metadata.query.model.Order> orders = dest.getOrders();
-    for ( Order order : src.getOrders() ) {
-      // find the selection
+    if ( src.getOrders().length > 0 ) {
+      // a column may be selected more than once, with different aggregations; each selection is sorted on
+      Map<String, List<Selection>> selectionsByColumn = new HashMap<String, List<Selection>>();
       for ( Selection selection : selections ) {
-        if ( selection.getLogicalColumn().getId().equals( order.getColumn() ) ) {
-          Type type = Type.valueOf( order.getOrderType() );
-          org.pentaho.metadata.query.model.Order fullOrder =
-            new org.pentaho.metadata.query.model.Order( selection, type );
-          orders.add( fullOrder );
+        List<Selection> columnSelections = selectionsByColumn.get( selection.getLogicalColumn().getId() );
+        if ( columnSelections == null ) {
+          columnSelections = new ArrayList<Selection>( 1 );
+          selectionsByColumn.put( selection.getLogicalColumn().getId(), columnSelections );
+        }
+        columnSelections.add( selection );
+      }
+      for ( Order order : src.getOrders() ) {
+        List<Selection> columnSelections = selectionsByColumn.get( order.getColumn() );
+        if ( columnSelections == null ) {
+          continue;
+        }
+        Type type = Type.valueOf( order.getOrderType() );
+        for ( Selection selection : columnSelections ) {
+          orders.add( new org.pentaho.metadata.query.model.Order( selection, type ) );
         }
       }
     }
 
-    // now add the parameter information
-    List<org.pentaho.metadata.query.model.Parameter> parameters = dest.getParameters();
-    for ( Parameter parameter : src.getParameters() ) {
+    // now add the parameter information; the values are filled in per query
+    Parameter[] parameters = src.getParameters();
+    DataType[] parameterTypes = new DataType[ parameters.length ];
+    for ( int idx = 0; idx < parameters.length; idx++ ) {
       // find the column for this parameter
-      LogicalColumn logicalColumn = logicalModel.findLogicalColumn( parameter.getColumn() );
-      DataType type = logicalColumn.getDataType();
-      String[] value = parameter.getValue();
-      org.pentaho.metadata.query.model.Parameter fullParam =
-        new org.pentaho.metadata.query.model.Parameter( parameter.getColumn(), type, value[ 0 ] );
-      parameters.add( fullParam );
+      LogicalColumn logicalColumn = index.findLogicalColumn( logicalModel, parameters[ idx ].getColumn() );
+      parameterTypes[ idx ] = logicalColumn.getDataType();
     }
-    return dest;
+
+    compiled = new MetadataQueryCache.CompiledQuery( dest, parameterTypes, version );
+    cache.put( cacheKey, compiled );
+    return compiled.newQuery( parameters );
   }
 
   /**
@@ -368,12 +405,7 @@ public class MetadataServiceUtil extends PentahoBase {
    * @return
    */
   protected org.pentaho.metadata.model.Category getCategory( String columnId, LogicalModel logicalModel ) {
-    for ( org.pentaho.metadata.model.Category category : logicalModel.getCategories() ) {
-      if ( category.findLogicalColumn( columnId ) != null ) {
-        return category;
-      }
-    }
-    return null;
+    return MetadataModelIndex.scanCategories( logicalModel, columnId );
   }
 
   /**
@@ -0,0 +1,172 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.pentaho.commons.connection.IPentahoMetaData;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.commons.connection.marshal.MarshallableResultSet;
+import org.pentaho.commons.connection.marshal.MarshallableRow;
+import org.pentaho.commons.connection.memory.MemoryResultSet;
+
+import flexjson.JSONSerializer;
+
+/**
+ * Writes query results as JSON straight to an output stream while it walks the result set, in the same two shapes
+ * {@link MetadataService#doXmlQueryToJson} and {@link MetadataService#doXmlQueryToCdaJson} return as strings. Neither
+ * the whole object tree nor the whole JSON string is ever held in memory.
+ * <p/>
+ * The envelope around the rows is produced by the very serializers the string methods use, with no rows in it, and
+ * the rows are spliced in where the empty row array was, each serialized on its own. The output is therefore the
+ * same, byte for byte, as the string methods produce.
+ */
+public class ResultSetJsonWriter {
+
+  /**
+   * Rows handed to {@link MarshallableResultSet} at a time, so its conversion of cells is used without it copying the
+   * whole result set.
+   */
+  static final int CHUNK_ROWS = 1000;
+
+  private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+
+  private static final String ROWS_KEY = "\"rows\":["; //$NON-NLS-1$
+
+  private static final String RESULTSET_KEY = "\"resultset\":["; //$NON-NLS-1$
+
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  /**
+   * Writes <code>resultSet</code> the way flexjson deep-serializes a {@link MarshallableResultSet} of it.
+   */
+  public void writeJson( IPentahoResultSet resultSet, OutputStream out ) throws IOException {
+    Writer writer = new BufferedWriter( new OutputStreamWriter( out, ENCODING ), BUFFER_SIZE );
+    IPentahoMetaData metaData = resultSet.getMetaData();
+    JSONSerializer serializer = new JSONSerializer();
+
+    MarshallableResultSet envelope = new MarshallableResultSet();
+    envelope.setResultSet( new MemoryResultSet( metaData ) );
+    String json = serializer.deepSerialize( envelope );
+    int rowsAt = findEmptyArray( json, ROWS_KEY );
+    if ( rowsAt < 0 ) {
+      // no empty row array to splice into; serialize the whole result set the old way
+      MarshallableResultSet whole = new MarshallableResultSet();
+      whole.setResultSet( resultSet );
+      serializer.deepSerialize( whole, writer );
+      writer.flush();
+      return;
+    }
+
+    writer.write( json, 0, rowsAt );
+    boolean first = true;
+    MemoryResultSet chunk = new MemoryResultSet( metaData );
+    int chunkRows = 0;
+    Object[] row;
+    while ( ( row = resultSet.next() ) != null ) {
+      chunk.addRow( row );
+      if ( ++chunkRows == CHUNK_ROWS ) {
+        first = writeRows( chunk, serializer, writer, first );
+        chunk = new MemoryResultSet( metaData );
+        chunkRows = 0;
+      }
+    }
+    if ( chunkRows > 0 ) {
+      writeRows( chunk, serializer, writer, first );
+    }
+    writer.write( json, rowsAt, json.length() - rowsAt );
+    writer.flush();
+  }
+
+  /**
+   * Writes <code>resultSet</code> the way {@link MetadataServiceUtil#createCdaJson} renders it.
+   */
+  public void writeCdaJson( IPentahoResultSet resultSet, String locale, OutputStream out )
+    throws IOException, JSONException {
+    Writer writer = new BufferedWriter( new OutputStreamWriter( out, ENCODING ), BUFFER_SIZE );
+    JSONObject envelope = new JSONObject();
+    envelope.put( "metadata", MetadataServiceUtil.createCdaMetadata( resultSet, locale ) ); //$NON-NLS-1$
+    envelope.put( "resultset", new JSONArray() ); //$NON-NLS-1$
+    String json = envelope.toString();
+    int rowsAt = findEmptyArray( json, RESULTSET_KEY );
+
+    writer.write( json, 0, rowsAt );
+    int columnCount = resultSet.getColumnCount();
+    int rowCount = resultSet.getRowCount();
+    if ( rowCount >= 0 ) {
+      for ( int rowIdx = 0; rowIdx < rowCount; rowIdx++ ) {
+        JSONArray rowArray = new JSONArray();
+        for ( int colIdx = 0; colIdx < columnCount; colIdx++ ) {
+          rowArray.put( resultSet.getValueAt( rowIdx, colIdx ) );
+        }
+        writeCdaRow( rowArray, writer, rowIdx == 0 );
+      }
+    } else {
+      // a forward-only result set that does not know its size
+      Object[] row;
+      boolean first = true;
+      while ( ( row = resultSet.next() ) != null ) {
+        JSONArray rowArray = new JSONArray();
+        for ( int colIdx = 0; colIdx < columnCount; colIdx++ ) {
+          rowArray.put( colIdx < row.length ? row[ colIdx ] : null );
+        }
+        writeCdaRow( rowArray, writer, first );
+        first = false;
+      }
+    }
+    writer.write( json, rowsAt, json.length() - rowsAt );
+    writer.flush();
+  }
+
+  /**
+   * @return the position just inside the empty array that is the value of <code>key</code>, or -1 if there is none.
+   *         Keys inside string values have their quotes escaped, so they cannot be mistaken for the real one.
+   */
+  static int findEmptyArray( String json, String key ) {
+    int idx = json.lastIndexOf( key + "]" ); //$NON-NLS-1$
+    return idx < 0 ? -1 : idx + key.length();
+  }
+
+  private boolean writeRows( MemoryResultSet chunk, JSONSerializer serializer, Writer writer, boolean first )
+    throws IOException {
+    MarshallableResultSet marshallable = new MarshallableResultSet();
+    marshallable.setResultSet( chunk );
+    for ( MarshallableRow row : marshallable.getRows() ) {
+      if ( !first ) {
+        writer.write( ',' );
+      }
+      serializer.deepSerialize( row, writer );
+      first = false;
+    }
+    return first;
+  }
+
+  private void writeCdaRow( JSONArray rowArray, Writer writer, boolean first ) throws IOException {
+    if ( !first ) {
+      writer.write( ',' );
+    }
+    writer.write( rowArray.toString() );
+  }
+}
@@ -267,12 +267,13 @@ public class DataSourceWizardServiceTest {
     LogicalModel mockLogicalModel = mock( LogicalModel.class );
     mockLogicalModelList.add( mockLogicalModel );
     Object mockObject = mock( Object.class );
+    doReturn( "dswId" ).when( mockLogicalModelSummary ).getDomainId();
 
     List<String> datasourceList = new ArrayList<String>();
     datasourceList.add( mockLogicalModelSummary.getDomainId() );
 
     doReturn( mockLogicalModelSummaryList ).when( dataSourceWizardService.dswService ).getLogicalModels( null );
-    doReturn( mockDomain ).when( dataSourceWizardService.modelerService ).loadDomain( anyString() );
+    doReturn( mockDomain ).when( dataSourceWizardService.metadataDomainRepository ).getDomain( anyString() );
     doReturn( mockLogicalModelList ).when( mockDomain ).getLogicalModels();
     doReturn( mockObject ).when( mockLogicalModel ).getProperty( "AGILE_BI_GENERATED_SCHEMA" );
 
@@ -290,7 +291,7 @@ public class DataSourceWizardServiceTest {
 
     doReturn( mockLogicalModelSummaryList ).when( dataSourceWizardService.dswService ).getLogicalModels( null );
     RuntimeException mockException = mock( RuntimeException.class );
-    doThrow( mockException ).when( dataSourceWizardService.modelerService ).loadDomain( anyString() );
+    doThrow( mockException ).when( dataSourceWizardService.metadataDomainRepository ).getDomain( anyString() );
 
     List<String> response = dataSourceWizardService.getDSWDatasourceIds();
     assertEquals( null, response );
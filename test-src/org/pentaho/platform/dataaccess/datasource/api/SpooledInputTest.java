@@ -0,0 +1,93 @@
+/*!
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+ */
+
+package org.pentaho.platform.dataaccess.datasource.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class SpooledInputTest {
+
+  private static byte[] data( int size ) {
+    byte[] data = new byte[ size ];
+    for ( int i = 0; i < size; i++ ) {
+      data[ i ] = (byte) i;
+    }
+    return data;
+  }
+
+  @Test
+  public void testHeldInMemory() throws Exception {
+    byte[] data = data( 1000 );
+    SpooledInput spooledInput = new SpooledInput( 1000 );
+    spooledInput.spool( new ByteArrayInputStream( data ) );
+    assertEquals( 1000, spooledInput.getLength() );
+    assertArrayEquals( data, IOUtils.toByteArray( spooledInput.openStream() ) );
+    assertArrayEquals( data, IOUtils.toByteArray( spooledInput.openStream() ) );
+    spooledInput.close();
+  }
+
+  @Test
+  public void testSpooledToFile() throws Exception {
+    byte[] data = data( 100000 );
+    SpooledInput spooledInput = new SpooledInput( 1000 );
+    spooledInput.spool( new ByteArrayInputStream( data ) );
+    assertEquals( 100000, spooledInput.getLength() );
+    assertArrayEquals( data, IOUtils.toByteArray( spooledInput.openStream() ) );
+
+    InputStream in = spooledInput.openStream();
+    assertTrue( in.markSupported() );
+    assertEquals( 0, in.read() );
+    in.mark( 0 );
+    assertEquals( 1, in.read() );
+    IOUtils.toByteArray( in );
+    in.reset();
+    assertEquals( 1, in.read() );
+    in.close();
+    spooledInput.close();
+  }
+
+  @Test
+  public void testSpoolAppends() throws Exception {
+    SpooledInput spooledInput = new SpooledInput( 10 );
+    spooledInput.spool( new ByteArrayInputStream( data( 8 ) ) );
+    spooledInput.spool( new ByteArrayInputStream( data( 8 ) ) );
+    spooledInput.spool( new ByteArrayInputStream( data( 8 ) ) );
+    assertEquals( 24, spooledInput.getLength() );
+    byte[] read = IOUtils.toByteArray( spooledInput.openStream() );
+    assertEquals( 24, read.length );
+    assertEquals( 7, read[ 15 ] );
+    assertEquals( 0, read[ 16 ] );
+    spooledInput.close();
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    SpooledInput spooledInput = new SpooledInput( 10 );
+    spooledInput.spool( new ByteArrayInputStream( new byte[ 0 ] ) );
+    assertEquals( 0, spooledInput.getLength() );
+    assertEquals( -1, spooledInput.openStream().read() );
+    spooledInput.close();
+  }
+}
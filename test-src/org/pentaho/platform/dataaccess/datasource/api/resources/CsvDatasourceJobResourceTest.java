@@ -0,0 +1,120 @@
+/*!
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+ */
+
+package org.pentaho.platform.dataaccess.datasource.api.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJob;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJobRegistry;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJobStatus;
+import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
+
+public class CsvDatasourceJobResourceTest {
+
+  private StagingJobRegistry registry;
+
+  private CsvDatasourceJobResource resource;
+
+  private String userName = "joe";
+
+  private class CsvDatasourceJobResourceMock extends CsvDatasourceJobResource {
+    CsvDatasourceJobResourceMock( StagingJobRegistry registry ) {
+      super( registry );
+    }
+
+    @Override protected String getUserName() {
+      return userName;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    registry = new StagingJobRegistry();
+    resource = new CsvDatasourceJobResourceMock( registry );
+  }
+
+  @Test
+  public void testGetStatus() {
+    FileTransformStats stats = new FileTransformStats();
+    stats.setTotalRecords( 42 );
+    StagingJob job = registry.create( "joe", stats );
+    job.setPhase( StagingJob.Phase.STAGING );
+
+    Response response = resource.getStatus( job.getId(), 0 );
+    assertEquals( 200, response.getStatus() );
+    StagingJobStatus status = (StagingJobStatus) response.getEntity();
+    assertEquals( job.getId(), status.getJobId() );
+    assertEquals( "STAGING", status.getPhase() );
+    assertFalse( status.isDone() );
+    assertEquals( 42, status.getRowsLoaded() );
+  }
+
+  @Test
+  public void testGetStatusOfAnotherUsersJob() {
+    StagingJob job = registry.create( "suzy", new FileTransformStats() );
+    assertEquals( 404, resource.getStatus( job.getId(), 0 ).getStatus() );
+    assertEquals( 404, resource.getStatus( "no-such-job", 0 ).getStatus() );
+  }
+
+  @Test
+  public void testGetStatusWaitsNoLongerThanTheCap() throws Exception {
+    StagingJob job = spy( registry.create( "joe", new FileTransformStats() ) );
+    StagingJobRegistry jobs = mock( StagingJobRegistry.class );
+    when( jobs.get( job.getId(), "joe" ) ).thenReturn( job );
+    resource = new CsvDatasourceJobResourceMock( jobs );
+
+    assertEquals( 200, resource.getStatus( job.getId(), 10 * CsvDatasourceJobResource.MAX_WAIT_MILLIS ).getStatus() );
+    verify( job ).await( CsvDatasourceJobResource.MAX_WAIT_MILLIS );
+  }
+
+  @Test
+  public void testCancel() {
+    StagingJob job = registry.create( "joe", new FileTransformStats() );
+    assertEquals( 200, resource.cancel( job.getId() ).getStatus() );
+    assertEquals( StagingJob.Phase.CANCELLED, job.getPhase() );
+
+    StagingJobStatus status = (StagingJobStatus) resource.getStatus( job.getId(), 0 ).getEntity();
+    assertEquals( "CANCELLED", status.getPhase() );
+    assertTrue( status.isDone() );
+  }
+
+  @Test
+  public void testCancelWhileSaving() {
+    StagingJob job = registry.create( "joe", new FileTransformStats() );
+    job.setPhase( StagingJob.Phase.SAVING );
+    assertEquals( 409, resource.cancel( job.getId() ).getStatus() );
+    assertEquals( StagingJob.Phase.SAVING, job.getPhase() );
+  }
+
+  @Test
+  public void testCancelAnotherUsersJob() {
+    StagingJob job = registry.create( "suzy", new FileTransformStats() );
+    assertEquals( 404, resource.cancel( job.getId() ).getStatus() );
+    assertEquals( StagingJob.Phase.QUEUED, job.getPhase() );
+  }
+}
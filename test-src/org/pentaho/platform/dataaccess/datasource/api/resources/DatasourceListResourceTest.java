@@ -0,0 +1,109 @@
+/*!
+ * This program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+ * Foundation.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this
+ * program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ * or from the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ *
+ * Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+ */
+
+package org.pentaho.platform.dataaccess.datasource.api.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.platform.dataaccess.datasource.DatasourceInfo;
+import org.pentaho.platform.dataaccess.datasource.IDatasourceInfo;
+import org.pentaho.platform.dataaccess.datasource.api.DatasourceListService;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.ConnectionServiceException;
+
+public class DatasourceListResourceTest {
+
+  private DatasourceListResource resource;
+
+  private List<IDatasourceInfo> datasources;
+
+  private class DatasourceListResourceMock extends DatasourceListResource {
+    @Override protected DatasourceListService createDatasourceListService() {
+      return mock( DatasourceListService.class );
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    resource = new DatasourceListResourceMock();
+    datasources = new ArrayList<IDatasourceInfo>();
+    datasources.add( new DatasourceInfo( "a", "a", "JDBC", true, true, true, true ) );
+    datasources.add( new DatasourceInfo( "b", "b.xmi", "Metadata", false, true, true, true ) );
+    datasources.add( new DatasourceInfo( "c", "c", "Analysis", true, true, true, true ) );
+    when( resource.service.getDatasources( null, null ) ).thenReturn( datasources );
+    when( resource.service.getPermission() ).thenReturn( DatasourceListService.PERMISSION_EDIT );
+  }
+
+  @Test
+  public void testGetDatasources() throws Exception {
+    Response response = resource.getDatasources( null, null, 0, -1, null );
+    assertEquals( 200, response.getStatus() );
+    assertNotNull( response.getMetadata().getFirst( "ETag" ) );
+
+    JSONObject result = new JSONObject( (String) response.getEntity() );
+    assertEquals( "EDIT", result.getString( "permission" ) );
+    assertEquals( 3, result.getInt( "total" ) );
+    JSONArray items = result.getJSONArray( "datasources" );
+    assertEquals( 3, items.length() );
+    assertEquals( "b.xmi", items.getJSONObject( 1 ).getString( "id" ) );
+    assertEquals( "Metadata", items.getJSONObject( 1 ).getString( "type" ) );
+    assertFalse( items.getJSONObject( 1 ).getBoolean( "editable" ) );
+  }
+
+  @Test
+  public void testGetDatasourcesPage() throws Exception {
+    JSONObject result = new JSONObject( (String) resource.getDatasources( null, null, 1, 1, null ).getEntity() );
+    assertEquals( 3, result.getInt( "total" ) );
+    assertEquals( 1, result.getInt( "offset" ) );
+    assertEquals( 1, result.getJSONArray( "datasources" ).length() );
+    assertEquals( "b", result.getJSONArray( "datasources" ).getJSONObject( 0 ).getString( "name" ) );
+
+    result = new JSONObject( (String) resource.getDatasources( null, null, 5, 10, null ).getEntity() );
+    assertEquals( 3, result.getInt( "offset" ) );
+    assertEquals( 0, result.getJSONArray( "datasources" ).length() );
+  }
+
+  @Test
+  public void testGetDatasourcesNotModified() throws Exception {
+    Request request = mock( Request.class );
+    when( request.evaluatePreconditions( any( EntityTag.class ) ) ).thenReturn( Response.notModified() );
+    Response response = resource.getDatasources( null, null, 0, -1, request );
+    assertEquals( 304, response.getStatus() );
+  }
+
+  @Test
+  public void testGetDatasourcesError() throws Exception {
+    when( resource.service.getDatasources( null, null ) ).thenThrow( new ConnectionServiceException( "error" ) );
+    Response response = resource.getDatasources( null, null, 0, -1, null );
+    assertEquals( 500, response.getStatus() );
+  }
+}
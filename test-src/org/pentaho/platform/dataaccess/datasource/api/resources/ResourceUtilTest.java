@@ -24,16 +24,21 @@ import org.junit.Test;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.io.IOUtils;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 public class ResourceUtilTest {
@@ -59,11 +64,6 @@ public class ResourceUtilTest {
     String domainId = "domainId";
     StreamingOutput mockStreamingOutput = mock( StreamingOutput.class );
     Response mockResponse = mock( Response.class );
-    File mockFile = mock( File.class );
-    ZipOutputStream mockZipOutputStream = mock( ZipOutputStream.class );
-    ZipEntry mockZipEntry = mock( ZipEntry.class );
-    ZipEntry mockZipEntry2 = mock( ZipEntry.class );
-    FileInputStream mockFileInputStream = mock( FileInputStream.class );
 
     //Test 1
     doReturn( MediaType.TEXT_PLAIN ).when( resourceUtil ).getMimeType( fileData.get( "file1" ) );
@@ -75,14 +75,7 @@ public class ResourceUtilTest {
 
     //Test 2
     fileData.put( "file2", mockInputStream2 );
-    doReturn( mockFile ).when( resourceUtil ).createTempFile( "datasourceExport", ".zip" );
-    doReturn( mockZipOutputStream ).when( resourceUtil ).createZipOutputStream( mockFile );
-    doReturn( mockZipEntry ).when( resourceUtil ).createZipEntry( "file1" );
-    doReturn( mockZipEntry2 ).when( resourceUtil ).createZipEntry( "file2" );
-    doNothing().when( resourceUtil ).copy( mockInputStream, mockZipOutputStream );
-    doNothing().when( resourceUtil ).copy( mockInputStream2, mockZipOutputStream );
-    doReturn( mockFileInputStream ).when( resourceUtil ).createFileInputStream( mockFile );
-    doReturn( mockStreamingOutput ).when( resourceUtil ).createStreamingOutput( mockFileInputStream );
+    doReturn( mockStreamingOutput ).when( resourceUtil ).createZipStreamingOutput( fileData );
     doReturn( mockResponse ).when( resourceUtil ).buildOkResponse( mockStreamingOutput, resourceUtil.APPLICATION_ZIP, "\"domainId.zip\"" );
 
     response = resourceUtil.createAttachment( fileData, domainId );
@@ -94,8 +87,6 @@ public class ResourceUtilTest {
   @Test
   public void testCreateAttachmentError() throws Exception {
     Map<String, InputStream> fileData = new TreeMap<String, InputStream>();
-    InputStream mockInputStream = mock( InputStream.class );
-    InputStream mockInputStream2 = mock( InputStream.class );
     String domainId = "domainId";
     Response mockResponse = mock( Response.class );
 
@@ -105,39 +96,76 @@ public class ResourceUtilTest {
     Response response = resourceUtil.createAttachment( fileData, domainId );
     assertEquals( mockResponse, response );
 
-    //Test 2
-    fileData.put( "file1", mockInputStream );
-    fileData.put( "file2", mockInputStream2 );
-    IOException mockIOException = mock( IOException.class );
-    doThrow( mockIOException ).when( resourceUtil ).createTempFile( "datasourceExport", ".zip" );
-    doReturn( mockResponse ).when( resourceUtil ).buildServerErrorResponse( mockIOException );
+    verify( resourceUtil, times( 1 ) ).createAttachment( fileData, domainId );
+  }
 
-    response = resourceUtil.createAttachment( fileData, domainId );
-    assertEquals( mockResponse, response );
+  @Test
+  public void testCreateZipStreamingOutput() throws Exception {
+    Map<String, InputStream> fileData = new TreeMap<String, InputStream>();
+    InputStream is1 = spy( new ByteArrayInputStream( "schema".getBytes( "UTF-8" ) ) );
+    InputStream is2 = spy( new ByteArrayInputStream( "model".getBytes( "UTF-8" ) ) );
+    fileData.put( "file1", is1 );
+    fileData.put( "file2", is2 );
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    resourceUtil.createZipStreamingOutput( fileData ).write( output );
+
+    ZipInputStream zis = new ZipInputStream( new ByteArrayInputStream( output.toByteArray() ) );
+    assertEquals( "file1", zis.getNextEntry().getName() );
+    assertEquals( "schema", IOUtils.toString( zis, "UTF-8" ) );
+    assertEquals( "file2", zis.getNextEntry().getName() );
+    assertEquals( "model", IOUtils.toString( zis, "UTF-8" ) );
+    assertNull( zis.getNextEntry() );
+    verify( is1, atLeastOnce() ).close();
+    verify( is2, atLeastOnce() ).close();
+  }
 
-    //Test 3
-    File mockFile = mock( File.class );
-    ZipOutputStream mockZipOutputStream = mock( ZipOutputStream.class );
-    ZipEntry mockZipEntry = mock( ZipEntry.class );
-    ZipEntry mockZipEntry2 = mock( ZipEntry.class );
-    FileInputStream mockFileInputStream = mock( FileInputStream.class );
-    StreamingOutput mockStreamingOutput = mock( StreamingOutput.class );
-    doReturn( mockFile ).when( resourceUtil ).createTempFile( "datasourceExport", ".zip" );
-    doReturn( mockZipOutputStream ).when( resourceUtil ).createZipOutputStream( mockFile );
-    doReturn( mockZipEntry ).when( resourceUtil ).createZipEntry( "file1" );
-    doReturn( mockZipEntry2 ).when( resourceUtil ).createZipEntry( "file2" );
-    RuntimeException mockException = mock( RuntimeException.class );
-    doThrow( mockException ).when( resourceUtil ).copy( mockInputStream, mockZipOutputStream );
-    doThrow( mockException ).when( resourceUtil ).copy( mockInputStream2, mockZipOutputStream );
-    doReturn( mockFileInputStream ).when( resourceUtil ).createFileInputStream( mockFile );
-    doReturn( mockStreamingOutput ).when( resourceUtil ).createStreamingOutput( mockFileInputStream );
-    doReturn( mockResponse ).when( resourceUtil ).buildOkResponse( mockStreamingOutput, resourceUtil.APPLICATION_ZIP,
-        "\"domainId.zip\"" );
+  @Test
+  public void testCreateZipStreamingOutputError() throws Exception {
+    Map<String, InputStream> fileData = new TreeMap<String, InputStream>();
+    InputStream mockInputStream = mock( InputStream.class );
+    InputStream is2 = spy( new ByteArrayInputStream( "model".getBytes( "UTF-8" ) ) );
+    fileData.put( "file1", mockInputStream );
+    fileData.put( "file2", is2 );
+    doThrow( new IOException() ).when( mockInputStream ).read( any( byte[].class ) );
+
+    // a file that cannot be read is left empty
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    resourceUtil.createZipStreamingOutput( fileData ).write( output );
+    ZipInputStream zis = new ZipInputStream( new ByteArrayInputStream( output.toByteArray() ) );
+    assertEquals( "file1", zis.getNextEntry().getName() );
+    assertEquals( -1, zis.read() );
+    assertEquals( "file2", zis.getNextEntry().getName() );
+    assertEquals( "model", IOUtils.toString( zis, "UTF-8" ) );
+    verify( mockInputStream, atLeastOnce() ).close();
+  }
 
-    response = resourceUtil.createAttachment( fileData, domainId );
-    assertEquals( mockResponse, response );
+  @Test
+  public void testCreateZipStreamingOutputClientGone() throws Exception {
+    Map<String, InputStream> fileData = new TreeMap<String, InputStream>();
+    InputStream mockInputStream = mock( InputStream.class );
+    InputStream mockInputStream2 = mock( InputStream.class );
+    fileData.put( "file1", mockInputStream );
+    fileData.put( "file2", mockInputStream2 );
+    OutputStream brokenOutput = mock( OutputStream.class );
+    doThrow( new IOException() ).when( brokenOutput ).write( any( byte[].class ), anyInt(), anyInt() );
+    doThrow( new IOException() ).when( brokenOutput ).write( anyInt() );
+
+    try {
+      resourceUtil.createZipStreamingOutput( fileData ).write( brokenOutput );
+      fail();
+    } catch ( IOException e ) {
+      // expected
+    }
+    verify( resourceUtil, never() ).copy( any( InputStream.class ), any( ZipOutputStream.class ) );
+    verify( mockInputStream ).close();
+    verify( mockInputStream2 ).close();
+  }
 
-    verify( resourceUtil, times( 3 ) ).createAttachment( fileData, domainId );
+  @Test( expected = IOException.class )
+  public void testCopyThrowsWriteErrors() throws Exception {
+    ZipOutputStream zos = mock( ZipOutputStream.class );
+    doThrow( new IOException() ).when( zos ).write( any( byte[].class ), anyInt(), anyInt() );
+    resourceUtil.copy( new ByteArrayInputStream( "model".getBytes( "UTF-8" ) ), zos );
   }
 }
-
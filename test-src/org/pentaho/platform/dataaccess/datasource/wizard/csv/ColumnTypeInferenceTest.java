@@ -0,0 +1,106 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.csv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.ColumnInfo;
+
+public class ColumnTypeInferenceTest {
+
+  private static final int COLUMN_SETS = 4;
+
+  private final ColumnTypeInference inference = new ColumnTypeInference();
+
+  private String[][] sample( int rows ) {
+    String[][] sample = new String[ rows ][];
+    for ( int row = 0; row < rows; row++ ) {
+      String[] cells = new String[ COLUMN_SETS * 3 ];
+      for ( int set = 0; set < COLUMN_SETS; set++ ) {
+        cells[ set * 3 ] = String.valueOf( row );
+        cells[ set * 3 + 1 ] = "name " + row;
+        cells[ set * 3 + 2 ] = "2015-11-" + ( row % 18 + 10 );
+      }
+      sample[ row ] = cells;
+    }
+    return sample;
+  }
+
+  private ColumnInfo[] columns( int count ) {
+    ColumnInfo[] columns = new ColumnInfo[ count ];
+    for ( int idx = 0; idx < count; idx++ ) {
+      columns[ idx ] = new ColumnInfo();
+    }
+    return columns;
+  }
+
+  private void assertColumnTypes( ColumnInfo[] columns ) {
+    for ( int set = 0; set < COLUMN_SETS; set++ ) {
+      assertEquals( DataType.NUMERIC, columns[ set * 3 ].getDataType() );
+      assertEquals( DataType.STRING, columns[ set * 3 + 1 ].getDataType() );
+      assertEquals( DataType.DATE, columns[ set * 3 + 2 ].getDataType() );
+      assertEquals( "yyyy-MM-dd", columns[ set * 3 + 2 ].getFormat() );
+    }
+  }
+
+  @Test
+  public void testInferColumnsInline() {
+    String[][] sample = sample( 10 );
+    ColumnInfo[] columns = columns( COLUMN_SETS * 3 );
+    inference.inferColumns( sample, columns );
+    assertColumnTypes( columns );
+  }
+
+  @Test
+  public void testInferColumnsInParallel() {
+    String[][] sample = sample( ColumnTypeInference.PARALLEL_THRESHOLD );
+    ColumnInfo[] columns = columns( COLUMN_SETS * 3 );
+    inference.inferColumns( sample, columns );
+    assertColumnTypes( columns );
+  }
+
+  @Test
+  public void testParallelMatchesSequential() {
+    String[][] sample = sample( ColumnTypeInference.PARALLEL_THRESHOLD );
+    ColumnInfo[] parallel = columns( COLUMN_SETS * 3 );
+    inference.inferColumns( sample, parallel );
+
+    for ( int idx = 0; idx < parallel.length; idx++ ) {
+      List<String> values = new ArrayList<String>( sample.length );
+      for ( String[] row : sample ) {
+        values.add( row[ idx ] );
+      }
+      ColumnInfo sequential = new ColumnInfo();
+      inference.inferColumn( sequential, values );
+      assertEquals( sequential.getDataType(), parallel[ idx ].getDataType() );
+      assertEquals( sequential.getFormat(), parallel[ idx ].getFormat() );
+      assertEquals( sequential.getLength(), parallel[ idx ].getLength() );
+      assertEquals( sequential.getPrecision(), parallel[ idx ].getPrecision() );
+    }
+  }
+
+  @Test
+  public void testNoColumns() {
+    inference.inferColumns( new String[ 0 ][ 0 ], new ColumnInfo[ 0 ] );
+  }
+}
@@ -0,0 +1,140 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.csv;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pentaho.di.trans.steps.textfileinput.TextFileInput;
+import org.pentaho.reporting.libraries.base.util.CSVTokenizer;
+
+/**
+ * Compares {@link CsvProfiler} against the multi-pass reads <code>CsvUtils.generateFields</code> used to make: one
+ * line for the format, <code>rowLimit</code> lines for the delimiter, the preview list and the tokenized sample, each
+ * from a freshly opened unbuffered reader. Not a unit test; run it by hand with
+ * <code>java CsvProfilerBenchmark [rows] [rowLimit] [iterations]</code>.
+ */
+public class CsvProfilerBenchmark {
+
+  public static void main( String[] args ) throws Exception {
+    int rows = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 200000;
+    int rowLimit = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 100000;
+    int iterations = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 10;
+
+    File file = File.createTempFile( "CsvProfilerBenchmark", ".csv" );
+    file.deleteOnExit();
+    writeFile( file, rows );
+
+    CsvUtils utils = new CsvUtils();
+    CsvProfiler profiler = new CsvProfiler();
+    String location = file.getAbsolutePath();
+
+    // warm up both paths before timing
+    for ( int i = 0; i < 3; i++ ) {
+      legacy( utils, location, rowLimit );
+      profiler.profile( location, "UTF-8", rowLimit, "", "\"", 0 );
+    }
+
+    long legacyNanos = 0;
+    long profilerNanos = 0;
+    for ( int i = 0; i < iterations; i++ ) {
+      long start = System.nanoTime();
+      legacy( utils, location, rowLimit );
+      legacyNanos += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      profiler.profile( location, "UTF-8", rowLimit, "", "\"", 0 );
+      profilerNanos += System.nanoTime() - start;
+    }
+
+    System.out.println( "file: " + file.length() + " bytes, " + rows + " rows, rowLimit " + rowLimit ); //$NON-NLS-1$
+    System.out.println( "legacy   avg ms: " + legacyNanos / iterations / 1000000.0 ); //$NON-NLS-1$
+    System.out.println( "profiler avg ms: " + profilerNanos / iterations / 1000000.0 ); //$NON-NLS-1$
+    file.delete();
+  }
+
+  private static void writeFile( File file, int rows ) throws Exception {
+    PrintWriter pw = new PrintWriter( file, "UTF-8" ); //$NON-NLS-1$
+    try {
+      pw.print( "id,name,amount,created,flag\r\n" ); //$NON-NLS-1$
+      for ( int i = 0; i < rows; i++ ) {
+        pw.print( i + ",\"name " + i + "\"," + ( i * 1.25 ) + ",2016-01-" + ( i % 28 + 1 ) + "," + ( i % 2 == 0 )
+          + "\r\n" );
+      }
+    } finally {
+      pw.close();
+    }
+  }
+
+  private static int legacy( CsvUtils utils, String location, int rowLimit ) throws Exception {
+    CsvInspector inspector = new CsvInspector();
+    int fileType = inspector.determineFileFormat( legacyLines( location, 1 ) );
+    String delimiter = inspector.guessDelimiter( legacyLines( location, rowLimit ) );
+    List<String> preview = utils.getLinesList( location, rowLimit, "UTF-8" );
+
+    List<List<String>> sample = new ArrayList<List<String>>( rowLimit );
+    InputStreamReader reader = new InputStreamReader( new FileInputStream( location ), "UTF-8" );
+    try {
+      StringBuilder stringBuilder = new StringBuilder( 1000 );
+      String line = TextFileInput.getLine( null, reader, fileType, stringBuilder );
+      while ( line != null && sample.size() < rowLimit ) {
+        CSVTokenizer csvt = new CSVTokenizer( line, delimiter, "\"" );
+        List<String> rowData = new ArrayList<String>();
+        while ( csvt.hasMoreTokens() ) {
+          rowData.add( csvt.nextToken() );
+        }
+        sample.add( rowData );
+        line = TextFileInput.getLine( null, reader, fileType, stringBuilder );
+      }
+    } finally {
+      reader.close();
+    }
+    return preview.size() + sample.size();
+  }
+
+  /**
+   * The raw read the removed <code>CsvUtils.getLines</code> did: <code>rows</code> lines, terminators included, one
+   * character at a time.
+   */
+  private static String legacyLines( String location, int rows ) throws Exception {
+    StringBuilder lines = new StringBuilder();
+    InputStreamReader reader = new InputStreamReader( new FileInputStream( location ), "UTF-8" );
+    try {
+      int count = 0;
+      int c = reader.read();
+      while ( count < rows && c > 0 ) {
+        lines.append( (char) c );
+        c = reader.read();
+        if ( lines.charAt( lines.length() - 1 ) == '\r' || lines.charAt( lines.length() - 1 ) == '\n' ) {
+          if ( c == '\r' || c == '\n' ) {
+            lines.append( (char) c );
+            c = reader.read();
+          }
+          count++;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return lines.toString();
+  }
+}
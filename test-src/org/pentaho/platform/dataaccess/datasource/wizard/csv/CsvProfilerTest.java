@@ -0,0 +1,176 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CsvProfilerTest {
+
+  private CsvProfiler profiler;
+
+  private File tempFile;
+
+  @Before
+  public void setUp() throws Exception {
+    profiler = new CsvProfiler();
+    tempFile = File.createTempFile( "CsvProfilerTest", ".tmp" );
+    tempFile.deleteOnExit();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    tempFile.delete();
+  }
+
+  private void write( String contents ) throws Exception {
+    Writer writer = new OutputStreamWriter( new FileOutputStream( tempFile ), "UTF-8" );
+    try {
+      writer.write( contents );
+    } finally {
+      writer.close();
+    }
+  }
+
+  private CsvProfile profile( int rowLimit, String delimiter, int headerRows ) throws Exception {
+    return profiler.profile( tempFile.getAbsolutePath(), "UTF-8", rowLimit, delimiter, "\"", headerRows );
+  }
+
+  @Test
+  public void testDosLineEndings() throws Exception {
+    write( "a;b\r\n1;2\r\n3;4\r\n" );
+    CsvProfile profile = profile( 10, ";", 1 );
+    assertEquals( 3, profile.getLines().size() );
+    assertEquals( "1;2", profile.getLines().get( 1 ) );
+  }
+
+  @Test
+  public void testUnixLineEndings() throws Exception {
+    write( "a;b\n1;2" );
+    CsvProfile profile = profile( 10, ";", 1 );
+    assertEquals( 2, profile.getLines().size() );
+    assertEquals( "1;2", profile.getLines().get( 1 ) );
+  }
+
+  @Test
+  public void testSingleUnterminatedLine() throws Exception {
+    write( "a;b" );
+    CsvProfile profile = profile( 10, ";", 1 );
+    assertEquals( 1, profile.getLines().size() );
+    assertEquals( 0, profile.getDataSample().length );
+  }
+
+  @Test
+  public void testRowLimit() throws Exception {
+    write( "a,b\n1,2\n3,4\n5,6\n" );
+    CsvProfile profile = profile( 2, ",", 1 );
+    assertEquals( 2, profile.getLines().size() );
+    assertEquals( 1, profile.getHeaderSample().length );
+    assertEquals( 1, profile.getDataSample().length );
+  }
+
+  @Test
+  public void testGuessesDelimiter() throws Exception {
+    write( "a|b|c\n1|2|3\n" );
+    CsvProfile profile = profile( 10, "", 1 );
+    assertEquals( "|", profile.getDelimiter() );
+    assertEquals( "\"", profile.getEnclosure() );
+    assertEquals( 0, profile.getHeaderRows() );
+    assertEquals( 2, profile.getDataSample().length );
+    assertEquals( 3, profile.getColumnCount() );
+  }
+
+  @Test
+  public void testSkipsByteOrderMark() throws Exception {
+    write( "\uFEFFa,b\n1,2\n" );
+    CsvProfile profile = profile( 10, ",", 1 );
+    assertEquals( "a", profile.getHeaderSample()[ 0 ][ 0 ] );
+    assertEquals( "a,b", profile.getLines().get( 0 ) );
+  }
+
+  @Test
+  public void testPadsShortRowsAndCollectsMaxLengths() throws Exception {
+    write( "a,b,c\n1, 22 \n333,,4444\n" );
+    CsvProfile profile = profile( 10, ",", 1 );
+    String[][] data = profile.getDataSample();
+    assertEquals( 3, data[ 0 ].length );
+    assertEquals( "22", data[ 0 ][ 1 ] );
+    assertNull( data[ 0 ][ 2 ] );
+
+    CsvProfile.ColumnStatistics[] columns = profile.getColumns();
+    assertEquals( 3, columns[ 0 ].getMaxLength() );
+    assertEquals( 2, columns[ 1 ].getMaxLength() );
+    assertEquals( 4, columns[ 2 ].getMaxLength() );
+  }
+
+  @Test
+  public void testScanKeepsHeadAndSamplesWholeFile() throws Exception {
+    StringBuilder contents = new StringBuilder( "id,name\n" );
+    for ( int i = 0; i < 1000; i++ ) {
+      contents.append( i ).append( ",n" ).append( i ).append( "\n" );
+    }
+    contents.append( "1000,a much longer name,extra\n" );
+    write( contents.toString() );
+
+    profiler.setRandom( new Random( 42 ) );
+    CsvProfile profile = profiler.scan( tempFile.getAbsolutePath(), "UTF-8", 11, ",", "\"", 1 );
+
+    assertEquals( 11, profile.getLines().size() );
+    assertEquals( 10, profile.getDataSample().length );
+    assertEquals( "0", profile.getDataSample()[ 0 ][ 0 ] );
+    assertEquals( 10, profile.getReservoirSample().length );
+    assertEquals( 1001, profile.getScannedRows() );
+
+    // the extra column found at the end widens every sample
+    assertEquals( 3, profile.getColumnCount() );
+    assertEquals( 3, profile.getHeaderSample()[ 0 ].length );
+    assertEquals( 3, profile.getDataSample()[ 0 ].length );
+    assertEquals( 3, profile.getReservoirSample()[ 0 ].length );
+
+    boolean fromTail = false;
+    for ( String[] row : profile.getReservoirSample() ) {
+      fromTail |= Integer.parseInt( row[ 0 ] ) >= 10;
+    }
+    assertTrue( fromTail );
+
+    CsvProfile.ColumnStatistics[] columns = profile.getColumns();
+    assertEquals( 4, columns[ 0 ].getMaxLength() );
+    assertEquals( 18, columns[ 1 ].getMaxLength() );
+    assertEquals( 5, columns[ 2 ].getMaxLength() );
+  }
+
+  @Test
+  public void testScanSmallFileUsesHeadAsReservoir() throws Exception {
+    write( "a,b\n1,2\n3,4\n" );
+    CsvProfile profile = profiler.scan( tempFile.getAbsolutePath(), "UTF-8", 100, ",", "\"", 1 );
+    assertEquals( 2, profile.getReservoirSample().length );
+    assertEquals( 2, profile.getScannedRows() );
+    assertEquals( profile.getReservoirSample(), profile.getInferenceSample() );
+  }
+}
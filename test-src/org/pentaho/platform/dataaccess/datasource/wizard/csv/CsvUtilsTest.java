@@ -20,7 +20,6 @@ package org.pentaho.platform.dataaccess.datasource.wizard.csv;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.pentaho.gwt.widgets.client.utils.string.StringTokenizer;
 import org.pentaho.metadata.model.concept.types.DataType;
 import org.pentaho.metadata.util.Util;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.ColumnInfo;
@@ -43,7 +42,6 @@ import static java.util.Arrays.asList;
  */
 public class CsvUtilsTest {
 
-  private static final int LINES_FOR_READ = 2;
 
   private static final String DELIMETR = ";";
   private static final int DEFAULT_INTEGER_SIZE = 15;
@@ -106,15 +104,6 @@ public class CsvUtilsTest {
       rowLimit, DELIMETR, enclosure, headerRows, true, true, "utf-8" );
   }
 
-  @Test
-  public void testGetLines() throws Exception {
-    prepareFile( new String[] { "col1", "col2" } );
-    String lines = utils.getLines( tempFile.getAbsolutePath(), LINES_FOR_READ, "UTF-8" );
-    StringTokenizer tokenizer = new StringTokenizer( lines, DELIMETR );
-    assertNotNull( lines );
-    assertEquals( LINES_FOR_READ, tokenizer.countTokens() );
-  }
-
   @Test
   public void generateFields_OneHeaderLine_OneDataLine() throws Exception {
     prepareFile( new String[] { "col1", "col2" }, new String[] { "1", "2" } );
@@ -133,6 +122,24 @@ public class CsvUtilsTest {
     assertEquals( "2", data[ 0 ].getCells()[ 1 ] );
   }
 
+  @Test
+  public void generateFields_ScanWholeFile_SizesStringsFromAllRows() throws Exception {
+    String[][] data = new String[ 50 ][];
+    for ( int i = 0; i < data.length; i++ ) {
+      data[ i ] = new String[] { String.valueOf( i ), "n" };
+    }
+    data[ data.length - 1 ] = new String[] { "49", "a value far longer than any other" };
+    prepareFile( new String[] { "col1", "col2" }, data );
+
+    ModelInfo info = utils.generateFields( "CsvUtilsTest", tempFile.getAbsolutePath(), tempFile.getName(),
+      5, DELIMETR, null, 1, true, true, "utf-8", true );
+
+    assertEquals( 4, info.getData().length );
+    ColumnInfo column = info.getColumns()[ 1 ];
+    assertEquals( DataType.STRING, column.getDataType() );
+    assertTrue( column.getLength() >= "a value far longer than any other".length() );
+  }
+
   @Test
   public void ColumnOfIntegerType_HasCorrectLength() {
     ColumnInfo columnInfo = new ColumnInfo();
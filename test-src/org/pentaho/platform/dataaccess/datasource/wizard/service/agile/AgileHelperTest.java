@@ -97,6 +97,83 @@ public class AgileHelperTest {
     assertEquals( expected, AgileHelper.getCsvSampleRowSize() );
   }
 
+  @Test
+  public void testGetCsvInferenceThreads() {
+    PentahoSystem.setSystemSettingsService( null );
+    assertEquals( Runtime.getRuntime().availableProcessors(), AgileHelper.getCsvInferenceThreads() );
+
+    ISystemSettings systemSettings = mock( ISystemSettings.class );
+    when( systemSettings.getSystemSetting( anyString(), anyString(), anyString() ) ).thenReturn( "0" ).thenReturn( "3" );
+    PentahoSystem.setSystemSettingsService( systemSettings );
+    assertEquals( Runtime.getRuntime().availableProcessors(), AgileHelper.getCsvInferenceThreads() );
+    assertEquals( 3, AgileHelper.getCsvInferenceThreads() );
+  }
+
+  @Test
+  public void testIsCsvScanWholeFile() {
+    PentahoSystem.setSystemSettingsService( null );
+    assertFalse( AgileHelper.isCsvScanWholeFile() );
+
+    ISystemSettings systemSettings = mock( ISystemSettings.class );
+    when( systemSettings.getSystemSetting( anyString(), anyString(), anyString() ) ).thenReturn( "yes", "true" );
+    PentahoSystem.setSystemSettingsService( systemSettings );
+    assertFalse( AgileHelper.isCsvScanWholeFile() );
+    assertTrue( AgileHelper.isCsvScanWholeFile() );
+  }
+
+  @Test
+  public void testGetStagingLoadMode() {
+    PentahoSystem.setSystemSettingsService( null );
+    assertEquals( StagingLoadMode.BATCH, AgileHelper.getStagingLoadMode() );
+
+    ISystemSettings systemSettings = mock( ISystemSettings.class );
+    when( systemSettings.getSystemSetting( anyString(), anyString(), anyString() ) ).thenReturn( "unknown" )
+      .thenReturn( "Bulk" );
+    PentahoSystem.setSystemSettingsService( systemSettings );
+    assertEquals( StagingLoadMode.BATCH, AgileHelper.getStagingLoadMode() );
+    assertEquals( StagingLoadMode.BULK, AgileHelper.getStagingLoadMode() );
+  }
+
+  @Test
+  public void testGetStagingCommitSize() {
+    PentahoSystem.setSystemSettingsService( null );
+    assertEquals( 1000, AgileHelper.getStagingCommitSize() );
+
+    ISystemSettings systemSettings = mock( ISystemSettings.class );
+    when( systemSettings.getSystemSetting( anyString(), anyString(), anyString() ) ).thenReturn( "-1" )
+      .thenReturn( "5000" );
+    PentahoSystem.setSystemSettingsService( systemSettings );
+    assertEquals( 1000, AgileHelper.getStagingCommitSize() );
+    assertEquals( 5000, AgileHelper.getStagingCommitSize() );
+  }
+
+  @Test
+  public void testGetStagingParallelCopies() {
+    PentahoSystem.setSystemSettingsService( null );
+    assertEquals( 1, AgileHelper.getStagingParallelCopies() );
+
+    ISystemSettings systemSettings = mock( ISystemSettings.class );
+    when( systemSettings.getSystemSetting( anyString(), anyString(), anyString() ) ).thenReturn( "0" )
+      .thenReturn( "4" );
+    PentahoSystem.setSystemSettingsService( systemSettings );
+    assertEquals( Runtime.getRuntime().availableProcessors(), AgileHelper.getStagingParallelCopies() );
+    assertEquals( 4, AgileHelper.getStagingParallelCopies() );
+  }
+
+  @Test
+  public void testGetStagingMaxLoads() {
+    PentahoSystem.setSystemSettingsService( null );
+    assertEquals( 2, AgileHelper.getStagingMaxConcurrentLoads() );
+    assertEquals( 50, AgileHelper.getStagingMaxQueuedLoads() );
+
+    ISystemSettings systemSettings = mock( ISystemSettings.class );
+    when( systemSettings.getSystemSetting( anyString(), anyString(), anyString() ) ).thenReturn( "0" )
+      .thenReturn( "0" );
+    PentahoSystem.setSystemSettingsService( systemSettings );
+    assertEquals( 2, AgileHelper.getStagingMaxConcurrentLoads() );
+    assertEquals( 0, AgileHelper.getStagingMaxQueuedLoads() );
+  }
+
   @Test
   public void testGetDatasourceSolutionStorage() {
     PentahoSystem.setSystemSettingsService( null );
@@ -0,0 +1,46 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class CsvTransformGeneratorTest {
+
+  private static final long COPY_SIZE = CsvTransformGenerator.MIN_BYTES_PER_INPUT_COPY;
+
+  @Test
+  public void smallFilesShouldBeReadByOneCopy() {
+    assertEquals( 1, CsvTransformGenerator.getInputCopies( 0, 8 ) );
+    assertEquals( 1, CsvTransformGenerator.getInputCopies( COPY_SIZE - 1, 8 ) );
+  }
+
+  @Test
+  public void inputCopiesShouldGrowWithFileSizeUpToTheLimit() {
+    assertEquals( 3, CsvTransformGenerator.getInputCopies( COPY_SIZE * 3 + 1, 8 ) );
+    assertEquals( 8, CsvTransformGenerator.getInputCopies( COPY_SIZE * 100, 8 ) );
+    assertEquals( 1, CsvTransformGenerator.getInputCopies( COPY_SIZE * 100, 1 ) );
+  }
+
+  @Test
+  public void outputCopiesShouldBeHalfTheInputCopies() {
+    assertEquals( 1, CsvTransformGenerator.getOutputCopies( 1 ) );
+    assertEquals( 1, CsvTransformGenerator.getOutputCopies( 2 ) );
+    assertEquals( 4, CsvTransformGenerator.getOutputCopies( 9 ) );
+  }
+}
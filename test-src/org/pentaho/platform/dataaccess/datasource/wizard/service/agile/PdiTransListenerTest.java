@@ -0,0 +1,128 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.step.StepInterface;
+import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
+
+public class PdiTransListenerTest {
+
+  private Trans trans;
+
+  private StepInterface copy0;
+
+  private StepInterface copy1;
+
+  private FileTransformStats stats;
+
+  private PdiTransListener listener;
+
+  @Before
+  public void setUp() {
+    trans = mock( Trans.class );
+    copy0 = mock( StepInterface.class );
+    copy1 = mock( StepInterface.class );
+    stats = new FileTransformStats();
+    listener = new PdiTransListener( trans, Arrays.asList( copy0, copy1 ), stats );
+  }
+
+  @Test
+  public void shouldCompleteWithCountsOfAllCopiesWhenTransFinishes() throws Exception {
+    when( copy0.getLinesRead() ).thenReturn( 10L );
+    when( copy0.getLinesWritten() ).thenReturn( 9L );
+    when( copy1.getLinesRead() ).thenReturn( 5L );
+    when( copy1.getLinesWritten() ).thenReturn( 3L );
+
+    listener.start();
+    verify( trans ).addTransListener( listener );
+    assertFalse( listener.isFinished() );
+
+    listener.transFinished( trans );
+
+    assertSame( stats, listener.getCompletion().get( 5, TimeUnit.SECONDS ) );
+    assertTrue( stats.isRowsFinished() );
+    assertEquals( 15, stats.getTotalRecords() );
+    assertEquals( 3, stats.getErrorCount() );
+  }
+
+  @Test
+  public void shouldSampleProgressUntilFinished() throws Exception {
+    when( copy0.getLinesOutput() ).thenReturn( 7L );
+    when( copy1.getLinesOutput() ).thenReturn( 4L );
+
+    listener.start();
+    long deadline = System.currentTimeMillis() + 5000;
+    while ( stats.getTotalRecords() != 11 && System.currentTimeMillis() < deadline ) {
+      Thread.sleep( PdiTransListener.PROGRESS_INTERVAL_MS );
+    }
+    assertEquals( 11, stats.getTotalRecords() );
+    assertFalse( stats.isRowsFinished() );
+
+    listener.cancel();
+    assertTrue( listener.isFinished() );
+  }
+
+  @Test
+  public void shouldNotSampleProgressOnceFinished() throws Exception {
+    when( copy0.getLinesRead() ).thenReturn( 10L );
+    when( copy0.getLinesOutput() ).thenReturn( 99L );
+
+    listener.start();
+    listener.cancel();
+    assertEquals( 10, stats.getTotalRecords() );
+
+    // a sample that was already running when the load finished
+    listener.updateProgress();
+    assertEquals( 10, stats.getTotalRecords() );
+  }
+
+  @Test
+  public void shouldFinishOnlyOnce() throws Exception {
+    listener.start();
+    listener.cancel();
+    listener.transFinished( trans );
+    listener.cancel();
+
+    listener.getCompletion().get( 5, TimeUnit.SECONDS );
+    verify( trans, times( 1 ) ).cleanup();
+  }
+
+  @Test
+  public void shouldFinishImmediatelyIfTransAlreadyFinished() {
+    when( trans.isFinished() ).thenReturn( true );
+
+    listener.start();
+
+    assertTrue( listener.isFinished() );
+    assertTrue( stats.isRowsFinished() );
+  }
+}
@@ -0,0 +1,110 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.CsvTransformGeneratorException;
+import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
+
+public class StagingIndexBuilderTest {
+
+  private static final List<String> NAMES = Arrays.asList( "a_idx", "b_idx", "c_idx" );
+
+  private static final List<String> COMMANDS =
+    Arrays.asList( "CREATE INDEX a_idx ON t(a)", "CREATE INDEX b_idx ON t(b)", "CREATE INDEX c_idx ON t(c)" );
+
+  private StagingTransformGenerator generator;
+
+  private DatabaseMeta databaseMeta;
+
+  private Database database;
+
+  private FileTransformStats stats;
+
+  @Before
+  public void setUp() {
+    generator = mock( StagingTransformGenerator.class );
+    databaseMeta = mock( DatabaseMeta.class );
+    database = mock( Database.class );
+    when( generator.getDatabase( databaseMeta ) ).thenReturn( database );
+    stats = new FileTransformStats();
+  }
+
+  @Test
+  public void testBuildsEveryIndexOnFewConnections() throws Exception {
+    StagingIndexBuilder builder = new StagingIndexBuilder( generator, databaseMeta, stats );
+    assertEquals( 3, builder.build( NAMES, COMMANDS, 2 ) );
+
+    for ( String command : COMMANDS ) {
+      verify( generator ).execSqlStatements( database, command );
+    }
+    verify( database, atMost( 2 ) ).connect( any( String.class ) );
+    assertEquals( 3, stats.getIndexDone() );
+    assertEquals( 3, stats.getIndexMillis().size() );
+  }
+
+  @Test
+  public void testSingleConnectionWhenNotParallel() throws Exception {
+    StagingIndexBuilder builder = new StagingIndexBuilder( generator, databaseMeta, stats );
+    assertEquals( 3, builder.build( NAMES, COMMANDS, 1 ) );
+    verify( database, times( 1 ) ).connect( any( String.class ) );
+    verify( database, times( 1 ) ).disconnect();
+  }
+
+  @Test
+  public void testFailedIndexIsSkipped() throws Exception {
+    doThrow( new CsvTransformGeneratorException( "boom" ) ).when( generator )
+      .execSqlStatements( database, COMMANDS.get( 1 ) );
+    StagingIndexBuilder builder = new StagingIndexBuilder( generator, databaseMeta, stats );
+    assertEquals( 2, builder.build( NAMES, COMMANDS, 3 ) );
+    assertEquals( 3, stats.getIndexDone() );
+    assertTrue( stats.getIndexMillis().containsKey( "a_idx" ) );
+    assertFalse( stats.getIndexMillis().containsKey( "b_idx" ) );
+    assertTrue( stats.getIndexMillis().containsKey( "c_idx" ) );
+  }
+
+  @Test
+  public void testNoConnection() throws Exception {
+    doThrow( new KettleDatabaseException( "down" ) ).when( database ).connect( any( String.class ) );
+    StagingIndexBuilder builder = new StagingIndexBuilder( generator, databaseMeta, stats );
+    assertEquals( 0, builder.build( NAMES, COMMANDS, 2 ) );
+    verify( generator, never() ).execSqlStatements( eq( database ), anyString() );
+    assertEquals( 3, stats.getIndexDone() );
+  }
+}
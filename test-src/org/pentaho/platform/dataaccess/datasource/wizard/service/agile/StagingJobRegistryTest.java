@@ -0,0 +1,126 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
+
+public class StagingJobRegistryTest {
+
+  private final StagingJobRegistry registry = new StagingJobRegistry();
+
+  @Test
+  public void testGetChecksOwner() {
+    StagingJob job = registry.create( "joe", new FileTransformStats() );
+    assertSame( job, registry.get( job.getId(), "joe" ) );
+    assertNull( registry.get( job.getId(), "suzy" ) );
+    assertNull( registry.get( job.getId(), null ) );
+    assertNull( registry.get( "no-such-job", "joe" ) );
+  }
+
+  @Test
+  public void testPurgeKeepsRunningAndRecentJobs() {
+    StagingJob running = registry.create( "joe", new FileTransformStats() );
+    StagingJob finished = registry.create( "joe", new FileTransformStats() );
+    finished.setPhase( StagingJob.Phase.FINISHED );
+
+    registry.purge( System.currentTimeMillis() );
+    assertSame( finished, registry.get( finished.getId(), "joe" ) );
+
+    registry.purge( System.currentTimeMillis() + StagingJobRegistry.RETENTION_MILLIS + 1000 );
+    assertNull( registry.get( finished.getId(), "joe" ) );
+    assertSame( running, registry.get( running.getId(), "joe" ) );
+  }
+
+  @Test
+  public void testGetDropsExpiredJobs() {
+    StagingJob finished = registry.create( "joe", new FileTransformStats() );
+    finished.setPhase( StagingJob.Phase.FINISHED );
+    long expired = System.currentTimeMillis() + StagingJobRegistry.RETENTION_MILLIS + 1000;
+
+    assertNull( registry.get( finished.getId(), "joe", expired ) );
+    // it is gone, not just hidden
+    assertNull( registry.get( finished.getId(), "joe" ) );
+  }
+
+  @Test
+  public void testCancelStopsLoadAndFuture() {
+    StagingJob job = registry.create( "joe", new FileTransformStats() );
+    Future<?> future = mock( Future.class );
+    StagingTransformGenerator generator = mock( StagingTransformGenerator.class );
+    job.setFuture( future );
+    job.setGenerator( generator );
+
+    assertTrue( job.cancel() );
+    assertEquals( StagingJob.Phase.CANCELLED, job.getPhase() );
+    assertTrue( job.getFinished() > 0 );
+    verify( generator ).cancelLoad();
+    verify( future ).cancel( true );
+
+    // a cancelled job does not come back to life
+    job.setPhase( StagingJob.Phase.FINISHED );
+    assertEquals( StagingJob.Phase.CANCELLED, job.getPhase() );
+  }
+
+  @Test
+  public void testCancelRefusedOnceModeling() {
+    StagingJob job = registry.create( "joe", new FileTransformStats() );
+    Future<?> future = mock( Future.class );
+    job.setFuture( future );
+    job.setPhase( StagingJob.Phase.MODELING );
+
+    assertFalse( job.cancel() );
+    assertEquals( StagingJob.Phase.MODELING, job.getPhase() );
+    verify( future, never() ).cancel( true );
+
+    job.setPhase( StagingJob.Phase.FINISHED );
+    assertFalse( job.cancel() );
+    assertEquals( StagingJob.Phase.FINISHED, job.getPhase() );
+  }
+
+  @Test
+  public void testCancelledJobDoesNotModel() {
+    StagingJob job = registry.create( "joe", new FileTransformStats() );
+    job.setPhase( StagingJob.Phase.STAGING );
+    assertTrue( job.cancel() );
+    assertFalse( job.setPhase( StagingJob.Phase.MODELING ) );
+    // cancelling again is harmless
+    assertTrue( job.cancel() );
+  }
+
+  @Test
+  public void testFailKeepsCause() {
+    StagingJob job = registry.create( "joe", new FileTransformStats() );
+    Exception cause = new Exception( "bad row" );
+    job.fail( cause );
+    assertEquals( StagingJob.Phase.FAILED, job.getPhase() );
+    assertSame( cause, job.getCause() );
+    assertEquals( "bad row", job.getFailure() );
+  }
+}
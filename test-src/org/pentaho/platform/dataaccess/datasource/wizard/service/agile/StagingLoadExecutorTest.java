@@ -0,0 +1,153 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+package org.pentaho.platform.dataaccess.datasource.wizard.service.agile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
+
+public class StagingLoadExecutorTest {
+
+  @After
+  public void tearDown() {
+    PentahoSessionHolder.removeSession();
+  }
+
+  private Callable<Integer> blockingLoad( final CountDownLatch started, final CountDownLatch release,
+                                          final AtomicInteger running, final AtomicInteger maxRunning ) {
+    return new Callable<Integer>() {
+      public Integer call() throws Exception {
+        int now = running.incrementAndGet();
+        synchronized ( maxRunning ) {
+          maxRunning.set( Math.max( maxRunning.get(), now ) );
+        }
+        started.countDown();
+        release.await( 5, TimeUnit.SECONDS );
+        running.decrementAndGet();
+        return now;
+      }
+    };
+  }
+
+  @Test
+  public void loadsIntoDifferentTablesShouldRunSideBySide() throws Exception {
+    StagingLoadExecutor executor = new StagingLoadExecutor( 2, 10 );
+    String first = "table_a";
+    String second = "table_b";
+    // the test relies on the two names not sharing a stripe
+    assertFalse( executor.getStripe( first ) == executor.getStripe( second ) );
+
+    CountDownLatch started = new CountDownLatch( 2 );
+    CountDownLatch release = new CountDownLatch( 1 );
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    Future<Integer> a = executor.submit( first, blockingLoad( started, release, running, maxRunning ) );
+    Future<Integer> b = executor.submit( second, blockingLoad( started, release, running, maxRunning ) );
+
+    assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+    release.countDown();
+    a.get( 5, TimeUnit.SECONDS );
+    b.get( 5, TimeUnit.SECONDS );
+    assertEquals( 2, maxRunning.get() );
+  }
+
+  @Test
+  public void loadsIntoTheSameTableShouldRunOneAtATime() throws Exception {
+    StagingLoadExecutor executor = new StagingLoadExecutor( 2, 10 );
+    CountDownLatch started = new CountDownLatch( 2 );
+    CountDownLatch release = new CountDownLatch( 1 );
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    Future<Integer> a = executor.submit( "table_a", blockingLoad( started, release, running, maxRunning ) );
+    Future<Integer> b = executor.submit( "table_a", blockingLoad( started, release, running, maxRunning ) );
+
+    assertFalse( started.await( 200, TimeUnit.MILLISECONDS ) );
+    release.countDown();
+    a.get( 5, TimeUnit.SECONDS );
+    b.get( 5, TimeUnit.SECONDS );
+    assertEquals( 1, maxRunning.get() );
+  }
+
+  @Test
+  public void loadsWaitingForTheirTableShouldNotHoldAWorker() throws Exception {
+    StagingLoadExecutor executor = new StagingLoadExecutor( 2, 10 );
+    assertFalse( executor.getStripe( "table_a" ) == executor.getStripe( "table_b" ) );
+    CountDownLatch started = new CountDownLatch( 2 );
+    CountDownLatch release = new CountDownLatch( 1 );
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    Future<Integer> a = executor.submit( "table_a", blockingLoad( started, release, running, maxRunning ) );
+    Future<Integer> waiting = executor.submit( "table_a", blockingLoad( started, release, running, maxRunning ) );
+    Future<Integer> b = executor.submit( "table_b", blockingLoad( started, release, running, maxRunning ) );
+
+    // the second worker goes to the load into table_b, not to the one waiting for table_a
+    try {
+      assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+    } finally {
+      release.countDown();
+    }
+    a.get( 5, TimeUnit.SECONDS );
+    b.get( 5, TimeUnit.SECONDS );
+    waiting.get( 5, TimeUnit.SECONDS );
+  }
+
+  @Test( expected = RejectedExecutionException.class )
+  public void loadsBeyondTheQueueShouldBeRejected() throws Exception {
+    StagingLoadExecutor executor = new StagingLoadExecutor( 1, 1 );
+    CountDownLatch started = new CountDownLatch( 1 );
+    CountDownLatch release = new CountDownLatch( 1 );
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    try {
+      executor.submit( "table_a", blockingLoad( started, release, running, maxRunning ) );
+      assertTrue( started.await( 5, TimeUnit.SECONDS ) );
+      executor.submit( "table_b", blockingLoad( started, release, running, maxRunning ) );
+      executor.submit( "table_c", blockingLoad( started, release, running, maxRunning ) );
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void loadsShouldSeeTheCallersSession() throws Exception {
+    IPentahoSession session = mock( IPentahoSession.class );
+    PentahoSessionHolder.setSession( session );
+    StagingLoadExecutor executor = new StagingLoadExecutor( 1, 1 );
+
+    Future<IPentahoSession> seen = executor.submit( "table_a", new Callable<IPentahoSession>() {
+      public IPentahoSession call() {
+        return PentahoSessionHolder.getSession();
+      }
+    } );
+
+    assertSame( session, seen.get( 5, TimeUnit.SECONDS ) );
+  }
+}
@@ -21,10 +21,18 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.pentaho.di.core.database.Database;
 import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.database.MySQLDatabaseMeta;
+import org.pentaho.di.core.database.PostgreSQLDatabaseMeta;
 import org.pentaho.di.core.exception.KettlePluginException;
 import org.pentaho.di.core.plugins.DatabasePluginType;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.tableoutput.TableOutputMeta;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.ModelInfo;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
@@ -93,4 +101,34 @@ public class StagingTransformGeneratorTest {
 
     verify( database, never() ).execStatement( anyString() );
   }
+
+  @Test
+  public void tableOutputShouldUseBatchInsertsWithCommitSize() {
+    stagingTransformGenerator.setLoadMode( StagingLoadMode.BATCH );
+    stagingTransformGenerator.setCommitSize( 5000 );
+
+    StepMeta stepMeta = stagingTransformGenerator.addTableOutputStep( new TransMeta(), "output", "model" );
+
+    TableOutputMeta meta = (TableOutputMeta) stepMeta.getStepMetaInterface();
+    assertTrue( meta.useBatchUpdate() );
+    assertEquals( "5000", meta.getCommitSize() );
+  }
+
+  @Test
+  public void tableOutputShouldInsertRowByRowInRowMode() {
+    stagingTransformGenerator.setLoadMode( StagingLoadMode.ROW );
+
+    StepMeta stepMeta = stagingTransformGenerator.addTableOutputStep( new TransMeta(), "output", "model" );
+
+    assertFalse( ( (TableOutputMeta) stepMeta.getStepMetaInterface() ).useBatchUpdate() );
+  }
+
+  @Test
+  public void bulkLoadShouldOnlyBeSupportedOnPostgreSQL() {
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new MySQLDatabaseMeta() );
+    assertFalse( stagingTransformGenerator.supportsBulkLoad() );
+
+    when( databaseMeta.getDatabaseInterface() ).thenReturn( new PostgreSQLDatabaseMeta() );
+    assertTrue( stagingTransformGenerator.supportsBulkLoad() );
+  }
 }
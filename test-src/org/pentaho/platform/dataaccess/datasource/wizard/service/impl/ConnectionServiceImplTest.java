@@ -37,6 +37,7 @@ import org.pentaho.platform.api.repository.datasource.DuplicateDatasourceExcepti
 import org.pentaho.platform.api.repository.datasource.IDatasourceMgmtService;
 import org.pentaho.platform.api.repository.datasource.NonExistingDatasourceException;
 import org.pentaho.platform.dataaccess.datasource.wizard.service.ConnectionServiceException;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils.DatabaseMetaCache;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 import org.pentaho.platform.plugin.services.connections.sql.SQLConnection;
 
@@ -119,6 +120,20 @@ public class ConnectionServiceImplTest {
     verify( datasourceService ).clearDataSource( CONN_NAME );
   }
 
+  @Test
+  public void testChangesInvalidateTheDatabaseMetaCache() throws Exception {
+    doNothing().when( connectionServiceImpl ).ensureDataAccessPermission();
+    doNothing().when( connectionServiceImpl.datasourceMgmtSvc ).deleteDatasourceByName( CONN_NAME );
+    doReturn( "" ).when( connectionServiceImpl ).getConnectionPassword( anyString(), anyString() );
+
+    long version = DatabaseMetaCache.getVersion( CONN_NAME );
+    assertTrue( connectionServiceImpl.updateConnection( mockDBConnection ) );
+    assertEquals( version + 1, DatabaseMetaCache.getVersion( CONN_NAME ) );
+
+    assertTrue( connectionServiceImpl.deleteConnection( CONN_NAME ) );
+    assertEquals( version + 2, DatabaseMetaCache.getVersion( CONN_NAME ) );
+  }
+
   @Test
   public void testDeleteConnectionStringError_NonExistingDatasourceException() throws Exception {
     testDeleteConnectionErrorString( mock( NonExistingDatasourceException.class ) );
@@ -21,12 +21,22 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.pentaho.platform.api.engine.IApplicationContext;
+import org.pentaho.platform.api.engine.IPentahoSession;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.CsvFileInfo;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.DatasourceDTO;
 import org.pentaho.platform.dataaccess.datasource.wizard.models.ModelInfo;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJob;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingJobRegistry;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.StagingLoadExecutor;
+import org.pentaho.platform.dataaccess.datasource.wizard.sources.csv.FileTransformStats;
+import org.pentaho.platform.engine.core.system.PentahoSessionHolder;
 import org.pentaho.platform.engine.core.system.PentahoSystem;
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.anyString;
@@ -53,6 +63,7 @@ public class CsvDatasourceServiceImplTest {
     mockContext = mock( IApplicationContext.class );
     when( mockContext.getSolutionPath( anyString() ) ).thenReturn( TMP_DIR + '/' );
     PentahoSystem.setApplicationContext( mockContext );
+    setUser( "joe" );
 
     service = new CsvDatasourceServiceImpl();
   }
@@ -60,6 +71,7 @@ public class CsvDatasourceServiceImplTest {
   @After
   public void tearDown() throws Exception {
     PentahoSystem.setApplicationContext( existingContext );
+    PentahoSessionHolder.removeSession();
 
     mockContext = null;
     service = null;
@@ -116,6 +128,106 @@ public class CsvDatasourceServiceImplTest {
   }
 
 
+  @Test
+  public void getDomainJobResult_Running_ReturnsNull() throws Exception {
+    StagingJob job = StagingJobRegistry.getInstance().create( "joe", new FileTransformStats() );
+    job.setPhase( StagingJob.Phase.STAGING );
+    assertNull( service.getDomainJobResult( job.getId() ) );
+    // the job is still there to poll
+    assertSame( job, service.getJob( job.getId() ) );
+    job.cancel();
+  }
+
+  @Test
+  public void getDomainJobResult_Finished_ReturnsStatsOnce() throws Exception {
+    FileTransformStats stats = new FileTransformStats();
+    StagingJob job = StagingJobRegistry.getInstance().create( "joe", stats );
+    job.setPhase( StagingJob.Phase.FINISHED );
+    assertSame( stats, service.getDomainJobResult( job.getId() ) );
+    try {
+      service.getDomainJobResult( job.getId() );
+      fail( "The result should only be handed over once" );
+    } catch ( Exception e ) {
+      // expected
+    }
+  }
+
+  @Test
+  public void getDomainJobResult_Failed_ThrowsCause() throws Exception {
+    StagingJob job = StagingJobRegistry.getInstance().create( "joe", new FileTransformStats() );
+    Exception cause = new Exception( "bad row" );
+    job.fail( cause );
+    try {
+      service.getDomainJobResult( job.getId() );
+      fail( "Should throw the cause" );
+    } catch ( Exception e ) {
+      assertSame( cause, e );
+    }
+    assertNull( StagingJobRegistry.getInstance().get( job.getId(), "joe" ) );
+  }
+
+  @Test
+  public void getDomainJobResult_AnotherUsersJob_ThrowsException() throws Exception {
+    StagingJob job = StagingJobRegistry.getInstance().create( "suzy", new FileTransformStats() );
+    job.setPhase( StagingJob.Phase.FINISHED );
+    try {
+      service.getDomainJobResult( job.getId() );
+      fail( "Should not see another user's job" );
+    } catch ( Exception e ) {
+      // expected
+    }
+    try {
+      service.cancelDomainJob( job.getId() );
+      fail( "Should not cancel another user's job" );
+    } catch ( Exception e ) {
+      // expected
+    }
+    setUser( "suzy" );
+    assertNotNull( service.getDomainJobResult( job.getId() ) );
+  }
+
+  @Test
+  public void submitDomainJob_Cancelled_ThrowsOnResult() throws Exception {
+    String tableName = "submitDomainJob_Cancelled";
+    ModelInfo modelInfo = mock( ModelInfo.class );
+    when( modelInfo.getStageTableName() ).thenReturn( tableName );
+    DatasourceDTO datasourceDto = mock( DatasourceDTO.class );
+    when( datasourceDto.getCsvModelInfo() ).thenReturn( modelInfo );
+
+    // another load into the same table holds the job back until it is cancelled
+    final CountDownLatch release = new CountDownLatch( 1 );
+    StagingLoadExecutor.getInstance().submit( tableName, new Callable<Object>() {
+      public Object call() throws Exception {
+        release.await( 10, TimeUnit.SECONDS );
+        return null;
+      }
+    } );
+    try {
+      String jobId = service.submitDomainJob( datasourceDto );
+      StagingJob job = service.getJob( jobId );
+      assertEquals( "joe", job.getOwner() );
+      assertNull( service.getDomainJobResult( jobId ) );
+
+      service.cancelDomainJob( jobId );
+      assertEquals( StagingJob.Phase.CANCELLED, job.getPhase() );
+      try {
+        service.getDomainJobResult( jobId );
+        fail( "Should report the cancellation" );
+      } catch ( Exception e ) {
+        // expected
+      }
+      assertNull( StagingJobRegistry.getInstance().get( jobId, "joe" ) );
+    } finally {
+      release.countDown();
+    }
+  }
+
+  private static void setUser( String name ) {
+    IPentahoSession session = mock( IPentahoSession.class );
+    when( session.getName() ).thenReturn( name );
+    PentahoSessionHolder.setSession( session );
+  }
+
   private static File createTmpCsvFile( String filename ) throws Exception {
     File csvFile = new File( TMP_DIR, filename );
 
@@ -19,7 +19,10 @@ package org.pentaho.platform.dataaccess.datasource.wizard.service.impl;
 import static org.mockito.Mockito.*;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -106,6 +109,8 @@ public class DSWDatasourceServiceImplTest {
   private final IMondrianCatalogService mondrianService = mock( IMondrianCatalogService.class );
   private final SQLConnection sqlConnection = mock( SQLConnection.class );
   private final Connection nativeConnection = mock( Connection.class );
+  private final Statement statement = mock( Statement.class );
+  private final ResultSet jdbcResultSet = mock( ResultSet.class );
   private final ModelerService modelerService = mock( ModelerService.class );
 
   private int[] columnTypes = new int[]{ Types.INTEGER };
@@ -169,6 +174,16 @@ public class DSWDatasourceServiceImplTest {
         new SQLException( "Reason", "S0021", 21 ) );
     doReturn( nativeConnection ).when( sqlConnection ).getNativeConnection();
 
+    ResultSetMetaData jdbcMetadata = mock( ResultSetMetaData.class );
+    when( jdbcMetadata.getColumnCount() ).thenReturn( columns.length );
+    when( jdbcMetadata.getColumnType( 1 ) ).thenReturn( columnTypes[ 0 ] );
+    when( jdbcMetadata.getColumnLabel( 1 ) ).thenReturn( (String) columns[ 0 ] );
+    when( jdbcResultSet.getMetaData() ).thenReturn( jdbcMetadata );
+    doReturn( jdbcResultSet ).when( statement ).executeQuery( matches( "(.*" + VALID_QUERY + ".*)" ) );
+    when( statement.executeQuery( matches( "(.*" + QUERY_COLUMN_ALREADY_EXIST + ".*)" ) ) ).thenThrow(
+        new SQLException( "Reason", "S0021", 21 ) );
+    doReturn( statement ).when( nativeConnection ).createStatement();
+
     MondrianCatalog catalog = mock( MondrianCatalog.class );
     doReturn( catalog ).when( mondrianService ).getCatalog( anyString(), any( IPentahoSession.class ) );
 
@@ -442,6 +457,64 @@ public class DSWDatasourceServiceImplTest {
     assertArrayEquals( columnTypes, result.getColumnTypes() );
   }
 
+  @Test
+  public void testDoPreview_ExecutesQueryOnce() throws Exception {
+    doReturn( true ).when( dswService ).hasDataAccessPermission();
+    dswService.doPreview( CONNECTION_NAME, VALID_QUERY, PREVIEW_LIMIT );
+    verify( statement ).executeQuery( " SELECT * FROM (" + VALID_QUERY + ") tbl" );
+    verify( statement ).setMaxRows( Integer.parseInt( PREVIEW_LIMIT ) );
+    verify( sqlConnection, never() ).executeQuery( anyString() );
+    verify( sqlConnection ).close();
+  }
+
+  @Test
+  public void testDoPreview_StopsAtPreviewLimit() throws Exception {
+    doReturn( true ).when( dswService ).hasDataAccessPermission();
+    when( jdbcResultSet.next() ).thenReturn( true );
+    when( jdbcResultSet.getObject( 1 ) ).thenReturn( 7 );
+    SerializedResultSet result = dswService.doPreview( CONNECTION_NAME, VALID_QUERY, PREVIEW_LIMIT );
+    assertEquals( Integer.parseInt( PREVIEW_LIMIT ), result.getData().size() );
+    assertEquals( "7", result.getData().get( 0 ).get( 0 ) );
+    verify( statement ).cancel();
+    verify( jdbcResultSet ).close();
+    verify( statement ).close();
+  }
+
+  @Test
+  public void testDoPreview_DoesNotCancelWhenMaxRowsTaken() throws Exception {
+    doReturn( true ).when( dswService ).hasDataAccessPermission();
+    when( statement.getMaxRows() ).thenReturn( Integer.parseInt( PREVIEW_LIMIT ) );
+    when( jdbcResultSet.next() ).thenReturn( true );
+    SerializedResultSet result = dswService.doPreview( CONNECTION_NAME, VALID_QUERY, PREVIEW_LIMIT );
+    assertEquals( Integer.parseInt( PREVIEW_LIMIT ), result.getData().size() );
+    verify( statement, never() ).cancel();
+  }
+
+  @Test
+  public void testDoPreview_DoesNotCancelResultOfExactlyTheLimit() throws Exception {
+    doReturn( true ).when( dswService ).hasDataAccessPermission();
+    int limit = Integer.parseInt( PREVIEW_LIMIT );
+    Boolean[] more = new Boolean[ limit ];
+    for ( int i = 0; i < limit; i++ ) {
+      more[ i ] = i < limit - 1;
+    }
+    when( jdbcResultSet.next() ).thenReturn( true, more );
+    SerializedResultSet result = dswService.doPreview( CONNECTION_NAME, VALID_QUERY, PREVIEW_LIMIT );
+    assertEquals( limit, result.getData().size() );
+    verify( statement, never() ).cancel();
+  }
+
+  @Test
+  public void testDoPreview_DoesNotCancelShortResult() throws Exception {
+    doReturn( true ).when( dswService ).hasDataAccessPermission();
+    when( jdbcResultSet.next() ).thenReturn( true, true, false );
+    when( jdbcResultSet.getObject( 1 ) ).thenReturn( null );
+    SerializedResultSet result = dswService.doPreview( CONNECTION_NAME, VALID_QUERY, PREVIEW_LIMIT );
+    assertEquals( 2, result.getData().size() );
+    assertNull( result.getData().get( 0 ).get( 0 ) );
+    verify( statement, never() ).cancel();
+  }
+
   @Test( expected = DatasourceServiceException.class )
   public void testDoPreview_DoesNotHavePermission() throws DatasourceServiceException {
     doReturn( false ).when( dswService ).hasDataAccessPermission();
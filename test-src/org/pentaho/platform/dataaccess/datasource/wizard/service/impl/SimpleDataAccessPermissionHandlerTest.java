@@ -0,0 +1,171 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.platform.api.engine.IAuthorizationPolicy;
+import org.pentaho.platform.api.engine.IPentahoSession;
+import org.springframework.security.Authentication;
+import org.springframework.security.GrantedAuthority;
+import org.springframework.security.GrantedAuthorityImpl;
+
+public class SimpleDataAccessPermissionHandlerTest {
+
+  private IAuthorizationPolicy policy;
+
+  private IPentahoSession session;
+
+  private IPentahoSession currentSession;
+
+  private Authentication auth;
+
+  private Map<String, String> settings;
+
+  private int settingReads;
+
+  private class SimpleDataAccessPermissionHandlerMock extends SimpleDataAccessPermissionHandler {
+
+    SimpleDataAccessPermissionHandlerMock( long ttl ) {
+      super( policy, ttl );
+    }
+
+    @Override protected String getPluginSetting( String key ) {
+      settingReads++;
+      return settings.get( key );
+    }
+
+    @Override protected IPentahoSession getCurrentSession() {
+      return currentSession;
+    }
+
+    @Override protected Authentication getAuthentication( IPentahoSession session ) {
+      return auth;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    SimpleDataAccessPermissionHandler.clearCache();
+    policy = mock( IAuthorizationPolicy.class );
+    session = mock( IPentahoSession.class );
+    when( session.getId() ).thenReturn( "sessionId" );
+    when( session.getName() ).thenReturn( "suzy" );
+    currentSession = session;
+    auth = mock( Authentication.class );
+    when( auth.getName() ).thenReturn( "suzy" );
+    when( auth.getAuthorities() ).thenReturn( new GrantedAuthority[] { new GrantedAuthorityImpl( "Power User" ) } );
+    settings = new HashMap<String, String>();
+    settingReads = 0;
+  }
+
+  @After
+  public void tearDown() {
+    SimpleDataAccessPermissionHandler.clearCache();
+  }
+
+  @Test
+  public void testManageActionAllows() {
+    when( policy.isAllowed( anyString() ) ).thenReturn( true );
+    assertTrue( new SimpleDataAccessPermissionHandlerMock( 0 ).hasDataAccessPermission( session ) );
+  }
+
+  @Test
+  public void testRolesAndUsers() {
+    SimpleDataAccessPermissionHandler handler = new SimpleDataAccessPermissionHandlerMock( 0 );
+    assertFalse( handler.hasDataAccessPermission( session ) );
+
+    settings.put( "settings/data-access-roles", "Administrator, Power User" );
+    assertTrue( handler.hasDataAccessPermission( session ) );
+
+    settings.put( "settings/data-access-roles", "Administrator" );
+    settings.put( "settings/data-access-users", "admin , suzy" );
+    assertTrue( handler.hasDataAccessPermission( session ) );
+
+    settings.put( "settings/data-access-users", "admin" );
+    assertFalse( handler.hasDataAccessPermission( session ) );
+  }
+
+  @Test
+  public void testRemembersTheDecision() {
+    settings.put( "settings/data-access-roles", "Power User" );
+    SimpleDataAccessPermissionHandler handler = new SimpleDataAccessPermissionHandlerMock( 60000 );
+    assertTrue( handler.hasDataAccessPermission( session ) );
+    assertTrue( new SimpleDataAccessPermissionHandlerMock( 60000 ).hasDataAccessPermission( session ) );
+
+    // neither the settings nor the policy are looked at again
+    settings.put( "settings/data-access-roles", "Administrator" );
+    assertTrue( handler.hasDataAccessPermission( session ) );
+    verify( policy, times( 1 ) ).isAllowed( anyString() );
+    assertEquals( 2, settingReads );
+  }
+
+  @Test
+  public void testChangedSettingsDropDecisions() throws Exception {
+    settings.put( "settings/data-access-roles", "Power User" );
+    SimpleDataAccessPermissionHandler handler = new SimpleDataAccessPermissionHandlerMock( 1 );
+    assertTrue( handler.hasDataAccessPermission( session ) );
+
+    settings.put( "settings/data-access-roles", "Administrator" );
+    Thread.sleep( 10 );
+    assertFalse( handler.hasDataAccessPermission( session ) );
+  }
+
+  @Test
+  public void testSessionsAreDecidedApart() {
+    settings.put( "settings/data-access-users", "suzy" );
+    SimpleDataAccessPermissionHandler handler = new SimpleDataAccessPermissionHandlerMock( 60000 );
+    assertTrue( handler.hasDataAccessPermission( session ) );
+
+    IPentahoSession other = mock( IPentahoSession.class );
+    when( other.getId() ).thenReturn( "otherId" );
+    when( other.getName() ).thenReturn( "joe" );
+    when( auth.getName() ).thenReturn( "joe" );
+    assertFalse( handler.hasDataAccessPermission( other ) );
+  }
+
+  @Test
+  public void testOtherThanTheCurrentSessionIsNotRemembered() {
+    IPentahoSession other = mock( IPentahoSession.class );
+    when( other.getId() ).thenReturn( "otherId" );
+    when( other.getName() ).thenReturn( "joe" );
+    currentSession = other;
+    when( policy.isAllowed( anyString() ) ).thenReturn( true );
+    SimpleDataAccessPermissionHandler handler = new SimpleDataAccessPermissionHandlerMock( 60000 );
+    // the policy answered for the current session, not for the one asked about
+    assertTrue( handler.hasDataAccessPermission( session ) );
+
+    when( policy.isAllowed( anyString() ) ).thenReturn( false );
+    currentSession = session;
+    assertFalse( handler.hasDataAccessPermission( session ) );
+    verify( policy, times( 2 ) ).isAllowed( anyString() );
+  }
+}
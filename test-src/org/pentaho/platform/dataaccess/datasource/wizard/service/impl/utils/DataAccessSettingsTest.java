@@ -0,0 +1,190 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.pentaho.platform.api.engine.ISystemSettings;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.agile.AgileHelper;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+
+/**
+ * Reads each numeric setting with the value of the settings file mocked to a missing, bad, boundary or good value.
+ */
+@RunWith( Parameterized.class )
+public class DataAccessSettingsTest {
+
+  private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+  private final Setting setting;
+
+  private final String value;
+
+  private final int expected;
+
+  public DataAccessSettingsTest( String name, Setting setting, String value, int expected ) {
+    this.setting = setting;
+    this.value = value;
+    this.expected = expected;
+  }
+
+  @Parameters( name = "{0} = {2}" )
+  public static Collection<Object[]> settings() {
+    List<Object[]> settings = new ArrayList<Object[]>();
+    add( settings, "csv sample rows", new Setting() {
+      int read() {
+        return AgileHelper.getCsvSampleRowSize();
+      }
+    }, 100, "0", 100, "250", 250 );
+    add( settings, "csv inference threads", new Setting() {
+      int read() {
+        return AgileHelper.getCsvInferenceThreads();
+      }
+    }, PROCESSORS, "0", PROCESSORS, "3", 3 );
+    add( settings, "staging commit size", new Setting() {
+      int read() {
+        return AgileHelper.getStagingCommitSize();
+      }
+    }, 1000, "0", 1000, "5000", 5000 );
+    add( settings, "staging parallel copies", new Setting() {
+      int read() {
+        return AgileHelper.getStagingParallelCopies();
+      }
+    }, 1, "0", PROCESSORS, "4", 4 );
+    add( settings, "staging max concurrent loads", new Setting() {
+      int read() {
+        return AgileHelper.getStagingMaxConcurrentLoads();
+      }
+    }, 2, "0", 2, "3", 3 );
+    add( settings, "staging max queued loads", new Setting() {
+      int read() {
+        return AgileHelper.getStagingMaxQueuedLoads();
+      }
+    }, 50, "0", 0, "10", 10 );
+    add( settings, "staging index threads", new Setting() {
+      int read() {
+        return AgileHelper.getStagingIndexThreads( null );
+      }
+    }, 1, "0", 1, "4", 4 );
+    add( settings, "metadata query cache size", new Setting() {
+      int read() {
+        return DataAccessSettings.getMetadataQueryCacheSize();
+      }
+    }, 500, "0", 0, "64", 64 );
+    add( settings, "metadata model index size", new Setting() {
+      int read() {
+        return DataAccessSettings.getMetadataModelIndexSize();
+      }
+    }, 100, "0", 0, "20", 20 );
+    add( settings, "metadata model index max age", new Setting() {
+      int read() {
+        return DataAccessSettings.getMetadataModelIndexMaxAge();
+      }
+    }, 300, "0", 0, "30", 30 );
+    add( settings, "metadata result cache size", new Setting() {
+      int read() {
+        return DataAccessSettings.getMetadataResultCacheSize();
+      }
+    }, 0, "0", 0, "64", 64 );
+    add( settings, "metadata result cache ttl", new Setting() {
+      int read() {
+        return DataAccessSettings.getMetadataResultCacheTtl();
+      }
+    }, 300, "0", 0, "120", 120 );
+    add( settings, "datasource catalog max age", new Setting() {
+      int read() {
+        return DataAccessSettings.getDatasourceCatalogMaxAge();
+      }
+    }, 300, "0", 0, "30", 30 );
+    add( settings, "permission cache ttl", new Setting() {
+      int read() {
+        return DataAccessSettings.getPermissionCacheTtl();
+      }
+    }, 60, "0", 0, "30", 30 );
+    Setting exportZipLevel = new Setting() {
+      int read() {
+        return DataAccessSettings.getExportZipLevel();
+      }
+    };
+    add( settings, "export zip level", exportZipLevel, -1, "10", -1, "9", 9 );
+    settings.add( new Object[] { "export zip level", exportZipLevel, "0", 0 } );
+    add( settings, "import memory threshold", new Setting() {
+      int read() {
+        return DataAccessSettings.getImportMemoryThreshold();
+      }
+    }, 1024, "0", 0, "2048", 2048 );
+    add( settings, "jdbc catalog ttl", new Setting() {
+      int read() {
+        return DataAccessSettings.getJdbcCatalogTtl();
+      }
+    }, 300, "0", 0, "30", 30 );
+    add( settings, "connection pool max size", new Setting() {
+      int read() {
+        return DataAccessSettings.getConnectionPoolMaxSize();
+      }
+    }, 8, "0", 8, "2", 2 );
+    add( settings, "connection pool idle", new Setting() {
+      int read() {
+        return DataAccessSettings.getConnectionPoolIdle();
+      }
+    }, 300, "0", 300, "30", 30 );
+    return settings;
+  }
+
+  /**
+   * Adds the cases of one setting: missing, not a number and negative all read as <code>defaultValue</code>, then the
+   * <code>boundary</code> and <code>good</code> values read as given.
+   */
+  private static void add( List<Object[]> settings, String name, Setting setting, int defaultValue,
+                           String boundary, int boundaryExpected, String good, int goodExpected ) {
+    settings.add( new Object[] { name, setting, null, defaultValue } );
+    settings.add( new Object[] { name, setting, "many", defaultValue } );
+    settings.add( new Object[] { name, setting, "-2", defaultValue } );
+    settings.add( new Object[] { name, setting, boundary, boundaryExpected } );
+    settings.add( new Object[] { name, setting, " " + good + " ", goodExpected } );
+  }
+
+  @After
+  public void tearDown() {
+    PentahoSystem.setSystemSettingsService( null );
+  }
+
+  @Test
+  public void testRead() {
+    ISystemSettings systemSettings = mock( ISystemSettings.class );
+    when( systemSettings.getSystemSetting( anyString(), anyString(), anyString() ) ).thenReturn( value );
+    PentahoSystem.setSystemSettingsService( systemSettings );
+    assertEquals( expected, setting.read() );
+  }
+
+  abstract static class Setting {
+    abstract int read();
+  }
+}
@@ -0,0 +1,67 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+
+public class DatabaseMetaCacheTest {
+
+  private static final String CONN_NAME = "SampleData";
+
+  @Before
+  public void setUp() {
+    PentahoSystem.setSystemSettingsService( null );
+  }
+
+  @After
+  public void tearDown() {
+    DatabaseMetaCache.invalidate( CONN_NAME );
+  }
+
+  @Test
+  public void testKeptUntilInvalidated() {
+    DatabaseMeta databaseMeta = mock( DatabaseMeta.class );
+    assertNull( DatabaseMetaCache.get( CONN_NAME ) );
+    DatabaseMetaCache.put( CONN_NAME, DatabaseMetaCache.getVersion( CONN_NAME ), databaseMeta );
+    assertSame( databaseMeta, DatabaseMetaCache.get( CONN_NAME ) );
+    assertNull( DatabaseMetaCache.get( "Other" ) );
+
+    long version = DatabaseMetaCache.getVersion( CONN_NAME );
+    DatabaseMetaCache.invalidate( CONN_NAME );
+    assertEquals( version + 1, DatabaseMetaCache.getVersion( CONN_NAME ) );
+    assertNull( DatabaseMetaCache.get( CONN_NAME ) );
+  }
+
+  @Test
+  public void testResolvedDuringAnUpdateIsNotUsed() {
+    long version = DatabaseMetaCache.getVersion( CONN_NAME );
+    // the connection is updated while it is being resolved
+    DatabaseMetaCache.invalidate( CONN_NAME );
+    DatabaseMetaCache.put( CONN_NAME, version, mock( DatabaseMeta.class ) );
+    assertNull( DatabaseMetaCache.get( CONN_NAME ) );
+  }
+}
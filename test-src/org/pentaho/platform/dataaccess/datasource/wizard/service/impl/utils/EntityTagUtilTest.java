@@ -0,0 +1,33 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+public class EntityTagUtilTest {
+
+  @Test
+  public void testDigest() {
+    assertEquals( "d41d8cd98f00b204e9800998ecf8427e", EntityTagUtil.digest( "" ) );
+    assertEquals( EntityTagUtil.digest( "{\"id\":1}" ), EntityTagUtil.digest( "{\"id\":1}" ) );
+    assertFalse( EntityTagUtil.digest( "{\"id\":1}" ).equals( EntityTagUtil.digest( "{\"id\":2}" ) ) );
+  }
+}
@@ -0,0 +1,255 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+
+public class InMemoryConnectionPoolTest {
+
+  private static final String URL = "jdbc:hsqldb:mem:sampledata";
+
+  private Driver driver;
+
+  @Before
+  public void setUp() throws Exception {
+    PentahoSystem.setSystemSettingsService( null );
+    driver = mock( Driver.class );
+    when( driver.connect( anyString(), any( Properties.class ) ) ).thenAnswer( new Answer<Connection>() {
+      public Connection answer( InvocationOnMock invocation ) throws Throwable {
+        Connection connection = mock( Connection.class );
+        when( connection.isValid( anyInt() ) ).thenReturn( true );
+        when( connection.getAutoCommit() ).thenReturn( true );
+        return connection;
+      }
+    } );
+  }
+
+  @After
+  public void tearDown() {
+    InMemoryConnectionPool.invalidate( "SampleData" );
+  }
+
+  @Test
+  public void testReusesReturnedConnections() throws Exception {
+    InMemoryConnectionPool pool = new InMemoryConnectionPool( driver, URL, "sa", "", 2, 60000 );
+    Connection first = pool.getConnection();
+    String firstName = first.toString();
+    assertEquals( 1, pool.getActiveCount() );
+    first.close();
+    assertTrue( first.isClosed() );
+    assertEquals( 0, pool.getActiveCount() );
+    assertEquals( 1, pool.getIdleCount() );
+
+    Connection second = pool.getConnection();
+    assertEquals( firstName, second.toString() );
+    assertEquals( 1, pool.getCreatedCount() );
+    assertEquals( 2, pool.getBorrowedCount() );
+    second.close();
+    // closing twice returns it once
+    second.close();
+    assertEquals( 1, pool.getIdleCount() );
+    pool.close();
+    assertEquals( 1, pool.getDestroyedCount() );
+  }
+
+  @Test
+  public void testClosedConnectionCannotBeUsed() throws Exception {
+    InMemoryConnectionPool pool = new InMemoryConnectionPool( driver, URL, "sa", "", 2, 60000 );
+    Connection connection = pool.getConnection();
+    connection.close();
+    try {
+      connection.createStatement();
+      fail();
+    } catch ( SQLException e ) {
+      // expected
+    }
+    pool.close();
+  }
+
+  @Test
+  public void testInvalidConnectionsAreReplaced() throws Exception {
+    Connection broken = mock( Connection.class );
+    when( broken.isValid( anyInt() ) ).thenReturn( false );
+    when( broken.getAutoCommit() ).thenReturn( true );
+    Connection good = mock( Connection.class );
+    driver = mock( Driver.class );
+    when( driver.connect( anyString(), any( Properties.class ) ) ).thenReturn( broken, good );
+    InMemoryConnectionPool pool = new InMemoryConnectionPool( driver, URL, "sa", "", 2, 60000 );
+    pool.getConnection().close();
+
+    Connection connection = pool.getConnection();
+    assertEquals( good.toString(), connection.toString() );
+    verify( broken ).close();
+    assertEquals( 1, pool.getInvalidCount() );
+    connection.close();
+    pool.close();
+  }
+
+  @Test
+  public void testWaitsForAReturnedConnectionWhenFull() throws Exception {
+    final InMemoryConnectionPool pool = new InMemoryConnectionPool( driver, URL, "sa", "", 1, 60000 );
+    Connection connection = pool.getConnection();
+    final Connection[] next = new Connection[ 1 ];
+    Thread waiting = new Thread( new Runnable() {
+      public void run() {
+        try {
+          next[ 0 ] = pool.getConnection();
+        } catch ( SQLException e ) {
+          // the test fails on no connection being handed out
+        }
+      }
+    } );
+    waiting.start();
+    long deadline = System.currentTimeMillis() + 10000;
+    while ( pool.getWaitingCount() == 0 && waiting.isAlive() && System.currentTimeMillis() < deadline ) {
+      Thread.yield();
+    }
+    assertEquals( 1, pool.getWaitingCount() );
+    connection.close();
+    waiting.join( 10000 );
+
+    assertNotNull( next[ 0 ] );
+    assertEquals( 1, pool.getCreatedCount() );
+    assertEquals( 0, pool.getTimeoutCount() );
+    next[ 0 ].close();
+    pool.close();
+  }
+
+  @Test
+  public void testGivesUpAfterTheTimeoutWhenFull() throws Exception {
+    InMemoryConnectionPool pool = new InMemoryConnectionPool( driver, URL, "sa", "", 1, 60000, 50 );
+    Connection connection = pool.getConnection();
+    long start = System.currentTimeMillis();
+    try {
+      pool.getConnection();
+      fail();
+    } catch ( SQLException e ) {
+      // expected
+    }
+    assertTrue( System.currentTimeMillis() - start >= 40 );
+    assertEquals( 1, pool.getTimeoutCount() );
+    assertEquals( 1, pool.getCreatedCount() );
+    connection.close();
+    pool.close();
+  }
+
+  @Test
+  public void testStatementsAndMetadataHandOutTheBorrowedConnection() throws Exception {
+    Connection pooled = mock( Connection.class );
+    when( pooled.isValid( anyInt() ) ).thenReturn( true );
+    when( pooled.getAutoCommit() ).thenReturn( true );
+    Statement statement = mock( Statement.class );
+    when( statement.getConnection() ).thenReturn( pooled );
+    PreparedStatement prepared = mock( PreparedStatement.class );
+    when( prepared.getConnection() ).thenReturn( pooled );
+    DatabaseMetaData metaData = mock( DatabaseMetaData.class );
+    when( metaData.getConnection() ).thenReturn( pooled );
+    when( pooled.createStatement() ).thenReturn( statement );
+    when( pooled.prepareStatement( anyString() ) ).thenReturn( prepared );
+    when( pooled.getMetaData() ).thenReturn( metaData );
+    driver = mock( Driver.class );
+    when( driver.connect( anyString(), any( Properties.class ) ) ).thenReturn( pooled );
+    InMemoryConnectionPool pool = new InMemoryConnectionPool( driver, URL, "sa", "", 2, 60000 );
+
+    Connection connection = pool.getConnection();
+    Statement wrapped = connection.createStatement();
+    assertSame( connection, wrapped.getConnection() );
+    wrapped.close();
+    verify( statement ).close();
+    assertSame( connection, connection.prepareStatement( "SELECT 1" ).getConnection() );
+    assertSame( connection, connection.getMetaData().getConnection() );
+
+    // closing the connection a statement hands out returns it rather than closing the pooled one
+    wrapped.getConnection().close();
+    assertEquals( 1, pool.getIdleCount() );
+    verify( pooled, never() ).close();
+    pool.close();
+  }
+
+  @Test
+  public void testEvictsIdleConnections() throws Exception {
+    InMemoryConnectionPool pool = new InMemoryConnectionPool( driver, URL, "sa", "", 2, 1 );
+    Connection first = pool.getConnection();
+    Connection second = pool.getConnection();
+    first.close();
+    second.close();
+    assertEquals( 2, pool.getIdleCount() );
+    Thread.sleep( 10 );
+    pool.evict();
+    assertEquals( 0, pool.getIdleCount() );
+    assertEquals( 2, pool.getDestroyedCount() );
+  }
+
+  @Test
+  public void testUncommittedWorkIsRolledBack() throws Exception {
+    Connection connection = mock( Connection.class );
+    when( connection.isValid( anyInt() ) ).thenReturn( true );
+    when( connection.getAutoCommit() ).thenReturn( false );
+    driver = mock( Driver.class );
+    when( driver.connect( anyString(), any( Properties.class ) ) ).thenReturn( connection );
+    InMemoryConnectionPool pool = new InMemoryConnectionPool( driver, URL, "sa", "", 2, 60000 );
+    pool.getConnection().close();
+    verify( connection ).rollback();
+    verify( connection ).setAutoCommit( true );
+    verify( connection, never() ).close();
+    pool.close();
+  }
+
+  @Test
+  public void testForConnection() throws Exception {
+    InMemoryConnectionPool pool = InMemoryConnectionPool.forConnection( "SampleData", driver, URL, "sa", "" );
+    assertSame( pool, InMemoryConnectionPool.forConnection( "SampleData", driver, URL, "sa", "" ) );
+    assertSame( pool, InMemoryConnectionPool.getPools().get( "SampleData" ) );
+    assertEquals( 8, pool.getMaxSize() );
+
+    Connection connection = pool.getConnection();
+    InMemoryConnectionPool other = InMemoryConnectionPool.forConnection( "SampleData", driver, URL, "sa", "changed" );
+    assertNotSame( pool, other );
+    // the replaced pool closes what it handed out as it is returned
+    connection.close();
+    assertEquals( 0, pool.getIdleCount() );
+    assertEquals( 1, pool.getDestroyedCount() );
+  }
+}
@@ -0,0 +1,309 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.pentaho.di.core.database.Database;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleDatabaseException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+
+public class JdbcCatalogCacheTest {
+
+  private DatabaseMeta databaseMeta;
+
+  private Database database;
+
+  private DatabaseMetaData metaData;
+
+  private int connects;
+
+  private class JdbcCatalogCacheMock extends JdbcCatalogCache {
+    JdbcCatalogCacheMock( long ttl ) {
+      super( databaseMeta, ttl );
+    }
+
+    @Override protected Database createDatabase( DatabaseMeta databaseMeta ) {
+      connects++;
+      return database;
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    PentahoSystem.setSystemSettingsService( null );
+    databaseMeta = mock( DatabaseMeta.class );
+    when( databaseMeta.getXML() ).thenReturn( "<connection/>" );
+    when( databaseMeta.getSQLQueryFields( "PUBLIC.CUSTOMERS" ) ).thenReturn( "SELECT * FROM PUBLIC.CUSTOMERS" );
+    database = mock( Database.class );
+    metaData = mock( DatabaseMetaData.class );
+    when( database.getDatabaseMetaData() ).thenReturn( metaData );
+    connects = 0;
+  }
+
+  @After
+  public void tearDown() {
+    JdbcCatalogCache.invalidate( "SampleData" );
+  }
+
+  private static ResultSet names( String column, String... names ) throws Exception {
+    ResultSet resultSet = mock( ResultSet.class );
+    Boolean[] more = new Boolean[ names.length ];
+    for ( int i = 0; i < names.length; i++ ) {
+      more[ i ] = i < names.length - 1;
+    }
+    when( resultSet.next() ).thenReturn( names.length > 0, more );
+    if ( names.length > 0 ) {
+      when( resultSet.getString( column ) ).thenReturn( names[ 0 ], Arrays.copyOfRange( names, 1, names.length ) );
+    }
+    return resultSet;
+  }
+
+  @Test
+  public void testSchemas() throws Exception {
+    when( metaData.getSchemas() ).thenAnswer( new Answer<ResultSet>() {
+      public ResultSet answer( InvocationOnMock invocation ) throws Throwable {
+        return names( "TABLE_SCHEM", "INFORMATION_SCHEMA", "PUBLIC" );
+      }
+    } );
+    JdbcCatalogCache cache = new JdbcCatalogCacheMock( 60000 );
+    assertEquals( Arrays.asList( "INFORMATION_SCHEMA", "PUBLIC" ), cache.getSchemas() );
+    assertEquals( Arrays.asList( "INFORMATION_SCHEMA", "PUBLIC" ), cache.getSchemas() );
+    verify( metaData, times( 1 ) ).getSchemas();
+
+    cache.refresh();
+    assertEquals( Arrays.asList( "INFORMATION_SCHEMA", "PUBLIC" ), cache.getSchemas() );
+    verify( metaData, times( 2 ) ).getSchemas();
+    assertEquals( 1, connects );
+    cache.close();
+    verify( database ).disconnect();
+  }
+
+  @Test
+  public void testSchemasWithoutTablesAreListed() throws Exception {
+    // unlike the table map the schemas used to be taken from, which only holds schemas with tables
+    ResultSet schemas = names( "TABLE_SCHEM", "EMPTY", "PUBLIC" );
+    when( metaData.getSchemas() ).thenReturn( schemas );
+    JdbcCatalogCache cache = new JdbcCatalogCacheMock( 60000 );
+    assertEquals( Arrays.asList( "EMPTY", "PUBLIC" ), cache.getSchemas() );
+    verify( database, never() ).getTableMap( null );
+    cache.close();
+  }
+
+  @Test
+  public void testCatalogsWithoutSchemas() throws Exception {
+    ResultSet schemas = names( "TABLE_SCHEM" );
+    ResultSet catalogs = names( "TABLE_CAT", "sampledata" );
+    when( metaData.getSchemas() ).thenReturn( schemas );
+    when( metaData.getCatalogs() ).thenReturn( catalogs );
+    JdbcCatalogCache cache = new JdbcCatalogCacheMock( 60000 );
+    assertEquals( Arrays.asList( "sampledata" ), cache.getSchemas() );
+    cache.close();
+  }
+
+  @Test
+  public void testTablesPerSchema() throws Exception {
+    when( database.getTablenames( "PUBLIC", true ) ).thenReturn( new String[] { "PUBLIC.CUSTOMERS" } );
+    when( database.getViews( "PUBLIC", true ) ).thenReturn( new String[] { "PUBLIC.CUSTOMER_VIEW" } );
+    when( database.getTablenames( "OTHER", true ) ).thenReturn( new String[ 0 ] );
+    when( database.getViews( "OTHER", true ) ).thenReturn( new String[ 0 ] );
+    JdbcCatalogCache cache = new JdbcCatalogCacheMock( 60000 );
+    assertEquals( Arrays.asList( "PUBLIC.CUSTOMERS", "PUBLIC.CUSTOMER_VIEW" ), cache.getTables( "PUBLIC" ) );
+    assertEquals( 0, cache.getTables( "OTHER" ).size() );
+    assertEquals( 2, cache.getTables( "PUBLIC" ).size() );
+    verify( database, times( 1 ) ).getTablenames( "PUBLIC", true );
+    verify( database ).connect();
+    cache.close();
+  }
+
+  @Test
+  public void testTableFields() throws Exception {
+    RowMetaInterface rowMeta = mock( RowMetaInterface.class );
+    when( rowMeta.getFieldNames() ).thenReturn( new String[] { "ID", "NAME" } );
+    when( database.getReturnRowMeta() ).thenReturn( rowMeta );
+    JdbcCatalogCache cache = new JdbcCatalogCacheMock( 60000 );
+    assertEquals( Arrays.asList( "ID", "NAME" ), cache.getTableFields( "PUBLIC.CUSTOMERS" ) );
+    assertEquals( Arrays.asList( "ID", "NAME" ), cache.getTableFields( "PUBLIC.CUSTOMERS" ) );
+    verify( database, times( 1 ) ).getRows( "SELECT * FROM PUBLIC.CUSTOMERS", 1 );
+    cache.close();
+  }
+
+  private static ResultSet columns( String table, String... names ) throws Exception {
+    ResultSet resultSet = names( "COLUMN_NAME", names );
+    when( resultSet.getString( "TABLE_NAME" ) ).thenReturn( table );
+    return resultSet;
+  }
+
+  @Test
+  public void testTablesFields() throws Exception {
+    when( metaData.getSearchStringEscape() ).thenReturn( "\\" );
+    when( metaData.getColumns( null, "PUBLIC", "CUSTOMERS", null ) ).thenReturn( columns( "CUSTOMERS", "ID", "NAME" ) );
+    when( metaData.getColumns( null, "PUBLIC", "ORDER\\_LINES", null ) )
+      .thenReturn( columns( "ORDER_LINES", "ORDER_ID", "PRODUCT_ID" ) );
+    when( metaData.getColumns( null, "SALES", "REGIONS", null ) ).thenReturn( columns( "REGIONS", "REGION" ) );
+    JdbcCatalogCache cache = new JdbcCatalogCacheMock( 60000 );
+    Map<String, List<String>> fields =
+      cache.getTablesFields( Arrays.asList( "PUBLIC.CUSTOMERS", "\"PUBLIC\".\"ORDER_LINES\"", "SALES.REGIONS" ) );
+    assertEquals( Arrays.asList( "PUBLIC.CUSTOMERS", "\"PUBLIC\".\"ORDER_LINES\"", "SALES.REGIONS" ),
+      Arrays.asList( fields.keySet().toArray() ) );
+    assertEquals( Arrays.asList( "ID", "NAME" ), fields.get( "PUBLIC.CUSTOMERS" ) );
+    assertEquals( Arrays.asList( "ORDER_ID", "PRODUCT_ID" ), fields.get( "\"PUBLIC\".\"ORDER_LINES\"" ) );
+    assertEquals( Arrays.asList( "REGION" ), fields.get( "SALES.REGIONS" ) );
+    // the second schema was read on a connection of its own
+    assertEquals( 2, connects );
+
+    // and all of them are remembered
+    assertEquals( Arrays.asList( "ID", "NAME" ), cache.getTableFields( "PUBLIC.CUSTOMERS" ) );
+    verify( database, never() ).getRows( "SELECT * FROM PUBLIC.CUSTOMERS", 1 );
+    cache.close();
+  }
+
+  @Test
+  public void testTablesFieldsFallBackToQuery() throws Exception {
+    when( metaData.getColumns( null, "PUBLIC", "CUSTOMERS", null ) ).thenReturn( columns( "CUSTOMERS" ) );
+    when( metaData.getColumns( "PUBLIC", null, "CUSTOMERS", null ) ).thenReturn( columns( "CUSTOMERS" ) );
+    RowMetaInterface rowMeta = mock( RowMetaInterface.class );
+    when( rowMeta.getFieldNames() ).thenReturn( new String[] { "ID", "NAME" } );
+    when( database.getReturnRowMeta() ).thenReturn( rowMeta );
+    JdbcCatalogCache cache = new JdbcCatalogCacheMock( 60000 );
+    Map<String, List<String>> fields = cache.getTablesFields( Arrays.asList( "PUBLIC.CUSTOMERS" ) );
+    assertEquals( Arrays.asList( "ID", "NAME" ), fields.get( "PUBLIC.CUSTOMERS" ) );
+    verify( database ).getRows( "SELECT * FROM PUBLIC.CUSTOMERS", 1 );
+    cache.close();
+  }
+
+  @Test
+  public void testSplitName() {
+    assertArrayEquals( new String[] { "PUBLIC", "CUSTOMERS" }, JdbcCatalogCache.splitName( "PUBLIC.CUSTOMERS" ) );
+    assertArrayEquals( new String[] { null, "CUSTOMERS" }, JdbcCatalogCache.splitName( "CUSTOMERS" ) );
+    assertArrayEquals( new String[] { "\"my.schema\"", "\"T\"" }, JdbcCatalogCache.splitName( "\"my.schema\".\"T\"" ) );
+    assertArrayEquals( new String[] { "[dbo]", "[T]" }, JdbcCatalogCache.splitName( "[dbo].[T]" ) );
+    assertEquals( "my.schema", JdbcCatalogCache.unquote( "\"my.schema\"" ) );
+    assertEquals( "T", JdbcCatalogCache.unquote( "`T`" ) );
+    assertEquals( "T", JdbcCatalogCache.unquote( "T" ) );
+  }
+
+  @Test
+  public void testReconnectsAfterError() throws Exception {
+    when( database.getTablenames( "PUBLIC", true ) ).thenThrow( new KettleDatabaseException( "closed" ) )
+      .thenReturn( new String[] { "PUBLIC.CUSTOMERS" } );
+    when( database.getViews( "PUBLIC", true ) ).thenReturn( new String[ 0 ] );
+    JdbcCatalogCache cache = new JdbcCatalogCacheMock( 60000 );
+    try {
+      cache.getTables( "PUBLIC" );
+      fail();
+    } catch ( KettleDatabaseException e ) {
+      // expected
+    }
+    verify( database ).disconnect();
+    assertEquals( Arrays.asList( "PUBLIC.CUSTOMERS" ), cache.getTables( "PUBLIC" ) );
+    assertEquals( 2, connects );
+    cache.close();
+  }
+
+  @Test
+  public void testReadsDoNotWaitForEachOther() throws Exception {
+    final CountDownLatch reading = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    when( database.getTablenames( "PUBLIC", true ) ).thenAnswer( new Answer<String[]>() {
+      public String[] answer( InvocationOnMock invocation ) throws Throwable {
+        reading.countDown();
+        release.await( 10, TimeUnit.SECONDS );
+        return new String[] { "PUBLIC.CUSTOMERS" };
+      }
+    } );
+    when( database.getViews( "PUBLIC", true ) ).thenReturn( new String[ 0 ] );
+    ResultSet schemas = names( "TABLE_SCHEM", "PUBLIC" );
+    when( metaData.getSchemas() ).thenReturn( schemas );
+    final JdbcCatalogCache cache = new JdbcCatalogCacheMock( 60000 );
+    Thread slow = new Thread( new Runnable() {
+      public void run() {
+        try {
+          cache.getTables( "PUBLIC" );
+        } catch ( KettleDatabaseException e ) {
+          // the test fails on the tables not being kept
+        }
+      }
+    } );
+    slow.start();
+    assertTrue( reading.await( 10, TimeUnit.SECONDS ) );
+
+    // the schemas are read on a connection of their own while the tables are still being read
+    assertEquals( Arrays.asList( "PUBLIC" ), cache.getSchemas() );
+    assertEquals( 2, connects );
+    release.countDown();
+    slow.join( 10000 );
+    assertEquals( Arrays.asList( "PUBLIC.CUSTOMERS" ), cache.getTables( "PUBLIC" ) );
+    cache.close();
+  }
+
+  @Test
+  public void testRefreshDuringAReadIsNotUndone() throws Exception {
+    final JdbcCatalogCache cache = new JdbcCatalogCacheMock( 60000 );
+    when( database.getTablenames( "PUBLIC", true ) ).thenAnswer( new Answer<String[]>() {
+      public String[] answer( InvocationOnMock invocation ) throws Throwable {
+        cache.refresh();
+        return new String[] { "PUBLIC.CUSTOMERS" };
+      }
+    } );
+    when( database.getViews( "PUBLIC", true ) ).thenReturn( new String[ 0 ] );
+    assertEquals( Arrays.asList( "PUBLIC.CUSTOMERS" ), cache.getTables( "PUBLIC" ) );
+    cache.getTables( "PUBLIC" );
+    verify( database, times( 2 ) ).getTablenames( "PUBLIC", true );
+    cache.close();
+  }
+
+  @Test
+  public void testForConnection() {
+    JdbcCatalogCache cache = JdbcCatalogCache.forConnection( "SampleData", databaseMeta );
+    assertSame( cache, JdbcCatalogCache.forConnection( "SampleData", databaseMeta ) );
+
+    DatabaseMeta changed = mock( DatabaseMeta.class );
+    when( changed.getXML() ).thenReturn( "<connection><server>other</server></connection>" );
+    JdbcCatalogCache other = JdbcCatalogCache.forConnection( "SampleData", changed );
+    assertNotSame( cache, other );
+
+    JdbcCatalogCache.invalidate( "SampleData" );
+    assertNotSame( other, JdbcCatalogCache.forConnection( "SampleData", changed ) );
+  }
+}
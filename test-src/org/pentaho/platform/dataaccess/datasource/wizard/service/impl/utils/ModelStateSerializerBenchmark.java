@@ -0,0 +1,96 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import org.pentaho.platform.dataaccess.datasource.DatasourceType;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.ColumnInfo;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.DatasourceDTO;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.ModelInfo;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Compares a round trip of a CSV datasource's model state through {@link ModelStateSerializer} against the
+ * <code>new XStream()</code> per call the services used to make. Not a unit test; run it by hand with
+ * <code>java ModelStateSerializerBenchmark [columns] [iterations]</code>.
+ */
+public class ModelStateSerializerBenchmark {
+
+  public static void main( String[] args ) throws Exception {
+    int columns = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 50;
+    int iterations = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 2000;
+
+    DatasourceDTO dto = datasource( columns );
+
+    // warm up both paths before timing
+    for ( int i = 0; i < 200; i++ ) {
+      legacy( dto );
+      shared( dto );
+    }
+
+    long legacyNanos = 0;
+    long sharedNanos = 0;
+    for ( int i = 0; i < iterations; i++ ) {
+      long start = System.nanoTime();
+      legacy( dto );
+      legacyNanos += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      shared( dto );
+      sharedNanos += System.nanoTime() - start;
+    }
+
+    System.out.println( "model state: " + ModelStateSerializer.toXML( dto ).length() + " chars, " //$NON-NLS-1$
+      + columns + " columns" ); //$NON-NLS-1$
+    System.out.println( "new XStream per call avg us: " + legacyNanos / iterations / 1000.0 ); //$NON-NLS-1$
+    System.out.println( "shared XStream       avg us: " + sharedNanos / iterations / 1000.0 ); //$NON-NLS-1$
+  }
+
+  private static DatasourceDTO datasource( int columns ) {
+    ColumnInfo[] columnInfos = new ColumnInfo[ columns ];
+    for ( int i = 0; i < columns; i++ ) {
+      columnInfos[ i ] = new ColumnInfo();
+      columnInfos[ i ].setId( "COLUMN_" + i ); //$NON-NLS-1$
+      columnInfos[ i ].setTitle( "Column " + i ); //$NON-NLS-1$
+      columnInfos[ i ].setFormat( "#,##0.00" ); //$NON-NLS-1$
+    }
+    ModelInfo modelInfo = new ModelInfo();
+    modelInfo.setStageTableName( "STAGE_BENCHMARK" ); //$NON-NLS-1$
+    modelInfo.setColumns( columnInfos );
+
+    DatasourceDTO dto = new DatasourceDTO();
+    dto.setDatasourceName( "benchmark" ); //$NON-NLS-1$
+    dto.setDatasourceType( DatasourceType.CSV );
+    dto.setCsvModelInfo( modelInfo );
+    return dto;
+  }
+
+  /**
+   * What <code>prepareForSerialization</code> did: a new XStream to read the model state back and write it again.
+   */
+  private static Object legacy( DatasourceDTO dto ) {
+    String xml = new XStream().toXML( dto );
+    XStream xs = new XStream();
+    return xs.toXML( xs.fromXML( xml ) );
+  }
+
+  private static Object shared( DatasourceDTO dto ) {
+    String xml = ModelStateSerializer.toXML( dto );
+    return ModelStateSerializer.toXML( ModelStateSerializer.fromXML( xml ) );
+  }
+}
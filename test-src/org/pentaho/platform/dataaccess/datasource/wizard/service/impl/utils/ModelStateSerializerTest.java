@@ -0,0 +1,113 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.datasource.wizard.service.impl.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.pentaho.platform.dataaccess.datasource.DatasourceType;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.DatasourceDTO;
+import org.pentaho.platform.dataaccess.datasource.wizard.models.ModelInfo;
+import org.pentaho.platform.dataaccess.datasource.wizard.service.impl.MultiTableDatasourceDTO;
+
+public class ModelStateSerializerTest {
+
+  private static DatasourceDTO datasource( String name ) {
+    DatasourceDTO dto = new DatasourceDTO();
+    dto.setDatasourceName( name );
+    dto.setDatasourceType( DatasourceType.SQL );
+    dto.setConnectionName( "SampleData" );
+    dto.setQuery( "select * from customers" );
+    return dto;
+  }
+
+  @Test
+  public void testRoundTrip() {
+    DatasourceDTO dto = datasource( "testDatasource" );
+    String xml = ModelStateSerializer.toXML( dto );
+    assertTrue( xml.startsWith( "<" + DatasourceDTO.class.getName() + ">" ) );
+    assertEquals( dto, ModelStateSerializer.fromXML( xml ) );
+  }
+
+  @Test
+  public void testConcurrentUse() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool( 4 );
+    try {
+      List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+      for ( int i = 0; i < 200; i++ ) {
+        final DatasourceDTO dto = datasource( "datasource" + i );
+        results.add( executor.submit( new Callable<Boolean>() {
+          public Boolean call() {
+            return dto.equals( ModelStateSerializer.fromXML( ModelStateSerializer.toXML( dto ) ) );
+          }
+        } ) );
+      }
+      for ( Future<Boolean> result : results ) {
+        assertTrue( result.get() );
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testMultiTableRoundTrip() {
+    MultiTableDatasourceDTO dto = new MultiTableDatasourceDTO();
+    dto.setDatasourceName( "joined" );
+    dto.setDoOlap( true );
+    dto.setSelectedTables( new ArrayList<String>( Arrays.asList( "PUBLIC.CUSTOMERS", "PUBLIC.ORDERS" ) ) );
+    MultiTableDatasourceDTO read = ModelStateSerializer.multiTableFromXML( ModelStateSerializer.toXML( dto ) );
+    assertEquals( "joined", read.getDatasourceName() );
+    assertTrue( read.isDoOlap() );
+    assertEquals( dto.getSelectedTables(), read.getSelectedTables() );
+  }
+
+  @Test
+  public void testLegacyMultiTable() throws Exception {
+    FileInputStream in = new FileInputStream( "test-res/testDTOSchema.xml" );
+    try {
+      MultiTableDatasourceDTO dto = ModelStateSerializer.multiTableFromXML( IOUtils.toString( in, "utf-8" ) );
+      assertEquals( "PeterTestDBQAServer2", dto.getDatasourceName() );
+      assertEquals( "SampleData", dto.getSelectedConnection().getName() );
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test
+  public void testModelInfo() throws Exception {
+    String xml = "<modelInfo><stageTableName>STAGE</stageTableName>" //$NON-NLS-1$
+      + "<columns><columnInfo><id>ID</id><title>Id</title></columnInfo></columns></modelInfo>"; //$NON-NLS-1$
+    ModelInfo modelInfo = ModelStateSerializer.modelInfoFromXML( new ByteArrayInputStream( xml.getBytes( "UTF-8" ) ) );
+    assertEquals( "STAGE", modelInfo.getStageTableName() );
+    assertEquals( 1, modelInfo.getColumns().length );
+    assertEquals( "ID", modelInfo.getColumns()[ 0 ].getId() );
+  }
+}
@@ -0,0 +1,153 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.concept.types.LocaleType;
+import org.pentaho.metadata.model.concept.types.LocalizedString;
+import org.pentaho.metadata.repository.IMetadataDomainRepository;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
+
+public class DatasourceCatalogTest {
+
+  private IMetadataDomainRepository repository;
+
+  private Domain domain;
+
+  private LogicalModel reporting;
+
+  private LogicalModel analysis;
+
+  @Before
+  public void setUp() {
+    PentahoSystem.setSystemSettingsService( null );
+
+    reporting = new LogicalModel();
+    reporting.setId( "REPORTING" );
+    reporting.setName( new LocalizedString( "en_US", "Sales" ) );
+    analysis = new LogicalModel();
+    analysis.setId( "ANALYSIS" );
+    analysis.setName( new LocalizedString( "en_US", "Sales cube" ) );
+    analysis.setProperty( DatasourceCatalog.VISIBLE, " analyzer , ,crosstab" );
+    analysis.setProperty( DatasourceCatalog.MONDRIAN_CATALOG_REF, "Sales" );
+
+    domain = new Domain();
+    domain.setId( "sales.xmi" );
+    domain.addLogicalModel( reporting );
+    domain.addLogicalModel( analysis );
+    List<LocaleType> locales = new ArrayList<LocaleType>();
+    locales.add( new LocaleType( "en_US", "English" ) );
+    locales.add( new LocaleType( "fr_FR", "French" ) );
+    domain.setLocales( locales );
+
+    repository = mock( IMetadataDomainRepository.class );
+    when( repository.getDomain( "sales.xmi" ) ).thenReturn( domain );
+  }
+
+  @Test
+  public void testSummarizesTheDomain() {
+    DatasourceCatalog.DomainSummary summary = DatasourceCatalog.forRepository( repository ).getDomainSummary(
+      "sales.xmi" );
+    assertEquals( "sales.xmi", summary.getDomainId() );
+    assertTrue( summary.isMetadata() );
+    assertFalse( summary.isDsw() );
+    assertTrue( summary.hasAnalysis() );
+    assertEquals( "fr_FR", summary.getClosestLocale( "fr_FR" ) );
+
+    List<DatasourceCatalog.ModelSummary> models = summary.getModels();
+    assertEquals( 2, models.size() );
+    assertEquals( "REPORTING", models.get( 0 ).getId() );
+    assertEquals( reporting.getName( "en_US" ), models.get( 0 ).getName( "en_US" ) );
+    assertEquals( reporting.getName( "fr_FR" ), models.get( 0 ).getName( "fr_FR" ) );
+    assertTrue( models.get( 0 ).isVisibleTo( null ) );
+    assertTrue( models.get( 0 ).isVisibleTo( "analyzer" ) );
+    assertFalse( models.get( 1 ).isVisibleTo( null ) );
+    assertFalse( models.get( 1 ).isVisibleTo( "" ) );
+    assertTrue( models.get( 1 ).isVisibleTo( "analyzer" ) );
+    assertTrue( models.get( 1 ).isVisibleTo( "crosstab" ) );
+  }
+
+  @Test
+  public void testTellsDataSourceWizardDomains() {
+    analysis.setProperty( DatasourceCatalog.AGILE_BI_GENERATED_SCHEMA, "TRUE" );
+    DatasourceCatalog.DomainSummary summary = DatasourceCatalog.forRepository( repository ).getDomainSummary(
+      "sales.xmi" );
+    assertFalse( summary.isMetadata() );
+    assertTrue( summary.isDsw() );
+
+    analysis.setProperty( DatasourceCatalog.AGILE_BI_GENERATED_SCHEMA, null );
+    analysis.setProperty( DatasourceCatalog.WIZARD_GENERATED_SCHEMA, "TRUE" );
+    summary = new DatasourceCatalog( repository, 0 ).getDomainSummary( "sales.xmi" );
+    assertFalse( summary.isMetadata() );
+    assertFalse( summary.isDsw() );
+  }
+
+  @Test
+  public void testReadsTheDomainOnce() {
+    DatasourceCatalog catalog = DatasourceCatalog.forRepository( repository );
+    DatasourceCatalog.DomainSummary summary = catalog.getDomainSummary( "sales.xmi" );
+    assertSame( catalog, DatasourceCatalog.forRepository( repository ) );
+    assertSame( summary, catalog.getDomainSummary( "sales.xmi" ) );
+    verify( repository, times( 1 ) ).getDomain( "sales.xmi" );
+  }
+
+  @Test
+  public void testReadsTheDomainAgainOnceInvalidated() {
+    DatasourceCatalog catalog = DatasourceCatalog.forRepository( repository );
+    catalog.getDomainSummary( "sales.xmi" );
+    DomainChangeNotifier.domainChanged( "sales.xmi" );
+    assertEquals( 0, catalog.size() );
+
+    domain.getLogicalModels().remove( analysis );
+    assertEquals( 1, catalog.getDomainSummary( "sales.xmi" ).getModels().size() );
+    verify( repository, times( 2 ) ).getDomain( "sales.xmi" );
+  }
+
+  @Test
+  public void testReadsTheDomainAgainOnceTooOld() throws Exception {
+    DatasourceCatalog catalog = new DatasourceCatalog( repository, 1 );
+    DatasourceCatalog.DomainSummary summary = catalog.getDomainSummary( "sales.xmi" );
+    Thread.sleep( 10 );
+    assertNotSame( summary, catalog.getDomainSummary( "sales.xmi" ) );
+    verify( repository, times( 2 ) ).getDomain( "sales.xmi" );
+  }
+
+  @Test
+  public void testMissingDomain() {
+    DatasourceCatalog catalog = DatasourceCatalog.forRepository( repository );
+    assertNull( catalog.getDomainSummary( "missing.xmi" ) );
+    assertEquals( 0, catalog.size() );
+  }
+}
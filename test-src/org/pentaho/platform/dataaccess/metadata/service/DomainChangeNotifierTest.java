@@ -0,0 +1,67 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DomainChangeNotifierTest {
+
+  private DomainChangeListener first;
+
+  private DomainChangeListener second;
+
+  @Before
+  public void setUp() {
+    first = mock( DomainChangeListener.class );
+    second = mock( DomainChangeListener.class );
+    DomainChangeNotifier.addListener( first );
+    DomainChangeNotifier.addListener( second );
+  }
+
+  @After
+  public void tearDown() {
+    DomainChangeNotifier.removeListener( first );
+    DomainChangeNotifier.removeListener( second );
+  }
+
+  @Test
+  public void testTellsEveryListener() {
+    DomainChangeNotifier.domainChanged( "sales.xmi" );
+    verify( first ).domainChanged( "sales.xmi" );
+    verify( second ).domainChanged( "sales.xmi" );
+
+    DomainChangeNotifier.removeListener( first );
+    DomainChangeNotifier.domainChanged( "orders.xmi" );
+    verify( first, never() ).domainChanged( "orders.xmi" );
+    verify( second ).domainChanged( "orders.xmi" );
+  }
+
+  @Test
+  public void testAFailingListenerDoesNotStopTheOthers() {
+    doThrow( new IllegalStateException() ).when( first ).domainChanged( "sales.xmi" );
+    DomainChangeNotifier.domainChanged( "sales.xmi" );
+    verify( second ).domainChanged( "sales.xmi" );
+  }
+}
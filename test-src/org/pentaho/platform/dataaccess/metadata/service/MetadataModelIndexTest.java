@@ -0,0 +1,198 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.metadata.model.Category;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalColumn;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.LogicalTable;
+import org.pentaho.metadata.model.concept.types.LocaleType;
+
+public class MetadataModelIndexTest {
+
+  private Domain domain;
+
+  private LogicalModel model;
+
+  private LogicalTable table;
+
+  private Category first;
+
+  private Category second;
+
+  private LogicalColumn column( String id ) {
+    LogicalColumn column = new LogicalColumn();
+    column.setId( id );
+    table.addLogicalColumn( column );
+    return column;
+  }
+
+  @Before
+  public void setUp() {
+    model = new LogicalModel();
+    model.setId( "MODEL" );
+    table = new LogicalTable();
+    model.getLogicalTables().add( table );
+    first = new Category();
+    first.setId( "FIRST" );
+    second = new Category();
+    second.setId( "SECOND" );
+    model.getCategories().add( first );
+    model.getCategories().add( second );
+
+    domain = new Domain();
+    domain.setId( "DOMAIN" );
+    domain.addLogicalModel( model );
+    List<LocaleType> locales = new ArrayList<LocaleType>();
+    locales.add( new LocaleType( "en_US", "English" ) );
+    locales.add( new LocaleType( "fr_FR", "French" ) );
+    domain.setLocales( locales );
+  }
+
+  @After
+  public void tearDown() {
+    DomainChangeNotifier.domainChanged( "DOMAIN" );
+  }
+
+  @Test
+  public void testFindsColumnsAndCategoriesLikeTheModel() {
+    LogicalColumn shared = column( "SHARED" );
+    LogicalColumn only = column( "ONLY_SECOND" );
+    first.addLogicalColumn( shared );
+    second.addLogicalColumn( shared );
+    second.addLogicalColumn( only );
+
+    MetadataModelIndex index = MetadataModelIndex.forDomain( domain );
+    assertSame( model.findLogicalColumn( "SHARED" ), index.findLogicalColumn( model, "SHARED" ) );
+    assertSame( only, index.findLogicalColumn( model, "ONLY_SECOND" ) );
+    assertSame( first, index.findCategory( model, "SHARED" ) );
+    assertSame( second, index.findCategory( model, "ONLY_SECOND" ) );
+    assertNull( index.findLogicalColumn( model, "MISSING" ) );
+    assertNull( index.findCategory( model, "MISSING" ) );
+  }
+
+  @Test
+  public void testColumnAddedAfterIndexingIsFound() {
+    MetadataModelIndex index = MetadataModelIndex.forDomain( domain );
+    assertNull( index.findLogicalColumn( model, "LATE" ) );
+
+    LogicalColumn late = column( "LATE" );
+    first.addLogicalColumn( late );
+    assertSame( late, index.findLogicalColumn( model, "LATE" ) );
+    assertSame( first, index.findCategory( model, "LATE" ) );
+  }
+
+  @Test
+  public void testSharedPerDomainVersion() {
+    long version = DomainChangeNotifier.getVersion( "DOMAIN" );
+    MetadataModelIndex index = MetadataModelIndex.forDomain( domain, version );
+    assertSame( index, MetadataModelIndex.forDomain( domain, version ) );
+
+    // the repository may hand out another object for the same version
+    Domain reloaded = new Domain();
+    reloaded.setId( "DOMAIN" );
+    assertSame( index, MetadataModelIndex.forDomain( reloaded, version ) );
+    assertSame( index, MetadataModelIndex.forDomain( reloaded ) );
+    assertSame( domain, index.getDomain() );
+
+    DomainChangeNotifier.domainChanged( "DOMAIN" );
+    MetadataModelIndex changed = MetadataModelIndex.forDomain( reloaded, version + 1 );
+    assertNotSame( index, changed );
+    assertSame( reloaded, changed.getDomain() );
+  }
+
+  @Test
+  public void testAnotherDomainObjectIsTrustedForTheMaxAgeOnly() {
+    long now = System.currentTimeMillis();
+    MetadataModelIndex index = new MetadataModelIndex( domain, 3 );
+    Domain reloaded = new Domain();
+    reloaded.setId( "DOMAIN" );
+
+    assertTrue( index.isCurrent( domain, 3, now + 3600000L ) );
+    assertTrue( index.isCurrent( reloaded, 3, now ) );
+    // the domain may have been changed outside Data Access, so the index is made again from the object read
+    assertFalse( index.isCurrent( reloaded, 3, now + 3600000L ) );
+    assertFalse( index.isCurrent( domain, 4, now ) );
+  }
+
+  @Test
+  public void testReadDuringAChangeIsNotKept() {
+    long version = DomainChangeNotifier.getVersion( "DOMAIN" );
+    // the domain is stored while it is being read
+    DomainChangeNotifier.domainChanged( "DOMAIN" );
+    MetadataModelIndex stale = MetadataModelIndex.forDomain( domain, version );
+    assertNotSame( stale, MetadataModelIndex.forDomain( domain, version ) );
+    assertNotSame( stale, MetadataModelIndex.forDomain( domain, version + 1 ) );
+  }
+
+  @Test
+  public void testNotKeptWithoutAVersion() {
+    assertNotSame( MetadataModelIndex.forDomain( domain ), MetadataModelIndex.forDomain( domain ) );
+  }
+
+  @Test
+  public void testLeastRecentlyUsedDomainsAreDropped() {
+    long version = DomainChangeNotifier.getVersion( "DOMAIN" );
+    MetadataModelIndex index = MetadataModelIndex.forDomain( domain, version );
+    try {
+      // 100 domains are kept by default
+      for ( int i = 0; i < 99; i++ ) {
+        other( i );
+      }
+      assertSame( index, MetadataModelIndex.forDomain( domain, version ) );
+      other( 99 );
+      assertSame( index, MetadataModelIndex.forDomain( domain, version ) );
+      for ( int i = 100; i < 200; i++ ) {
+        other( i );
+      }
+      assertNotSame( index, MetadataModelIndex.forDomain( domain, version ) );
+    } finally {
+      for ( int i = 0; i < 200; i++ ) {
+        DomainChangeNotifier.domainChanged( "OTHER" + i );
+      }
+    }
+  }
+
+  private static void other( int i ) {
+    Domain other = new Domain();
+    other.setId( "OTHER" + i );
+    MetadataModelIndex.forDomain( other, DomainChangeNotifier.getVersion( other.getId() ) );
+  }
+
+  @Test
+  public void testClosestLocale() {
+    MetadataModelIndex index = MetadataModelIndex.forDomain( domain );
+    assertEquals( "fr_FR", index.getLocale( "fr_FR" ) );
+    assertEquals( "fr_FR", index.getLocale( "fr_FR" ) );
+    assertEquals( "en_US", index.getLocale( "en_US" ) );
+  }
+}
@@ -0,0 +1,83 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Model;
+
+public class MetadataModelResourceTest {
+
+  private MetadataModelResource resource;
+
+  private CachedModel model;
+
+  @Before
+  public void setUp() {
+    Model thinModel = new Model();
+    thinModel.setId( "MODEL" );
+    thinModel.setDomainId( "DOMAIN" );
+    model = new CachedModel( thinModel );
+
+    resource = new MetadataModelResource();
+    resource.service = mock( MetadataService.class );
+    when( resource.service.getCachedModel( "DOMAIN", "MODEL" ) ).thenReturn( model );
+  }
+
+  @Test
+  public void testLoadModelJson() {
+    Request request = mock( Request.class );
+    Response response = resource.loadModelJson( "DOMAIN", "MODEL", request );
+
+    assertEquals( 200, response.getStatus() );
+    assertEquals( model.getJson(), response.getEntity() );
+    assertEquals( new EntityTag( model.getEntityTag() ), response.getMetadata().getFirst( "ETag" ) );
+  }
+
+  @Test
+  public void testNotModified() {
+    Request request = mock( Request.class );
+    when( request.evaluatePreconditions( any( EntityTag.class ) ) ).thenReturn( Response.notModified() );
+    Response response = resource.loadModelJson( "DOMAIN", "MODEL", request );
+
+    assertEquals( 304, response.getStatus() );
+  }
+
+  @Test
+  public void testUnknownModel() {
+    assertEquals( 404, resource.loadModelJson( "DOMAIN", "OTHER", mock( Request.class ) ).getStatus() );
+  }
+
+  @Test
+  public void testEntityTagFollowsTheJson() {
+    Model other = new Model();
+    other.setId( "OTHER" );
+    assertEquals( model.getEntityTag(), new CachedModel( model.getModel() ).getEntityTag() );
+    assertFalse( model.getEntityTag().equals( new CachedModel( other ).getEntityTag() ) );
+  }
+}
@@ -0,0 +1,164 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.pentaho.metadata.model.Domain;
+import org.pentaho.metadata.model.LogicalModel;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Column;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Parameter;
+import org.pentaho.platform.dataaccess.metadata.model.impl.Query;
+
+public class MetadataQueryCacheTest {
+
+  private Domain domain( String id ) {
+    Domain domain = new Domain();
+    domain.setId( id );
+    return domain;
+  }
+
+  private Query query( String columnId, String parameterValue ) {
+    Column column = new Column();
+    column.setId( columnId );
+    column.setSelectedAggType( "NONE" );
+    Parameter parameter = new Parameter();
+    parameter.setColumn( columnId );
+    parameter.setValue( new String[] { parameterValue } );
+    Query query = new Query();
+    query.setDomainName( "domain" );
+    query.setModelId( "model" );
+    query.setColumns( new Column[] { column } );
+    query.setParameters( new Parameter[] { parameter } );
+    return query;
+  }
+
+  private MetadataQueryCache.CompiledQuery compiled( Domain domain ) {
+    return compiled( domain, 0 );
+  }
+
+  private MetadataQueryCache.CompiledQuery compiled( Domain domain, long version ) {
+    org.pentaho.metadata.query.model.Query template =
+      new org.pentaho.metadata.query.model.Query( domain, new LogicalModel() );
+    return new MetadataQueryCache.CompiledQuery( template, new DataType[] { DataType.STRING }, version );
+  }
+
+  @Test
+  public void testParameterValuesAreNotPartOfTheKey() {
+    assertEquals( MetadataQueryCache.createKey( query( "col", "a" ) ),
+      MetadataQueryCache.createKey( query( "col", "b" ) ) );
+    assertFalse( MetadataQueryCache.createKey( query( "col", "a" ) )
+      .equals( MetadataQueryCache.createKey( query( "other", "a" ) ) ) );
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    MetadataQueryCache cache = new MetadataQueryCache( 10 );
+    Domain domain = domain( "domain" );
+    String key = MetadataQueryCache.createKey( query( "col", "a" ) );
+
+    assertNull( cache.get( key, 0, domain ) );
+    MetadataQueryCache.CompiledQuery compiled = compiled( domain );
+    cache.put( key, compiled );
+    assertSame( compiled, cache.get( key, 0, domain ) );
+    assertEquals( 1, cache.getHits() );
+    assertEquals( 1, cache.getMisses() );
+  }
+
+  @Test
+  public void testChangedDomainIsAMiss() {
+    MetadataQueryCache cache = new MetadataQueryCache( 10 );
+    String key = MetadataQueryCache.createKey( query( "col", "a" ) );
+    Domain domain = domain( "domain" );
+    cache.put( key, compiled( domain, 1 ) );
+
+    assertNull( cache.get( key, 2, domain ) );
+    assertEquals( 0, cache.getSize() );
+  }
+
+  @Test
+  public void testDomainReadAgainIsAMiss() {
+    MetadataQueryCache cache = new MetadataQueryCache( 10 );
+    String key = MetadataQueryCache.createKey( query( "col", "a" ) );
+    cache.put( key, compiled( domain( "domain" ), 1 ) );
+
+    // the index of the domain was made again from another object, as after a change outside Data Access
+    assertNull( cache.get( key, 1, domain( "domain" ) ) );
+    assertEquals( 0, cache.getSize() );
+  }
+
+  @Test
+  public void testReaderOfAnOlderVersionKeepsTheNewerEntry() {
+    MetadataQueryCache cache = new MetadataQueryCache( 10 );
+    String key = MetadataQueryCache.createKey( query( "col", "a" ) );
+    Domain domain = domain( "domain" );
+    MetadataQueryCache.CompiledQuery compiled = compiled( domain, 2 );
+    cache.put( key, compiled );
+
+    assertNull( cache.get( key, 1, domain ) );
+    assertSame( compiled, cache.get( key, 2, domain ) );
+  }
+
+  @Test
+  public void testInvalidate() {
+    MetadataQueryCache cache = new MetadataQueryCache( 10 );
+    Domain domain = domain( "domain" );
+    cache.put( "a", compiled( domain ) );
+    cache.put( "b", compiled( domain ) );
+    cache.put( "c", compiled( domain( "other" ) ) );
+
+    cache.invalidate( "domain" );
+    assertEquals( 1, cache.getSize() );
+    assertEquals( 2, cache.getInvalidations() );
+    assertNull( cache.get( "a", 0, domain ) );
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    MetadataQueryCache cache = new MetadataQueryCache( 2 );
+    Domain domain = domain( "domain" );
+    cache.put( "a", compiled( domain ) );
+    cache.put( "b", compiled( domain ) );
+    cache.get( "a", 0, domain );
+    cache.put( "c", compiled( domain ) );
+
+    assertEquals( 2, cache.getSize() );
+    assertNull( cache.get( "b", 0, domain ) );
+  }
+
+  @Test
+  public void testNewQueryFillsInParameterValues() {
+    Domain domain = domain( "domain" );
+    MetadataQueryCache.CompiledQuery compiled = compiled( domain );
+    Query thin = query( "col", "a" );
+
+    org.pentaho.metadata.query.model.Query first = compiled.newQuery( thin.getParameters() );
+    org.pentaho.metadata.query.model.Query second = compiled.newQuery( query( "col", "b" ).getParameters() );
+    assertNotSame( first, second );
+    assertSame( domain, first.getDomain() );
+    assertEquals( "a", first.getParameters().get( 0 ).getDefaultValue() );
+    assertEquals( "b", second.getParameters().get( 0 ).getDefaultValue() );
+    assertEquals( DataType.STRING, second.getParameters().get( 0 ).getType() );
+  }
+}
@@ -0,0 +1,166 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.commons.connection.memory.MemoryMetaData;
+import org.pentaho.commons.connection.memory.MemoryResultSet;
+
+public class MetadataResultCacheTest {
+
+  private static final long TTL = 60000;
+
+  private IPentahoResultSet resultSet( int rows ) {
+    MemoryResultSet resultSet =
+      new MemoryResultSet( new MemoryMetaData( new Object[][] { { "id", "name" } }, null ) );
+    for ( int row = 0; row < rows; row++ ) {
+      resultSet.addRow( new Object[] { row, "name " + row } );
+    }
+    return resultSet;
+  }
+
+  private int count( IPentahoResultSet resultSet ) {
+    int rows = 0;
+    while ( resultSet.next() != null ) {
+      rows++;
+    }
+    return rows;
+  }
+
+  @Test
+  public void testDisabledWithoutBudget() {
+    assertFalse( new MetadataResultCache( 0, TTL ).isEnabled() );
+  }
+
+  @Test
+  public void testEveryHitGetsItsOwnCursor() {
+    MetadataResultCache cache = new MetadataResultCache( 1024 * 1024, TTL );
+
+    assertNull( cache.get( "key", 0 ) );
+    assertEquals( 10, count( cache.put( "key", "domain", 0, resultSet( 10 ) ) ) );
+    assertEquals( 10, count( cache.get( "key", 0 ) ) );
+    IPentahoResultSet hit = cache.get( "key", 0 );
+    assertArrayEquals( new Object[] { 0, "name 0" }, hit.next() );
+    assertEquals( 2, cache.getHits() );
+    assertEquals( 1, cache.getMisses() );
+    assertEquals( 2.0 / 3, cache.getHitRatio(), 0.0001 );
+    assertEquals( 1, cache.getSize() );
+  }
+
+  @Test
+  public void testExpiredEntryIsAMiss() {
+    MetadataResultCache cache = new MetadataResultCache( 1024 * 1024, 0 );
+    cache.put( "key", "domain", 0, resultSet( 10 ) );
+
+    assertNull( cache.get( "key", 0 ) );
+    assertEquals( 1, cache.getExpirations() );
+    assertEquals( 0, cache.getBytes() );
+  }
+
+  @Test
+  public void testChangedDomainIsAMiss() {
+    MetadataResultCache cache = new MetadataResultCache( 1024 * 1024, TTL );
+    cache.put( "key", "domain", 1, resultSet( 10 ) );
+
+    assertNull( cache.get( "key", 2 ) );
+    assertEquals( 0, cache.getSize() );
+  }
+
+  @Test
+  public void testReaderOfAnOlderVersionKeepsTheNewerEntry() {
+    MetadataResultCache cache = new MetadataResultCache( 1024 * 1024, TTL );
+    cache.put( "key", "domain", 2, resultSet( 10 ) );
+
+    assertNull( cache.get( "key", 1 ) );
+    assertEquals( 10, count( cache.get( "key", 2 ) ) );
+  }
+
+  @Test
+  public void testInvalidate() {
+    MetadataResultCache cache = new MetadataResultCache( 1024 * 1024, TTL );
+    cache.put( "a", "domain", 0, resultSet( 10 ) );
+    cache.put( "b", "other", 0, resultSet( 10 ) );
+
+    cache.invalidate( "domain" );
+    assertNull( cache.get( "a", 0 ) );
+    assertNotNull( cache.get( "b", 0 ) );
+    assertEquals( 1, cache.getInvalidations() );
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedOverBudget() {
+    long rowBytes = MetadataResultCache.estimateBytes( new Object[] { 0, "name 0" } );
+    MetadataResultCache cache = new MetadataResultCache( rowBytes * 10 * MetadataResultCache.MAX_ENTRY_SHARE, TTL );
+    for ( int idx = 0; idx < MetadataResultCache.MAX_ENTRY_SHARE; idx++ ) {
+      cache.put( "key" + idx, "domain", 0, resultSet( 9 ) );
+    }
+    cache.get( "key0", 0 );
+    cache.put( "new", "domain", 0, resultSet( 9 ) );
+
+    assertEquals( 1, cache.getEvictions() );
+    assertNotNull( cache.get( "key0", 0 ) );
+    assertNull( cache.get( "key1", 0 ) );
+    assertTrue( cache.getBytes() <= cache.getMaxBytes() );
+  }
+
+  @Test
+  public void testLargeResultIsNotCached() {
+    MetadataResultCache cache = new MetadataResultCache( 1024, TTL );
+
+    assertEquals( 1000, count( cache.put( "key", "domain", 0, resultSet( 1000 ) ) ) );
+    assertEquals( 0, cache.getSize() );
+  }
+
+  @Test
+  public void testLargeResultIsOnlyReadWhileItMightFit() {
+    MetadataResultCache cache = new MetadataResultCache( 1024, TTL );
+    IPentahoResultSet live = spy( resultSet( 1000 ) );
+
+    IPentahoResultSet replayed = cache.put( "key", "domain", 0, live );
+    verify( live, atMost( 10 ) ).next();
+    verify( live, never() ).close();
+    assertArrayEquals( new Object[] { 0, "name 0" }, replayed.next() );
+    assertEquals( 1000, replayed.getRowCount() );
+    assertEquals( 999, count( replayed ) );
+    replayed.close();
+    verify( live ).close();
+  }
+
+  @Test
+  public void testKeys() {
+    String xml = "<mql><domain_type>relational</domain_type><domain_id>steel &amp; wheels</domain_id></mql>";
+    assertEquals( "steel & wheels", MetadataResultCache.getDomainId( xml ) );
+    assertNull( MetadataResultCache.getDomainId( "<mql/>" ) );
+
+    assertEquals( MetadataResultCache.createKey( xml, null, "joe" ), MetadataResultCache.createKey( xml, -1, "joe" ) );
+    assertFalse( MetadataResultCache.createKey( xml, 10, "joe" ).equals(
+      MetadataResultCache.createKey( xml, 10, "suzy" ) ) );
+  }
+}
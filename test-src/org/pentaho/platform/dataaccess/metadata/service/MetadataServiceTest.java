@@ -51,6 +51,7 @@ import org.pentaho.platform.dataaccess.metadata.model.impl.ModelInfo;
 import org.pentaho.platform.dataaccess.metadata.model.impl.Order;
 import org.pentaho.platform.dataaccess.metadata.model.impl.Parameter;
 import org.pentaho.platform.dataaccess.metadata.model.impl.Query;
+import org.pentaho.platform.engine.core.system.PentahoSystem;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -81,6 +82,8 @@ public class MetadataServiceTest {
 
   @Before
   public void initialize() {
+    // convertQuery sizes its cache from the system settings
+    PentahoSystem.setSystemSettingsService( null );
 
     List<Category> categoryList = new ArrayList();
     Category category = mock( Category.class );
@@ -125,6 +128,8 @@ public class MetadataServiceTest {
 
   @After
   public void finalize() {
+    // drops the index, and the thin models, made from this test's domain
+    DomainChangeNotifier.domainChanged( DOMAIN_ID );
 
     metadataService = null;
     metadataServiceUtil = null;
@@ -210,6 +215,35 @@ public class MetadataServiceTest {
     Assert.assertTrue( model.getName() == LOGICAL_MODEL_NAME );
   }
 
+  @Test
+  public void testLoadModelIsMadeOncePerDomain() {
+
+    when( metadataService.loadModel( anyString(), anyString() ) ).thenCallRealMethod();
+
+    Model model = metadataService.loadModel( DOMAIN_ID, LOGICAL_MODEL_ID );
+    Model other = metadataService.loadModel( DOMAIN_ID, LOGICAL_MODEL_ID );
+    Assert.assertNotSame( model, other );
+    Assert.assertEquals( model.getId(), other.getId() );
+    verify( metadataServiceUtil, times( 1 ) ).createThinModel( any( LogicalModel.class ), anyString() );
+  }
+
+  @Test
+  public void testLoadModelChangesAreNotShared() {
+
+    when( metadataService.loadModel( anyString(), anyString() ) ).thenCallRealMethod();
+    when( metadataService.loadModelJson( anyString(), anyString() ) ).thenCallRealMethod();
+
+    String json = metadataService.loadModelJson( DOMAIN_ID, LOGICAL_MODEL_ID );
+    Model model = metadataService.loadModel( DOMAIN_ID, LOGICAL_MODEL_ID );
+    model.setName( "changed" );
+    model.getCategories()[ 0 ].setName( "changed" );
+
+    Model other = metadataService.loadModel( DOMAIN_ID, LOGICAL_MODEL_ID );
+    Assert.assertEquals( LOGICAL_MODEL_NAME, other.getName() );
+    Assert.assertNull( other.getCategories()[ 0 ].getName() );
+    Assert.assertEquals( json, metadataService.loadModelJson( DOMAIN_ID, LOGICAL_MODEL_ID ) );
+  }
+
   @Test
   public void testLoadModelJson() {
 
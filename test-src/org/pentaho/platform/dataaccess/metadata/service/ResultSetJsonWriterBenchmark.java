@@ -0,0 +1,176 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.commons.connection.marshal.MarshallableResultSet;
+import org.pentaho.commons.connection.memory.MemoryMetaData;
+import org.pentaho.commons.connection.memory.MemoryResultSet;
+import org.pentaho.metadata.model.IPhysicalColumn;
+import org.pentaho.metadata.model.concept.types.DataType;
+
+import flexjson.JSONSerializer;
+
+/**
+ * Compares {@link ResultSetJsonWriter} against building the JSON the way <code>MetadataService.doXmlQueryToJson</code>
+ * and <code>MetadataServiceUtil.createCdaJson</code> do, then writing the string out. Reports the time and the peak
+ * heap used on top of the result set itself, per 100k rows. Not a unit test; run it by hand with
+ * <code>java -Xmx2g ResultSetJsonWriterBenchmark [rows] [iterations]</code>.
+ */
+public class ResultSetJsonWriterBenchmark {
+
+  private static final int COLUMNS = 6;
+
+  private static long baseline;
+
+  public static void main( String[] args ) throws Exception {
+    int rows = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 200000;
+    int iterations = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 5;
+    MetadataServiceUtil util = new MetadataServiceUtil();
+    ResultSetJsonWriter writer = new ResultSetJsonWriter();
+
+    // warm up every path before measuring
+    for ( int i = 0; i < 2; i++ ) {
+      legacyJson( resultSet( rows / 10 ), new CountingOutputStream() );
+      writer.writeJson( resultSet( rows / 10 ), new CountingOutputStream() );
+      legacyCda( util, resultSet( rows / 10 ), new CountingOutputStream() );
+      writer.writeCdaJson( resultSet( rows / 10 ), "en_US", new CountingOutputStream() );
+    }
+
+    long[] legacyJson = new long[ 2 ];
+    long[] streamedJson = new long[ 2 ];
+    long[] legacyCda = new long[ 2 ];
+    long[] streamedCda = new long[ 2 ];
+    long bytes = 0;
+    for ( int i = 0; i < iterations; i++ ) {
+      IPentahoResultSet resultSet = resultSet( rows );
+      long start = begin();
+      CountingOutputStream out = new CountingOutputStream();
+      legacyJson( resultSet, out );
+      end( legacyJson, start );
+      bytes = out.count;
+
+      resultSet = resultSet( rows );
+      start = begin();
+      writer.writeJson( resultSet, new CountingOutputStream() );
+      end( streamedJson, start );
+
+      resultSet = resultSet( rows );
+      start = begin();
+      legacyCda( util, resultSet, new CountingOutputStream() );
+      end( legacyCda, start );
+
+      resultSet = resultSet( rows );
+      start = begin();
+      writer.writeCdaJson( resultSet, "en_US", new CountingOutputStream() );
+      end( streamedCda, start );
+    }
+
+    System.out.println( rows + " rows, " + COLUMNS + " columns, " + bytes + " bytes of JSON" ); //$NON-NLS-1$
+    report( "json legacy   ", legacyJson, rows, iterations ); //$NON-NLS-1$
+    report( "json streamed ", streamedJson, rows, iterations ); //$NON-NLS-1$
+    report( "cda  legacy   ", legacyCda, rows, iterations ); //$NON-NLS-1$
+    report( "cda  streamed ", streamedCda, rows, iterations ); //$NON-NLS-1$
+  }
+
+  private static IPentahoResultSet resultSet( int rows ) {
+    Object[] names = new Object[ COLUMNS ];
+    for ( int col = 0; col < COLUMNS; col++ ) {
+      names[ col ] = "column_" + col; //$NON-NLS-1$
+    }
+    MemoryMetaData metaData = new MemoryMetaData( new Object[][] { names }, null ) {
+      @Override
+      public Object getAttribute( int rowNo, int columnNo, String attributeName ) {
+        return IPhysicalColumn.DATATYPE_PROPERTY.equals( attributeName ) ? DataType.STRING : null;
+      }
+    };
+    MemoryResultSet resultSet = new MemoryResultSet( metaData );
+    Date date = new Date( 0 );
+    for ( int row = 0; row < rows; row++ ) {
+      resultSet.addRow( new Object[] { row, "customer " + row, "region " + ( row % 50 ),
+        new BigDecimal( row ).movePointLeft( 2 ), date, row % 3 == 0 ? null : "note " + row } );
+    }
+    return resultSet;
+  }
+
+  private static void legacyJson( IPentahoResultSet resultSet, OutputStream out ) throws IOException {
+    MarshallableResultSet marshallable = new MarshallableResultSet();
+    marshallable.setResultSet( resultSet );
+    out.write( new JSONSerializer().deepSerialize( marshallable ).getBytes( "UTF-8" ) ); //$NON-NLS-1$
+  }
+
+  private static void legacyCda( MetadataServiceUtil util, IPentahoResultSet resultSet, OutputStream out )
+    throws Exception {
+    out.write( util.createCdaJson( resultSet, "en_US" ).getBytes( "UTF-8" ) ); //$NON-NLS-1$ //$NON-NLS-2$
+  }
+
+  private static long begin() {
+    System.gc();
+    baseline = 0;
+    for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+      if ( pool.getType() == MemoryType.HEAP ) {
+        pool.resetPeakUsage();
+        baseline += pool.getUsage().getUsed();
+      }
+    }
+    return System.nanoTime();
+  }
+
+  /**
+   * Adds the elapsed time and the peak heap above what was live at {@link #begin()} to <code>totals</code>. The peak is
+   * summed over the heap pools, which overstates it somewhat but alike for every path.
+   */
+  private static void end( long[] totals, long start ) {
+    totals[ 0 ] += System.nanoTime() - start;
+    long peak = 0;
+    for ( MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() ) {
+      if ( pool.getType() == MemoryType.HEAP ) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    totals[ 1 ] += Math.max( 0, peak - baseline );
+  }
+
+  private static void report( String label, long[] totals, int rows, int iterations ) {
+    double per100k = 100000.0 / rows;
+    System.out.println( label + " ms/100k rows: " + totals[ 0 ] / iterations / 1000000.0 * per100k //$NON-NLS-1$
+      + ", peak heap MB/100k rows: " + totals[ 1 ] / iterations / ( 1024.0 * 1024.0 ) * per100k ); //$NON-NLS-1$
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write( int b ) {
+      count++;
+    }
+
+    @Override
+    public void write( byte[] b, int off, int len ) {
+      count += len;
+    }
+  }
+}
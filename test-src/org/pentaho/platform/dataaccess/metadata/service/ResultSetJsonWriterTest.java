@@ -0,0 +1,116 @@
+/*!
+* This program is free software; you can redistribute it and/or modify it under the
+* terms of the GNU Lesser General Public License, version 2.1 as published by the Free Software
+* Foundation.
+*
+* You should have received a copy of the GNU Lesser General Public License along with this
+* program; if not, you can obtain a copy at http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+* or from the Free Software Foundation, Inc.,
+* 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+* without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+* See the GNU Lesser General Public License for more details.
+*
+* Copyright (c) 2002-2016 Pentaho Corporation..  All rights reserved.
+*/
+
+package org.pentaho.platform.dataaccess.metadata.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+
+import org.junit.Test;
+import org.pentaho.commons.connection.IPentahoResultSet;
+import org.pentaho.commons.connection.marshal.MarshallableResultSet;
+import org.pentaho.commons.connection.memory.MemoryMetaData;
+import org.pentaho.commons.connection.memory.MemoryResultSet;
+import org.pentaho.metadata.model.IPhysicalColumn;
+import org.pentaho.metadata.model.concept.Concept;
+import org.pentaho.metadata.model.concept.types.DataType;
+import org.pentaho.metadata.model.concept.types.LocalizedString;
+
+import flexjson.JSONSerializer;
+
+public class ResultSetJsonWriterTest {
+
+  private static final Object[] COLUMN_NAMES = new Object[] { "id", "name \"quoted\"", "\"rows\":[]", "amount" };
+
+  private final ResultSetJsonWriter writer = new ResultSetJsonWriter();
+
+  private MemoryMetaData metaData() {
+    MemoryMetaData metaData = new MemoryMetaData( new Object[][] { COLUMN_NAMES }, null ) {
+      @Override
+      public Object getAttribute( int rowNo, int columnNo, String attributeName ) {
+        if ( IPhysicalColumn.DATATYPE_PROPERTY.equals( attributeName ) ) {
+          return columnNo == 0 || columnNo == 3 ? DataType.NUMERIC : DataType.STRING;
+        } else if ( Concept.NAME_PROPERTY.equals( attributeName ) ) {
+          return new LocalizedString( "en_US", "Label " + columnNo );
+        }
+        return null;
+      }
+    };
+    return metaData;
+  }
+
+  private IPentahoResultSet resultSet( int rows ) {
+    MemoryResultSet resultSet = new MemoryResultSet( metaData() );
+    for ( int row = 0; row < rows; row++ ) {
+      resultSet.addRow( new Object[] { row, row % 7 == 0 ? null : "name " + row + " \"q\" é\n/",
+        "[" + row + "]", new BigDecimal( row ).movePointLeft( 2 ) } );
+    }
+    return resultSet;
+  }
+
+  private String writeJson( IPentahoResultSet resultSet ) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.writeJson( resultSet, out );
+    return out.toString( "UTF-8" );
+  }
+
+  private String writeCdaJson( IPentahoResultSet resultSet ) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.writeCdaJson( resultSet, "en_US", out );
+    return out.toString( "UTF-8" );
+  }
+
+  private String legacyJson( IPentahoResultSet resultSet ) {
+    MarshallableResultSet marshallable = new MarshallableResultSet();
+    marshallable.setResultSet( resultSet );
+    return new JSONSerializer().deepSerialize( marshallable );
+  }
+
+  @Test
+  public void testJsonMatchesFlexjson() throws Exception {
+    int rows = ResultSetJsonWriter.CHUNK_ROWS * 2 + 17;
+    assertEquals( legacyJson( resultSet( rows ) ), writeJson( resultSet( rows ) ) );
+  }
+
+  @Test
+  public void testJsonMatchesFlexjsonOnEmptyResult() throws Exception {
+    assertEquals( legacyJson( resultSet( 0 ) ), writeJson( resultSet( 0 ) ) );
+  }
+
+  @Test
+  public void testJsonMatchesFlexjsonOnFullChunk() throws Exception {
+    int rows = ResultSetJsonWriter.CHUNK_ROWS;
+    assertEquals( legacyJson( resultSet( rows ) ), writeJson( resultSet( rows ) ) );
+  }
+
+  @Test
+  public void testCdaJsonMatchesUtil() throws Exception {
+    MetadataServiceUtil util = new MetadataServiceUtil();
+    assertEquals( util.createCdaJson( resultSet( 50 ), "en_US" ), writeCdaJson( resultSet( 50 ) ) );
+    assertEquals( util.createCdaJson( resultSet( 0 ), "en_US" ), writeCdaJson( resultSet( 0 ) ) );
+  }
+
+  @Test
+  public void testFindEmptyArraySkipsEscapedKeys() {
+    String json = "{\"a\":\"\\\"rows\\\":[]\",\"rows\":[],\"z\":1}";
+    assertEquals( json.indexOf( "\"rows\":[]" ) + "\"rows\":[".length(),
+      ResultSetJsonWriter.findEmptyArray( json, "\"rows\":[" ) );
+    assertEquals( -1, ResultSetJsonWriter.findEmptyArray( "{\"rows\":null}", "\"rows\":[" ) );
+  }
+}